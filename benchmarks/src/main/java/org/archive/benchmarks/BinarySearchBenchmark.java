@@ -0,0 +1,179 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
+import org.archive.util.binsearch.impl.MappedSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory.NIOType;
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SortedTextFile lookups and prefix scans over a synthetic CDX file, for
+ * each SeekableLineReaderFactory and binary search block size.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BinarySearchBenchmark {
+
+	public enum FactoryType
+	{
+		BIO,
+		NIO,
+		MMAP,
+		BIGMAP,
+		HTTP_APACHE_31,
+		HTTP_APACHE_43,
+		HTTP_URLCONN,
+	}
+
+	@Param({"BIO", "NIO", "MMAP", "BIGMAP", "HTTP_APACHE_31", "HTTP_APACHE_43", "HTTP_URLCONN"})
+	public FactoryType factoryType;
+
+	@Param({"4096", "8192", "65536"})
+	public int blockSize;
+
+	@Param({"1000000"})
+	public int numLines;
+
+	@Param({"1000"})
+	public int scanLines;
+
+	protected SeekableLineReaderFactory factory;
+	protected SortedTextFile sorted;
+	protected RangeFileServer server;
+
+	@State(Scope.Thread)
+	public static class Keys
+	{
+		Random random = new Random(Thread.currentThread().getId());
+
+		int nextLine(int numLines)
+		{
+			return random.nextInt(numLines);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		File cdx = Fixtures.getCDX(numLines);
+
+		switch (factoryType) {
+		case BIO:
+			factory = new RandomAccessFileSeekableLineReaderFactory(cdx, blockSize);
+			break;
+
+		case NIO:
+			factory = new NIOSeekableLineReaderFactory(cdx, blockSize, NIOType.PLAIN);
+			break;
+
+		case MMAP:
+			factory = new NIOSeekableLineReaderFactory(cdx, blockSize, NIOType.MMAP);
+			break;
+
+		case BIGMAP:
+			factory = new MappedSeekableLineReaderFactory(cdx, blockSize);
+			break;
+
+		default:
+			server = new RangeFileServer(cdx);
+			HttpLibs lib = HttpLibs.valueOf(factoryType.name().substring("HTTP_".length()));
+			HTTPSeekableLineReaderFactory httpFactory = HTTPSeekableLineReaderFactory.getHttpFactory(lib, server.getUrl());
+			httpFactory.setStaleChecking(true);
+			factory = httpFactory;
+			break;
+		}
+
+		sorted = new SortedTextFile(factory);
+		sorted.setBinsearchBlockSize(blockSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		factory.close();
+
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	protected String lookup(String key) throws IOException
+	{
+		CloseableIterator<String> iter = sorted.getRecordIterator(key);
+
+		try {
+			return iter.hasNext() ? iter.next() : null;
+		} finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Latency of a single url lookup
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public String lookupLatency(Keys keys) throws IOException
+	{
+		return lookup(Fixtures.urlKey(keys.nextLine(numLines)));
+	}
+
+	/**
+	 * Url lookups by 8 concurrent threads, override with -t
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public String lookupThroughput(Keys keys) throws IOException
+	{
+		return lookup(Fixtures.urlKey(keys.nextLine(numLines)));
+	}
+
+	/**
+	 * Read scanLines lines from a random position
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void prefixScan(Keys keys, Blackhole bh) throws IOException
+	{
+		int line = keys.nextLine(numLines - scanLines);
+		CloseableIterator<String> iter = sorted.getRecordIterator(Fixtures.urlKey(line));
+
+		try {
+			for (int i = 0; (i < scanLines) && iter.hasNext(); i++) {
+				bh.consume(iter.next());
+			}
+		} finally {
+			iter.close();
+		}
+	}
+}
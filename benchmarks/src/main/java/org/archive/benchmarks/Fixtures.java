@@ -0,0 +1,183 @@
+package org.archive.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Synthetic sorted CDX, ZipNum and WARC fixtures, generated once into the
+ * fixture dir (-Dbenchmark.fixtures, default java.io.tmpdir/wac-benchmarks)
+ * and reused by later runs.
+ */
+public class Fixtures {
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static int CAPTURES_PER_URL = 10;
+	public final static int URLS_PER_HOST = 100;
+
+	public static File getFixtureDir()
+	{
+		File dir = new File(System.getProperty("benchmark.fixtures",
+				new File(System.getProperty("java.io.tmpdir"), "wac-benchmarks").getPath()));
+		dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * Url key of line i, increasing with i
+	 */
+	public static String urlKey(int i)
+	{
+		int url = i / CAPTURES_PER_URL;
+		return String.format("com,host%07d)/path/%04d.html", url / URLS_PER_HOST, url % URLS_PER_HOST);
+	}
+
+	public static String hostPrefix(int i)
+	{
+		return String.format("com,host%07d)/", (i / CAPTURES_PER_URL) / URLS_PER_HOST);
+	}
+
+	public static String cdxLine(int i)
+	{
+		int url = i / CAPTURES_PER_URL;
+		return String.format("%s %014d http://host%07d.com/path/%04d.html text/html 200 %032d - - %d %d crawl-%05d.warc.gz",
+				urlKey(i), 20150101000000L + (i % CAPTURES_PER_URL), url / URLS_PER_HOST, url % URLS_PER_HOST,
+				i, 1000 + (i % 5000), (long)i * 1000, i / 100000);
+	}
+
+	/**
+	 * @return a sorted CDX file of numLines lines
+	 */
+	public static synchronized File getCDX(int numLines) throws IOException
+	{
+		File file = new File(getFixtureDir(), "synthetic-" + numLines + ".cdx");
+
+		if (file.isFile()) {
+			return file;
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		PrintWriter out = new PrintWriter(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20));
+
+		for (int i = 0; i < numLines; i++) {
+			out.print(cdxLine(i));
+			out.print('\n');
+		}
+
+		out.close();
+		tmp.renameTo(file);
+		return file;
+	}
+
+	/**
+	 * @return the summary of a single part ZipNum index of numLines lines
+	 */
+	public static synchronized File getZipNum(int numLines, int linesPerBlock) throws IOException
+	{
+		File dir = new File(getFixtureDir(), "zipnum-" + numLines + "-" + linesPerBlock);
+		File summary = new File(dir, "ALL.summary");
+
+		if (summary.isFile()) {
+			return summary;
+		}
+
+		dir.mkdirs();
+
+		File part = new File(dir, "part-00000.gz");
+		OutputStream partOut = new BufferedOutputStream(new FileOutputStream(part), 1 << 20);
+		File tmp = new File(summary.getPath() + ".tmp");
+		PrintWriter summaryOut = new PrintWriter(tmp, "UTF-8");
+		long offset = 0;
+
+		for (int i = 0; i < numLines; i += linesPerBlock) {
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			GZIPOutputStream gz = new GZIPOutputStream(block);
+
+			for (int j = i; j < Math.min(i + linesPerBlock, numLines); j++) {
+				gz.write((cdxLine(j) + "\n").getBytes(UTF8));
+			}
+
+			gz.close();
+
+			summaryOut.print(cdxLine(i) + "\tpart-00000\t" + offset + "\t" + block.size() + "\t" + (i / linesPerBlock) + "\n");
+			block.writeTo(partOut);
+			offset += block.size();
+		}
+
+		partOut.close();
+		summaryOut.close();
+		tmp.renameTo(summary);
+		return summary;
+	}
+
+	/**
+	 * @return a .warc.gz of numRecords response records, one gzip member
+	 * each, mostly html of 2K to 60K with some incompressible "images"
+	 */
+	public static synchronized File getWARCGz(int numRecords) throws IOException
+	{
+		File file = new File(getFixtureDir(), "synthetic-" + numRecords + ".warc.gz");
+
+		if (file.isFile()) {
+			return file;
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20);
+		Random random = new Random(numRecords);
+
+		for (int i = 0; i < numRecords; i++) {
+			byte[] payload;
+			String mime;
+
+			if (i % 10 == 9) {
+				payload = new byte[1000 + random.nextInt(30000)];
+				random.nextBytes(payload);
+				mime = "image/jpeg";
+			} else {
+				StringBuilder html = new StringBuilder("<html><head><title>Page " + i + "</title></head><body>\n");
+				int size = 2000 + random.nextInt(58000);
+				while (html.length() < size) {
+					int link = random.nextInt(numRecords);
+					html.append("<div class=\"item\"><a href=\"http://host").append(link % 1000)
+						.append(".com/path/").append(link).append(".html\">Item ").append(link)
+						.append("</a> <span>").append(random.nextInt(100000)).append("</span></div>\n");
+				}
+				html.append("</body></html>\n");
+				payload = html.toString().getBytes(UTF8);
+				mime = "text/html";
+			}
+
+			String http = "HTTP/1.1 200 OK\r\nContent-Type: " + mime + "\r\nContent-Length: " + payload.length + "\r\n\r\n";
+			byte[] httpBytes = http.getBytes(UTF8);
+			String warc = "WARC/1.0\r\nWARC-Type: response\r\nWARC-Target-URI: http://host" + (i % 1000) + ".com/path/" + i + ".html\r\n"
+				+ "WARC-Date: 2015-01-01T00:00:00Z\r\nWARC-Record-ID: <urn:uuid:" + new UUID(numRecords, i) + ">\r\n"
+				+ "Content-Type: application/http; msgtype=response\r\nContent-Length: " + (httpBytes.length + payload.length) + "\r\n\r\n";
+
+			GZIPOutputStream gz = new GZIPOutputStream(out) {
+				@Override
+				public void close() throws IOException {
+					finish();
+				}
+			};
+			gz.write(warc.getBytes(UTF8));
+			gz.write(httpBytes);
+			gz.write(payload);
+			gz.write("\r\n\r\n".getBytes(UTF8));
+			gz.close();
+		}
+
+		out.close();
+		tmp.renameTo(file);
+		return file;
+	}
+}
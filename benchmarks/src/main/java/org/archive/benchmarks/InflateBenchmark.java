@@ -0,0 +1,141 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.gzip.InflaterBackendFactory;
+import org.archive.format.gzip.InflaterBackends;
+import org.archive.format.gzip.ParallelMemberReader;
+import org.archive.format.gzip.ParallelMemberReader.MemberProcessor;
+import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.util.zip.GZIPMembersInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Decompression of a synthetic multi-member .warc.gz, held in memory, with
+ * each InflaterBackend, through GZIPMemberSeries and GZIPMembersInputStream,
+ * for small (header parsing) and large read sizes, and from disk with
+ * ParallelMemberReader on the common pool.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InflateBenchmark {
+
+	@Param({"2000"})
+	public int numRecords;
+
+	@Param({"jdk", "java"})
+	public String backend;
+
+	@Param({"64", "8192"})
+	public int readSize;
+
+	protected File warcGzFile;
+	protected byte[] warcGz;
+	protected InflaterBackendFactory factory;
+	protected byte[] buffer;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		warcGzFile = Fixtures.getWARCGz(numRecords);
+		warcGz = Files.toByteArray(warcGzFile);
+		factory = InflaterBackends.forName(backend);
+		buffer = new byte[readSize];
+
+		// GZIPMembersInputStream uses the default factory
+		InflaterBackends.setDefaultFactory(factory);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		InflaterBackends.setDefaultFactory(null);
+	}
+
+	@Benchmark
+	public long memberSeries() throws IOException
+	{
+		GZIPMemberSeries series = new GZIPMemberSeries(new ByteArrayWrappedStream(warcGz), "bench", 0);
+		series.setInflaterFactory(factory);
+		long total = 0;
+		GZIPSeriesMember member;
+
+		while ((member = series.getNextMember()) != null) {
+			int amt;
+			while ((amt = member.read(buffer, 0, buffer.length)) != -1) {
+				total += amt;
+			}
+		}
+
+		series.close();
+		return total;
+	}
+
+	@Benchmark
+	public long membersInputStream() throws IOException
+	{
+		GZIPMembersInputStream in = new GZIPMembersInputStream(new ByteArrayInputStream(warcGz), 8192);
+		long total = 0;
+		int amt;
+
+		while ((amt = in.read(buffer, 0, buffer.length)) != -1) {
+			total += amt;
+		}
+
+		in.close();
+		return total;
+	}
+
+	@Benchmark
+	public long parallelMemberReader() throws IOException
+	{
+		ParallelMemberReader<Long> reader = new ParallelMemberReader<Long>(warcGzFile,
+				new MemberProcessor<Long>() {
+			public Long process(GZIPSeriesMember member) throws IOException {
+				byte[] b = new byte[readSize];
+				long total = 0;
+				int amt;
+
+				while ((amt = member.read(b, 0, b.length)) != -1) {
+					total += amt;
+				}
+				return total;
+			}
+		});
+		reader.setInflaterFactory(factory);
+
+		ParallelMemberReader<Long>.Members members = reader.open();
+		long total = 0;
+		Long amt;
+
+		while ((amt = members.next()) != null) {
+			total += amt;
+		}
+
+		members.close();
+		return total;
+	}
+}
@@ -0,0 +1,114 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server for a single file, with Range and HEAD support, for
+ * benchmarking the HTTP SeekableLineReaders without a network
+ */
+public class RangeFileServer {
+
+	private final static Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	protected final HttpServer server;
+	protected final File file;
+	protected final ExecutorService executor = Executors.newCachedThreadPool();
+
+	public RangeFileServer(final File file) throws IOException
+	{
+		this.file = file;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+
+		server.createContext("/" + file.getName(), new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	protected void serve(HttpExchange exchange) throws IOException
+	{
+		long size = file.length();
+
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+
+		long start = 0;
+		long end = size - 1;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		Matcher m = (range != null) ? RANGE.matcher(range) : null;
+
+		if ((m != null) && m.matches()) {
+			start = Long.parseLong(m.group(1));
+
+			if (!m.group(2).isEmpty()) {
+				end = Math.min(end, Long.parseLong(m.group(2)));
+			}
+		}
+
+		// Open ended reads, eg. for binary search, are usually abandoned
+		// part way, after which the connection can't be reused
+		if ((m == null) || m.group(2).isEmpty()) {
+			exchange.getResponseHeaders().set("Connection", "close");
+		}
+
+		long length = end - start + 1;
+		exchange.sendResponseHeaders((m != null) ? 206 : 200, length);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		OutputStream out = exchange.getResponseBody();
+
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			raf.seek(start);
+
+			while (length > 0) {
+				int read = raf.read(buffer, 0, (int)Math.min(buffer.length, length));
+
+				if (read < 0) {
+					break;
+				}
+
+				out.write(buffer, 0, read);
+				length -= read;
+			}
+		} finally {
+			raf.close();
+			out.close();
+		}
+	}
+
+	public String getUrl()
+	{
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + file.getName();
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,125 @@
+package org.archive.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettingsData;
+import org.archive.uid.UUIDGenerator;
+import org.archive.util.ArchiveUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing WARC files of response records whose content is read from a
+ * recorder-like backing file, as an InputStream or as a FileChannel, with
+ * and without compression.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WARCWriterBenchmark {
+
+	@Param({"500"})
+	public int numRecords;
+
+	@Param({"65536"})
+	public int recordSize;
+
+	@Param({"stream", "channel"})
+	public String source;
+
+	@Param({"false", "true"})
+	public boolean compress;
+
+	protected File dir;
+	protected File backing;
+	protected RandomAccessFile backingFile;
+	protected UUIDGenerator generator = new UUIDGenerator();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		dir = new File(Fixtures.getFixtureDir(), "warc-writer");
+		dir.mkdirs();
+		backing = new File(dir, "recorder-" + numRecords + "-" + recordSize);
+		if (!backing.isFile()) {
+			Random random = new Random(recordSize);
+			byte[] record = new byte[recordSize];
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(backing), 1 << 20);
+			for (int i = 0; i < numRecords; i++) {
+				// half text, half random, to compress somewhat
+				for (int j = 0; j < recordSize; j++) {
+					record[j] = (byte) ('a' + (j % 26));
+				}
+				byte[] noise = new byte[recordSize / 2];
+				random.nextBytes(noise);
+				System.arraycopy(noise, 0, record, 0, noise.length);
+				out.write(record);
+			}
+			out.close();
+		}
+		backingFile = new RandomAccessFile(backing, "r");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		backingFile.close();
+	}
+
+	@Benchmark
+	public long writeRecords() throws IOException
+	{
+		WARCWriter writer = new WARCWriter(new AtomicInteger(), new WARCWriterPoolSettingsData(
+				"bench", "${prefix}", -1, compress, Arrays.asList(dir), null, generator));
+		FileChannel channel = backingFile.getChannel();
+		channel.position(0);
+		for (int i = 0; i < numRecords; i++) {
+			WARCRecordInfo recordInfo = new WARCRecordInfo();
+			recordInfo.setType(WARCRecordType.response);
+			recordInfo.setUrl("http://host" + (i % 1000) + ".com/path/" + i + ".html");
+			recordInfo.setCreate14DigitDate(ArchiveUtils.getLog14Date());
+			recordInfo.setMimetype("application/http; msgtype=response");
+			recordInfo.setRecordId(generator.getRecordID());
+			recordInfo.setContentLength(recordSize);
+			recordInfo.setEnforceLength(true);
+			if (source.equals("channel")) {
+				writer.writeRecord(recordInfo, channel);
+			} else {
+				recordInfo.setContentStream(Channels.newInputStream(channel));
+				writer.writeRecord(recordInfo);
+			}
+		}
+		long length = writer.getPosition();
+		writer.close();
+		writer.getFile().delete();
+		return length;
+	}
+}
@@ -0,0 +1,136 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.zipnum.ZipNumIndex;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ZipNumIndex exact url lookups and host prefix scans over a synthetic
+ * single part index, for the summary search settings.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ZipNumBenchmark {
+
+	@Param({"1000000"})
+	public int numLines;
+
+	@Param({"3000"})
+	public int linesPerBlock;
+
+	@Param({"4096", "8192", "65536"})
+	public int binsearchBlockSize;
+
+	@Param({"512", "8192"})
+	public int readaheadSize;
+
+	@Param({"true", "false"})
+	public boolean useNio;
+
+	@Param({"false", "true"})
+	public boolean residentSummary;
+
+	protected ZipNumIndex index;
+	protected ZipNumParams params = new ZipNumParams();
+
+	@State(Scope.Thread)
+	public static class Keys
+	{
+		Random random = new Random(Thread.currentThread().getId());
+
+		int nextLine(int numLines)
+		{
+			return random.nextInt(numLines);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		File summary = Fixtures.getZipNum(numLines, linesPerBlock);
+
+		index = new ZipNumIndex();
+		index.setSummaryFile(summary.getAbsolutePath());
+		index.setBinsearchBlockSize(binsearchBlockSize);
+		index.setReadaheadSize(readaheadSize);
+		index.setUseNio(useNio);
+		index.setResidentSummary(residentSummary);
+		index.init();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		index.getBlockLoader().close();
+	}
+
+	protected void drain(CloseableIterator<String> iter, Blackhole bh) throws IOException
+	{
+		try {
+			while (iter.hasNext()) {
+				bh.consume(iter.next());
+			}
+		} finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Latency of all captures of a single url
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void lookupLatency(Keys keys, Blackhole bh) throws IOException
+	{
+		String key = Fixtures.urlKey(keys.nextLine(numLines));
+		drain(index.getCDXIterator(key, key, true, params), bh);
+	}
+
+	/**
+	 * Url lookups by 8 concurrent threads, override with -t
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public void lookupThroughput(Keys keys, Blackhole bh) throws IOException
+	{
+		String key = Fixtures.urlKey(keys.nextLine(numLines));
+		drain(index.getCDXIterator(key, key, true, params), bh);
+	}
+
+	/**
+	 * All captures of a host
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void prefixScan(Keys keys, Blackhole bh) throws IOException
+	{
+		String prefix = Fixtures.hostPrefix(keys.nextLine(numLines));
+		drain(index.getCDXIterator(prefix, prefix, false, params), bh);
+	}
+}
@@ -0,0 +1,27 @@
+package org.archive.extract;
+
+import org.archive.resource.html.HTMLHeadResourceFactory;
+
+/**
+ * Maps resources as ExtractingResourceFactoryMapper does, but extracts only
+ * the META tags of HTML heads, which is all {@link RealCDXExtractorOutput}
+ * uses of HTML. Not thread-safe.
+ *
+ * ResourceExtractor uses it for CDX output given -headOnly. Head-only META
+ * tags may differ from a full parse's on malformed HTML, so it is not the
+ * default.
+ */
+public class CDXResourceFactoryMapper extends ExtractingResourceFactoryMapper {
+
+	public CDXResourceFactoryMapper() {
+		this(HTMLHeadResourceFactory.DEFAULT_MAX_SCAN_BYTES);
+	}
+
+	/**
+	 * @param maxScanBytes most bytes of each HTML document scanned for its
+	 * head
+	 */
+	public CDXResourceFactoryMapper(int maxScanBytes) {
+		super(new HTMLHeadResourceFactory(maxScanBytes));
+	}
+}
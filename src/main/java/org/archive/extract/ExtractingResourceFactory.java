@@ -0,0 +1,32 @@
+package org.archive.extract;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceContainer;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+
+/**
+ * Parses a record's envelope, then extracts from it as an
+ * ExtractingResourceProducer would, for producers which parse records one
+ * at a time, such as a ParallelGZIPResourceProducer.
+ */
+public class ExtractingResourceFactory implements ResourceFactory {
+	private ResourceFactory envelopeFactory;
+	private ResourceFactoryMapper mapper;
+
+	public ExtractingResourceFactory(ResourceFactory envelopeFactory,
+			ResourceFactoryMapper mapper) {
+		this.envelopeFactory = envelopeFactory;
+		this.mapper = mapper;
+	}
+
+	public Resource getResource(InputStream is, MetaData parentMetaData,
+			ResourceContainer container) throws ResourceParseException, IOException {
+		Resource envelope = envelopeFactory.getResource(is, parentMetaData, container);
+		return ExtractingResourceProducer.extract(envelope, mapper);
+	}
+}
@@ -34,7 +34,7 @@ public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 	private HTTPRequestResourceFactory httpRequestF = 
 		new HTTPRequestResourceFactory();
 
-	private HTMLResourceFactory htmlF = new HTMLResourceFactory();
+	private ResourceFactory htmlF;
 
 	private HTTPHeadersResourceFactory warcinfoF = 
 		new HTTPHeadersResourceFactory(WARCINFO_METADATA,PAYLOAD_TYPE_WARCINFO);
@@ -50,6 +50,17 @@ public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 	private FiledescResourceFactory filedescF = 
 		new FiledescResourceFactory();
 
+	public ExtractingResourceFactoryMapper() {
+		this(new HTMLResourceFactory());
+	}
+
+	/**
+	 * @param htmlF factory for HTML payloads
+	 */
+	public ExtractingResourceFactoryMapper(ResourceFactory htmlF) {
+		this.htmlF = htmlF;
+	}
+
 	private String getChildField(MetaData m, String child, String key) {
 		try {
 			if(m.has(child)) {
@@ -27,6 +27,15 @@ public class ExtractingResourceProducer implements ResourceProducer {
 		if(current == null) {
 			return null;
 		}
+		return extract(current, mapper);
+	}
+
+	/**
+	 * Transform a Resource with the factory the mapper maps it to, and the
+	 * result likewise, until the mapper has no factory for it.
+	 */
+	public static Resource extract(Resource current, ResourceFactoryMapper mapper)
+	throws ResourceParseException, IOException {
 		while(true) {
 			ResourceFactory f = mapper.mapResourceToFactory(current);
 			if(f == null) {
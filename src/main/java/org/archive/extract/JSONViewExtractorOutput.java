@@ -3,9 +3,9 @@ package org.archive.extract;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.archive.format.json.JSONPathPlan;
 import org.archive.format.json.JSONView;
 import org.archive.resource.Resource;
 import org.archive.util.StreamCopy;
@@ -19,12 +19,10 @@ public class JSONViewExtractorOutput implements ExtractorOutput {
 	}
 	public void output(Resource resource) throws IOException {
 		StreamCopy.readToEOF(resource.getInputStream());
-		List<List<String>> data = 
-			view.apply(resource.getMetaData().getTopMetaData());
-		if(data != null) {
-			for(List<String> d : data) {
-				out.println(StringUtils.join(d,"\t"));
-			}
+		JSONPathPlan.Rows rows =
+			view.evaluate(resource.getMetaData().getTopMetaData());
+		while(rows.next()) {
+			out.println(StringUtils.join(rows.getRow(),'\t',0,rows.size()));
 		}
 	}
 }
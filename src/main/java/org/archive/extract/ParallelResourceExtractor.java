@@ -0,0 +1,181 @@
+package org.archive.extract;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.resource.arc.ARCResourceFactory;
+import org.archive.resource.gzip.ParallelGZIPResourceProducer;
+import org.archive.resource.warc.WARCResourceFactory;
+
+/**
+ * Extracts from many input files at once, writing each file's output to a
+ * file of its own, in the order of the file's records.
+ *
+ * Up to threads files are extracted at a time. A local WARC or ARC gzip
+ * file is extracted in a pipeline: a scanning thread finds its gzip
+ * members, a pool of threads shared by all files inflates and parses them,
+ * envelope, HTTP and HTML, and the file's own thread writes the parsed
+ * records out in order, with at most maxPending members of the file in
+ * between. Other inputs are read and parsed on the file's thread.
+ *
+ * Each parsing thread gets its own ResourceFactoryMapper from the Supplier,
+ * and each file its own ExtractorOutput.
+ */
+public class ParallelResourceExtractor {
+	private static final Logger LOG =
+		Logger.getLogger(ParallelResourceExtractor.class.getName());
+
+	public static final int DEFAULT_MAX_PENDING = 256;
+
+	/**
+	 * Makes the output for one input file
+	 */
+	public interface ExtractorOutputFactory {
+		public ExtractorOutput getOutput(OutputStream os, File outputFile)
+		throws IOException;
+	}
+
+	private int threads;
+	private Supplier<? extends ResourceFactoryMapper> mappers;
+	private ExtractorOutputFactory outputs;
+	private int maxPending = DEFAULT_MAX_PENDING;
+
+	public ParallelResourceExtractor(int threads,
+			Supplier<? extends ResourceFactoryMapper> mappers,
+			ExtractorOutputFactory outputs) {
+		this.threads = Math.max(threads, 1);
+		this.mappers = mappers;
+		this.outputs = outputs;
+	}
+
+	/**
+	 * Extract from each path to a file in outputDir named for it: its name
+	 * less any ".gz", plus suffix.
+	 * @return number of paths that failed
+	 */
+	public int extract(List<String> paths, File outputDir, String suffix)
+	throws IOException {
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		ExecutorService files = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, paths.size())));
+		try {
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for(final String path : paths) {
+				final File outputFile =
+					new File(outputDir, getOutputName(path, suffix));
+				futures.add(files.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						return extract(path, outputFile, pool);
+					}
+				}));
+			}
+			int failed = 0;
+			for(int i = 0; i < futures.size(); i++) {
+				try {
+					long count = futures.get(i).get();
+					LOG.info(String.format("Extracted %d records from %s",
+							count, paths.get(i)));
+				} catch(ExecutionException e) {
+					LOG.log(Level.SEVERE, "Failed extracting " + paths.get(i),
+							e.getCause());
+					failed++;
+				}
+			}
+			return failed;
+		} catch(InterruptedException e) {
+			throw new InterruptedIOException();
+		} finally {
+			files.shutdownNow();
+			pool.shutdown();
+		}
+	}
+
+	public static String getOutputName(String path, String suffix) {
+		String name = new File(path).getName();
+		if(name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		return name + suffix;
+	}
+
+	/**
+	 * Extract from path to outputFile
+	 * @return number of records
+	 */
+	protected long extract(String path, File outputFile, ForkJoinPool pool)
+	throws IOException, ResourceParseException {
+		ResourceProducer producer = getProducer(path, pool);
+		if(producer == null) {
+			throw new IOException("Cannot extract from " + path);
+		}
+		OutputStream os = new BufferedOutputStream(
+				new FileOutputStream(outputFile));
+		try {
+			ExtractorOutput out = outputs.getOutput(os, outputFile);
+			return ResourceExtractor.extract(producer, out, Integer.MAX_VALUE);
+		} finally {
+			producer.close();
+			os.close();
+		}
+	}
+
+	protected ResourceProducer getProducer(String path, ForkJoinPool pool)
+	throws IOException {
+		File file = new File(path);
+		final boolean warc = path.endsWith(".warc.gz") || path.endsWith(".wat.gz");
+		if(file.isFile() && (warc || path.endsWith(".arc.gz"))) {
+			ParallelGZIPResourceProducer producer =
+				new ParallelGZIPResourceProducer(file,
+					new Supplier<ResourceFactory>() {
+						public ResourceFactory get() {
+							return new ExtractingResourceFactory(warc ?
+									new WARCResourceFactory() :
+									new ARCResourceFactory(),
+									mappers.get());
+						}
+					}, pool);
+			producer.getReader().setStrict(ProducerUtils.STRICT_GZ);
+			producer.getReader().setMaxPending(maxPending);
+			return producer;
+		}
+		ResourceProducer producer = ProducerUtils.getProducer(path);
+		if(producer == null) {
+			return null;
+		}
+		return new ExtractingResourceProducer(producer, mappers.get());
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * @param maxPending most records of a file being parsed or waiting to
+	 * be written
+	 */
+	public void setMaxPending(int maxPending) {
+		this.maxPending = maxPending;
+	}
+}
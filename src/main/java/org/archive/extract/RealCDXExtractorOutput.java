@@ -13,9 +13,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.archive.format.gzip.GZIPFormatException;
-import org.archive.format.json.JSONUtils;
 import org.archive.format.json.SimpleJSONPathSpec;
 import org.archive.resource.MetaData;
+import org.archive.resource.MetaDataPath;
 import org.archive.resource.Resource;
 import org.archive.url.URLKeyMaker;
 import org.archive.url.WaybackURLKeyMaker;
@@ -55,6 +55,11 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	SimpleJSONPathSpec httpEntityDigest = new SimpleJSONPathSpec("Envelope.Payload-Metadata.HTTP-Response-Metadata.Entity-Digest");
 	
 	SimpleJSONPathSpec HTTPLocation = new SimpleJSONPathSpec("Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
+
+	private static final MetaDataPath HTTP_HEADERS =
+		MetaDataPath.compile("Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
+	private static final MetaDataPath HTML_METAS =
+		MetaDataPath.compile("Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas");
 	private final static Pattern refreshURLPattern = 
 		Pattern.compile("^\\d+\\s*;\\s*url\\s*=\\s*(.+?)\\s*$",
 				Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
@@ -122,7 +127,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 					} else if(recType.equals("application/http; msgtype=response")) {
 						httpCode = getHTTPStatus(m);
 						digest = getHTTPEntityDigest(m);
-						JSONObject headers = JSONUtils.extractObject(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
+						JSONObject headers = HTTP_HEADERS.extractObject(m);
 						mime = normalizeHTTPMime(scanHeadersLC(headers, "content-type", "unk"));
 						redir = scanHeadersLC(headers, "location", "-");
 						meta = scanHeadersLC(headers, X_ROBOTS_HTTP_HEADER, null);
@@ -193,7 +198,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 
 						httpCode = getHTTPStatus(m);
 						digest = getHTTPEntityDigest(m);
-						JSONObject headers = JSONUtils.extractObject(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
+						JSONObject headers = HTTP_HEADERS.extractObject(m);
 						mime = normalizeHTTPMime(scanHeadersLC(headers, "content-type", "unk"));
 						redir = scanHeadersLC(headers, "location", "-");
 						meta = scanHeadersLC(headers, X_ROBOTS_HTTP_HEADER, null);
@@ -261,7 +266,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 
 	
 	private String extractHTMLRobots(MetaData m) {
-		JSONArray metas = JSONUtils.extractArray(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas");
+		JSONArray metas = HTML_METAS.extractArray(m);
 		if(metas != null) {
 			int count = metas.length();
 			for(int i = 0; i < count; i++) {
@@ -283,7 +288,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 		return "-";
 	}
 	private String extractHTMLMetaRefresh(String origUrl, MetaData m) {
-		JSONArray metas = JSONUtils.extractArray(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas");
+		JSONArray metas = HTML_METAS.extractArray(m);
 		if(metas != null) {
 			int count = metas.length();
 			for(int i = 0; i < count; i++) {
@@ -1,5 +1,6 @@
 package org.archive.extract;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -8,6 +9,9 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,7 +49,7 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	
 	private static int USAGE(int exitCode) {
 		System.err.println("Usage:\n");
-		System.err.println("extractor [OPT] SRC");
+		System.err.println("extractor [-strict] [-headOnly] [OPT] SRC");
 		System.err.println("\tSRC is the local path, HTTP or HDFS URL to an " +
 				"arc, warc, arc.gz, or warc.gz.");
 		System.err.println("\tOPT can be one of:");		
@@ -54,6 +58,12 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		System.err.println("\t\t\t (note that column 1 is NOT standard Wayback canonicalized)\n");
 		System.err.println("\t\t-wat\tembed JSON output in a compressed WARC" +
 				"wrapper, for storage, or sharing.");
+		System.err.println("\t-headOnly with -cdx or -cdxURL only scans the HTML " +
+				"head for META tags, rather than parsing the whole page.");
+		System.err.println();
+		System.err.println("extractor [-strict] [-headOnly] -threads N FORMAT OUTDIR SRC [SRC...]");
+		System.err.println("\tExtract from each SRC with N threads, to a file in OUTDIR");
+		System.err.println("\tnamed for it. FORMAT is -cdx, -cdxURL, -wat, or a JSON filter.");
 		return exitCode;
 	}
 
@@ -75,13 +85,11 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		if(args.length < 1) {
 			return USAGE(1);
 		}
-		if(args.length > 4) {
-			return USAGE(1);
-		}
 		int max = Integer.MAX_VALUE;
 		OutputStream os = this.out == null ? System.out : this.out;
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 	    ExtractorOutput out;
+	    ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
 	    int arg = 0;
 	    if(args.length > 0) {
 	    	if(args[0].equals("-strict")) {
@@ -89,6 +97,27 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    		arg++;
 	    	}	   
 	    }
+	    boolean headOnly = false;
+	    if(args.length > arg && args[arg].equals("-headOnly")) {
+	    	headOnly = true;
+	    	arg++;
+	    }
+	    if(args.length > arg + 1 && args[arg].equals("-threads")) {
+	    	if(args.length < arg + 5) {
+	    		return USAGE(1);
+	    	}
+	    	int threads;
+	    	try {
+	    		threads = Integer.parseInt(args[arg + 1]);
+	    	} catch(NumberFormatException e) {
+	    		return USAGE(1);
+	    	}
+	    	return runThreads(threads, headOnly, args[arg + 2], args[arg + 3],
+	    			Arrays.asList(args).subList(arg + 4, args.length));
+	    }
+	    if(args.length > (headOnly ? 5 : 4)) {
+	    	return USAGE(1);
+	    }
 	    String path = args[arg];
 	    String outputFile = null;
 	    if(args.length >= arg + 2) {
@@ -101,10 +130,16 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    	if(args[arg].equals("-cdx")) {
 	    		path = args[arg+1];
 	    		out = new RealCDXExtractorOutput(makePrintWriter(os));
+	    		if(headOnly) {
+	    			mapper = new CDXResourceFactoryMapper();
+	    		}
 	    		
 	    	} else if(args[arg].equals("-cdxURL")) {
 	    		path = args[arg+1];
 	    		out = new RealCDXExtractorOutput(makePrintWriter(os), new WaybackURLKeyMaker(false));
+	    		if(headOnly) {
+	    			mapper = new CDXResourceFactoryMapper();
+	    		}
 
 	    	} else if(args[arg].equals("-wat")) {
 	    		path = args[arg+1];
@@ -120,17 +155,27 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    if(producer == null) {
 	    	return USAGE(1);
 	    }
-	    ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
 	    ExtractingResourceProducer exProducer = 
 	    	new ExtractingResourceProducer(producer, mapper);
 
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 
-		int count = 0;
+	    extract(exProducer, out, max);
+		return 0;
+	}
+
+	/**
+	 * Output up to max Resources from producer, logging and skipping those
+	 * which fail to parse unless ProducerUtils.STRICT_GZ is set.
+	 * @return number of Resources output
+	 */
+	public static long extract(ResourceProducer producer, ExtractorOutput out,
+			int max) throws IOException, ResourceParseException {
+		long count = 0;
 		int incr = 1;
 		while(count < max) {
 			try {
-				Resource r = exProducer.getNext();
+				Resource r = producer.getNext();
 				if(r == null) {
 					break;
 				}
@@ -138,18 +183,18 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 				
 				out.output(r);
 			} catch(GZIPFormatException e) {
-				LOG.severe(String.format("%s: %s",exProducer.getContext(),e.getMessage()));
+				LOG.severe(String.format("%s: %s",producer.getContext(),e.getMessage()));
 				//Log is not coming out for some damn reason....needs to be studied
-				System.err.format("%s: %s",exProducer.getContext(),e.getMessage());
+				System.err.format("%s: %s",producer.getContext(),e.getMessage());
 				
 				if(ProducerUtils.STRICT_GZ) {
 					throw e;
 				}
 				e.printStackTrace();
 			} catch(ResourceParseException e) {
-				LOG.severe(String.format("%s: %s",exProducer.getContext(),e.getMessage()));
+				LOG.severe(String.format("%s: %s",producer.getContext(),e.getMessage()));
 				//Log is not coming out for some damn reason....needs to be studied
-				System.err.format("%s: %s",exProducer.getContext(),e.getMessage());
+				System.err.format("%s: %s",producer.getContext(),e.getMessage());
 				
 				if(ProducerUtils.STRICT_GZ) {
 					throw e;
@@ -157,16 +202,74 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 				e.printStackTrace();
 			} catch(RecoverableRecordFormatException e) {
 				// this should not get here - ResourceFactory et al should wrap as ResourceParseExceptions...
-				LOG.severe(String.format("RECOVERABLE - %s: %s",exProducer.getContext(),e.getMessage()));
+				LOG.severe(String.format("RECOVERABLE - %s: %s",producer.getContext(),e.getMessage()));
 				//Log is not coming out for some damn reason....needs to be studied
-				System.err.format("%s: %s",exProducer.getContext(),e.getMessage());
+				System.err.format("%s: %s",producer.getContext(),e.getMessage());
 
 				e.printStackTrace();
 				
 			}
 		}
-		return 0;
+		return count;
 	}
+
+	/**
+	 * Extract from each src to its own file in outDir, with threads threads.
+	 * @param headOnly for CDX, only scan the HTML head
+	 */
+	private int runThreads(int threads, final boolean headOnly, String format,
+			String outDir, List<String> paths) throws IOException {
+		ParallelResourceExtractor.ExtractorOutputFactory outputs;
+		Supplier<ResourceFactoryMapper> mappers;
+		String suffix;
+		if(format.equals("-cdx") || format.equals("-cdxURL")) {
+			final boolean surt = format.equals("-cdx");
+			outputs = new ParallelResourceExtractor.ExtractorOutputFactory() {
+				public ExtractorOutput getOutput(OutputStream os, File outputFile) {
+					return surt ? new RealCDXExtractorOutput(makePrintWriter(os))
+						: new RealCDXExtractorOutput(makePrintWriter(os),
+								new WaybackURLKeyMaker(false));
+				}
+			};
+			mappers = new Supplier<ResourceFactoryMapper>() {
+				public ResourceFactoryMapper get() {
+					return headOnly ? new CDXResourceFactoryMapper()
+						: new ExtractingResourceFactoryMapper();
+				}
+			};
+			suffix = ".cdx";
+		} else {
+			if(format.equals("-wat")) {
+				outputs = new ParallelResourceExtractor.ExtractorOutputFactory() {
+					public ExtractorOutput getOutput(OutputStream os, File outputFile) {
+						return new WATExtractorOutput(os, outputFile.getName());
+					}
+				};
+				suffix = ".wat.gz";
+			} else {
+				final String filter = format;
+				outputs = new ParallelResourceExtractor.ExtractorOutputFactory() {
+					public ExtractorOutput getOutput(OutputStream os, File outputFile) {
+						return new JSONViewExtractorOutput(os, filter);
+					}
+				};
+				suffix = ".json";
+			}
+			mappers = new Supplier<ResourceFactoryMapper>() {
+				public ResourceFactoryMapper get() {
+					return new ExtractingResourceFactoryMapper();
+				}
+			};
+		}
+		File dir = new File(outDir);
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + outDir);
+		}
+		ParallelResourceExtractor extractor =
+			new ParallelResourceExtractor(threads, mappers, outputs);
+		return extractor.extract(paths, dir, suffix) == 0 ? 0 : 1;
+	}
+
 	/**
 	 * @return the out
 	 */
@@ -5,8 +5,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.net.UnknownHostException;
 import java.util.Date;
@@ -14,9 +12,10 @@ import java.util.Date;
 import org.archive.format.gzip.GZIPMemberWriter;
 import org.archive.format.gzip.GZIPMemberWriterCommittedOutputStream;
 import org.archive.format.http.HttpHeaders;
-import org.archive.format.json.JSONUtils;
+import org.archive.format.json.JSONByteWriter;
 import org.archive.format.warc.WARCRecordWriter;
 import org.archive.resource.MetaData;
+import org.archive.resource.MetaDataPath;
 import org.archive.resource.Resource;
 import org.archive.util.IAUtils;
 import org.archive.util.DateUtils;
@@ -36,10 +35,31 @@ public class WATExtractorOutput implements ExtractorOutput {
 	private GZIPMemberWriter gzW;
 	private static int DEFAULT_BUFFER_RAM = 1024 * 1024;
 	private int bufferRAM = DEFAULT_BUFFER_RAM;
-	private final static Charset UTF8 = Charset.forName("UTF-8");
 	private String outputFile;
+	private JSONByteWriter jsonW = new JSONByteWriter();
+	/** the whole metadata record, reused from record to record */
+	private ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
 	
 	private static final Logger LOG = Logger.getLogger(WATExtractorOutput.class.getName());
+
+	private static final MetaDataPath ENVELOPE_FORMAT =
+		MetaDataPath.compile("Envelope.Format");
+	private static final MetaDataPath CONTAINER_FILENAME =
+		MetaDataPath.compile("Container.Filename");
+	private static final MetaDataPath CONTAINER_OFFSET =
+		MetaDataPath.compile("Container.Offset");
+	private static final MetaDataPath ARC_TARGET_URI =
+		MetaDataPath.compile("Envelope.ARC-Header-Metadata.Target-URI");
+	private static final MetaDataPath ARC_DATE =
+		MetaDataPath.compile("Envelope.ARC-Header-Metadata.Date");
+	private static final MetaDataPath WARC_TYPE =
+		MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Type");
+	private static final MetaDataPath WARC_FILENAME =
+		MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Filename");
+	private static final MetaDataPath WARC_TARGET_URI =
+		MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Target-URI");
+	private static final MetaDataPath WARC_RECORD_ID =
+		MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Record-ID");
 	
 	public WATExtractorOutput(OutputStream out, String outputFile) {
 		gzW = new GZIPMemberWriter(out);
@@ -62,21 +82,19 @@ public class WATExtractorOutput implements ExtractorOutput {
 			cos.commit();
 			wroteFirst = true;
 		}
-		String envelopeFormat = JSONUtils.extractSingle(top, "Envelope.Format");
+		String envelopeFormat = ENVELOPE_FORMAT.extractSingle(top);
 		if(envelopeFormat == null) {
 			// hrm...
 			throw new IOException("Missing Envelope.Format");
 		}
-		cos = getOutput();
 		if(envelopeFormat.startsWith("ARC")) {
-			writeARC(cos,top);
+			writeARC(top);
 		} else if(envelopeFormat.startsWith("WARC")) {
-			writeWARC(cos,top);
+			writeWARC(top);
 		} else {
 			// hrm...
 			throw new IOException("Unknown Envelope.Format");
 		}
-		cos.commit();
 	}
 
 	private void writeWARCInfo(OutputStream recOut, MetaData md) throws IOException {
@@ -84,7 +102,7 @@ public class WATExtractorOutput implements ExtractorOutput {
 		String filename = outputFile;
 		if (filename == null || filename.length() == 0) {
 			// if no filename by command line, we construct a default filename base on container filename
-			filename = JSONUtils.extractSingle(md, "Container.Filename");
+			filename = CONTAINER_FILENAME.extractSingle(md);
 			if (filename == null) {
 				throw new IOException("No Container.Filename...");
 			}
@@ -130,53 +148,55 @@ public class WATExtractorOutput implements ExtractorOutput {
                 recW.writeWARCInfoRecord(recOut,filename,baos.toByteArray());
 	}
 
-	private String extractOrIO(MetaData md, String path) throws IOException {
-		String value = JSONUtils.extractSingle(md, path);
+	private String extractOrIO(MetaData md, MetaDataPath path) throws IOException {
+		String value = path.extractSingle(md);
 		if(value == null) {
 			throw new IOException("No "+path+" found.");
 		}
 		return value;
 	}
 
-	private void writeARC(OutputStream recOut, MetaData md) throws IOException {
-		String targetURI = extractOrIO(md, "Envelope.ARC-Header-Metadata.Target-URI");
-		String capDateString = extractOrIO(md, "Envelope.ARC-Header-Metadata.Date");
-		String filename = extractOrIO(md, "Container.Filename");
-		String offset = extractOrIO(md, "Container.Offset");
+	private void writeARC(MetaData md) throws IOException {
+		String targetURI = extractOrIO(md, ARC_TARGET_URI);
+		String capDateString = extractOrIO(md, ARC_DATE);
+		String filename = extractOrIO(md, CONTAINER_FILENAME);
+		String offset = extractOrIO(md, CONTAINER_OFFSET);
 		String recId = String.format("<urn:arc:%s:%s>",filename,offset);
-		writeWARCMDRecord(recOut,md,targetURI,capDateString,recId);
+		writeWARCMDRecord(md,targetURI,capDateString,recId);
 	}
 
-	private void writeWARC(OutputStream recOut, MetaData md) throws IOException {
-		String warcType = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Type");
+	private void writeWARC(MetaData md) throws IOException {
+		String warcType = extractOrIO(md, WARC_TYPE);
 		String targetURI;
 		if(warcType.equals("warcinfo")) {
-			targetURI = JSONUtils.extractSingle(md, "Envelope.WARC-Header-Metadata.WARC-Filename");
+			targetURI = WARC_FILENAME.extractSingle(md);
 		} else {
-			targetURI = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Target-URI");
+			targetURI = extractOrIO(md, WARC_TARGET_URI);
 		}
 		// handle date of generation in WARC format
 		DateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
 		String capDateString = dateFormat.format(new Date());
-		String recId = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Record-ID");
-		writeWARCMDRecord(recOut,md,targetURI,capDateString,recId);
+		String recId = extractOrIO(md, WARC_RECORD_ID);
+		writeWARCMDRecord(md,targetURI,capDateString,recId);
 	}
 
-	private void writeWARCMDRecord(OutputStream recOut, MetaData md, 
+	/**
+	 * Write md as a metadata record, in a gzip member of its own. The JSON
+	 * is serialized into a reused buffer, so a large record is not copied
+	 * through Strings on the way, and the record into another, so the
+	 * member is only started once the record is whole.
+	 */
+	private void writeWARCMDRecord(MetaData md, 
 			String targetURI, String capDateString, String recId)
 	throws IOException {
 
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-		OutputStreamWriter osw = new OutputStreamWriter(bos, UTF8);
+		jsonW.reset();
 		try {
-			md.write(osw);
+			jsonW.write(md);
 		} catch (JSONException e1) {
 			e1.printStackTrace();
 			throw new IOException(e1);
 		}
-		osw.flush();
-//		ByteArrayInputStream bais = new ByteArrayInputStream(md.toString().getBytes("UTF-8"));
 		Date capDate;
 		try {
 			capDate = DateUtils.getSecondsSinceEpoch(capDateString);
@@ -187,8 +207,12 @@ public class WATExtractorOutput implements ExtractorOutput {
 			capDate = new Date();
 		}
 		
-		recW.writeJSONMetadataRecord(recOut, bos.toByteArray(),
-				targetURI, capDate, recId);
+		recordBuffer.reset();
+		recW.writeJSONMetadataRecord(recordBuffer, jsonW.getBuffer(),
+				jsonW.size(), targetURI, capDate, recId);
+		OutputStream recOut = gzW.openMember();
+		recordBuffer.writeTo(recOut);
+		recOut.close();
 	}
 
 	private static String transformWARCDate(final String input) {
@@ -0,0 +1,19 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+
+/**
+ * CDXInputSource with an optional {@link CDXBloomFilter} over its keys
+ */
+public interface BloomFilteredCDXSource extends CDXInputSource {
+
+	/**
+	 * @return the filter, or null if none is loaded
+	 */
+	public CDXBloomFilter getBloomFilter();
+	
+	/**
+	 * Load the persisted filter, or build and save it if missing or stale
+	 */
+	public void initBloomFilter() throws IOException;
+}
@@ -0,0 +1,298 @@
+package org.archive.format.cdx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.zipnum.ZipNumIndex;
+import org.archive.util.iterator.CloseableIterator;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Bloom filter over the SURT hosts and url keys of a CDX source, used to
+ * skip sources which certainly contain no lines for a query.
+ *
+ * A query can be checked if all lines it may return share a prefix which
+ * includes the host, ie. the ')' after the SURT host. If the prefix
+ * also includes the space after the url key, the url key is checked.
+ */
+public class CDXBloomFilter {
+
+	private final static Logger LOGGER = Logger.getLogger(CDXBloomFilter.class.getName());
+
+	public final static double DEFAULT_FPP = 0.01;
+	public final static String DEFAULT_SUFFIX = ".bloom";
+
+	private final static int MAGIC = 0x43445842; // "CDXB"
+	private final static int VERSION = 1;
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static String HOST_PREFIX = "h:";
+	private final static String URL_PREFIX = "u:";
+
+	protected final BloomFilter<CharSequence> filter;
+
+	protected CDXBloomFilter(BloomFilter<CharSequence> filter)
+	{
+		this.filter = filter;
+	}
+
+	public static CDXBloomFilter create(long expectedKeys, double fpp)
+	{
+		return new CDXBloomFilter(BloomFilter.create(Funnels.stringFunnel(UTF8), Math.max(expectedKeys, 1), fpp));
+	}
+
+	/**
+	 * Count the distinct hosts and url keys of sorted cdx lines, for sizing
+	 * the filter. Hosts which are not adjacent may be counted more than once.
+	 */
+	public static long countKeys(Iterator<String> lines)
+	{
+		long count = 0;
+		String lastUrlKey = null;
+		String lastHost = null;
+
+		while (lines.hasNext()) {
+			String urlKey = urlKey(lines.next());
+
+			if (urlKey == null || urlKey.equals(lastUrlKey)) {
+				continue;
+			}
+
+			count++;
+			lastUrlKey = urlKey;
+
+			String host = host(urlKey);
+
+			if (host != null && !host.equals(lastHost)) {
+				count++;
+				lastHost = host;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Build a filter from sorted cdx lines, closing the iterator
+	 */
+	public static CDXBloomFilter build(CloseableIterator<String> lines, long expectedKeys, double fpp) throws IOException
+	{
+		CDXBloomFilter bloom = create(expectedKeys, fpp);
+		String lastUrlKey = null;
+
+		try {
+			while (lines.hasNext()) {
+				String urlKey = urlKey(lines.next());
+
+				if (urlKey == null || urlKey.equals(lastUrlKey)) {
+					continue;
+				}
+
+				bloom.addUrlKey(urlKey);
+				lastUrlKey = urlKey;
+			}
+		} finally {
+			lines.close();
+		}
+
+		return bloom;
+	}
+
+	public void addUrlKey(String urlKey)
+	{
+		filter.put(URL_PREFIX + urlKey);
+
+		String host = host(urlKey);
+
+		if (host != null) {
+			filter.put(HOST_PREFIX + host);
+		}
+	}
+
+	/**
+	 * @return false if no cdx line starting with the prefix can be
+	 * in the source, true if there might be or the prefix can't be checked
+	 */
+	public boolean mightContainPrefix(String prefix)
+	{
+		int space = prefix.indexOf(' ');
+
+		if (space >= 0) {
+			return filter.mightContain(URL_PREFIX + prefix.substring(0, space));
+		}
+
+		String host = host(prefix);
+
+		if (host != null) {
+			return filter.mightContain(HOST_PREFIX + host);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return false if the source certainly has no lines for a
+	 * (key, prefix, exact) query
+	 */
+	public boolean mightMatch(String key, String prefix, boolean exact)
+	{
+		if (exact) {
+			// lines up to prefix + "!" have the url key prefix
+			if (key.startsWith(prefix) && (prefix.indexOf(' ') < 0)) {
+				return mightContainPrefix(prefix + " ");
+			}
+
+			return mightContainPrefix(commonPrefix(key, ZipNumIndex.endKey(prefix)));
+		}
+
+		return mightContainPrefix(commonPrefix(key, prefix));
+	}
+
+	/**
+	 * @return false if the source certainly has no lines for a
+	 * (key, start, end) query
+	 */
+	public boolean mightMatch(String key, String start, String end)
+	{
+		if (end == null || end.isEmpty()) {
+			return true;
+		}
+
+		return mightContainPrefix(commonPrefix(commonPrefix(key, start), end));
+	}
+
+	/**
+	 * Any string between a and b shares their common prefix
+	 */
+	static String commonPrefix(String a, String b)
+	{
+		int len = Math.min(a.length(), b.length());
+		int i = 0;
+
+		while (i < len && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+
+		return a.substring(0, i);
+	}
+
+	static String urlKey(String line)
+	{
+		int space = line.indexOf(' ');
+
+		if (space <= 0) {
+			return null;
+		}
+
+		return line.substring(0, space);
+	}
+
+	static String host(String key)
+	{
+		int paren = key.indexOf(')');
+
+		if (paren < 0) {
+			return null;
+		}
+
+		return key.substring(0, paren);
+	}
+
+	public double getExpectedFpp()
+	{
+		return filter.expectedFpp();
+	}
+
+	public void writeTo(File file) throws IOException
+	{
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			filter.writeTo(out);
+		} finally {
+			out.close();
+		}
+
+		if (!tmp.renameTo(file)) {
+			file.delete();
+
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Unable to write " + file);
+			}
+		}
+	}
+
+	public static CDXBloomFilter readFrom(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a cdx bloom filter: " + file);
+			}
+
+			return new CDXBloomFilter(BloomFilter.readFrom(in, Funnels.stringFunnel(UTF8)));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Load the filter from file if it exists and is newer than the source,
+	 * otherwise build it from the source and save it
+	 *
+	 * @param source the cdx source, or null if not a local file
+	 */
+	public static CDXBloomFilter loadOrBuild(File file, File source, LineSource lines, double fpp) throws IOException
+	{
+		if (file.isFile() && (source == null || file.lastModified() >= source.lastModified())) {
+			try {
+				return readFrom(file);
+			} catch (IOException e) {
+				LOGGER.warning("Rebuilding " + file + ": " + e);
+			}
+		}
+
+		long expected;
+		CloseableIterator<String> iter = lines.open();
+
+		try {
+			expected = countKeys(iter);
+		} finally {
+			iter.close();
+		}
+
+		CDXBloomFilter bloom = build(lines.open(), expected, fpp);
+
+		try {
+			bloom.writeTo(file);
+		} catch (IOException e) {
+			LOGGER.warning("Unable to save " + file + ": " + e);
+		}
+
+		return bloom;
+	}
+
+	/**
+	 * Opens an iterator over all cdx lines of a source
+	 */
+	public interface LineSource
+	{
+		public CloseableIterator<String> open() throws IOException;
+	}
+}
@@ -6,6 +6,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.logging.Logger;
 
 import org.archive.format.gzip.zipnum.ZipNumIndex;
 import org.archive.format.gzip.zipnum.ZipNumParams;
@@ -18,10 +19,20 @@ import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.util.zip.OpenJDK7GZIPInputStream;
 
-public class CDXFile extends SortedTextFile implements CDXInputSource {
+public class CDXFile extends SortedTextFile implements BloomFilteredCDXSource {
+	
+	private final static Logger LOGGER = Logger.getLogger(CDXFile.class.getName());
+	
+	protected String uri;
+	
+	// Optional filter for skipping queries with no matches
+	protected String bloomFilterPath;
+	protected double bloomFilterFpp = CDXBloomFilter.DEFAULT_FPP;
+	protected CDXBloomFilter bloomFilter;
 
 	public CDXFile(String uri) throws IOException {
 		super(getUriFactory(uri, false));
+		this.uri = uri;
 	}
 
 	public CDXFile(SeekableLineReaderFactory factory) {
@@ -40,6 +51,72 @@ public class CDXFile extends SortedTextFile implements CDXInputSource {
 		return ZipNumIndex.wrapPrefix(getRecordIterator(key), prefix, exact);
 	}
 	
+	/**
+	 * Load or build the filter at bloomFilterPath, by default the cdx
+	 * path + .bloom for local files
+	 */
+	public void initBloomFilter() throws IOException
+	{
+		String path = bloomFilterPath;
+		File source = null;
+		
+		if (uri != null && !GeneralURIStreamFactory.isHttp(uri)) {
+			source = new File(uri);
+			
+			if (path == null) {
+				path = uri + CDXBloomFilter.DEFAULT_SUFFIX;
+			}
+		}
+		
+		if (path == null) {
+			return;
+		}
+		
+		bloomFilter = CDXBloomFilter.loadOrBuild(new File(path), source, new CDXBloomFilter.LineSource() {
+			@Override
+			public CloseableIterator<String> open() throws IOException {
+				return getRecordIterator(0L);
+			}
+		}, bloomFilterFpp);
+	}
+	
+	@Override
+	public void reloadFactory()
+	{
+		super.reloadFactory();
+		
+		// the filter no longer matches a changed file
+		if (bloomFilter != null) {
+			bloomFilter = null;
+			
+			try {
+				initBloomFilter();
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+		}
+	}
+	
+	public CDXBloomFilter getBloomFilter() {
+		return bloomFilter;
+	}
+
+	public String getBloomFilterPath() {
+		return bloomFilterPath;
+	}
+
+	public void setBloomFilterPath(String bloomFilterPath) {
+		this.bloomFilterPath = bloomFilterPath;
+	}
+
+	public double getBloomFilterFpp() {
+		return bloomFilterFpp;
+	}
+
+	public void setBloomFilterFpp(double bloomFilterFpp) {
+		this.bloomFilterFpp = bloomFilterFpp;
+	}
+	
 	public static SeekableLineReaderFactory getUriFactory(String uri, boolean decodeToTemp) throws IOException
 	{
 		if (decodeToTemp) {
@@ -0,0 +1,559 @@
+package org.archive.format.cdx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A block of cdx lines stored column by column.
+ *
+ * Each column is encoded on its own, with the encoding picked per block:
+ * a dictionary for columns with few distinct values (eg. mimetype and
+ * statuscode), zigzag deltas for numeric columns (eg. timestamp and offset),
+ * front coding for sorted columns (eg. urlkey), or plain strings otherwise.
+ *
+ * The column lengths are stored up front, and columns are only decoded
+ * when first used, so a reader only pays for the columns a query needs.
+ *
+ * Layout: int magic, int body length, then the body: byte version,
+ * varint rows, varint columns, per column (utf-8 name, byte encoding,
+ * varint length), followed by the column data.
+ */
+public class ColumnarCDXBlock {
+
+	public final static int MAGIC = 0x43445843; // "CDXC"
+	public final static int VERSION = 1;
+
+	final static byte PLAIN = 0;
+	final static byte FRONT_CODED = 1;
+	final static byte DICTIONARY = 2;
+	final static byte DELTA = 3;
+
+	// Dictionary encode if no more than 1 in DICT_RATIO values are distinct
+	final static int DICT_RATIO = 4;
+	final static int MAX_DICT_SIZE = 4096;
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	protected final FieldSplitFormat format;
+	protected final int numRows;
+
+	protected final byte[] data;
+	protected final byte[] encodings;
+	protected final int[] columnOffsets;
+	protected final int[] columnLengths;
+
+	// Decoded on first use
+	protected final String[][] columns;
+	protected final String[][] dictionaries;
+	protected final int[][] dictionaryIndexes;
+
+	protected ColumnarCDXBlock(FieldSplitFormat format, int numRows, byte[] data, byte[] encodings, int[] columnOffsets, int[] columnLengths)
+	{
+		this.format = format;
+		this.numRows = numRows;
+		this.data = data;
+		this.encodings = encodings;
+		this.columnOffsets = columnOffsets;
+		this.columnLengths = columnLengths;
+
+		int numColumns = format.getLength();
+		this.columns = new String[numColumns][];
+		this.dictionaries = new String[numColumns][];
+		this.dictionaryIndexes = new int[numColumns][];
+	}
+
+	/**
+	 * Encode cdx lines, without trailing newlines, as one block. Any spaces
+	 * past the last field are kept as part of it.
+	 */
+	public static byte[] encode(List<String> lines, FieldSplitFormat format) throws IOException
+	{
+		int numColumns = format.getLength();
+		int numRows = lines.size();
+		String[][] values = new String[numColumns][numRows];
+
+		for (int row = 0; row < numRows; row++) {
+			String line = lines.get(row);
+			String[] fields = line.split(" ", numColumns);
+
+			if (fields.length != numColumns) {
+				throw new IOException("Expected " + numColumns + " fields: " + line);
+			}
+
+			for (int col = 0; col < numColumns; col++) {
+				values[col][row] = fields[col];
+			}
+		}
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		ByteArrayOutputStream column = new ByteArrayOutputStream();
+
+		header.write(VERSION);
+		writeVarLong(header, numRows);
+		writeVarLong(header, numColumns);
+
+		for (int col = 0; col < numColumns; col++) {
+			column.reset();
+			byte encoding = encodeColumn(values[col], column);
+
+			writeString(header, format.getName(col));
+			header.write(encoding);
+			writeVarLong(header, column.size());
+			column.writeTo(body);
+		}
+
+		ByteArrayOutputStream block = new ByteArrayOutputStream(8 + header.size() + body.size());
+		writeInt(block, MAGIC);
+		writeInt(block, header.size() + body.size());
+		header.writeTo(block);
+		body.writeTo(block);
+		return block.toByteArray();
+	}
+
+	protected static byte encodeColumn(String[] values, ByteArrayOutputStream out) throws IOException
+	{
+		Map<String, Integer> dict = new HashMap<String, Integer>();
+		boolean numeric = true;
+
+		for (String value : values) {
+			if (dict.size() <= MAX_DICT_SIZE && !dict.containsKey(value)) {
+				dict.put(value, dict.size());
+			}
+
+			numeric = numeric && isCanonicalLong(value);
+		}
+
+		if ((dict.size() <= MAX_DICT_SIZE) && (dict.size() * DICT_RATIO <= Math.max(values.length, DICT_RATIO))) {
+			String[] entries = new String[dict.size()];
+
+			for (Map.Entry<String, Integer> entry : dict.entrySet()) {
+				entries[entry.getValue()] = entry.getKey();
+			}
+
+			writeVarLong(out, entries.length);
+
+			for (String entry : entries) {
+				writeString(out, entry);
+			}
+
+			for (String value : values) {
+				writeVarLong(out, dict.get(value));
+			}
+
+			return DICTIONARY;
+		}
+
+		if (numeric) {
+			long last = 0;
+
+			for (String value : values) {
+				long curr = Long.parseLong(value);
+				long delta = curr - last;
+				writeVarLong(out, (delta << 1) ^ (delta >> 63));
+				last = curr;
+			}
+
+			return DELTA;
+		}
+
+		ByteArrayOutputStream front = new ByteArrayOutputStream();
+		byte[] last = new byte[0];
+		int plainLength = 0;
+
+		for (String value : values) {
+			byte[] bytes = value.getBytes(UTF8);
+			int shared = 0;
+			int max = Math.min(last.length, bytes.length);
+
+			while (shared < max && last[shared] == bytes[shared]) {
+				shared++;
+			}
+
+			writeVarLong(front, shared);
+			writeVarLong(front, bytes.length - shared);
+			front.write(bytes, shared, bytes.length - shared);
+
+			plainLength += bytes.length + 1;
+			last = bytes;
+		}
+
+		// Only worth it for mostly sorted values
+		if (front.size() * 4 < plainLength * 3) {
+			front.writeTo(out);
+			return FRONT_CODED;
+		}
+
+		for (String value : values) {
+			writeString(out, value);
+		}
+
+		return PLAIN;
+	}
+
+	// Digits only, no leading zeros, so that the decoded string is the same
+	static boolean isCanonicalLong(String value)
+	{
+		int len = value.length();
+
+		if (len == 0 || len > 18 || (len > 1 && value.charAt(0) == '0')) {
+			return false;
+		}
+
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Read the next block from the stream, only splitting out the columns
+	 *
+	 * @return the block, or null at the end of the stream
+	 */
+	public static ColumnarCDXBlock read(InputStream in) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(in);
+		int magic;
+
+		try {
+			magic = dis.readInt();
+		} catch (EOFException eof) {
+			return null;
+		}
+
+		if (magic != MAGIC) {
+			throw new IOException("Not a columnar cdx block");
+		}
+
+		byte[] data = new byte[dis.readInt()];
+		dis.readFully(data);
+
+		int[] pos = new int[1];
+
+		if (data[pos[0]++] != VERSION) {
+			throw new IOException("Unsupported columnar cdx block version: " + data[0]);
+		}
+
+		int numRows = (int)readVarLong(data, pos);
+		int numColumns = (int)readVarLong(data, pos);
+
+		String[] names = new String[numColumns];
+		byte[] encodings = new byte[numColumns];
+		int[] lengths = new int[numColumns];
+
+		for (int col = 0; col < numColumns; col++) {
+			names[col] = readString(data, pos);
+			encodings[col] = data[pos[0]++];
+			lengths[col] = (int)readVarLong(data, pos);
+		}
+
+		int[] offsets = new int[numColumns];
+		int offset = pos[0];
+
+		for (int col = 0; col < numColumns; col++) {
+			offsets[col] = offset;
+			offset += lengths[col];
+		}
+
+		if (offset != data.length) {
+			throw new IOException("Bad columnar cdx block length");
+		}
+
+		return new ColumnarCDXBlock(new FieldSplitFormat(names), numRows, data, encodings, offsets, lengths);
+	}
+
+	public FieldSplitFormat getFormat()
+	{
+		return format;
+	}
+
+	public int getNumRows()
+	{
+		return numRows;
+	}
+
+	/**
+	 * @return the values of a column, decoding it if not yet used
+	 */
+	public String[] getColumn(int col)
+	{
+		if (columns[col] == null) {
+			columns[col] = decodeColumn(col);
+		}
+
+		return columns[col];
+	}
+
+	/**
+	 * @return the values of the named column, or null if not in this block
+	 */
+	public String[] getColumn(String name)
+	{
+		int col = format.getFieldIndex(name);
+		return (col >= 0) ? getColumn(col) : null;
+	}
+
+	protected String[] decodeColumn(int col)
+	{
+		String[] values = new String[numRows];
+		int[] pos = new int[]{columnOffsets[col]};
+
+		switch (encodings[col]) {
+		case PLAIN:
+			for (int row = 0; row < numRows; row++) {
+				values[row] = readString(data, pos);
+			}
+			break;
+
+		case FRONT_CODED:
+			byte[] curr = new byte[64];
+
+			for (int row = 0; row < numRows; row++) {
+				int shared = (int)readVarLong(data, pos);
+				int suffix = (int)readVarLong(data, pos);
+
+				if (curr.length < shared + suffix) {
+					curr = Arrays.copyOf(curr, Math.max(curr.length * 2, shared + suffix));
+				}
+
+				System.arraycopy(data, pos[0], curr, shared, suffix);
+				pos[0] += suffix;
+				values[row] = new String(curr, 0, shared + suffix, UTF8);
+			}
+			break;
+
+		case DICTIONARY:
+			String[] dict = getDictionary(col);
+			int[] indexes = dictionaryIndexes[col];
+
+			for (int row = 0; row < numRows; row++) {
+				values[row] = dict[indexes[row]];
+			}
+			break;
+
+		case DELTA:
+			long last = 0;
+
+			for (int row = 0; row < numRows; row++) {
+				long zigzag = readVarLong(data, pos);
+				last += (zigzag >>> 1) ^ -(zigzag & 1);
+				values[row] = Long.toString(last);
+			}
+			break;
+
+		default:
+			throw new IllegalStateException("Unknown column encoding: " + encodings[col]);
+		}
+
+		return values;
+	}
+
+	protected String[] getDictionary(int col)
+	{
+		if (dictionaries[col] == null) {
+			int[] pos = new int[]{columnOffsets[col]};
+			String[] dict = new String[(int)readVarLong(data, pos)];
+
+			for (int i = 0; i < dict.length; i++) {
+				dict[i] = readString(data, pos);
+			}
+
+			int[] indexes = new int[numRows];
+
+			for (int row = 0; row < numRows; row++) {
+				indexes[row] = (int)readVarLong(data, pos);
+			}
+
+			dictionaryIndexes[col] = indexes;
+			dictionaries[col] = dict;
+		}
+
+		return dictionaries[col];
+	}
+
+	/**
+	 * Clear the rows whose value for the field is not one of the values.
+	 * Dictionary columns are matched once per distinct value, without
+	 * decoding the column. Rows are cleared if the field is not in the block.
+	 */
+	public void matchRows(String field, Set<String> matchValues, boolean[] rows)
+	{
+		int col = format.getFieldIndex(field);
+
+		if (col < 0) {
+			Arrays.fill(rows, false);
+			return;
+		}
+
+		if (encodings[col] == DICTIONARY) {
+			String[] dict = getDictionary(col);
+			int[] indexes = dictionaryIndexes[col];
+			boolean[] dictMatch = new boolean[dict.length];
+
+			for (int i = 0; i < dict.length; i++) {
+				dictMatch[i] = matchValues.contains(dict[i]);
+			}
+
+			for (int row = 0; row < numRows; row++) {
+				rows[row] = rows[row] && dictMatch[indexes[row]];
+			}
+		} else {
+			String[] values = getColumn(col);
+
+			for (int row = 0; row < numRows; row++) {
+				rows[row] = rows[row] && matchValues.contains(values[row]);
+			}
+		}
+	}
+
+	/**
+	 * Append the space separated values of the columns for a row
+	 */
+	public StringBuilder appendLine(int row, int[] cols, StringBuilder sb)
+	{
+		for (int i = 0; i < cols.length; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+
+			sb.append(getColumn(cols[i])[row]);
+		}
+
+		return sb;
+	}
+
+	/**
+	 * @return the full cdx line for a row
+	 */
+	public String getLine(int row)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (int col = 0; col < format.getLength(); col++) {
+			if (col > 0) {
+				sb.append(' ');
+			}
+
+			sb.append(getColumn(col)[row]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Compare the full line for a row to a string, as String.compareTo would,
+	 * decoding the later columns only if the earlier ones are equal
+	 */
+	public int compareLine(int row, String bound)
+	{
+		return compareLine(row, bound, false);
+	}
+
+	/**
+	 * @return true if the full line for a row starts with the prefix
+	 */
+	public boolean lineStartsWith(int row, String prefix)
+	{
+		return compareLine(row, prefix, true) == 0;
+	}
+
+	protected int compareLine(int row, String bound, boolean prefixMatch)
+	{
+		int len = bound.length();
+		int p = 0;
+
+		for (int col = 0; col < format.getLength(); col++) {
+			if (col > 0) {
+				if (p == len) {
+					return prefixMatch ? 0 : 1;
+				}
+
+				char b = bound.charAt(p++);
+
+				if (b != ' ') {
+					return ' ' - b;
+				}
+			}
+
+			String value = getColumn(col)[row];
+
+			for (int i = 0; i < value.length(); i++) {
+				if (p == len) {
+					return prefixMatch ? 0 : 1;
+				}
+
+				int diff = value.charAt(i) - bound.charAt(p++);
+
+				if (diff != 0) {
+					return diff;
+				}
+			}
+		}
+
+		return (p == len) ? 0 : -1;
+	}
+
+	static void writeInt(OutputStream out, int value) throws IOException
+	{
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	static void writeVarLong(OutputStream out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0) {
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int)value);
+	}
+
+	static long readVarLong(byte[] data, int[] pos)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = data[pos[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+
+		return value;
+	}
+
+	static void writeString(OutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(UTF8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(byte[] data, int[] pos)
+	{
+		int len = (int)readVarLong(data, pos);
+		String value = new String(data, pos[0], len, UTF8);
+		pos[0] += len;
+		return value;
+	}
+}
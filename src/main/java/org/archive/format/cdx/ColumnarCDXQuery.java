@@ -0,0 +1,98 @@
+package org.archive.format.cdx;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The fields to return and the field values to match for a query on
+ * {@link ColumnarCDXBlock}s, eg. only urlkey and timestamp of lines with
+ * statuscode 200 and mimetype text/html.
+ *
+ * Only the columns needed for the filters and the output are decoded.
+ */
+public class ColumnarCDXQuery {
+
+	// null for all fields
+	protected FieldSplitFormat fields;
+	protected final Map<String, Set<String>> filters = new LinkedHashMap<String, Set<String>>();
+
+	public ColumnarCDXQuery()
+	{
+
+	}
+
+	/**
+	 * @param commaSepFields output fields, eg. "urlkey,timestamp"
+	 */
+	public ColumnarCDXQuery(String commaSepFields)
+	{
+		this.fields = new FieldSplitFormat(commaSepFields);
+	}
+
+	/**
+	 * Only return lines whose field has one of the values. Filters on
+	 * different fields must all match.
+	 */
+	public ColumnarCDXQuery addFilter(String field, String... values)
+	{
+		Set<String> set = filters.get(field);
+
+		if (set == null) {
+			set = new HashSet<String>();
+			filters.put(field, set);
+		}
+
+		set.addAll(Arrays.asList(values));
+		return this;
+	}
+
+	/**
+	 * @return the rows of the block matching all filters, or null if all rows match
+	 */
+	public boolean[] selectRows(ColumnarCDXBlock block)
+	{
+		if (filters.isEmpty()) {
+			return null;
+		}
+
+		boolean[] rows = new boolean[block.getNumRows()];
+		Arrays.fill(rows, true);
+
+		for (Map.Entry<String, Set<String>> filter : filters.entrySet()) {
+			block.matchRows(filter.getKey(), filter.getValue(), rows);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * @return the indexes of the output fields present in the block
+	 */
+	public int[] getOutputColumns(ColumnarCDXBlock block)
+	{
+		FieldSplitFormat format = block.getFormat();
+		FieldSplitFormat output = (fields != null ? format.createSubset(fields) : format);
+		int[] cols = new int[output.getLength()];
+
+		for (int i = 0; i < cols.length; i++) {
+			cols[i] = format.getFieldIndex(output.getName(i));
+		}
+
+		return cols;
+	}
+
+	public FieldSplitFormat getFields() {
+		return fields;
+	}
+
+	public void setFields(FieldSplitFormat fields) {
+		this.fields = fields;
+	}
+
+	public Map<String, Set<String>> getFilters() {
+		return filters;
+	}
+}
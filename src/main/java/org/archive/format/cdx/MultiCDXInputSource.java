@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.archive.format.gzip.zipnum.ZipNumIndex;
@@ -18,26 +19,108 @@ public class MultiCDXInputSource implements CDXInputSource {
 	
 	protected List<CDXInputSource> cdx;
 	
+	// Load or build bloom filters for the sources that support them
+	protected boolean bloomFilters = false;
+	
+	protected final AtomicLong numQueried = new AtomicLong();
+	protected final AtomicLong numSkipped = new AtomicLong();
+	
 	public List<CDXInputSource> getCdx() {
 		return cdx;
 	}
 
-	public void setCdx(List<CDXInputSource> cdx) {
+	public void setCdx(List<CDXInputSource> cdx) throws IOException {
 		this.cdx = cdx;
+		
+		if (bloomFilters) {
+			initBloomFilters();
+		}
 	}
 	
 	public void setCdxUris(List<String> cdxUris) throws IOException {
-		cdx = new ArrayList<CDXInputSource>();
+		List<CDXInputSource> sources = new ArrayList<CDXInputSource>();
 		
 		for (String uri : cdxUris) {
 			if (uri.endsWith(".cdx") || uri.endsWith(".cdx.gz")) {
-				cdx.add(new CDXFile(uri));
+				sources.add(new CDXFile(uri));
 			} else if (uri.endsWith("ALL.summary") && uri.contains("/")) {
-				cdx.add(ZipNumIndex.createIndexWithSummaryPath(uri));
+				sources.add(ZipNumIndex.createIndexWithSummaryPath(uri));
 			} else {
 				//Skipping?
 			}
 		}
+		
+		setCdx(sources);
+	}
+	
+	public boolean isBloomFilters() {
+		return bloomFilters;
+	}
+
+	/**
+	 * If set, each source with no bloom filter loads or builds one, and
+	 * queries skip the sources whose filter rules out the key
+	 */
+	public void setBloomFilters(boolean bloomFilters) throws IOException {
+		this.bloomFilters = bloomFilters;
+		
+		if (bloomFilters && (cdx != null)) {
+			initBloomFilters();
+		}
+	}
+	
+	public void initBloomFilters() throws IOException {
+		for (CDXInputSource source : cdx) {
+			if ((source instanceof BloomFilteredCDXSource) && (((BloomFilteredCDXSource)source).getBloomFilter() == null)) {
+				((BloomFilteredCDXSource)source).initBloomFilter();
+			}
+		}
+	}
+	
+	protected static CDXBloomFilter getBloomFilter(CDXInputSource source) {
+		if (source instanceof BloomFilteredCDXSource) {
+			return ((BloomFilteredCDXSource)source).getBloomFilter();
+		}
+		
+		return null;
+	}
+	
+	protected boolean skip(CDXInputSource source, String key, String prefix, boolean exact) {
+		CDXBloomFilter filter = getBloomFilter(source);
+		numQueried.incrementAndGet();
+		
+		if ((filter != null) && !filter.mightMatch(key, prefix, exact)) {
+			numSkipped.incrementAndGet();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	protected boolean skip(CDXInputSource source, String key, String start, String end) {
+		CDXBloomFilter filter = getBloomFilter(source);
+		numQueried.incrementAndGet();
+		
+		if ((filter != null) && !filter.mightMatch(key, start, end)) {
+			numSkipped.incrementAndGet();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return number of source queries, including skipped ones
+	 */
+	public long getNumQueried() {
+		return numQueried.get();
+	}
+	
+	/**
+	 * @return number of source queries skipped by bloom filter
+	 */
+	public long getNumSkipped() {
+		return numSkipped.get();
 	}
 
 
@@ -64,6 +147,10 @@ public class MultiCDXInputSource implements CDXInputSource {
 		CloseableIterator<String> iter = null;
 		
 		for (CDXInputSource cdxReader : cdx) {
+			if (skip(cdxReader, key, prefix, exact)) {
+				continue;
+			}
+			
 			try {
 				iter = cdxReader.getCDXIterator(key, prefix, exact, params);
 				scitr.addIterator(iter);
@@ -154,6 +241,10 @@ public class MultiCDXInputSource implements CDXInputSource {
 			try {
 				CDXInputSource cdxReader = cdx.get(i);
 				
+				if (skip(cdxReader, key, start, end)) {
+					continue;
+				}
+				
 				if (i == (cdx.size() - 1)) {
 					iter = cdxReader.getCDXIterator(key, start, end, params);
 				} else {
@@ -186,6 +277,10 @@ public class MultiCDXInputSource implements CDXInputSource {
 		CloseableIterator<String> iter = null;
 		
 		for (CDXInputSource cdxReader : cdx) {
+			if (skip(cdxReader, key, start, end)) {
+				continue;
+			}
+			
 			try {
 				iter = cdxReader.getCDXIterator(key, start, end, params);
 				scitr.addIterator(iter);
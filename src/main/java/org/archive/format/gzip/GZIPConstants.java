@@ -46,7 +46,9 @@ public interface GZIPConstants {
 	public static final byte[] LX_RECORD = {'L','X'};
 	public static final byte[] LX_RECORD_VALUE = {0,0,0,0};
 	
+	/** FEXTRA record holding the compressed length of the member */
 	public static final byte[] SL_RECORD = {'S','L'};
+	public static final int SL_RECORD_VALUE_LENGTH = 8;
 	public static final int BYTES_IN_SHORT = 2;
 	public static final int BYTES_IN_INT = 4;
 
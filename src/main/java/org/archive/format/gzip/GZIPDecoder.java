@@ -12,6 +12,9 @@ public class GZIPDecoder implements GZIPConstants {
 	public static final long SEARCH_EOF_AT_START = Long.MIN_VALUE;
 	private int maxNameSize = 1024;
 	private int maxCommentSize = 1024;
+	// reused between calls, decoders are not thread safe
+	private byte lookahead[] = new byte[3];
+	private CRC32 headerCRC = new CRC32();
 	public GZIPDecoder() {
 	}
 	public GZIPDecoder(int max) {
@@ -43,7 +46,6 @@ public class GZIPDecoder implements GZIPConstants {
 	public long alignOnMagic3(InputStream is) throws IOException {
 		
 		long bytesSkipped = 0;
-		byte lookahead[] = new byte[3];
 		int keep = 0;
 		while(true) {
 			if(keep == 2) {
@@ -135,14 +137,15 @@ public class GZIPDecoder implements GZIPConstants {
 		// wrap in CRC in case header has crc flag:
 		if(assume1st3) {
 
-			CRC32 crc = new CRC32();
-			crc.update(GZIPStaticHeader.DEFAULT_HEADER_DATA,0,3);
-			is = new CRCInputStream(origIn,crc);
+			headerCRC.reset();
+			headerCRC.update(GZIPStaticHeader.DEFAULT_HEADER_DATA,0,3);
+			is = new CRCInputStream(origIn,headerCRC);
 			staticHeader = new GZIPStaticHeader(is,true);
 
 		} else {
 
-			is = new CRCInputStream(origIn);
+			headerCRC.reset();
+			is = new CRCInputStream(origIn,headerCRC);
 			staticHeader = new GZIPStaticHeader(is);
 		}		
 		header = new GZIPHeader(staticHeader);
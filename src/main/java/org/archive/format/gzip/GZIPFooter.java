@@ -26,16 +26,23 @@ public class GZIPFooter implements GZIPConstants {
 		return ByteOp.bytesToInt(buffer, BYTES_IN_INT);
 	}
 	public void verify(long crc, long length) throws GZIPFormatException {
+		verify(buffer, 0, crc, length);
+	}
+	/**
+	 * Check the footer at offset in buffer, without keeping the buffer
+	 */
+	public static void verify(byte buffer[], int offset, long crc, long length)
+	throws GZIPFormatException {
 //		long gotCRC = getCRC() & 0xffffffff;
 //		long gotCRC2 = getCRC();
 //		int gotCRCi = (int) (getCRC() & 0xffffffff);
 //		
 //		long wantCRC = crc & 0xffffffff;
 		int wantCRCi = (int) (crc & 0xffffffff);
-		if(wantCRCi != getCRC()) {
+		if(wantCRCi != ByteOp.bytesToInt(buffer, offset)) {
 			throw new GZIPFormatException("GZip crc error");
 		}
-		if(length != getLength()) {
+		if(length != ByteOp.bytesToInt(buffer, offset + BYTES_IN_INT)) {
 			throw new GZIPFormatException("GZip length error");
 		}
 	}
@@ -190,6 +190,37 @@ public class GZIPHeader implements GZIPConstants {
 		return -1;
 	}
 
+	/**
+	 * Set an SL record holding the compressed length of the whole member,
+	 * header and footer included, as an 8 byte little-endian value. The
+	 * header length doesn't depend on the value.
+	 */
+	public void setMemberLength(long length) throws GZIPFormatException {
+		byte value[] = new byte[SL_RECORD_VALUE_LENGTH];
+		ByteOp.writeInt(value, 0, length & 0xffffffffL);
+		ByteOp.writeInt(value, BYTES_IN_INT, length >>> 32);
+		replaceRecord(SL_RECORD, value);
+	}
+
+	/**
+	 * @return the compressed length of the whole member from its SL record,
+	 * or -1 if it has none
+	 */
+	public long getMemberLength() {
+		GZIPFExtraRecord rec = getRecord(SL_RECORD);
+		if(rec == null || rec.getValue() == null) {
+			return -1;
+		}
+		byte value[] = rec.getValue();
+		if(value.length == BYTES_IN_INT) {
+			return ByteOp.bytesToInt(value) & 0xffffffffL;
+		} else if(value.length == SL_RECORD_VALUE_LENGTH) {
+			return (ByteOp.bytesToInt(value, 0) & 0xffffffffL)
+				| (ByteOp.bytesToInt(value, BYTES_IN_INT) << 32);
+		}
+		return -1;
+	}
+
 	public int getLength() {
 		int size = staticHeader.getLength();
 		if(records != null) {
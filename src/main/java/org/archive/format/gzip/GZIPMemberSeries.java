@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import java.util.zip.Inflater;
 
 import org.archive.streamcontext.Stream;
@@ -62,6 +63,18 @@ import org.archive.streamcontext.Stream;
  * an error is encountered, the class either either throw an exception, or
  * attempt to find the next member in the series.
  * 
+ * If trustMemberLengths is turned on, members whose header has an SL record
+ * holding their compressed length are skipped by seeking past them, without
+ * inflating, when the bytes there start another gzip member or the Stream
+ * ends there. Otherwise, or if the Stream can't seek, they are inflated to
+ * their end.
+ * 
+ * The members share one InflaterBackend, CRC and scratch buffers owned by
+ * this class and reset as each member starts, so a member can no longer be
+ * read once the next member is started. The InflaterBackend is released by
+ * close(). It comes from {@link InflaterBackends#getDefaultFactory()} unless
+ * another factory is set before the first member.
+ * 
  * @author brad
  *
  */
@@ -88,6 +101,9 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private GZIPSeriesMember currentMember = null;
 	private long currentMemberStartOffset = 0;
 	private boolean strict = false;
+	private boolean trustMemberLengths = false;
+	/** the bytes checked by startsMember() */
+	private final byte[] magic = new byte[GZIP_COMPRESSION_METHOD_IDX + 1];
 	
 	private boolean gotEOF = false;
 	private boolean gotIOError = false;
@@ -96,6 +112,22 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private int bufferPos = 0;
 	private int bufferSize = 0;
 	private long offset = 0;
+	
+	// Shared by the members, which are read one at a time
+	private InflaterBackendFactory inflaterFactory = null;
+	private InflaterBackend inflater = null;
+	private CRC32 crc = new CRC32();
+	private byte footerBuffer[] = new byte[GZIP_STATIC_FOOTER_SIZE];
+	private byte skipBuffer[] = null;
+	private byte memberByteRead[] = new byte[1];
+	
+	// Counters
+	private long numMembers = 0;
+	private long numMembersSkipped = 0;
+	private long numInflatersCreated = 0;
+	private long numBuffersAllocated = 0;
+	private long compressedBytes = 0;
+	private long inflatedBytes = 0;
 
 	public GZIPMemberSeries(Stream bis) {
 		this(bis,"unknown");
@@ -126,6 +158,13 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	}
 
 	public void close() throws IOException {
+		if(currentMember != null) {
+			currentMember.detach();
+		}
+		if(inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
 		stream.close();
 		gotEOF = true;
 	}
@@ -203,6 +242,9 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 			bufferPos = 0;
 			stream.setOffset(currentMemberStartOffset + 3);
 		}
+		if(currentMember != null) {
+			currentMember.detach();
+		}
 		currentMember = null;
 
 		while(currentMember == null) {
@@ -258,6 +300,7 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 				header = decoder.parseHeader(this, true);
 				LOG.info("Read next GZip header...");
 				currentMember = new GZIPSeriesMember(this,header);
+				numMembers++;
 				state = STATE_DEFLATING;
 				
 			} catch (GZIPFormatException e) {
@@ -348,7 +391,87 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		offset -= bytes;
 	}
 
+	/**
+	 * Move straight to memberEnd, the end of the current member, without
+	 * inflating the rest of it.
+	 * 
+	 * @return false if the Stream can't seek there, leaving it unchanged
+	 */
+	boolean skipMemberTo(long memberEnd) throws IOException {
+		if(!trustMemberLengths || (state != STATE_DEFLATING)
+				|| (memberEnd < offset)) {
+			return false;
+		}
+		long ahead = memberEnd - offset;
+		if(!startsMember(ahead)) {
+			if(LOG.isLoggable(Level.WARNING)) {
+				LOG.warning("No gzip member at end of SL length(" + memberEnd
+						+ ") in " + streamContext + ", inflating instead");
+			}
+			return false;
+		}
+		if(ahead <= bufferSize) {
+			bufferPos += ahead;
+			bufferSize -= ahead;
+		} else {
+			try {
+				stream.setOffset(stream.getOffset() + (ahead - bufferSize));
+			} catch(IOException e) {
+				LOG.fine("Unable to seek past member: " + e);
+				return false;
+			}
+			bufferPos = 0;
+			bufferSize = 0;
+		}
+		offset = memberEnd;
+		state = STATE_ALIGNED;
+		numMembersSkipped++;
+		return true;
+	}
+
+	/**
+	 * Check the bytes ahead bytes on, reading past the buffer if need be,
+	 * leaving the buffer and Stream as they were.
+	 * 
+	 * @return true if they start a gzip member, or the Stream ends there
+	 */
+	private boolean startsMember(long ahead) throws IOException {
+		int n = 0;
+		while((n < magic.length) && (ahead + n < bufferSize)) {
+			magic[n] = buffer[(int) (bufferPos + ahead + n)];
+			n++;
+		}
+		if(n < magic.length) {
+			long resume = stream.getOffset();
+			try {
+				stream.setOffset(resume + (ahead + n - bufferSize));
+				int amt;
+				while((n < magic.length)
+						&& (amt = stream.read(magic, n, magic.length - n)) > 0) {
+					n += amt;
+				}
+			} catch(IOException e) {
+				LOG.fine("Unable to seek past member: " + e);
+				return false;
+			} finally {
+				stream.setOffset(resume);
+			}
+			if(n == 0) {
+				return true;
+			}
+		}
+		return (n == magic.length)
+			&& ((magic[GZIP_MAGIC_ONE_IDX] & 0xff) == GZIP_MAGIC_ONE)
+			&& ((magic[GZIP_MAGIC_TWO_IDX] & 0xff) == GZIP_MAGIC_TWO)
+			&& ((magic[GZIP_COMPRESSION_METHOD_IDX] & 0xff)
+					== GZIP_COMPRESSION_METHOD_DEFLATE);
+	}
+
 	public int fillInflater(Inflater inflater) throws IOException {
+		return fillInflater(new JDKInflaterBackend(inflater));
+	}
+
+	public int fillInflater(InflaterBackend inflater) throws IOException {
 		// Makes sure we're expecting this call:
 		if(state != STATE_DEFLATING) {
 			throw new IOException("fillInflater called while not deflating!");
@@ -366,6 +489,104 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		return oldSize;
 	}
 	
+	public InflaterBackendFactory getInflaterFactory() {
+		if(inflaterFactory == null) {
+			inflaterFactory = InflaterBackends.getDefaultFactory();
+		}
+		return inflaterFactory;
+	}
+	public void setInflaterFactory(InflaterBackendFactory inflaterFactory) {
+		this.inflaterFactory = inflaterFactory;
+	}
+
+	/**
+	 * @return the InflaterBackend for the next member, reset
+	 */
+	InflaterBackend acquireInflater() {
+		if(inflater == null) {
+			inflater = getInflaterFactory().create(true);
+			numInflatersCreated++;
+		} else {
+			inflater.reset();
+		}
+		return inflater;
+	}
+
+	CRC32 acquireCRC() {
+		crc.reset();
+		return crc;
+	}
+
+	byte[] getFooterBuffer() {
+		return footerBuffer;
+	}
+
+	byte[] getSkipBuffer() {
+		if(skipBuffer == null) {
+			skipBuffer = new byte[BUF_SIZE];
+			numBuffersAllocated++;
+		}
+		return skipBuffer;
+	}
+
+	byte[] getSingleByteBuffer() {
+		return memberByteRead;
+	}
+
+	void noteMemberDetached(long compressed, long inflated) {
+		compressedBytes += compressed;
+		inflatedBytes += inflated;
+	}
+
+	/**
+	 * @return number of members started
+	 */
+	public long getNumMembers() {
+		return numMembers;
+	}
+	/**
+	 * @return number of members skipped using their SL record
+	 */
+	public long getNumMembersSkipped() {
+		return numMembersSkipped;
+	}
+	/**
+	 * @return number of Inflaters created, normally 1
+	 */
+	public long getNumInflatersCreated() {
+		return numInflatersCreated;
+	}
+	/**
+	 * @return number of scratch buffers allocated after construction
+	 */
+	public long getNumBuffersAllocated() {
+		return numBuffersAllocated;
+	}
+	/**
+	 * @return deflate bytes inflated from members which are done
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+	/**
+	 * @return bytes inflated from members which are done
+	 */
+	public long getInflatedBytes() {
+		return inflatedBytes;
+	}
+
+	public boolean isTrustMemberLengths() {
+		return trustMemberLengths;
+	}
+	/**
+	 * @param trustMemberLengths whether to skip members by seeking past them
+	 * using the length in their SL record, off by default. A length which
+	 * does not lead to the start of another member is not used.
+	 */
+	public void setTrustMemberLengths(boolean trustMemberLengths) {
+		this.trustMemberLengths = trustMemberLengths;
+	}
+
 	/**
 	 * @return the strict
 	 */
@@ -1,41 +1,151 @@
 package org.archive.format.gzip;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 import org.archive.util.StreamCopy;
-import org.archive.util.io.CRCInputStream;
 
 import com.google.common.io.CountingOutputStream;
 
 public class GZIPMemberWriter implements GZIPConstants {
 	private static final int MAX_RAM_BUFFER = 1024 * 1024;
-	private byte slRecordName[] = SL_RECORD;
 	public int maxBuffer = MAX_RAM_BUFFER;
 	private CountingOutputStream out;
+	private boolean writeLengthRecord = false;
+	/** reset for each member rather than made anew */
+	private Deflater deflater;
 	
 	public GZIPMemberWriter(OutputStream out) {
 		this.out = new CountingOutputStream(out);
 	}
 
 	public void write(InputStream is) throws IOException {
-		CRCInputStream crc = new CRCInputStream(is);
-		GZIPHeader gzHeader = new GZIPHeader();
-		// TODO: add fields...
-		gzHeader.writeBytes(out);
-		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-		DeflaterOutputStream deflateOut = new DeflaterOutputStream(out,deflater);
-		StreamCopy.copy(crc, deflateOut);
-		deflateOut.finish();
-		GZIPFooter gzFooter = new GZIPFooter(crc.getCRCValue(), crc.getByteCount());
-		gzFooter.writeBytes(out);
-		out.flush();
+		OutputStream member = openMember();
+		StreamCopy.copy(is, member);
+		member.close();
+	}
+
+	/**
+	 * Start a member, to be written to the returned stream and ended by
+	 * closing it, for callers with the member's data in hand, which need
+	 * not copy it into an InputStream. Members must be written one at a
+	 * time.
+	 */
+	public OutputStream openMember() throws IOException {
+		if(deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		} else {
+			deflater.reset();
+		}
+		return new MemberOutputStream();
 	}
 
 	public long getBytesWritten() {
 		return out.getCount();
 	}
+
+	public boolean isWriteLengthRecord() {
+		return writeLengthRecord;
+	}
+
+	/**
+	 * @param writeLengthRecord if true, members whose compressed data fits in
+	 * maxBuffer get an SL record holding their length, so readers can skip
+	 * them without inflating
+	 */
+	public void setWriteLengthRecord(boolean writeLengthRecord) {
+		this.writeLengthRecord = writeLengthRecord;
+	}
+
+	/**
+	 * Deflates into the member, keeping its CRC and length for the footer.
+	 */
+	private class MemberOutputStream extends OutputStream {
+		private CRC32 crc = new CRC32();
+		private long length = 0;
+		private MemberBuffer buffer;
+		private DeflaterOutputStream deflateOut;
+		private boolean closed = false;
+
+		public MemberOutputStream() throws IOException {
+			if(writeLengthRecord) {
+				buffer = new MemberBuffer();
+				deflateOut = new DeflaterOutputStream(buffer, deflater);
+			} else {
+				new GZIPHeader().writeBytes(out);
+				deflateOut = new DeflaterOutputStream(out, deflater);
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			crc.update(b, off, len);
+			length += len;
+			deflateOut.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			deflateOut.finish();
+			if(buffer != null) {
+				buffer.finish();
+			}
+			GZIPFooter gzFooter = new GZIPFooter(crc.getValue(), length);
+			gzFooter.writeBytes(out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Holds compressed data until it is done, to write the header with its
+	 * length first, or until it outgrows maxBuffer, to write it without.
+	 */
+	private class MemberBuffer extends OutputStream {
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(buffer != null && buffer.size() + len > maxBuffer) {
+				new GZIPHeader().writeBytes(out);
+				buffer.writeTo(out);
+				buffer = null;
+			}
+			if(buffer == null) {
+				out.write(b, off, len);
+			} else {
+				buffer.write(b, off, len);
+			}
+		}
+
+		public void finish() throws IOException {
+			if(buffer == null) {
+				return;
+			}
+			GZIPHeader gzHeader = new GZIPHeader();
+			gzHeader.setMemberLength(0);
+			gzHeader.setMemberLength(gzHeader.getLength() + buffer.size()
+					+ GZIP_FOOTER_BYTES);
+			gzHeader.writeBytes(out);
+			buffer.writeTo(out);
+		}
+	}
 }
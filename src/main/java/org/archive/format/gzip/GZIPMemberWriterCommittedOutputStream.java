@@ -21,6 +21,8 @@ public class GZIPMemberWriterCommittedOutputStream extends CommitedOutputStream
 	public void commit() throws IOException {
                 ByteArrayOutputStream bos = (ByteArrayOutputStream) out;
 		gzW.write(new ByteArrayInputStream(bos.toByteArray()));
+		// the next member starts empty
+		bos.reset();
 	}
 	public long getBytesWritten() {
 		return gzW.getBytesWritten();
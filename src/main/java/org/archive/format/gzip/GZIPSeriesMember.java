@@ -5,7 +5,8 @@ import java.io.InputStream;
 import java.util.logging.Logger;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+
+import org.archive.util.ByteOp;
 
 
 public class GZIPSeriesMember extends InputStream implements GZIPConstants {
@@ -20,21 +21,33 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 	private boolean gotGZError = false;
 	private boolean gotEOR = false;
 
-	private Inflater inflater = null;
+	// Owned by the series, null once the next member is started
+	private InflaterBackend inflater = null;
 	private CRC32 crc = null;
+	private long compressedBytesRead = 0;
+	private long uncompressedBytesRead = 0;
+
+	private boolean gotFooter = false;
+	private long footerCRC = 0;
+	private long footerLength = 0;
 
 	public GZIPSeriesMember(GZIPMemberSeries series, GZIPHeader header) {
 		this.series = series;
 		this.header = header;
 		this.footer = null;
-		this.inflater = new Inflater(true);
-		this.crc = new CRC32();
+		this.inflater = series.acquireInflater();
+		this.crc = series.acquireCRC();
 		gotIOError = false;
 		gotGZError = false;
 		gotEOR = false;
 	}
 
-	public GZIPFooter getFooter()        { return footer;                    }
+	public GZIPFooter getFooter() {
+		if(footer == null && gotFooter) {
+			footer = new GZIPFooter(footerCRC, footerLength);
+		}
+		return footer;
+	}
 	public GZIPHeader getHeader()        { return header;                    }
 	public long getRecordStartOffset()   { return series.getCurrentMemberStartOffset();               }
 	public String getRecordFileContext() { return series.getStreamContext(); }
@@ -44,20 +57,59 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 	public boolean gotGZipError()      { return gotGZError;   }
 
 	public long getUncompressedBytesRead() {
+		if(inflater == null) {
+			return uncompressedBytesRead;
+		}
 		return inflater.getBytesWritten();
 	}
 	public long getCompressedBytesRead() {
-		long amtRead = header.getLength() + inflater.getBytesRead();
+		long amtRead = header.getLength();
+		if(inflater == null) {
+			amtRead += compressedBytesRead;
+		} else {
+			amtRead += inflater.getBytesRead();
+		}
 		if(gotEOR) {
 			amtRead += GZIP_STATIC_FOOTER_SIZE;
 		}
 		return amtRead;
 	}
 
+	/**
+	 * Skip to the end of the member, seeking straight there if the header
+	 * has an SL record holding the member length. The footer is then not
+	 * checked.
+	 */
 	public void skipMember() throws IOException {
+		if(!gotEOR && !gotIOError && !gotGZError && (inflater != null)) {
+			long length = header.getMemberLength();
+			if((length > 0) && series.skipMemberTo(
+					series.getCurrentMemberStartOffset() + length)) {
+				detach();
+				compressedBytesRead = length - header.getLength()
+					- GZIP_STATIC_FOOTER_SIZE;
+				gotEOR = true;
+				return;
+			}
+		}
 		skip(Long.MAX_VALUE);
 	}
 
+	/**
+	 * Called by the series before the shared InflaterBackend is reused for the
+	 * next member, keeps the byte counts
+	 */
+	void detach() {
+		if(inflater == null) {
+			return;
+		}
+		compressedBytesRead = inflater.getBytesRead();
+		uncompressedBytesRead = inflater.getBytesWritten();
+		series.noteMemberDetached(compressedBytesRead, uncompressedBytesRead);
+		inflater = null;
+		crc = null;
+	}
+
 	/*
 	 * 
 	 *    ALL InputStream overrides below here:
@@ -77,6 +129,9 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 		if (gotEOR) {
 			return -1;
 		}
+		if (inflater == null) {
+			throw new IOException("read() after the next member was started");
+		}
 
 		while ((totalRead < len) && !gotEOR) {
 			if (inflater.needsInput()) {
@@ -115,7 +170,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 
 				series.returnBytes(inflater.getRemaining());
 				// read the footer:
-				byte[] footerBuffer = new byte[GZIP_STATIC_FOOTER_SIZE];
+				byte[] footerBuffer = series.getFooterBuffer();
 				int footerBytes = series.read(footerBuffer, 0, 
 						footerBuffer.length);
 				if(footerBytes != GZIP_STATIC_FOOTER_SIZE) {
@@ -126,9 +181,11 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 				gotEOR = true;
 				series.noteEndOfRecord();
 				try {
-					GZIPFooter tmpFooter = new GZIPFooter(footerBuffer);
-					tmpFooter.verify(crc.getValue(), inflater.getTotalOut());
-					footer = tmpFooter;
+					GZIPFooter.verify(footerBuffer, 0, crc.getValue(),
+							inflater.getTotalOut());
+					footerCRC = ByteOp.bytesToInt(footerBuffer, 0);
+					footerLength = ByteOp.bytesToInt(footerBuffer, BYTES_IN_INT);
+					gotFooter = true;
 				} catch (GZIPFormatException e) {
 					gotGZError = true;
 					series.noteGZError();
@@ -145,7 +202,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 
 	@Override
 	public int available() throws IOException {
-		if(gotEOR) {
+		if(gotEOR || inflater == null) {
 			return 0;
 		}
 		return inflater.needsInput() ? 0 : 1;
@@ -171,7 +228,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 
 	@Override
 	public int read() throws IOException {
-		byte b[] = new byte[1];
+		byte b[] = series.getSingleByteBuffer();
 		int amt = read(b, 0, 1);
 		if (amt == -1) {
 			return -1;
@@ -187,9 +244,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 	@Override
 	public long skip(long amt) throws IOException {
 		long skipped = 0;
-		// TODO: put somewhere more sensible
-		int SKIP_LENGTH = 1024 * 4;
-		byte b[] = new byte[SKIP_LENGTH];
+		byte b[] = series.getSkipBuffer();
 		while(amt > 0) {
 			int r = read(b,0,b.length);
 			if(r == -1) {
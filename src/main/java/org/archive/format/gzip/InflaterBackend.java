@@ -0,0 +1,57 @@
+package org.archive.format.gzip;
+
+import java.util.zip.DataFormatException;
+
+/**
+ * The subset of {@link java.util.zip.Inflater} used by the gzip readers, so
+ * that the implementation can be swapped. Implementations are created by an
+ * {@link InflaterBackendFactory}, normally the default one from
+ * {@link InflaterBackends}.
+ *
+ * As for Inflater, the input array passed to setInput() is not copied, and
+ * must not be modified until needsInput() returns true.
+ */
+public interface InflaterBackend {
+
+	public void setInput(byte[] b, int off, int len);
+
+	/**
+	 * @return the number of bytes inflated into b, 0 if more input is
+	 * needed or if finished
+	 */
+	public int inflate(byte[] b, int off, int len) throws DataFormatException;
+
+	public boolean needsInput();
+
+	public boolean needsDictionary();
+
+	/**
+	 * @return true once the end of the compressed stream has been reached
+	 * and all its output returned
+	 */
+	public boolean finished();
+
+	/**
+	 * @return the number of input bytes not consumed, which follow the end
+	 * of the compressed stream once finished
+	 */
+	public int getRemaining();
+
+	public long getBytesRead();
+
+	public long getBytesWritten();
+
+	public int getTotalIn();
+
+	public int getTotalOut();
+
+	/**
+	 * Prepare for a new compressed stream, keeping any buffers
+	 */
+	public void reset();
+
+	/**
+	 * Release any resources, the backend can't be used after this
+	 */
+	public void end();
+}
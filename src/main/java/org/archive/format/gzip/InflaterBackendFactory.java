@@ -0,0 +1,10 @@
+package org.archive.format.gzip;
+
+public interface InflaterBackendFactory {
+
+	/**
+	 * @param nowrap true for raw deflate data, as in gzip members, false for
+	 * the zlib format
+	 */
+	public InflaterBackend create(boolean nowrap);
+}
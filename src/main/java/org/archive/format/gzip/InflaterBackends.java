@@ -0,0 +1,74 @@
+package org.archive.format.gzip;
+
+import java.util.logging.Logger;
+
+/**
+ * Selects the {@link InflaterBackendFactory} used by the gzip readers when
+ * none is given explicitly.
+ *
+ * The default is read once from the system property
+ * {@value #PROPERTY_NAME}, which may be "jdk" (the default), "java" for
+ * {@link JavaInflaterBackend}, or the name of a class implementing
+ * InflaterBackendFactory with a public no-arg constructor. It can also be
+ * set with {@link #setDefaultFactory(InflaterBackendFactory)}.
+ */
+public class InflaterBackends {
+	private static final Logger LOG =
+		Logger.getLogger(InflaterBackends.class.getName());
+
+	public final static String PROPERTY_NAME = "org.archive.format.gzip.inflater";
+
+	public final static String JDK = "jdk";
+	public final static String JAVA = "java";
+
+	private static volatile InflaterBackendFactory defaultFactory = null;
+
+	public static InflaterBackendFactory getDefaultFactory() {
+		InflaterBackendFactory factory = defaultFactory;
+		if(factory == null) {
+			String name = System.getProperty(PROPERTY_NAME, JDK);
+			try {
+				factory = forName(name);
+			} catch(IllegalArgumentException e) {
+				LOG.warning(e.getMessage() + ", using " + JDK);
+				factory = JDKInflaterBackend.FACTORY;
+			}
+			defaultFactory = factory;
+		}
+		return factory;
+	}
+
+	/**
+	 * @param factory the factory to use from now on, or null to go back to
+	 * the system property
+	 */
+	public static void setDefaultFactory(InflaterBackendFactory factory) {
+		defaultFactory = factory;
+	}
+
+	/**
+	 * @param name "jdk", "java", or an InflaterBackendFactory class name
+	 * @throws IllegalArgumentException if the factory can't be created
+	 */
+	public static InflaterBackendFactory forName(String name) {
+		if(name.equals(JDK)) {
+			return JDKInflaterBackend.FACTORY;
+		} else if(name.equals(JAVA)) {
+			return JavaInflaterBackend.FACTORY;
+		}
+		try {
+			Class<?> c = Class.forName(name);
+			return (InflaterBackendFactory) c.newInstance();
+		} catch(Exception e) {
+			throw new IllegalArgumentException("Bad inflater backend("
+					+ name + "): " + e);
+		}
+	}
+
+	/**
+	 * @return a new InflaterBackend from the default factory
+	 */
+	public static InflaterBackend create(boolean nowrap) {
+		return getDefaultFactory().create(nowrap);
+	}
+}
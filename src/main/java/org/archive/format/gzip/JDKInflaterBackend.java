@@ -0,0 +1,68 @@
+package org.archive.format.gzip;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * InflaterBackend over a {@link java.util.zip.Inflater}, the default
+ */
+public class JDKInflaterBackend implements InflaterBackend {
+
+	public final static InflaterBackendFactory FACTORY =
+		new InflaterBackendFactory() {
+			public InflaterBackend create(boolean nowrap) {
+				return new JDKInflaterBackend(new Inflater(nowrap));
+			}
+			@Override
+			public String toString() {
+				return InflaterBackends.JDK;
+			}
+		};
+
+	private final Inflater inflater;
+
+	public JDKInflaterBackend(Inflater inflater) {
+		this.inflater = inflater;
+	}
+
+	public Inflater getInflater() {
+		return inflater;
+	}
+
+	public void setInput(byte[] b, int off, int len) {
+		inflater.setInput(b, off, len);
+	}
+	public int inflate(byte[] b, int off, int len) throws DataFormatException {
+		return inflater.inflate(b, off, len);
+	}
+	public boolean needsInput() {
+		return inflater.needsInput();
+	}
+	public boolean needsDictionary() {
+		return inflater.needsDictionary();
+	}
+	public boolean finished() {
+		return inflater.finished();
+	}
+	public int getRemaining() {
+		return inflater.getRemaining();
+	}
+	public long getBytesRead() {
+		return inflater.getBytesRead();
+	}
+	public long getBytesWritten() {
+		return inflater.getBytesWritten();
+	}
+	public int getTotalIn() {
+		return inflater.getTotalIn();
+	}
+	public int getTotalOut() {
+		return inflater.getTotalOut();
+	}
+	public void reset() {
+		inflater.reset();
+	}
+	public void end() {
+		inflater.end();
+	}
+}
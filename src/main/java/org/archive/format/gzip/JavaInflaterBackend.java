@@ -0,0 +1,629 @@
+package org.archive.format.gzip;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Pure Java raw deflate (RFC 1951) decoder.
+ *
+ * Unlike Inflater, which makes a native call for each inflate(), this
+ * decodes ahead into its own window of up to 128K, so that the many small
+ * reads made while parsing WARC and ARC headers are served by copying from
+ * the window. Codes are decoded with a lookup table on the first bits, with
+ * a bit by bit fallback for the rare longer codes.
+ *
+ * Only raw deflate data (nowrap) is supported: the factory returns a
+ * {@link JDKInflaterBackend} for the zlib format.
+ */
+public class JavaInflaterBackend implements InflaterBackend {
+
+	public final static InflaterBackendFactory FACTORY =
+		new InflaterBackendFactory() {
+			public InflaterBackend create(boolean nowrap) {
+				if(!nowrap) {
+					return new JDKInflaterBackend(new Inflater(false));
+				}
+				return new JavaInflaterBackend();
+			}
+			@Override
+			public String toString() {
+				return InflaterBackends.JAVA;
+			}
+		};
+
+	private final static int HISTORY_SIZE = 32 * 1024;
+	private final static int DEFAULT_AHEAD_SIZE = 128 * 1024;
+	private final static int MAX_MATCH = 258;
+
+	private final static int MODE_HEADER = 0;
+	private final static int MODE_STORED_LENGTH = 1;
+	private final static int MODE_STORED_COPY = 2;
+	private final static int MODE_TABLE = 3;
+	private final static int MODE_CODE_LENGTHS = 4;
+	private final static int MODE_LENGTHS = 5;
+	private final static int MODE_CODES = 6;
+	private final static int MODE_LENGTH_EXTRA = 7;
+	private final static int MODE_DIST = 8;
+	private final static int MODE_DIST_EXTRA = 9;
+	private final static int MODE_DONE = 10;
+	private final static int MODE_ERROR = 11;
+
+	private final static int[] LENGTH_BASE = {
+		3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+		35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private final static int[] LENGTH_EXTRA = {
+		0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+		3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private final static int[] DIST_BASE = {
+		1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+		257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+		8193, 12289, 16385, 24577 };
+	private final static int[] DIST_EXTRA = {
+		0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+		7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+	private final static int[] CODE_LENGTH_ORDER = {
+		16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+	private final static Huffman FIXED_LITERALS;
+	private final static Huffman FIXED_DISTANCES;
+	static {
+		int[] lengths = new int[288];
+		Arrays.fill(lengths, 0, 144, 8);
+		Arrays.fill(lengths, 144, 256, 9);
+		Arrays.fill(lengths, 256, 280, 7);
+		Arrays.fill(lengths, 280, 288, 8);
+		FIXED_LITERALS = new Huffman(288, 9);
+		FIXED_DISTANCES = new Huffman(32, 5);
+		try {
+			FIXED_LITERALS.build(lengths, 0, 288);
+			Arrays.fill(lengths, 0, 32, 5);
+			FIXED_DISTANCES.build(lengths, 0, 32);
+		} catch(DataFormatException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Canonical Huffman code: a table on the first rootBits bits, entries
+	 * (symbol << 4) | length, 0 for codes longer than rootBits, which are
+	 * decoded from count and symbol as in zlib's puff.
+	 */
+	private static class Huffman {
+		final int[] table;
+		final int mask;
+		final int rootBits;
+		final int[] count = new int[16];
+		final int[] symbol;
+		private final int[] offsets = new int[16];
+
+		Huffman(int maxSymbols, int rootBits) {
+			this.rootBits = rootBits;
+			this.table = new int[1 << rootBits];
+			this.mask = table.length - 1;
+			this.symbol = new int[maxSymbols];
+		}
+
+		void build(int[] lengths, int off, int n) throws DataFormatException {
+			Arrays.fill(count, 0);
+			for(int i = 0; i < n; i++) {
+				count[lengths[off + i]]++;
+			}
+			count[0] = 0;
+			int left = 1;
+			for(int len = 1; len < 16; len++) {
+				left <<= 1;
+				left -= count[len];
+				if(left < 0) {
+					throw new DataFormatException("over-subscribed code");
+				}
+			}
+			offsets[1] = 0;
+			for(int len = 1; len < 15; len++) {
+				offsets[len + 1] = offsets[len] + count[len];
+			}
+			for(int i = 0; i < n; i++) {
+				int len = lengths[off + i];
+				if(len != 0) {
+					symbol[offsets[len]++] = i;
+				}
+			}
+
+			Arrays.fill(table, 0);
+			int code = 0;
+			int index = 0;
+			for(int len = 1; len <= rootBits; len++) {
+				for(int i = 0; i < count[len]; i++) {
+					int entry = (symbol[index++] << 4) | len;
+					int reversed = Integer.reverse(code++) >>> (32 - len);
+					for(int j = reversed; j < table.length; j += (1 << len)) {
+						table[j] = entry;
+					}
+				}
+				code <<= 1;
+			}
+		}
+	}
+
+	private byte[] input = null;
+	private int inputStart = 0;
+	private int inputPos = 0;
+	private int inputEnd = 0;
+	private long inputBase = 0;
+
+	private long bitBuffer = 0;
+	private int bitCount = 0;
+
+	// decoded bytes are handed out from readPos up to writePos
+	private byte[] window;
+	private int writePos = 0;
+	private int readPos = 0;
+	private long bytesWritten = 0;
+
+	private int mode = MODE_HEADER;
+	private boolean lastBlock = false;
+	private boolean stalled = true;
+	private String error = null;
+
+	private Huffman literals = null;
+	private Huffman distances = null;
+	private final Huffman dynamicLiterals = new Huffman(288, 10);
+	private final Huffman dynamicDistances = new Huffman(32, 8);
+	private final Huffman codeLengthCode = new Huffman(19, 7);
+	private final int[] lengths = new int[288 + 32];
+	private final int[] codeLengths = new int[19];
+	private int numLiterals;
+	private int numDistances;
+	private int numCodeLengths;
+	private int lengthIndex;
+	private int lengthSymbol = -1;
+
+	private int copyLength;
+	private int copyDistance;
+	private int extraBits;
+
+	public JavaInflaterBackend() {
+		this(DEFAULT_AHEAD_SIZE);
+	}
+
+	/**
+	 * @param aheadSize the most output decoded ahead of the reads
+	 */
+	public JavaInflaterBackend(int aheadSize) {
+		window = new byte[HISTORY_SIZE + Math.max(aheadSize, MAX_MATCH * 2)];
+	}
+
+	private void ensureOpen() {
+		if(window == null) {
+			throw new NullPointerException("Inflater has been closed");
+		}
+	}
+
+	public void setInput(byte[] b, int off, int len) {
+		if(off < 0 || len < 0 || off > b.length - len) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+		inputBase += inputPos - inputStart;
+		input = b;
+		inputStart = inputPos = off;
+		inputEnd = off + len;
+	}
+
+	public int inflate(byte[] b, int off, int len) throws DataFormatException {
+		ensureOpen();
+		if(off < 0 || len < 0 || off > b.length - len) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+		if(readPos == writePos && len > 0) {
+			if(mode == MODE_ERROR) {
+				throw new DataFormatException(error);
+			}
+			if(mode != MODE_DONE) {
+				if(writePos > window.length - MAX_MATCH) {
+					slide();
+				}
+				try {
+					decode();
+				} catch(DataFormatException e) {
+					mode = MODE_ERROR;
+					error = e.getMessage();
+					throw e;
+				}
+			}
+		}
+		int amt = Math.min(len, writePos - readPos);
+		System.arraycopy(window, readPos, b, off, amt);
+		readPos += amt;
+		bytesWritten += amt;
+		return amt;
+	}
+
+	public boolean needsInput() {
+		return stalled && (readPos == writePos) && (inputPos >= inputEnd)
+			&& (mode != MODE_DONE);
+	}
+
+	public boolean needsDictionary() {
+		return false;
+	}
+
+	public boolean finished() {
+		return (mode == MODE_DONE) && (readPos == writePos);
+	}
+
+	public int getRemaining() {
+		return (inputEnd - inputPos) + (bitCount >> 3);
+	}
+
+	public long getBytesRead() {
+		return inputBase + (inputPos - inputStart) - (bitCount >> 3);
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public int getTotalIn() {
+		return (int) getBytesRead();
+	}
+
+	public int getTotalOut() {
+		return (int) bytesWritten;
+	}
+
+	public void reset() {
+		ensureOpen();
+		input = null;
+		inputStart = inputPos = inputEnd = 0;
+		inputBase = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+		writePos = readPos = 0;
+		bytesWritten = 0;
+		mode = MODE_HEADER;
+		lastBlock = false;
+		stalled = true;
+		error = null;
+		lengthSymbol = -1;
+	}
+
+	public void end() {
+		window = null;
+		input = null;
+	}
+
+	/**
+	 * Keep the last 32K of output as history for matches, once it has all
+	 * been read
+	 */
+	private void slide() {
+		int keep = Math.min(writePos, HISTORY_SIZE);
+		System.arraycopy(window, writePos - keep, window, 0, keep);
+		writePos = readPos = keep;
+	}
+
+	private void refill() {
+		while(bitCount <= 56 && inputPos < inputEnd) {
+			bitBuffer |= (input[inputPos++] & 0xffL) << bitCount;
+			bitCount += 8;
+		}
+	}
+
+	private boolean need(int bits) {
+		if(bitCount < bits) {
+			refill();
+		}
+		return bitCount >= bits;
+	}
+
+	private int bits(int n) {
+		return (int) bitBuffer & ((1 << n) - 1);
+	}
+
+	private void drop(int n) {
+		bitBuffer >>>= n;
+		bitCount -= n;
+	}
+
+	/**
+	 * @return the next symbol, or -1 if more input is needed
+	 */
+	private int decodeSymbol(Huffman h) throws DataFormatException {
+		if(bitCount < 15) {
+			refill();
+		}
+		int entry = h.table[(int) bitBuffer & h.mask];
+		int len = entry & 15;
+		if(len != 0) {
+			if(len > bitCount) {
+				return -1;
+			}
+			bitBuffer >>>= len;
+			bitCount -= len;
+			return entry >>> 4;
+		}
+		int code = 0;
+		int first = 0;
+		int index = 0;
+		for(len = 1; len < 16; len++) {
+			if(len > bitCount) {
+				return -1;
+			}
+			code |= (int) (bitBuffer >>> (len - 1)) & 1;
+			int count = h.count[len];
+			if(code - count < first) {
+				drop(len);
+				return h.symbol[index + (code - first)];
+			}
+			index += count;
+			first += count;
+			first <<= 1;
+			code <<= 1;
+		}
+		throw new DataFormatException("invalid code");
+	}
+
+	private void endBlock() {
+		if(lastBlock) {
+			drop(bitCount & 7);
+			mode = MODE_DONE;
+		} else {
+			mode = MODE_HEADER;
+		}
+	}
+
+	/**
+	 * Decode into the window until it is full, the input runs out, or the
+	 * end of the stream. Resumes where the last call stopped.
+	 */
+	@SuppressWarnings("fallthrough")
+	private void decode() throws DataFormatException {
+		final byte[] window = this.window;
+		final int limit = window.length - MAX_MATCH;
+		int sym;
+		stalled = false;
+
+		while(true) {
+			switch(mode) {
+			case MODE_HEADER:
+				if(!need(3)) {
+					stalled = true;
+					return;
+				}
+				lastBlock = (bitBuffer & 1) != 0;
+				int type = bits(3) >>> 1;
+				drop(3);
+				if(type == 0) {
+					drop(bitCount & 7);
+					mode = MODE_STORED_LENGTH;
+				} else if(type == 1) {
+					literals = FIXED_LITERALS;
+					distances = FIXED_DISTANCES;
+					mode = MODE_CODES;
+				} else if(type == 2) {
+					mode = MODE_TABLE;
+				} else {
+					throw new DataFormatException("invalid block type");
+				}
+				break;
+
+			case MODE_STORED_LENGTH:
+				if(!need(32)) {
+					stalled = true;
+					return;
+				}
+				int length = bits(16);
+				if(length != (~(bitBuffer >>> 16) & 0xffff)) {
+					throw new DataFormatException("invalid stored block lengths");
+				}
+				drop(32);
+				copyLength = length;
+				mode = MODE_STORED_COPY;
+				// fall through
+
+			case MODE_STORED_COPY:
+				while(copyLength > 0 && bitCount > 0 && writePos < window.length) {
+					window[writePos++] = (byte) bitBuffer;
+					drop(8);
+					copyLength--;
+				}
+				if(copyLength > 0) {
+					if(writePos >= window.length) {
+						return;
+					}
+					int amt = Math.min(copyLength, Math.min(
+							inputEnd - inputPos, window.length - writePos));
+					if(amt == 0) {
+						stalled = true;
+						return;
+					}
+					System.arraycopy(input, inputPos, window, writePos, amt);
+					inputPos += amt;
+					writePos += amt;
+					copyLength -= amt;
+					break;
+				}
+				endBlock();
+				break;
+
+			case MODE_TABLE:
+				if(!need(14)) {
+					stalled = true;
+					return;
+				}
+				numLiterals = 257 + bits(5);
+				numDistances = 1 + (bits(10) >>> 5);
+				numCodeLengths = 4 + (bits(14) >>> 10);
+				drop(14);
+				if(numLiterals > 286 || numDistances > 30) {
+					throw new DataFormatException(
+							"too many length or distance symbols");
+				}
+				Arrays.fill(codeLengths, 0);
+				lengthIndex = 0;
+				mode = MODE_CODE_LENGTHS;
+				// fall through
+
+			case MODE_CODE_LENGTHS:
+				while(lengthIndex < numCodeLengths) {
+					if(!need(3)) {
+						stalled = true;
+						return;
+					}
+					codeLengths[CODE_LENGTH_ORDER[lengthIndex++]] = bits(3);
+					drop(3);
+				}
+				codeLengthCode.build(codeLengths, 0, 19);
+				lengthIndex = 0;
+				lengthSymbol = -1;
+				mode = MODE_LENGTHS;
+				// fall through
+
+			case MODE_LENGTHS:
+				int total = numLiterals + numDistances;
+				while(lengthIndex < total) {
+					if(lengthSymbol < 0) {
+						sym = decodeSymbol(codeLengthCode);
+						if(sym < 0) {
+							stalled = true;
+							return;
+						}
+						if(sym < 16) {
+							lengths[lengthIndex++] = sym;
+							continue;
+						}
+						lengthSymbol = sym;
+					}
+					int extra = (lengthSymbol == 16) ? 2 :
+						(lengthSymbol == 17) ? 3 : 7;
+					if(!need(extra)) {
+						stalled = true;
+						return;
+					}
+					int value = 0;
+					int repeat;
+					if(lengthSymbol == 16) {
+						if(lengthIndex == 0) {
+							throw new DataFormatException(
+									"invalid bit length repeat");
+						}
+						value = lengths[lengthIndex - 1];
+						repeat = 3 + bits(2);
+					} else if(lengthSymbol == 17) {
+						repeat = 3 + bits(3);
+					} else {
+						repeat = 11 + bits(7);
+					}
+					drop(extra);
+					if(lengthIndex + repeat > total) {
+						throw new DataFormatException("invalid bit length repeat");
+					}
+					Arrays.fill(lengths, lengthIndex, lengthIndex + repeat, value);
+					lengthIndex += repeat;
+					lengthSymbol = -1;
+				}
+				if(lengths[256] == 0) {
+					throw new DataFormatException(
+							"invalid code -- missing end-of-block");
+				}
+				dynamicLiterals.build(lengths, 0, numLiterals);
+				dynamicDistances.build(lengths, numLiterals, numDistances);
+				literals = dynamicLiterals;
+				distances = dynamicDistances;
+				mode = MODE_CODES;
+				// fall through
+
+			case MODE_CODES:
+				while(true) {
+					if(writePos > limit) {
+						return;
+					}
+					sym = decodeSymbol(literals);
+					if(sym < 256) {
+						if(sym < 0) {
+							stalled = true;
+							return;
+						}
+						window[writePos++] = (byte) sym;
+						continue;
+					}
+					if(sym == 256) {
+						break;
+					}
+					sym -= 257;
+					if(sym >= 29) {
+						throw new DataFormatException(
+								"invalid literal/length code");
+					}
+					copyLength = LENGTH_BASE[sym];
+					extraBits = LENGTH_EXTRA[sym];
+					mode = MODE_LENGTH_EXTRA;
+					break;
+				}
+				if(mode == MODE_CODES) {
+					endBlock();
+					break;
+				}
+				// fall through
+
+			case MODE_LENGTH_EXTRA:
+				if(extraBits > 0) {
+					if(!need(extraBits)) {
+						stalled = true;
+						return;
+					}
+					copyLength += bits(extraBits);
+					drop(extraBits);
+				}
+				mode = MODE_DIST;
+				// fall through
+
+			case MODE_DIST:
+				sym = decodeSymbol(distances);
+				if(sym < 0) {
+					stalled = true;
+					return;
+				}
+				if(sym >= 30) {
+					throw new DataFormatException("invalid distance code");
+				}
+				copyDistance = DIST_BASE[sym];
+				extraBits = DIST_EXTRA[sym];
+				mode = MODE_DIST_EXTRA;
+				// fall through
+
+			case MODE_DIST_EXTRA:
+				if(extraBits > 0) {
+					if(!need(extraBits)) {
+						stalled = true;
+						return;
+					}
+					copyDistance += bits(extraBits);
+					drop(extraBits);
+				}
+				// the window holds all output, or at least the last 32K
+				if(copyDistance > writePos) {
+					throw new DataFormatException(
+							"invalid distance too far back");
+				}
+				int from = writePos - copyDistance;
+				if(copyDistance >= copyLength) {
+					System.arraycopy(window, from, window, writePos, copyLength);
+					writePos += copyLength;
+				} else {
+					for(int i = 0; i < copyLength; i++) {
+						window[writePos++] = window[from++];
+					}
+				}
+				mode = MODE_CODES;
+				break;
+
+			case MODE_DONE:
+				return;
+
+			default:
+				throw new DataFormatException(error);
+			}
+		}
+	}
+}
@@ -0,0 +1,612 @@
+package org.archive.format.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.streamcontext.FileChannelStream;
+import org.archive.streamcontext.Stream;
+import org.archive.util.ByteOp;
+
+/**
+ * Reads the members of a gzip file, such as a .warc.gz, concurrently on a
+ * fork-join pool.
+ *
+ * One thread scans the file for the gzip magic, and starts a task for each
+ * possible member start found. Where a member's FEXTRA has an SL record
+ * holding its compressed length, the scan jumps straight to the next member.
+ * Each task inflates its member and hands it to the {@link MemberProcessor},
+ * which typically parses it into a Resource or ArchiveRecord.
+ *
+ * The magic can also turn up inside compressed data, so a task only counts
+ * if it starts where the previous member ended, beginning at the start
+ * offset. The values of the other tasks are dropped.
+ *
+ * Values come back either in file order, from {@link #open()}, or are passed
+ * to a thread-safe consumer as soon as their member is known to be real, by
+ * {@link #scan(MemberConsumer)}. At most maxPending members are in flight or
+ * waiting to be consumed, which bounds memory use.
+ *
+ * In strict mode (the default) gzip errors, bytes between members, and
+ * trailing bytes cause an IOException. Otherwise they are logged and
+ * skipped, resuming at the next member start found by the scan.
+ */
+public class ParallelMemberReader<T> implements GZIPConstants {
+	private static final Logger LOG =
+		Logger.getLogger(ParallelMemberReader.class.getName());
+
+	public final static int DEFAULT_SCAN_BUFFER_SIZE = 1024 * 1024;
+	public final static int DEFAULT_READ_SIZE = 16 * 1024;
+
+	// shortest possible member: header, empty deflate block, footer
+	private final static int MIN_MEMBER_LENGTH = GZIP_STATIC_HEADER_SIZE + 2
+		+ GZIP_STATIC_FOOTER_SIZE;
+
+	/**
+	 * Turns a member into a value, called concurrently on pool threads
+	 */
+	public interface MemberProcessor<T>
+	{
+		/**
+		 * Called for each member, and for any false starts found by the scan.
+		 * The member need not be read to the end.
+		 *
+		 * @return the value for the member, or null to skip it
+		 */
+		public T process(GZIPSeriesMember member) throws IOException;
+	}
+
+	/**
+	 * Receives the values of {@link #scan(MemberConsumer)}, called
+	 * concurrently in no particular order
+	 */
+	public interface MemberConsumer<T>
+	{
+		public void accept(long offset, T value) throws IOException;
+	}
+
+	protected final File file;
+	protected final MemberProcessor<T> processor;
+	protected final ForkJoinPool pool;
+
+	protected boolean strict = true;
+	protected long startOffset = 0;
+	protected int maxPending;
+	protected int scanBufferSize = DEFAULT_SCAN_BUFFER_SIZE;
+	protected int readSize = DEFAULT_READ_SIZE;
+	protected InflaterBackendFactory inflaterFactory = null;
+
+	public ParallelMemberReader(File file, MemberProcessor<T> processor)
+	{
+		this(file, processor, ForkJoinPool.commonPool());
+	}
+
+	public ParallelMemberReader(File file, MemberProcessor<T> processor, ForkJoinPool pool)
+	{
+		this.file = file;
+		this.processor = processor;
+		this.pool = pool;
+		this.maxPending = pool.getParallelism() * 4;
+	}
+
+	/**
+	 * Start reading, returning values in file order
+	 */
+	public Members open() throws IOException
+	{
+		Members members = new Members();
+		members.start();
+		return members;
+	}
+
+	/**
+	 * Read all members, passing each value to the consumer on a pool thread
+	 * as soon as the member is known to be real. Returns when all values have
+	 * been consumed.
+	 *
+	 * @throws IOException the first error reading, processing or consuming a
+	 * member
+	 */
+	public void scan(final MemberConsumer<T> consumer) throws IOException
+	{
+		final Members members = new Members();
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		final Phaser consumers = new Phaser(1);
+
+		members.start();
+		try {
+			MemberTask task;
+
+			while ((error.get() == null) && ((task = members.nextTask()) != null)) {
+				final MemberTask member = task;
+
+				if (member.value == null) {
+					members.permits.release();
+					continue;
+				}
+
+				consumers.register();
+				pool.execute(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						try {
+							if (error.get() == null) {
+								consumer.accept(member.start, member.value);
+							}
+						} catch (Exception e) {
+							error.compareAndSet(null, e);
+						} finally {
+							members.permits.release();
+							consumers.arriveAndDeregister();
+						}
+					}
+				});
+			}
+		} catch (IOException e) {
+			error.compareAndSet(null, e);
+		} finally {
+			consumers.arriveAndAwaitAdvance();
+			members.close();
+		}
+
+		Exception e = error.get();
+		if (e instanceof IOException) {
+			throw (IOException)e;
+		} else if (e != null) {
+			throw (RuntimeException)e;
+		}
+	}
+
+	/**
+	 * @return the compressed length of the member from its FEXTRA SL record,
+	 * or libwarc's sl record, -1 if the header at off in buf has none, or is
+	 * not all in buf
+	 */
+	protected static long getLengthHint(byte buf[], int off, int len)
+	{
+		if ((buf[off + GZIP_FLAG_IDX] & GZIP_FLAG_FEXTRA) == 0) {
+			return -1;
+		}
+		int pos = off + GZIP_STATIC_HEADER_SIZE;
+		if (pos + BYTES_IN_SHORT > len) {
+			return -1;
+		}
+		int end = pos + BYTES_IN_SHORT + ByteOp.bytesToShort(buf, pos);
+		if (end > len) {
+			return -1;
+		}
+		pos += BYTES_IN_SHORT;
+		if ((end - pos == 10) && (buf[pos] == 's') && (buf[pos + 1] == 'l')) {
+			// libwarc: no subfield length, compressed then inflated length
+			long length = ByteOp.bytesToInt(buf, pos + GZIP_FEXTRA_NAME_BYTES) & 0xffffffffL;
+			return (length >= MIN_MEMBER_LENGTH) ? length : -1;
+		}
+		while (pos + GZIP_FEXTRA_VALUE_IDX <= end) {
+			int valueLength = ByteOp.bytesToShort(buf, pos + GZIP_FEXTRA_LENGTH_IDX);
+			int value = pos + GZIP_FEXTRA_VALUE_IDX;
+			if (value + valueLength > end) {
+				break;
+			}
+			if ((buf[pos] == SL_RECORD[0]) && (buf[pos + 1] == SL_RECORD[1])) {
+				long length = 0;
+				if ((valueLength == BYTES_IN_INT) || (valueLength == SL_RECORD_VALUE_LENGTH)) {
+					for (int i = valueLength - 1; i >= 0; i--) {
+						length = (length << 8) | (buf[value + i] & 0xff);
+					}
+				}
+				return (length >= MIN_MEMBER_LENGTH) ? length : -1;
+			}
+			pos = value + valueLength;
+		}
+		return -1;
+	}
+
+	protected static boolean isMemberStart(byte buf[], int off)
+	{
+		return (buf[off] == (byte)GZIP_MAGIC_ONE)
+			&& (buf[off + 1] == (byte)GZIP_MAGIC_TWO)
+			&& (buf[off + 2] == GZIP_COMPRESSION_METHOD_DEFLATE)
+			&& ((buf[off + 3] & ~GZIP_FLAG_VALID_BITS) == 0);
+	}
+
+	protected static int readFully(FileChannel channel, byte buf[], int len, long position) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, position + bb.position()) == -1) {
+				break;
+			}
+		}
+		return bb.position();
+	}
+
+	// Marks the end of the scan in the queue
+	private final static Object END = new Object();
+
+	protected static class ScanError
+	{
+		final IOException error;
+
+		ScanError(IOException error)
+		{
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Inflates and processes whatever starts at one possible member start
+	 */
+	protected class MemberTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Members members;
+		final long start;
+		final long lengthHint;
+
+		// set by compute(): end is -1 if this is not a member
+		long end = -1;
+		Exception error = null;
+		T value = null;
+		IOException processError = null;
+
+		MemberTask(Members members, long start, long lengthHint)
+		{
+			this.members = members;
+			this.start = start;
+			this.lengthHint = lengthHint;
+		}
+
+		@Override
+		protected void compute() {
+			if (members.closed) {
+				error = new IOException("Closed");
+				return;
+			}
+			try {
+				Stream stream;
+				if (lengthHint > 0 && lengthHint <= readSize * 16L) {
+					byte data[] = new byte[(int)lengthHint];
+					int amt = readFully(members.channel, data, data.length, start);
+					if (amt < data.length) {
+						data = ByteOp.copy(data, 0, amt);
+					}
+					stream = new ByteArrayWrappedStream(data);
+				} else {
+					stream = new FileChannelStream(members.channel, start, readSize);
+				}
+
+				GZIPMemberSeries series = new GZIPMemberSeries(stream, file.getName(), start, true);
+				series.setInflaterFactory(getInflaterFactory());
+				// inflate to the end, to check this is really a member
+				series.setTrustMemberLengths(false);
+				try {
+					GZIPSeriesMember member = series.getNextMember();
+					if (member == null) {
+						throw new GZIPFormatException("No member");
+					}
+					try {
+						value = processor.process(member);
+					} catch (IOException e) {
+						processError = e;
+					} catch (RuntimeException e) {
+						processError = new IOException(e);
+					}
+					member.skipMember();
+					if (!member.gotEOR()) {
+						throw new GZIPFormatException("Incomplete member");
+					}
+					// not from the header length, which misses malformed FEXTRA
+					long length = series.getOffset() - start;
+					if ((lengthHint > 0) && (length != lengthHint)) {
+						throw new GZIPFormatException("Member length " + length
+								+ " does not match SL record " + lengthHint);
+					}
+					end = start + length;
+				} finally {
+					series.close();
+				}
+			} catch (Exception e) {
+				error = e;
+				value = null;
+				end = -1;
+			}
+		}
+	}
+
+	/**
+	 * One read of the file, with its scanning thread. Values are returned in
+	 * file order by {@link #next()}.
+	 */
+	public class Members
+	{
+		final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+		final Semaphore permits = new Semaphore(maxPending);
+		volatile boolean closed = false;
+
+		RandomAccessFile raf;
+		FileChannel channel;
+		long fileLength;
+		Thread scanner;
+
+		// where the next member should start
+		long expected = startOffset;
+		long currentOffset = -1;
+		// strict mode errors end the read
+		IOException failure = null;
+
+		void start() throws IOException
+		{
+			raf = new RandomAccessFile(file, "r");
+			channel = raf.getChannel();
+			fileLength = channel.size();
+
+			scanner = new Thread("ParallelMemberReader scan of " + file.getName()) {
+				@Override
+				public void run() {
+					scanFile();
+				}
+			};
+			scanner.setDaemon(true);
+			scanner.start();
+		}
+
+		void scanFile()
+		{
+			Object last = END;
+			byte buf[] = new byte[Math.max(scanBufferSize, 64)];
+			long pos = startOffset;
+
+			try {
+				while (!closed && (pos < fileLength)) {
+					int len = readFully(channel, buf, buf.length, pos);
+					if (len < MIN_MEMBER_LENGTH) {
+						break;
+					}
+					// leave the last few bytes for the next buffer
+					int limit = (pos + len < fileLength) ? len - 3 : len - MIN_MEMBER_LENGTH + 1;
+					long next = pos + limit;
+					for (int i = 0; i < limit; i++) {
+						if (isMemberStart(buf, i)) {
+							long hint = getLengthHint(buf, i, len);
+							submit(pos + i, hint);
+							if (hint > 0) {
+								next = pos + i + hint;
+								break;
+							}
+						}
+					}
+					pos = next;
+				}
+			} catch (IOException e) {
+				last = new ScanError(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.add(last);
+		}
+
+		void submit(long start, long hint) throws InterruptedException
+		{
+			permits.acquire();
+			if (closed) {
+				permits.release();
+				throw new InterruptedException();
+			}
+			MemberTask task = new MemberTask(this, start, hint);
+			queue.add(task);
+			pool.execute(task);
+		}
+
+		Object take() throws IOException
+		{
+			try {
+				return queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * @return the next real member, done, holding a permit, or null at the
+		 * end of the file
+		 */
+		MemberTask nextTask() throws IOException
+		{
+			if (failure != null) {
+				throw failure;
+			}
+			while (!closed) {
+				Object item = take();
+
+				if (item == END) {
+					queue.add(END);
+					if (expected < fileLength) {
+						gapOrTrailing(fileLength);
+						expected = fileLength;
+					}
+					return null;
+				} else if (item instanceof ScanError) {
+					queue.add(item);
+					throw ((ScanError)item).error;
+				}
+
+				@SuppressWarnings("unchecked")
+				MemberTask task = (MemberTask)item;
+
+				if (task.start < expected) {
+					// inside the last member
+					permits.release();
+					continue;
+				}
+				if (task.start > expected) {
+					gapOrTrailing(task.start);
+					expected = task.start;
+				}
+				task.quietlyJoin();
+				if (task.end == -1) {
+					permits.release();
+					if (strict) {
+						failure = new IOException(task.error + " at " + task.start
+								+ " in " + file.getName());
+						throw failure;
+					}
+					LOG.warning(String.format("Skipping bad member at offset(%d) in (%s): %s",
+							task.start, file.getName(), task.error));
+					expected = task.start + 1;
+					continue;
+				}
+				expected = task.end;
+				currentOffset = task.start;
+				if (task.processError != null) {
+					permits.release();
+					throw task.processError;
+				}
+				return task;
+			}
+			return null;
+		}
+
+		void gapOrTrailing(long nextStart) throws IOException
+		{
+			String msg = String.format("Skipped %d bytes in (%s) before %s at offset(%d)",
+					nextStart - expected, file.getName(),
+					(nextStart == fileLength) ? "EOF" : "next member",
+					expected);
+			if (strict) {
+				failure = new GZIPFormatException(msg);
+				throw failure;
+			}
+			if (LOG.isLoggable(Level.INFO)) {
+				LOG.info(msg);
+			}
+		}
+
+		/**
+		 * @return the value of the next member, in file order, or null at the
+		 * end of the file
+		 * @throws IOException reading the file, or processing the member: the
+		 * next call continues with the following member
+		 */
+		public T next() throws IOException
+		{
+			MemberTask task;
+			while ((task = nextTask()) != null) {
+				permits.release();
+				if (task.value != null) {
+					return task.value;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return the offset of the member of the last value, or error,
+		 * returned by next()
+		 */
+		public long getCurrentOffset()
+		{
+			return currentOffset;
+		}
+
+		public String getFileName()
+		{
+			return file.getName();
+		}
+
+		/**
+		 * Stop scanning, and close the file. Tasks already started finish
+		 * without a value.
+		 */
+		public void close() throws IOException
+		{
+			if (closed) {
+				return;
+			}
+			closed = true;
+			// Unblock the scanner if it is waiting for a permit
+			permits.release(maxPending);
+			try {
+				scanner.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.clear();
+			raf.close();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public InflaterBackendFactory getInflaterFactory() {
+		if (inflaterFactory == null) {
+			inflaterFactory = InflaterBackends.getDefaultFactory();
+		}
+		return inflaterFactory;
+	}
+	public void setInflaterFactory(InflaterBackendFactory inflaterFactory) {
+		this.inflaterFactory = inflaterFactory;
+	}
+
+	public boolean isStrict() {
+		return strict;
+	}
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	public long getStartOffset() {
+		return startOffset;
+	}
+	/**
+	 * @param startOffset offset of the first member to read
+	 */
+	public void setStartOffset(long startOffset) {
+		this.startOffset = startOffset;
+	}
+
+	public int getMaxPending() {
+		return maxPending;
+	}
+	/**
+	 * @param maxPending most members being read, or waiting to be consumed
+	 */
+	public void setMaxPending(int maxPending) {
+		this.maxPending = Math.max(maxPending, 1);
+	}
+
+	public int getScanBufferSize() {
+		return scanBufferSize;
+	}
+	public void setScanBufferSize(int scanBufferSize) {
+		this.scanBufferSize = scanBufferSize;
+	}
+
+	public int getReadSize() {
+		return readSize;
+	}
+	public void setReadSize(int readSize) {
+		this.readSize = readSize;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+}
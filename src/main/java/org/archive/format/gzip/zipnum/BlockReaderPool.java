@@ -0,0 +1,480 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.AbstractSeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+
+/**
+ * Bounded pool of block readers and file factories, keyed by location and
+ * shared by all threads, replacing the per-thread reader map.
+ *
+ * A block reader is used for a single seek and closed, so what is kept
+ * between loads is the factory for a location (open file, mapping).
+ * Factories with no open readers are idle, and are closed once there are
+ * more than maxIdle of them, or after idleTimeoutMS.
+ *
+ * The number of open readers may be limited per location and in total,
+ * in which case a borrower waits up to maxWaitMS for a reader to be closed.
+ * A limit of 0 means unlimited.
+ */
+public class BlockReaderPool {
+
+	private final static Logger LOGGER = Logger.getLogger(BlockReaderPool.class.getName());
+
+	public final static int DEFAULT_MAX_IDLE = 256;
+	public final static long DEFAULT_IDLE_TIMEOUT_MS = 5 * 60 * 1000L;
+	public final static long DEFAULT_MAX_WAIT_MS = 10000L;
+
+	// Live pools, for closeThreadReaders()
+	protected final static Set<BlockReaderPool> pools = Collections.synchronizedSet(
+			Collections.newSetFromMap(new WeakHashMap<BlockReaderPool, Boolean>()));
+
+	// Open readers from this pool, used to close the readers left open by a thread
+	protected final Map<SeekableLineReader, Lease> openReaders = new ConcurrentHashMap<SeekableLineReader, Lease>();
+
+	protected int maxTotalPerKey = 0;
+	protected int maxTotal = 0;
+	protected int maxIdle = DEFAULT_MAX_IDLE;
+	protected long idleTimeoutMS = DEFAULT_IDLE_TIMEOUT_MS;
+	protected long maxWaitMS = DEFAULT_MAX_WAIT_MS;
+
+	// By location, in access order, guarded by this
+	protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	protected int numOpen = 0;
+	protected int numIdle = 0;
+	protected long lastSweep = System.currentTimeMillis();
+
+	protected final AtomicLong numBorrowed = new AtomicLong();
+	protected final AtomicLong numWaits = new AtomicLong();
+	protected final AtomicLong numTimeouts = new AtomicLong();
+	protected final AtomicLong numFactoriesCreated = new AtomicLong();
+	protected final AtomicLong numFactoriesEvicted = new AtomicLong();
+
+	public BlockReaderPool()
+	{
+		pools.add(this);
+	}
+
+	/**
+	 * Creates the factory for a location when it is first needed
+	 */
+	public interface FactoryCreator
+	{
+		public SeekableLineReaderFactory create(String location) throws IOException;
+	}
+
+	/**
+	 * Opens a reader for a location, with the location's factory
+	 * if one is used
+	 */
+	public interface ReaderCreator
+	{
+		public SeekableLineReader create(String location, SeekableLineReaderFactory factory) throws IOException;
+	}
+
+	protected static class Entry
+	{
+		final String location;
+		SeekableLineReaderFactory factory;
+		int open = 0;
+		long lastUsed;
+
+		Entry(String location)
+		{
+			this.location = location;
+		}
+	}
+
+	protected class Lease implements AbstractSeekableLineReader.CloseListener
+	{
+		final Entry entry;
+		final Thread owner;
+
+		Lease(Entry entry)
+		{
+			this.entry = entry;
+			this.owner = Thread.currentThread();
+		}
+
+		@Override
+		public void readerClosed(SeekableLineReader reader) {
+			if (openReaders.remove(reader) != null) {
+				release(entry);
+			}
+		}
+	}
+
+	/**
+	 * Open a reader for the location, waiting if the location or the pool
+	 * is at its open reader limit. The reader is returned to the pool when
+	 * it is closed.
+	 *
+	 * @param factoryCreator used if there is no open factory for the location,
+	 * null if readers for the location do not use a factory
+	 */
+	public SeekableLineReader borrow(String location, FactoryCreator factoryCreator, ReaderCreator readerCreator) throws IOException
+	{
+		Entry entry = acquire(location);
+		SeekableLineReader reader = null;
+
+		try {
+			SeekableLineReaderFactory factory = null;
+
+			if (factoryCreator != null) {
+				synchronized (entry) {
+					if (entry.factory == null) {
+						entry.factory = factoryCreator.create(location);
+						numFactoriesCreated.incrementAndGet();
+					}
+					factory = entry.factory;
+				}
+			}
+
+			reader = readerCreator.create(location, factory);
+		} finally {
+			if (reader == null) {
+				release(entry);
+			}
+		}
+
+		Lease lease = new Lease(entry);
+		openReaders.put(reader, lease);
+
+		if (reader instanceof AbstractSeekableLineReader) {
+			((AbstractSeekableLineReader)reader).setCloseListener(lease);
+		}
+
+		numBorrowed.incrementAndGet();
+		return reader;
+	}
+
+	protected synchronized Entry acquire(String location) throws IOException
+	{
+		Entry entry = entries.get(location);
+
+		if (!hasCapacity(entry)) {
+			reapClosed();
+
+			long deadline = System.currentTimeMillis() + maxWaitMS;
+			numWaits.incrementAndGet();
+
+			while (!hasCapacity(entry = entries.get(location))) {
+				long remaining = deadline - System.currentTimeMillis();
+
+				if (remaining <= 0) {
+					numTimeouts.incrementAndGet();
+					throw new IOException("Timed out waiting for a reader: " + location);
+				}
+
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+		}
+
+		if (entry == null) {
+			entry = new Entry(location);
+			entries.put(location, entry);
+		} else if (entry.open == 0) {
+			numIdle--;
+		}
+
+		entry.open++;
+		numOpen++;
+		return entry;
+	}
+
+	protected boolean hasCapacity(Entry entry)
+	{
+		if ((maxTotal > 0) && (numOpen >= maxTotal)) {
+			return false;
+		}
+
+		return (maxTotalPerKey <= 0) || (entry == null) || (entry.open < maxTotalPerKey);
+	}
+
+	protected void release(Entry entry)
+	{
+		List<SeekableLineReaderFactory> evicted;
+
+		synchronized (this) {
+			entry.open--;
+			numOpen--;
+			entry.lastUsed = System.currentTimeMillis();
+
+			if (entry.open == 0) {
+				numIdle++;
+			}
+
+			notifyAll();
+			evicted = evictIdle(entry.lastUsed);
+		}
+
+		closeFactories(evicted);
+	}
+
+	/**
+	 * Remove idle entries over the maxIdle limit, oldest first, and any
+	 * which have timed out. Timed out entries are only checked for every
+	 * idleTimeoutMS / 4.
+	 *
+	 * @return the factories to close
+	 */
+	protected List<SeekableLineReaderFactory> evictIdle(long now)
+	{
+		boolean sweep = (idleTimeoutMS > 0) && ((now - lastSweep) >= (idleTimeoutMS / 4));
+
+		if (!sweep && (numIdle <= maxIdle)) {
+			return null;
+		}
+
+		if (sweep) {
+			lastSweep = now;
+		}
+
+		List<SeekableLineReaderFactory> evicted = new ArrayList<SeekableLineReaderFactory>();
+		Iterator<Entry> iter = entries.values().iterator();
+
+		while (iter.hasNext()) {
+			Entry entry = iter.next();
+
+			if (entry.open > 0) {
+				continue;
+			}
+
+			boolean timedOut = (idleTimeoutMS > 0) && ((now - entry.lastUsed) >= idleTimeoutMS);
+
+			if ((numIdle > maxIdle) || timedOut) {
+				iter.remove();
+				numIdle--;
+
+				if (entry.factory != null) {
+					evicted.add(entry.factory);
+					numFactoriesEvicted.incrementAndGet();
+				}
+			} else if (!sweep) {
+				break;
+			}
+		}
+
+		return evicted;
+	}
+
+	protected void closeFactories(List<SeekableLineReaderFactory> factories)
+	{
+		if (factories == null) {
+			return;
+		}
+
+		for (SeekableLineReaderFactory factory : factories) {
+			try {
+				factory.close();
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+		}
+	}
+
+	// Release readers which were closed without notifying the pool
+	protected void reapClosed()
+	{
+		for (Map.Entry<SeekableLineReader, Lease> open : openReaders.entrySet()) {
+			if (open.getKey().isClosed()) {
+				open.getValue().readerClosed(open.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Close all readers borrowed by the current thread, from any pool,
+	 * that are still open
+	 */
+	public static void closeThreadReaders()
+	{
+		List<BlockReaderPool> all;
+
+		synchronized (pools) {
+			all = new ArrayList<BlockReaderPool>(pools);
+		}
+
+		for (BlockReaderPool pool : all) {
+			pool.closeCurrentThreadReaders();
+		}
+	}
+
+	/**
+	 * Close all readers borrowed from this pool by the current thread
+	 * that are still open
+	 */
+	public void closeCurrentThreadReaders()
+	{
+		Thread current = Thread.currentThread();
+
+		for (Map.Entry<SeekableLineReader, Lease> open : openReaders.entrySet()) {
+			Lease lease = open.getValue();
+
+			if (lease.owner != current) {
+				continue;
+			}
+
+			SeekableLineReader reader = open.getKey();
+
+			try {
+				if (!reader.isClosed()) {
+					LOGGER.warning("Unclosed reader for: " + lease.entry.location);
+					reader.close();
+				}
+			} catch (IOException io) {
+
+			} finally {
+				lease.readerClosed(reader);
+			}
+		}
+	}
+
+	/**
+	 * Close the factory for the location, if any. A new one is created for
+	 * the next reader.
+	 */
+	public void closeFactory(String location) throws IOException
+	{
+		Entry entry;
+
+		synchronized (this) {
+			entry = entries.get(location);
+		}
+
+		if (entry == null) {
+			return;
+		}
+
+		SeekableLineReaderFactory factory;
+
+		synchronized (entry) {
+			factory = entry.factory;
+			entry.factory = null;
+		}
+
+		if (factory != null) {
+			factory.close();
+		}
+	}
+
+	/**
+	 * Close all factories and drop idle entries. Open readers are
+	 * not affected.
+	 */
+	public void close() throws IOException
+	{
+		List<Entry> all;
+
+		synchronized (this) {
+			all = new ArrayList<Entry>(entries.values());
+			Iterator<Entry> iter = entries.values().iterator();
+
+			while (iter.hasNext()) {
+				if (iter.next().open == 0) {
+					iter.remove();
+				}
+			}
+
+			numIdle = 0;
+		}
+
+		for (Entry entry : all) {
+			closeFactory(entry.location);
+		}
+	}
+
+	public synchronized int getNumOpen() {
+		return numOpen;
+	}
+
+	public synchronized int getNumIdle() {
+		return numIdle;
+	}
+
+	public synchronized int getNumOpen(String location) {
+		Entry entry = entries.get(location);
+		return (entry != null) ? entry.open : 0;
+	}
+
+	public long getNumBorrowed() {
+		return numBorrowed.get();
+	}
+
+	/**
+	 * @return number of borrows which had to wait for a reader to be closed
+	 */
+	public long getNumWaits() {
+		return numWaits.get();
+	}
+
+	public long getNumTimeouts() {
+		return numTimeouts.get();
+	}
+
+	public long getNumFactoriesCreated() {
+		return numFactoriesCreated.get();
+	}
+
+	public long getNumFactoriesEvicted() {
+		return numFactoriesEvicted.get();
+	}
+
+	public int getMaxTotalPerKey() {
+		return maxTotalPerKey;
+	}
+
+	public void setMaxTotalPerKey(int maxTotalPerKey) {
+		this.maxTotalPerKey = maxTotalPerKey;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public long getIdleTimeoutMS() {
+		return idleTimeoutMS;
+	}
+
+	public void setIdleTimeoutMS(long idleTimeoutMS) {
+		this.idleTimeoutMS = idleTimeoutMS;
+	}
+
+	public long getMaxWaitMS() {
+		return maxWaitMS;
+	}
+
+	public void setMaxWaitMS(long maxWaitMS) {
+		this.maxWaitMS = maxWaitMS;
+	}
+}
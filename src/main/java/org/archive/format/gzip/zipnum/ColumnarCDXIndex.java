@@ -0,0 +1,284 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.format.cdx.ColumnarCDXBlock;
+import org.archive.format.cdx.ColumnarCDXQuery;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * ZipNumIndex over parts written by {@link ColumnarCDXWriter}. The summary
+ * has the same format as for a text ZipNum index.
+ *
+ * The {@link org.archive.format.cdx.CDXInputSource} queries return full
+ * text cdx lines, as for a text index. The queries with a
+ * {@link ColumnarCDXQuery} return only the selected fields of the lines
+ * matching its filters, stopping exactly at the end of the key range, and
+ * only decode the columns needed for those and for the key bounds.
+ */
+public class ColumnarCDXIndex extends ZipNumIndex {
+
+	public ColumnarCDXIndex()
+	{
+
+	}
+
+	public static ColumnarCDXIndex createIndexWithSummaryPath(String summaryFile) throws IOException
+	{
+		ColumnarCDXIndex index = new ColumnarCDXIndex();
+		index.setSummaryFile(summaryFile);
+		index.init();
+		return index;
+	}
+
+	@Override
+	protected CloseableIterator<String> getBlockLineIterator(SeekableLineReader reader)
+	{
+		return new ColumnarLineIterator(reader);
+	}
+
+	/**
+	 * Lines starting with prefix, or with the url key prefix if exact,
+	 * from key onwards
+	 */
+	public CloseableIterator<String> getCDXIterator(String key, String prefix, boolean exact, ZipNumParams params, ColumnarCDXQuery query) throws IOException
+	{
+		checkParams(params);
+
+		CloseableIterator<String> summaryIter = wrapPrefix(getSummaryIterator(key), prefix, exact);
+
+		if (exact) {
+			return new ColumnarLineIterator(summaryIter, params, query, prefix, endKey(prefix), false);
+		} else {
+			return new ColumnarLineIterator(summaryIter, params, query, prefix, prefix, true);
+		}
+	}
+
+	/**
+	 * Lines from start up to end, exclusive, or to the end if empty
+	 */
+	public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params, ColumnarCDXQuery query) throws IOException
+	{
+		checkParams(params);
+
+		CloseableIterator<String> summaryIter = getSummaryIterator(key);
+
+		if (end != null && !end.isEmpty()) {
+			summaryIter = wrapEndIterator(summaryIter, end, false);
+		} else {
+			end = null;
+		}
+
+		return new ColumnarLineIterator(summaryIter, params, query, start, end, false);
+	}
+
+	protected void checkParams(ZipNumParams params)
+	{
+		if ((params != null) && (params.isReverse() || params.getTimestampDedupLength() > 0)) {
+			throw new IllegalArgumentException("Reverse and timestamp dedup queries are not supported with a ColumnarCDXQuery");
+		}
+	}
+
+	protected CloseableIterator<String> getSummaryIterator(String key) throws IOException
+	{
+		ResidentSummaryIndex resident = residentIndex;
+
+		if (resident != null) {
+			return resident.cursor(resident.floorIndex(key), resident.size(), false);
+		} else {
+			return summary.getRecordIteratorLT(key);
+		}
+	}
+
+	/**
+	 * Lines of the blocks of a single load, or of the blocks of each summary
+	 * line, with optional key bounds and {@link ColumnarCDXQuery}
+	 */
+	protected class ColumnarLineIterator extends AbstractPeekableIterator<String> implements CloseableIterator<String>
+	{
+		protected CloseableIterator<String> summaryIter;
+		protected SeekableLineReader reader;
+		protected InputStream in;
+
+		protected final ColumnarCDXQuery query;
+		protected final String start;
+		protected final String end;
+		protected final boolean endInclusive;
+		protected final int maxBlocks;
+
+		protected int numBlocks = 0;
+		protected boolean started;
+		protected boolean done = false;
+
+		protected ColumnarCDXBlock block;
+		protected boolean[] rows;
+		protected int[] cols;
+		protected int row;
+
+		protected ColumnarLineIterator(SeekableLineReader reader)
+		{
+			this(null, null, null, null, null, false);
+			setReader(reader);
+		}
+
+		/**
+		 * @param start skip lines before start, if not null
+		 * @param end stop at the first line at or after end, if not null, and
+		 * if endInclusive not starting with end
+		 */
+		protected ColumnarLineIterator(CloseableIterator<String> summaryIter, ZipNumParams params, ColumnarCDXQuery query, String start, String end, boolean endInclusive)
+		{
+			this.summaryIter = summaryIter;
+			this.query = query;
+			this.start = start;
+			this.end = end;
+			this.endInclusive = endInclusive;
+			this.maxBlocks = (params != null ? params.getMaxBlocks() : 0);
+			this.started = (start == null || start.isEmpty());
+		}
+
+		protected void setReader(SeekableLineReader reader)
+		{
+			this.reader = reader;
+			this.in = (reader != null ? reader.getInputStream() : null);
+		}
+
+		@Override
+		public String getNextInner()
+		{
+			while (!done) {
+				if ((block == null) || (row >= block.getNumRows())) {
+					if (!nextBlock()) {
+						done = true;
+						break;
+					}
+					continue;
+				}
+
+				int curr = row++;
+
+				if (!started) {
+					if (block.compareLine(curr, start) < 0) {
+						continue;
+					}
+					started = true;
+				}
+
+				if ((end != null) && (block.compareLine(curr, end) >= 0) && (!endInclusive || !block.lineStartsWith(curr, end))) {
+					done = true;
+					break;
+				}
+
+				if ((rows != null) && !rows[curr]) {
+					continue;
+				}
+
+				if (cols == null) {
+					return block.getLine(curr);
+				}
+
+				return block.appendLine(curr, cols, new StringBuilder()).toString();
+			}
+
+			closeQuietly();
+			return null;
+		}
+
+		protected boolean nextBlock()
+		{
+			while (true) {
+				if (in != null) {
+					ColumnarCDXBlock next;
+
+					try {
+						next = ColumnarCDXBlock.read(in);
+					} catch (IOException io) {
+						if (isRequired()) {
+							closeQuietly();
+							throw new RuntimeIOException(io.toString());
+						}
+
+						next = null;
+					}
+
+					if (next != null) {
+						block = next;
+						row = 0;
+
+						if (query != null) {
+							rows = query.selectRows(block);
+							cols = query.getOutputColumns(block);
+						}
+
+						return true;
+					}
+
+					closeReader();
+				}
+
+				if ((summaryIter == null) || !summaryIter.hasNext() || ((maxBlocks > 0) && (numBlocks >= maxBlocks))) {
+					return false;
+				}
+
+				SummaryLine line;
+
+				// Resident summary lines are already parsed
+				if (summaryIter instanceof ResidentSummaryIndex.Cursor) {
+					line = ((ResidentSummaryIndex.Cursor)summaryIter).nextSummaryLine();
+				} else {
+					line = new SummaryLine(summaryIter.next());
+				}
+
+				SeekableLineReader next = loadBlock(line.partId, line.offset, line.length);
+
+				if (next == null) {
+					if (isRequired()) {
+						throw new RuntimeIOException("Failed to load shards for: " + line.partId);
+					}
+					continue;
+				}
+
+				numBlocks++;
+				setReader(next);
+			}
+		}
+
+		protected void closeReader()
+		{
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+
+				}
+			}
+
+			reader = null;
+			in = null;
+		}
+
+		protected void closeQuietly()
+		{
+			try {
+				close();
+			} catch (IOException e) {
+
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closeReader();
+
+			if (summaryIter != null) {
+				summaryIter.close();
+				summaryIter = null;
+			}
+		}
+	}
+}
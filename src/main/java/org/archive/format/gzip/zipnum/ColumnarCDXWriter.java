@@ -0,0 +1,66 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.format.cdx.ColumnarCDXBlock;
+import org.archive.format.cdx.FieldSplitFormat;
+
+/**
+ * ZipNumWriter for {@link ColumnarCDXBlock}s: each gzip member holds one
+ * columnar block of up to limit cdx lines instead of the lines as text.
+ * The manifest is written as by ZipNumWriter, with the first line of each
+ * block as text, so that the summary for a {@link ColumnarCDXIndex} can be
+ * built in the same way.
+ */
+public class ColumnarCDXWriter extends ZipNumWriter {
+	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	protected final FieldSplitFormat format;
+	protected final List<String> lines = new ArrayList<String>();
+
+	/**
+	 * @param format the fields of the cdx lines, eg. StandardCDXLineFactory.cdx11
+	 */
+	public ColumnarCDXWriter(OutputStream main, OutputStream manifest, int limit, FieldSplitFormat format) {
+		super(main, manifest, limit);
+		this.format = format;
+	}
+
+	/**
+	 * Add a cdx line, with or without the trailing newline
+	 */
+	@Override
+	public void addRecord(byte[] bytes) throws IOException {
+		int len = bytes.length;
+
+		while((len > 0) && (bytes[len - 1] == '\n' || bytes[len - 1] == '\r')) {
+			len--;
+		}
+
+		if(count == 0) {
+			manifestBuffer.write(bytes, 0, len);
+			manifestBuffer.write('\n');
+		}
+
+		lines.add(new String(bytes, 0, len, UTF8));
+		count++;
+		if(count == limit) {
+			finishCurrent();
+		}
+	}
+
+	public void addLine(String line) throws IOException {
+		addRecord(line.getBytes(UTF8));
+	}
+
+	@Override
+	public void commit() throws IOException {
+		write(ColumnarCDXBlock.encode(lines, format));
+		lines.clear();
+		super.commit();
+	}
+}
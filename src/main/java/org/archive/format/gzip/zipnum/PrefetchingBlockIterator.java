@@ -0,0 +1,149 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.zipnum.SummaryBlockIterator.BlockLoad;
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+
+/**
+ * Block iterator that loads up to prefetchDepth blocks ahead of the current
+ * one on an executor, while still returning the blocks in summary order.
+ *
+ * Each block is fetched and fully decompressed into a line buffer by the
+ * executor, so the consumer only waits on a block if it is not yet ready.
+ *
+ * Intended to wrap a {@link SummaryBlockIterator} in a {@link MultiBlockIterator}
+ */
+public class PrefetchingBlockIterator extends AbstractPeekableIterator<CloseableIterator<String>> {
+
+	private static final Logger LOGGER = Logger.getLogger(
+			PrefetchingBlockIterator.class.getName());
+
+	protected SummaryBlockIterator blockIter;
+	protected final ExecutorService executor;
+	protected final int prefetchDepth;
+
+	protected final LinkedList<PendingLoad> pending = new LinkedList<PendingLoad>();
+	protected boolean planningDone = false;
+	protected volatile boolean closed = false;
+
+	class PendingLoad implements Callable<CloseableIterator<String>>
+	{
+		final BlockLoad load;
+		Future<CloseableIterator<String>> future;
+
+		PendingLoad(BlockLoad load)
+		{
+			this.load = load;
+		}
+
+		@Override
+		public CloseableIterator<String> call() throws IOException {
+			if (closed) {
+				return null;
+			}
+
+			CloseableIterator<String> iter = load.call();
+			List<String> lines = new ArrayList<String>();
+
+			try {
+				while (iter.hasNext() && !closed) {
+					lines.add(iter.next());
+				}
+			} finally {
+				iter.close();
+			}
+
+			return new CloseableIteratorWrapper<String>(lines.iterator());
+		}
+	}
+
+	public PrefetchingBlockIterator(SummaryBlockIterator blockIter, ExecutorService executor, int prefetchDepth)
+	{
+		this.blockIter = blockIter;
+		this.executor = executor;
+		this.prefetchDepth = Math.max(prefetchDepth, 1);
+	}
+
+	protected void fillPending()
+	{
+		while (!planningDone && (pending.size() < prefetchDepth)) {
+			BlockLoad load = blockIter.nextBlockLoad();
+
+			if (load == null) {
+				planningDone = true;
+				break;
+			}
+
+			PendingLoad pendingLoad = new PendingLoad(load);
+			pendingLoad.future = executor.submit(pendingLoad);
+			pending.addLast(pendingLoad);
+		}
+	}
+
+	@Override
+	public CloseableIterator<String> getNextInner() {
+		fillPending();
+
+		PendingLoad next = pending.pollFirst();
+
+		if (next == null) {
+			return null;
+		}
+
+		CloseableIterator<String> lines = null;
+
+		try {
+			lines = next.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException(e.toString());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+
+			throw new RuntimeIOException(cause.toString());
+		}
+
+		blockIter.loadDone(next.load);
+
+		// Start the next load while this block is being consumed
+		fillPending();
+
+		return lines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+
+		for (PendingLoad pendingLoad : pending) {
+			pendingLoad.future.cancel(false);
+		}
+
+		pending.clear();
+
+		if (blockIter != null) {
+			try {
+				blockIter.close();
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+			blockIter = null;
+		}
+	}
+}
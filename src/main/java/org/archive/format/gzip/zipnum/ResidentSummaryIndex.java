@@ -0,0 +1,687 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * In-memory, columnar copy of a ZipNum summary (ALL.summary) file.
+ *
+ * Each summary line is of the form:
+ *   key \t partId \t offset \t length [\t lineCount]
+ *
+ * Keys are stored as UTF-8 bytes with shared-prefix compression and a full
+ * key at every {@link #RESTART_INTERVAL}-th entry, other fields are kept in
+ * parallel primitive arrays. Lookups follow the same semantics as a
+ * {@link SortedTextFile} search over the full lines, but without any I/O
+ * or splitting of lines.
+ *
+ * Keys are compared as unsigned UTF-8 bytes, which matches the
+ * String ordering of the text file for all keys within the BMP.
+ *
+ * Instances are immutable once loaded and safe to share between threads.
+ */
+public class ResidentSummaryIndex {
+
+	final static Logger LOGGER = Logger.getLogger(ResidentSummaryIndex.class.getName());
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static int RESTART_INTERVAL = 16;
+
+	protected final static char SEP = '\t';
+
+	protected int size = 0;
+
+	// Front-coded keys: varint shared, varint suffixLen, suffix bytes
+	protected byte[] keyData = new byte[4096];
+	protected int keyDataLen = 0;
+	protected int[] restarts = new int[64];
+
+	protected String[] partIds;
+	protected int[] partOrdinals = new int[1024];
+	protected long[] offsets = new long[1024];
+	protected int[] lengths = new int[1024];
+	protected int[] lineCounts = new int[1024];
+
+	// Rare lines whose fields after the key can not be rebuilt exactly
+	protected Map<Integer, String> irregularTails = new HashMap<Integer, String>();
+
+	// Used only while loading
+	private Map<String, Integer> partOrdinalMap = new HashMap<String, Integer>();
+	private byte[] prevKey = new byte[0];
+
+	protected ResidentSummaryIndex()
+	{
+
+	}
+
+	/**
+	 * Load the full summary file into memory
+	 */
+	public static ResidentSummaryIndex load(SortedTextFile summary) throws IOException
+	{
+		CloseableIterator<String> lines = null;
+
+		try {
+			lines = summary.getRecordIterator(0L);
+			return load(lines);
+		} finally {
+			if (lines != null) {
+				lines.close();
+			}
+		}
+	}
+
+	public static ResidentSummaryIndex load(CloseableIterator<String> lines)
+	{
+		ResidentSummaryIndex index = new ResidentSummaryIndex();
+
+		while (lines.hasNext()) {
+			String line = lines.next();
+
+			if ((line == null) || line.isEmpty()) {
+				continue;
+			}
+
+			index.addLine(line);
+		}
+
+		index.finishLoad();
+		return index;
+	}
+
+	protected void addLine(String line)
+	{
+		int keyEnd = line.indexOf(SEP);
+		int partEnd = (keyEnd < 0 ? -1 : line.indexOf(SEP, keyEnd + 1));
+		int offsetEnd = (partEnd < 0 ? -1 : line.indexOf(SEP, partEnd + 1));
+
+		if (offsetEnd < 0) {
+			LOGGER.warning("Skipping bad summary line(" + line + ")");
+			return;
+		}
+
+		int lengthEnd = line.indexOf(SEP, offsetEnd + 1);
+		int countEnd = (lengthEnd < 0 ? -1 : line.indexOf(SEP, lengthEnd + 1));
+
+		long offset;
+		int length;
+		int lineCount = -1;
+		boolean regular = (countEnd < 0);
+
+		try {
+			offset = parseCanonical(line, partEnd + 1, offsetEnd);
+
+			if (offset < 0) {
+				offset = Long.parseLong(line.substring(partEnd + 1, offsetEnd));
+				regular = false;
+			}
+
+			int end = (lengthEnd < 0 ? line.length() : lengthEnd);
+			long value = parseCanonical(line, offsetEnd + 1, end);
+
+			if ((value < 0) || (value > Integer.MAX_VALUE)) {
+				value = Integer.parseInt(line.substring(offsetEnd + 1, end));
+				regular = false;
+			}
+
+			length = (int)value;
+
+			if (lengthEnd >= 0) {
+				end = (countEnd < 0 ? line.length() : countEnd);
+				value = parseCanonical(line, lengthEnd + 1, end);
+
+				if ((value >= 0) && (value <= Integer.MAX_VALUE)) {
+					lineCount = (int)value;
+				} else {
+					regular = false;
+				}
+			}
+
+		} catch (NumberFormatException n) {
+			LOGGER.warning("Skipping bad summary line(" + line + ")");
+			return;
+		}
+
+		ensureCapacity(size + 1);
+
+		addKey(line.substring(0, keyEnd).getBytes(UTF8));
+
+		String partId = line.substring(keyEnd + 1, partEnd);
+		Integer ordinal = partOrdinalMap.get(partId);
+
+		if (ordinal == null) {
+			ordinal = partOrdinalMap.size();
+			partOrdinalMap.put(partId, ordinal);
+		}
+
+		partOrdinals[size] = ordinal;
+		offsets[size] = offset;
+		lengths[size] = length;
+		lineCounts[size] = lineCount;
+
+		if (!regular) {
+			irregularTails.put(size, line.substring(keyEnd + 1));
+		}
+
+		size++;
+	}
+
+	/**
+	 * @return the non-negative decimal value of line[start, end), or -1 if
+	 * it would not print back to exactly the same string
+	 */
+	protected static long parseCanonical(String line, int start, int end)
+	{
+		int len = end - start;
+
+		if ((len <= 0) || (len > 18)) {
+			return -1;
+		}
+
+		if ((len > 1) && (line.charAt(start) == '0')) {
+			return -1;
+		}
+
+		long value = 0;
+
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return -1;
+			}
+			value = (value * 10) + (c - '0');
+		}
+
+		return value;
+	}
+
+	protected void addKey(byte[] key)
+	{
+		int shared = 0;
+
+		if ((size % RESTART_INTERVAL) == 0) {
+			int restart = size / RESTART_INTERVAL;
+
+			if (restart >= restarts.length) {
+				restarts = Arrays.copyOf(restarts, restarts.length * 2);
+			}
+
+			restarts[restart] = keyDataLen;
+		} else {
+			int max = Math.min(prevKey.length, key.length);
+
+			while ((shared < max) && (prevKey[shared] == key[shared])) {
+				shared++;
+			}
+		}
+
+		int suffixLen = key.length - shared;
+
+		if ((keyDataLen + suffixLen + 10) > keyData.length) {
+			keyData = Arrays.copyOf(keyData, Math.max(keyData.length * 2, keyDataLen + suffixLen + 10));
+		}
+
+		keyDataLen = writeVarInt(keyData, keyDataLen, shared);
+		keyDataLen = writeVarInt(keyData, keyDataLen, suffixLen);
+		System.arraycopy(key, shared, keyData, keyDataLen, suffixLen);
+		keyDataLen += suffixLen;
+
+		prevKey = key;
+	}
+
+	protected void ensureCapacity(int capacity)
+	{
+		if (capacity <= offsets.length) {
+			return;
+		}
+
+		int newLength = Math.max(capacity, offsets.length * 2);
+
+		partOrdinals = Arrays.copyOf(partOrdinals, newLength);
+		offsets = Arrays.copyOf(offsets, newLength);
+		lengths = Arrays.copyOf(lengths, newLength);
+		lineCounts = Arrays.copyOf(lineCounts, newLength);
+	}
+
+	protected void finishLoad()
+	{
+		partIds = new String[partOrdinalMap.size()];
+
+		for (Map.Entry<String, Integer> entry : partOrdinalMap.entrySet()) {
+			partIds[entry.getValue()] = entry.getKey();
+		}
+
+		keyData = Arrays.copyOf(keyData, keyDataLen);
+		restarts = Arrays.copyOf(restarts, (size + RESTART_INTERVAL - 1) / RESTART_INTERVAL);
+		partOrdinals = Arrays.copyOf(partOrdinals, size);
+		offsets = Arrays.copyOf(offsets, size);
+		lengths = Arrays.copyOf(lengths, size);
+		lineCounts = Arrays.copyOf(lineCounts, size);
+
+		partOrdinalMap = null;
+		prevKey = null;
+	}
+
+	protected static int writeVarInt(byte[] buff, int pos, int value)
+	{
+		while ((value & ~0x7F) != 0) {
+			buff[pos++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buff[pos++] = (byte)value;
+		return pos;
+	}
+
+	/**
+	 * Reusable decoding state for the front-coded keys. Decoding the next
+	 * entry after the last decoded one is incremental.
+	 */
+	protected class KeyBuffer
+	{
+		byte[] buff = new byte[256];
+		int len = 0;
+		int index = -1;
+		int nextPos = 0;
+
+		void readKey(int target)
+		{
+			int pos;
+			int curr;
+
+			if ((index >= 0) && (target > index) && ((target - index) <= RESTART_INTERVAL)) {
+				pos = nextPos;
+				curr = index + 1;
+			} else {
+				curr = (target / RESTART_INTERVAL) * RESTART_INTERVAL;
+				pos = restarts[target / RESTART_INTERVAL];
+			}
+
+			for (; curr <= target; curr++) {
+				int shared = 0, shift = 0, b;
+
+				do {
+					b = keyData[pos++];
+					shared |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+
+				int suffixLen = 0;
+				shift = 0;
+
+				do {
+					b = keyData[pos++];
+					suffixLen |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+
+				if ((shared + suffixLen) > buff.length) {
+					buff = Arrays.copyOf(buff, Math.max(buff.length * 2, shared + suffixLen));
+				}
+
+				System.arraycopy(keyData, pos, buff, shared, suffixLen);
+				pos += suffixLen;
+				len = shared + suffixLen;
+			}
+
+			index = target;
+			nextPos = pos;
+		}
+
+		String getKey()
+		{
+			return new String(buff, 0, len, UTF8);
+		}
+	}
+
+	/**
+	 * Compare the full summary line at the decoded index against the query,
+	 * with the same sign as line.compareTo(query)
+	 */
+	protected int compareLine(KeyBuffer kb, byte[] query, String queryStr)
+	{
+		int n = Math.min(kb.len, query.length);
+
+		for (int i = 0; i < n; i++) {
+			int diff = (kb.buff[i] & 0xFF) - (query[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		if (kb.len >= query.length) {
+			// key equal to or longer than the query and the line has more fields
+			return 1;
+		}
+
+		int next = query[kb.len] & 0xFF;
+
+		if (next != SEP) {
+			return SEP - next;
+		}
+
+		// query continues past the key with a tab, compare the full line
+		return getLine(kb.index).compareTo(queryStr);
+	}
+
+	protected boolean lineStartsWith(KeyBuffer kb, byte[] prefix, String prefixStr)
+	{
+		if (prefix.length > kb.len) {
+			if ((prefix[kb.len] & 0xFF) != SEP) {
+				return false;
+			}
+			return getLine(kb.index).startsWith(prefixStr);
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (kb.buff[i] != prefix[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return index of the first line that is >= key, or size() if none
+	 */
+	public int lowerBound(String key)
+	{
+		byte[] query = key.getBytes(UTF8);
+		KeyBuffer kb = new KeyBuffer();
+
+		// Find first restart block whose first line is >= key
+		int lo = 0, hi = restarts.length;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			kb.readKey(mid * RESTART_INTERVAL);
+
+			if (compareLine(kb, query, key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		if (lo == 0) {
+			return 0;
+		}
+
+		// Scan the previous block
+		int end = Math.min(lo * RESTART_INTERVAL, size);
+
+		for (int i = (lo - 1) * RESTART_INTERVAL + 1; i < end; i++) {
+			kb.readKey(i);
+
+			if (compareLine(kb, query, key) >= 0) {
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * @return index of the last line that is < key, or the first line if none,
+	 * matching {@link SortedTextFile#getRecordIteratorLT(String)}
+	 */
+	public int floorIndex(String key)
+	{
+		return Math.max(lowerBound(key) - 1, 0);
+	}
+
+	/**
+	 * @return index of the first line after the lines starting with prefix
+	 */
+	public int prefixEnd(String prefix)
+	{
+		byte[] query = prefix.getBytes(UTF8);
+		KeyBuffer kb = new KeyBuffer();
+
+		int lo = lowerBound(prefix), hi = size;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			kb.readKey(mid);
+
+			if (lineStartsWith(kb, query, prefix)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
+	/**
+	 * @return index of the first line whose line count is >= lineNumber,
+	 * or the last line if none
+	 */
+	public int lineNumberIndex(long lineNumber)
+	{
+		int lo = 0, hi = size;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (lineCounts[mid] < lineNumber) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return Math.min(lo, size - 1);
+	}
+
+	/**
+	 * Difference in line counts between the two summary lines, as in
+	 * {@link ZipNumIndex#getNumLines(String[])} for two lines
+	 */
+	public int getNumLines(int startIndex, int endIndex)
+	{
+		if ((startIndex < 0) || (endIndex < 0) || (lineCounts[startIndex] < 0)) {
+			return 0;
+		}
+
+		return lineCounts[endIndex] - lineCounts[startIndex];
+	}
+
+	/**
+	 * Equivalent of {@link ZipNumIndex#getNumLines(String, String)}
+	 */
+	public int getNumLines(String start, String end)
+	{
+		if (size == 0) {
+			return 0;
+		}
+
+		int startCount = 0;
+
+		if ((start != null) && !start.isEmpty()) {
+			int startIndex = lowerBound(start);
+
+			// Previous line is at the start of the file, so no start line
+			if ((startIndex > 1) && (startIndex < size)) {
+				startCount = lineCounts[startIndex];
+			}
+		}
+
+		int endIndex = size - 1;
+
+		if ((end != null) && !end.isEmpty()) {
+			endIndex = Math.min(lowerBound(end) + 1, size - 1);
+		}
+
+		return lineCounts[endIndex] - startCount;
+	}
+
+	/**
+	 * Equivalent of {@link SortedTextFile#getRange(String, String)}
+	 */
+	public String[] getRange(String start, String end)
+	{
+		String startLine = null, endLine = null;
+
+		if (size > 0) {
+			startLine = getLine(start.isEmpty() ? 0 : floorIndex(start));
+			endLine = getLine(end.isEmpty() ? (size - 1) : floorIndex(end));
+		}
+
+		return new String[]{startLine, endLine};
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public String getKey(int index)
+	{
+		KeyBuffer kb = new KeyBuffer();
+		kb.readKey(index);
+		return kb.getKey();
+	}
+
+	public String getPartId(int index)
+	{
+		return partIds[partOrdinals[index]];
+	}
+
+	public int getPartOrdinal(int index)
+	{
+		return partOrdinals[index];
+	}
+
+	public long getOffset(int index)
+	{
+		return offsets[index];
+	}
+
+	public int getLength(int index)
+	{
+		return lengths[index];
+	}
+
+	/**
+	 * @return line count field or -1 if not present
+	 */
+	public int getLineCount(int index)
+	{
+		return lineCounts[index];
+	}
+
+	public String getLine(int index)
+	{
+		KeyBuffer kb = new KeyBuffer();
+		kb.readKey(index);
+		return buildLine(kb);
+	}
+
+	protected String buildLine(KeyBuffer kb)
+	{
+		int index = kb.index;
+		StringBuilder sb = new StringBuilder(kb.len + 48);
+		sb.append(kb.getKey());
+		sb.append(SEP);
+
+		String tail = irregularTails.get(index);
+
+		if (tail != null) {
+			sb.append(tail);
+			return sb.toString();
+		}
+
+		sb.append(partIds[partOrdinals[index]]);
+		sb.append(SEP);
+		sb.append(offsets[index]);
+		sb.append(SEP);
+		sb.append(lengths[index]);
+
+		if (lineCounts[index] >= 0) {
+			sb.append(SEP);
+			sb.append(lineCounts[index]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return iterator over the lines [fromIndex, toIndex), descending if reverse
+	 */
+	public Cursor cursor(int fromIndex, int toIndex, boolean reverse)
+	{
+		return new Cursor(fromIndex, toIndex, reverse);
+	}
+
+	/**
+	 * Iterator over a range of summary lines. The lines can either be read
+	 * as full Strings or directly as pre-parsed {@link SummaryLine}s.
+	 */
+	public class Cursor implements CloseableIterator<String>
+	{
+		protected final int fromIndex, toIndex;
+		protected final boolean reverse;
+		protected int next;
+		protected final KeyBuffer kb = new KeyBuffer();
+
+		protected Cursor(int fromIndex, int toIndex, boolean reverse)
+		{
+			this.fromIndex = Math.max(fromIndex, 0);
+			this.toIndex = Math.min(toIndex, size);
+			this.reverse = reverse;
+			this.next = (reverse ? this.toIndex - 1 : this.fromIndex);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return (next >= fromIndex) && (next < toIndex);
+		}
+
+		protected int advance()
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			int curr = next;
+			next += (reverse ? -1 : 1);
+			return curr;
+		}
+
+		@Override
+		public String next() {
+			kb.readKey(advance());
+			return buildLine(kb);
+		}
+
+		/**
+		 * @return next line, without building the key or full line string
+		 */
+		public SummaryLine nextSummaryLine()
+		{
+			int index = advance();
+			return new SummaryLine(partIds[partOrdinals[index]], offsets[index], lengths[index]);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			next = -1;
+		}
+	}
+}
@@ -1,11 +1,11 @@
 package org.archive.format.gzip.zipnum;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.util.binsearch.SeekableLineReader;
-import org.archive.util.binsearch.SeekableLineReaderIterator;
 import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
@@ -45,13 +45,79 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 		}
 	}
 	
+	/**
+	 * A planned load of one or more contiguous blocks from a single part.
+	 * Calling the load fetches the blocks and returns an iterator over their lines.
+	 */
+	public class BlockLoad implements Callable<CloseableIterator<String>>
+	{
+		protected final String partId;
+		protected final long startOffset;
+		protected final int totalLength;
+		protected final int numBlocks;
+		
+		protected volatile boolean loaded = false;
+		
+		protected BlockLoad(String partId, long startOffset, int totalLength, int numBlocks)
+		{
+			this.partId = partId;
+			this.startOffset = startOffset;
+			this.totalLength = totalLength;
+			this.numBlocks = numBlocks;
+		}
+		
+		@Override
+		public CloseableIterator<String> call()
+		{
+			SeekableLineReader currReader = zipnumIndex.loadBlock(partId, startOffset, totalLength);
+			
+			if ((currReader == null) && zipnumIndex.isRequired()) {
+				throw new RuntimeIOException("Failed to load shards for: " + partId);
+			}
+			
+			loaded = (currReader != null);
+			
+			CloseableIterator<String> slrIter = zipnumIndex.getBlockLineIterator(currReader);
+			
+			if (params.isReverse()) {
+				slrIter = new LineBufferingIterator(slrIter, zipnumIndex.getCdxLinesPerBlock(), true);
+			}
+			
+			return slrIter;
+		}
+		
+		public boolean isLoaded()
+		{
+			return loaded;
+		}
+		
+		public int getNumBlocks()
+		{
+			return numBlocks;
+		}
+	}
+	
 	@Override
 	public CloseableIterator<String> getNextInner() {
+		BlockLoad load = nextBlockLoad();
+		
+		if (load == null) {
+			return null;
+		}
+		
+		CloseableIterator<String> slrIter = load.call();
+		loadDone(load);
+		return slrIter;
+	}
+	
+	/**
+	 * Plan the next load from the summary lines, without loading anything
+	 * @return the next load, or null if no more blocks 
+	 */
+	protected BlockLoad nextBlockLoad() {
 					
 		if (isFirst) {
-			if (summaryIterator.hasNext()) {
-				nextLine = new SummaryLine(summaryIterator.next());
-			}
+			nextLine = readSummaryLine();
 			isFirst = false;
 		}
 		
@@ -78,11 +144,7 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 				return null;
 			}
 			
-			if (summaryIterator.hasNext()) {
-				nextLine = new SummaryLine(summaryIterator.next());
-			} else {
-				nextLine = null;
-			}
+			nextLine = readSummaryLine();
 		
 			if (currLine.getNumFields() < 3) {
 				LOGGER.severe("Bad line(" + currLine.toString() +") ");
@@ -114,26 +176,36 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 			LOGGER.fine("Loading " + numBlocks + " blocks - " + startOffset + ":" + totalLength + " from " + currPartId);
 		}
 		
-		//currReader = initReader(currPartId);
-		//currReader = zipnumIndex.createReader(currPartId);
-		//currReader.seekWithMaxRead(startOffset, true, totalLength);
-		SeekableLineReader currReader = zipnumIndex.doBlockLoad(currPartId, startOffset, totalLength);
+		// Count as loaded until known otherwise, so that loads planned
+		// ahead respect maxBlocks
+		totalBlocks += numBlocks;
 		
-		if ((currReader == null) && zipnumIndex.isRequired()) {
-			throw new RuntimeIOException("Failed to load shards for: " + currPartId);
+		return new BlockLoad(currPartId, startOffset, totalLength, numBlocks);
+	}
+	
+	/**
+	 * Must be called once a planned load has been performed
+	 */
+	protected void loadDone(BlockLoad load)
+	{
+		// Failed optional loads don't count towards maxBlocks
+		if (!load.isLoaded()) {
+			totalBlocks -= load.getNumBlocks();
 		}
+	}
 		
-		if (currReader != null) {
-			totalBlocks += numBlocks;
-		}	
-		
-		CloseableIterator<String> slrIter = new SeekableLineReaderIterator(currReader, zipnumIndex.isRequired());
+	protected SummaryLine readSummaryLine()
+	{
+		if (!summaryIterator.hasNext()) {
+			return null;
+		}
 		
-		if (params.isReverse()) {
-			slrIter = new LineBufferingIterator(slrIter, zipnumIndex.getCdxLinesPerBlock(), true);
+		// Resident summary lines are already parsed
+		if (summaryIterator instanceof ResidentSummaryIndex.Cursor) {
+			return ((ResidentSummaryIndex.Cursor)summaryIterator).nextSummaryLine();
 		}
 		
-		return slrIter;
+		return new SummaryLine(summaryIterator.next());
 	}
 		
 //	protected SeekableLineReader initReader(String partId) throws IOException
@@ -1,5 +1,7 @@
 package org.archive.format.gzip.zipnum;
 
+import java.util.List;
+
 import org.archive.format.cdx.FieldSplitLine;
 
 public class SummaryLine extends FieldSplitLine
@@ -20,6 +22,34 @@ public class SummaryLine extends FieldSplitLine
 		//timestamp = makeTimestamp(parts[0]);
 	}
 	
+	/**
+	 * Pre-parsed line, eg. from a ResidentSummaryIndex. Fields are not split
+	 * and the full line is not built.
+	 */
+	public SummaryLine(String partId, long offset, int length)
+	{
+		super(null, (List<String>)null, null);
+		this.partId = partId;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	@Override
+	public int getNumFields()
+	{
+		// pre-parsed lines always have key, part, offset and length
+		return (fields != null) ? super.getNumFields() : 4;
+	}
+	
+	@Override
+	public String toString()
+	{
+		if (fields == null) {
+			return partId + "\t" + offset + "\t" + length;
+		}
+		return super.toString();
+	}
+	
 //		String makeTimestamp(String key)
 //		{
 //			if (params.getTimestampDedupLength() <= 0) {
@@ -36,7 +66,7 @@ public class SummaryLine extends FieldSplitLine
 	
 	public boolean isContinuous(SummaryLine next)
 	{
-		if (next == null || next.fullLine == null) {
+		if (next == null || next.partId == null) {
 			return false;
 		}
 		
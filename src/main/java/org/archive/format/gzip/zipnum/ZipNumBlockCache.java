@@ -0,0 +1,221 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.ByteBufferInputStream;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.MappedSeekableLineReader;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Size-bounded cache of decompressed ZipNum blocks, keyed by
+ * (index, part id, offset, length), which may be shared by several
+ * ZipNumIndex instances.
+ *
+ * Concurrent requests for the same block are coalesced into a single load.
+ * The inflated blocks may optionally be stored off-heap in direct buffers.
+ */
+public class ZipNumBlockCache {
+
+	final static Logger LOGGER = Logger.getLogger(ZipNumBlockCache.class.getName());
+
+	public final static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	protected final Cache<BlockKey, ByteBuffer> cache;
+	protected final boolean offHeap;
+	protected int readerBlockSize = 8192;
+
+	public static class BlockKey
+	{
+		final String indexId;
+		final String partId;
+		final long offset;
+		final int length;
+
+		public BlockKey(String indexId, String partId, long offset, int length)
+		{
+			this.indexId = indexId;
+			this.partId = partId;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof BlockKey)) {
+				return false;
+			}
+
+			BlockKey other = (BlockKey)obj;
+
+			return (offset == other.offset) && (length == other.length) &&
+					partId.equals(other.partId) && indexId.equals(other.indexId);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = indexId.hashCode();
+			hash = (hash * 31) + partId.hashCode();
+			hash = (hash * 31) + (int)(offset ^ (offset >>> 32));
+			hash = (hash * 31) + length;
+			return hash;
+		}
+
+		@Override
+		public String toString()
+		{
+			return indexId + ":" + partId + ":" + offset + ":" + length;
+		}
+	}
+
+	// Thrown from the loader when an optional block could not be loaded,
+	// so that nothing is cached
+	static class BlockNotLoadedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	public ZipNumBlockCache()
+	{
+		this(DEFAULT_MAX_BYTES, false);
+	}
+
+	public ZipNumBlockCache(long maxBytes, boolean offHeap)
+	{
+		this.offHeap = offHeap;
+
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<BlockKey, ByteBuffer>() {
+					@Override
+					public int weigh(BlockKey key, ByteBuffer value) {
+						return value.capacity();
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Return a reader over the inflated block, loading and caching it if needed.
+	 * If another thread is already loading the same block, wait for it.
+	 *
+	 * @param loader loads a reader positioned at the start of the decompressed
+	 * block, may return null if the block could not be loaded
+	 * @return reader over the block, or null if it could not be loaded
+	 */
+	public SeekableLineReader getBlock(BlockKey key, final Callable<SeekableLineReader> loader) throws IOException
+	{
+		ByteBuffer buffer = null;
+
+		try {
+			buffer = cache.get(key, new Callable<ByteBuffer>() {
+				@Override
+				public ByteBuffer call() throws Exception {
+					SeekableLineReader reader = loader.call();
+
+					if (reader == null) {
+						throw new BlockNotLoadedException();
+					}
+
+					return readFully(reader);
+				}
+			});
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof BlockNotLoadedException) {
+				return null;
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+
+		MappedSeekableLineReader reader = new MappedSeekableLineReader(new ByteBufferInputStream(buffer.duplicate()), readerBlockSize);
+		reader.seek(0);
+		return reader;
+	}
+
+	protected ByteBuffer readFully(SeekableLineReader reader) throws IOException
+	{
+		byte[] bytes;
+		InputStream is = reader.getInputStream();
+
+		try {
+			bytes = ByteStreams.toByteArray(is);
+		} finally {
+			// closes the reader
+			is.close();
+		}
+
+		if (!offHeap) {
+			return ByteBuffer.wrap(bytes);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		buffer.flip();
+		return buffer;
+	}
+
+	public void invalidateAll()
+	{
+		cache.invalidateAll();
+	}
+
+	public long size()
+	{
+		return cache.size();
+	}
+
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+
+	public long getHitCount()
+	{
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.stats().missCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.stats().hitRate();
+	}
+
+	public boolean isOffHeap()
+	{
+		return offHeap;
+	}
+
+	public int getReaderBlockSize() {
+		return readerBlockSize;
+	}
+
+	public void setReaderBlockSize(int readerBlockSize) {
+		this.readerBlockSize = readerBlockSize;
+	}
+}
@@ -1,10 +1,6 @@
 package org.archive.format.gzip.zipnum;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,13 +11,14 @@ import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
+import org.archive.util.binsearch.impl.http.CoalescingHTTPSLRFactory;
 import org.archive.util.io.RuntimeIOException;
 
 public class ZipNumBlockLoader {
 		
 	private final static Logger LOGGER = Logger.getLogger(ZipNumBlockLoader.class.getName());
 	
-	protected Map<String, SeekableLineReaderFactory> fileFactoryMap = null;
+	protected BlockReaderPool readerPool = new BlockReaderPool();
 	protected HTTPSeekableLineReaderFactory httpFactory = null;
 	
 	// Request signing
@@ -46,6 +43,10 @@ public class ZipNumBlockLoader {
 	protected int numRetries = -1;
 	
 	protected boolean staleChecking = false;
+	
+	// Merge concurrent range requests for adjacent blocks
+	protected boolean coalesceRanges = false;
+	protected int coalesceWindowMS = CoalescingHTTPSLRFactory.DEFAULT_WINDOW_MS;
 
 	
 	public ZipNumBlockLoader()
@@ -53,44 +54,26 @@ public class ZipNumBlockLoader {
 
 	}
 	
-	private static ThreadLocal<Map<String, SeekableLineReader> > slrMap = new ThreadLocal<Map<String, SeekableLineReader> >()
-	{
-		@Override
-		protected Map<String, SeekableLineReader> initialValue() {
-			return new HashMap<String, SeekableLineReader>();
-		}
-	};
-	
+	/**
+	 * Close any readers opened by the current thread that are still open
+	 */
 	public static void closeAllReaders()
 	{
-		for (Entry<String, SeekableLineReader> entry : slrMap.get().entrySet()) {
-			try {
-				SeekableLineReader reader = entry.getValue();
-				if (!reader.isClosed()) {
-					LOGGER.warning("Unclosed reader for: " + entry.getKey());
-					reader.close();
-				}
-			} catch (IOException io) {
-				
-			}
-		}
-		
-		slrMap.get().clear();
+		BlockReaderPool.closeThreadReaders();
 	}
 	
 	public SeekableLineReader createBlockReader(String uri) throws IOException
 	{
-		SeekableLineReader reader = null;
-		
 		if (GeneralURIStreamFactory.isHttp(uri)) {
-			reader = getHttpReader(uri);
+			return readerPool.borrow(uri, null, new BlockReaderPool.ReaderCreator() {
+				@Override
+				public SeekableLineReader create(String location, SeekableLineReaderFactory factory) throws IOException {
+					return getHttpReader(location);
+				}
+			});
 		} else {
-			reader = getFileReader(uri);
+			return getFileReader(uri);
 		}
-		
-		slrMap.get().put(uri, reader);
-				
-		return reader;
 	}
 	
 	protected HTTPSeekableLineReader getHttpReader(String url) throws IOException {
@@ -106,6 +89,12 @@ public class ZipNumBlockLoader {
 			if (numRetries >= 0) {
 				httpFactory.setNumRetries(numRetries);
 			}
+			
+			if (coalesceRanges) {
+				CoalescingHTTPSLRFactory coalescingFactory = new CoalescingHTTPSLRFactory(httpFactory);
+				coalescingFactory.setWindowMS(coalesceWindowMS);
+				httpFactory = coalescingFactory;
+			}
 		}
 		
 		HTTPSeekableLineReader reader = httpFactory.get(url);
@@ -126,22 +115,19 @@ public class ZipNumBlockLoader {
 	}
 	
 	protected SeekableLineReader getFileReader(String filename) throws IOException {
-		
-		if (fileFactoryMap == null) {
-			fileFactoryMap = new HashMap<String, SeekableLineReaderFactory>();
-			fileFactoryMap = Collections.synchronizedMap(fileFactoryMap);
-		}
-		
-		SeekableLineReaderFactory factory = fileFactoryMap.get(filename);
-		
-		if (factory == null) {
-			factory = GeneralURIStreamFactory.createSeekableStreamFactory(filename, useNio);
-			fileFactoryMap.put(filename, factory);
-		}
-		
-		SeekableLineReader reader = factory.get();
-		reader.setBufferFully(bufferFully);
-		return reader;
+		return readerPool.borrow(filename, new BlockReaderPool.FactoryCreator() {
+			@Override
+			public SeekableLineReaderFactory create(String location) throws IOException {
+				return GeneralURIStreamFactory.createSeekableStreamFactory(location, useNio);
+			}
+		}, new BlockReaderPool.ReaderCreator() {
+			@Override
+			public SeekableLineReader create(String location, SeekableLineReaderFactory factory) throws IOException {
+				SeekableLineReader reader = factory.get();
+				reader.setBufferFully(bufferFully);
+				return reader;
+			}
+		});
 	}
 	
 	public SeekableLineReader attemptLoadBlock(String location, long startOffset, int totalLength, boolean decompress, boolean isRequired)
@@ -191,25 +177,12 @@ public class ZipNumBlockLoader {
 	
 	public void closeFileFactory(String filename) throws IOException
 	{
-		if (fileFactoryMap == null) {
-			return;
-		}
-		
-		SeekableLineReaderFactory factory = fileFactoryMap.remove(filename);
-		
-		if (factory != null) {
-			factory.close();
-		}
+		readerPool.closeFactory(filename);
 	}
 	
 	public void close() throws IOException
 	{
-		if (fileFactoryMap != null) {
-			for (SeekableLineReaderFactory factory : fileFactoryMap.values()) {
-				factory.close();
-			}
-			fileFactoryMap = null;
-		}
+		readerPool.close();
 		
 		if (httpFactory != null) {
 			httpFactory.close();
@@ -291,6 +264,38 @@ public class ZipNumBlockLoader {
 		return this.staleChecking;
 	}
 
+	public boolean isCoalesceRanges() {
+		return coalesceRanges;
+	}
+
+	/**
+	 * If set, concurrent block loads of nearby ranges from the same http url
+	 * are merged into a single range request
+	 */
+	public void setCoalesceRanges(boolean coalesceRanges) {
+		this.coalesceRanges = coalesceRanges;
+	}
+
+	public int getCoalesceWindowMS() {
+		return coalesceWindowMS;
+	}
+
+	public void setCoalesceWindowMS(int coalesceWindowMS) {
+		this.coalesceWindowMS = coalesceWindowMS;
+	}
+
+	public BlockReaderPool getReaderPool() {
+		return readerPool;
+	}
+
+	/**
+	 * Set the pool for block readers and file factories, which may be shared
+	 * between loaders with the same useNio setting
+	 */
+	public void setReaderPool(BlockReaderPool readerPool) {
+		this.readerPool = readerPool;
+	}
+
 	public String getHttpLib() {
 		return httpLib;
 	}
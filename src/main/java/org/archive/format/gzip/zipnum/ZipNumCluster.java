@@ -76,7 +76,7 @@ public class ZipNumCluster extends ZipNumIndex {
 						Thread.sleep(checkInterval);
 						
 						if (summary != null) {
-							summary.reloadFactory();
+							reloadSummary();
 						}
 					}
 					
@@ -493,9 +493,14 @@ public class ZipNumCluster extends ZipNumIndex {
 	public long computeTotalLines()
 	{		
 		long numLines = 0;
+		ResidentSummaryIndex resident = residentIndex;
 		
 		try {
-			numLines = this.getNumLines(summary.getRange("", ""));
+			if (resident != null) {
+				numLines = resident.getNumLines(0, resident.size() - 1);
+			} else {
+				numLines = this.getNumLines(summary.getRange("", ""));
+			}
 		} catch (IOException e) {
 			LOGGER.warning(e.toString());
 			return 0;
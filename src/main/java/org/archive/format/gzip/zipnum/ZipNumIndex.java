@@ -1,18 +1,33 @@
 package org.archive.format.gzip.zipnum;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
-import org.archive.format.cdx.CDXInputSource;
+import org.archive.format.cdx.BloomFilteredCDXSource;
+import org.archive.format.cdx.CDXBloomFilter;
 import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.binsearch.FieldExtractingSLR;
+import org.archive.util.binsearch.ParallelRangeScanner;
 import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderIterator;
 import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.BoundedStringIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
 import org.archive.util.iterator.StartBoundedStringIterator;
 
-public class ZipNumIndex implements CDXInputSource {
+public class ZipNumIndex implements BloomFilteredCDXSource {
 	final static Logger LOGGER = Logger.getLogger(ZipNumIndex.class.getName());
 
 	protected String pathRoot;
@@ -20,12 +35,34 @@ public class ZipNumIndex implements CDXInputSource {
 	protected String summaryFile;
 	protected int binsearchBlockSize = 8192;
 	protected int readaheadSize = 512;
+	protected int midpointCacheSize = 0;
 	protected SortedTextFile summary;
 	
+	// Optional in-memory copy of the summary, used instead of searching the file
+	protected boolean residentSummary = false;
+	protected volatile ResidentSummaryIndex residentIndex;
+	
 	protected boolean required = true;
 	
 	protected ZipNumBlockLoader blockLoader;
 	
+	// Number of block loads to run ahead of the current block, 0 to load serially
+	protected int prefetchDepth = 0;
+	protected int prefetchThreads = 8;
+	protected int prefetchQueueSize = 256;
+	protected ExecutorService prefetchExecutor;
+	/** whether prefetchExecutor was made here, and so is ours to shut down */
+	protected boolean ownPrefetchExecutor = false;
+	
+	// Optional cache of decompressed blocks, may be shared between indexes
+	protected ZipNumBlockCache blockCache;
+	protected volatile int summaryGeneration = 0;
+	
+	// Optional filter for skipping queries with no matches
+	protected String bloomFilterPath;
+	protected double bloomFilterFpp = CDXBloomFilter.DEFAULT_FPP;
+	protected volatile CDXBloomFilter bloomFilter;
+	
 	// Used only for reference / user info
 	protected int cdxLinesPerBlock = 3000;
 	
@@ -50,11 +87,123 @@ public class ZipNumIndex implements CDXInputSource {
 		if (summaryFile != null) {
 			this.summary = new SortedTextFile(GeneralURIStreamFactory.createSeekableStreamFactory(summaryFile, readaheadSize, useNio));
 			this.summary.setBinsearchBlockSize(binsearchBlockSize);
+			this.summary.setMidpointCacheSize(midpointCacheSize);
+			
+			if (residentSummary) {
+				this.residentIndex = ResidentSummaryIndex.load(summary);
+			}
 		}
 						
 		if (blockLoader == null) {
 			this.blockLoader = new ZipNumBlockLoader();
 		}
+		
+		if ((prefetchDepth > 0) && (prefetchExecutor == null)) {
+			this.prefetchExecutor = createPrefetchExecutor(prefetchThreads, prefetchQueueSize);
+			this.ownPrefetchExecutor = true;
+		}
+		
+		if (bloomFilterPath != null) {
+			initBloomFilter();
+		}
+	}
+	
+	/**
+	 * Load or build the filter at bloomFilterPath, by default the summary
+	 * path + .bloom. Building reads every cdx line.
+	 */
+	public void initBloomFilter() throws IOException
+	{
+		String path = bloomFilterPath;
+		File source = null;
+		
+		if (summaryFile != null && !GeneralURIStreamFactory.isHttp(summaryFile)) {
+			source = new File(summaryFile);
+			
+			if (path == null) {
+				path = summaryFile + CDXBloomFilter.DEFAULT_SUFFIX;
+			}
+		}
+		
+		if (path == null) {
+			return;
+		}
+		
+		bloomFilter = CDXBloomFilter.loadOrBuild(new File(path), source, new CDXBloomFilter.LineSource() {
+			@Override
+			public CloseableIterator<String> open() throws IOException {
+				return getCDXIterator(summary.getRecordIterator(0L));
+			}
+		}, bloomFilterFpp);
+	}
+	
+	/**
+	 * Bounded pool of daemon threads for block prefetching. If the queue is
+	 * full, loads are run on the calling thread
+	 */
+	public static ExecutorService createPrefetchExecutor(int numThreads, int queueSize)
+	{
+		ThreadFactory threadFactory = new ThreadFactory() {
+			final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ZipNumPrefetch-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+				threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/**
+	 * Stop prefetching. An executor given by setPrefetchExecutor() is the
+	 * caller's, and is left running.
+	 */
+	public void shutdownPrefetch()
+	{
+		if (prefetchExecutor != null) {
+			if (ownPrefetchExecutor) {
+				prefetchExecutor.shutdownNow();
+			}
+			prefetchExecutor = null;
+			ownPrefetchExecutor = false;
+		}
+	}
+	
+	/**
+	 * Reload the summary file, and the resident summary if enabled
+	 */
+	public void reloadSummary()
+	{
+		summary.reloadFactory();
+		
+		// blocks cached for the previous summary are no longer used
+		summaryGeneration++;
+		
+		if (residentSummary) {
+			try {
+				this.residentIndex = ResidentSummaryIndex.load(summary);
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+		}
+		
+		// the filter no longer matches the new summary
+		if (bloomFilter != null) {
+			bloomFilter = null;
+			
+			try {
+				initBloomFilter();
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+		}
 	}
 	
 	public static ZipNumIndex createIndexWithSummaryPath(String summaryFile) throws IOException
@@ -133,6 +282,12 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public int getNumLines(String start, String end) throws IOException
 	{
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if (resident != null) {
+			return resident.getNumLines(start, end);
+		}
+		
 		SeekableLineReader slr = null;
 		String startLine = null;
 		String endLine = null;
@@ -195,7 +350,14 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public PageResult getNthPage(String[] startEnd, int page, int pageSize, boolean numPagesOnly) throws IOException
 	{
-		String startEndIdx[] = getSummary().getRange(startEnd[0], startEnd[1]);
+		ResidentSummaryIndex resident = residentIndex;
+		String startEndIdx[];
+		
+		if (resident != null) {
+			startEndIdx = resident.getRange(startEnd[0], startEnd[1]);
+		} else {
+			startEndIdx = getSummary().getRange(startEnd[0], startEnd[1]);
+		}
 		
 		int firstLineNumber = extractLineCount(startEndIdx[0]);
 		int endLineNumber = extractLineCount(startEndIdx[1]) + 1;
@@ -236,6 +398,12 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public String getNthLine(String lineNumber, int lineField) throws IOException
 	{
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if ((resident != null) && (lineField == LINE_COUNT_FIELD) && (resident.size() > 0)) {
+			return resident.getLine(resident.lineNumberIndex(Long.parseLong(lineNumber)));
+		}
+		
 		SeekableLineReader slr = null;
 		
 		try {
@@ -309,7 +477,14 @@ public class ZipNumIndex implements CDXInputSource {
 	public CloseableIterator<String> getClusterRange(String start, String end, boolean inclusive, boolean includePrevLine) throws IOException
 	{
 		CloseableIterator<String> iter = null;
-		iter = summary.getRecordIterator(start, includePrevLine);
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if (resident != null) {
+			int from = (includePrevLine ? resident.floorIndex(start) : resident.lowerBound(start));
+			iter = resident.cursor(from, resident.size(), false);
+		} else {
+			iter = summary.getRecordIterator(start, includePrevLine);
+		}
 		return wrapEndIterator(iter, end, inclusive);
 		//return wrapStartEndIterator(iter, start, end, inclusive);
 	}
@@ -360,6 +535,52 @@ public class ZipNumIndex implements CDXInputSource {
 		return blocklines;
 	}
 	
+	/**
+	 * Split the cdx lines in [start, end) into up to numSplits groups of
+	 * whole blocks, to be scanned concurrently by a {@link ParallelRangeScanner}
+	 */
+	public ParallelRangeScanner.SplitSource getRangeSplits(final String start, final String end, int numSplits, final ZipNumParams params) throws IOException
+	{
+		CloseableIterator<String> summaryIter = null;
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if (resident != null) {
+			summaryIter = resident.cursor(resident.floorIndex(start), resident.size(), false);
+		} else {
+			summaryIter = summary.getRecordIteratorLT(start);
+		}
+		
+		if ((end != null) && !end.isEmpty()) {
+			summaryIter = wrapEndIterator(summaryIter, end, false);
+		}
+		
+		final List<String> blocks = new ArrayList<String>();
+		
+		try {
+			while (summaryIter.hasNext()) {
+				blocks.add(summaryIter.next());
+			}
+		} finally {
+			summaryIter.close();
+		}
+		
+		final int splits = Math.max(1, Math.min(numSplits, blocks.size()));
+		
+		return new ParallelRangeScanner.SplitSource() {
+			@Override
+			public int getNumSplits() {
+				return splits;
+			}
+
+			@Override
+			public CloseableIterator<String> openSplit(int split) throws IOException {
+				List<String> splitBlocks = blocks.subList((blocks.size() * split) / splits, (blocks.size() * (split + 1)) / splits);
+				CloseableIterator<String> iter = new CloseableIteratorWrapper<String>(splitBlocks.iterator());
+				return getCDXIterator(iter, start, end, split, splits, params);
+			}
+		};
+	}
+	
 	public static String endKey(String key)
 	{
 		return key + "!";
@@ -367,7 +588,14 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public CloseableIterator<String> getLastBlockCDXLineIterator(String key) throws IOException {
 		// the next line after last key<space> is key! so this will return last key<space> block
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(endKey(key));
+		CloseableIterator<String> summaryIter = null;
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if (resident != null) {
+			summaryIter = resident.cursor(resident.floorIndex(endKey(key)), resident.size(), false);
+		} else {
+			summaryIter = summary.getRecordIteratorLT(endKey(key));
+		}
 		
 		return wrapStartIterator(getCDXIterator(summaryIter), key);
 	}
@@ -381,8 +609,51 @@ public class ZipNumIndex implements CDXInputSource {
 		}
 	}
 	
-	public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params) throws IOException {	
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+	/**
+	 * Summary lines [from, to) from the resident summary, limited to
+	 * maxBlocks lines as a LineBufferingIterator would 
+	 */
+	protected CloseableIterator<String> getResidentSummaryIter(ResidentSummaryIndex resident, int from, int to, ZipNumParams params)
+	{
+		to = Math.max(from, to);
+		
+		if (blockLoader.isBufferFully() && (params != null) && (params.getMaxBlocks() > 0)) {
+			if (params.isReverse()) {
+				return resident.cursor(Math.max(from, to - params.getMaxBlocks()), to, true);
+			} else {
+				to = Math.min(to, from + params.getMaxBlocks());
+			}
+		}
+		
+		return resident.cursor(from, to, false);
+	}
+	
+	public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params) throws IOException {
+		ResidentSummaryIndex resident = residentIndex;
+		CloseableIterator<String> summaryIter = null;
+		
+		if ((resident != null) && (params.getTimestampDedupLength() <= 0)) {
+			int from = resident.floorIndex(key);
+			int to = resident.size();
+			
+			if (end != null && !end.isEmpty()) {
+				to = resident.lowerBound(end);
+			}
+			
+			summaryIter = getResidentSummaryIter(resident, from, to, params);
+			
+			if (params.isReverse()) {
+				return wrapReverseIterator(getCDXIterator(summaryIter, params), start, endKey(key));
+			} else {
+				return wrapStartEndIterator(getCDXIterator(summaryIter, params), start, end, false);
+			}
+		}
+		
+		if (resident != null) {
+			summaryIter = resident.cursor(resident.floorIndex(key), resident.size(), false);
+		} else {
+			summaryIter = summary.getRecordIteratorLT(key);
+		}
 		
 		if (params.getTimestampDedupLength() > 0) {
 			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
@@ -408,8 +679,22 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	//TODO: replace with matchType version
 	public CloseableIterator<String> getCDXIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+		ResidentSummaryIndex resident = residentIndex;
+		CloseableIterator<String> summaryIter = null;
+		
+		if ((resident != null) && (params.getTimestampDedupLength() <= 0)) {
+			int from = resident.floorIndex(key);
+			int to = (exact ? resident.lowerBound(endKey(start)) : resident.prefixEnd(start));
+			
+			summaryIter = getResidentSummaryIter(resident, from, to, params);
+			return wrapStartIterator(getCDXIterator(summaryIter, params), start);
+		}
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+		if (resident != null) {
+			summaryIter = resident.cursor(resident.floorIndex(key), resident.size(), false);
+		} else {
+			summaryIter = summary.getRecordIteratorLT(key);
+		}
 		
 		if (params.getTimestampDedupLength() > 0) {
 			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
@@ -428,13 +713,27 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public CloseableIterator<String> getCDXIterator(String key, ZipNumParams params) throws IOException {
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);		
+		CloseableIterator<String> summaryIter = null;
+		ResidentSummaryIndex resident = residentIndex;
+		
+		if (resident != null) {
+			summaryIter = resident.cursor(resident.floorIndex(key), resident.size(), false);
+		} else {
+			summaryIter = summary.getRecordIteratorLT(key);
+		}
+		
 		return wrapStartIterator(getCDXIterator(summaryIter, params), key);
 	}
 	
 	public CloseableIterator<String> getCDXIterator(CloseableIterator<String> summaryIterator, ZipNumParams params)
 	{
 		SummaryBlockIterator blockIter = new SummaryBlockIterator(summaryIterator, this, params);
+		ExecutorService executor = prefetchExecutor;
+		
+		if ((prefetchDepth > 0) && (executor != null)) {
+			return new MultiBlockIterator(new PrefetchingBlockIterator(blockIter, executor, prefetchDepth));
+		}
+		
 		MultiBlockIterator zipIter = new MultiBlockIterator(blockIter);
 		return zipIter;
 	}
@@ -444,6 +743,30 @@ public class ZipNumIndex implements CDXInputSource {
 		return getCDXIterator(summaryIterator, null);
 	}
 	
+	public CDXBloomFilter getBloomFilter() {
+		return bloomFilter;
+	}
+
+	public String getBloomFilterPath() {
+		return bloomFilterPath;
+	}
+
+	/**
+	 * If set, a bloom filter over the cdx keys is loaded from this path
+	 * on init(), or built and saved there if missing or older than the summary
+	 */
+	public void setBloomFilterPath(String bloomFilterPath) {
+		this.bloomFilterPath = bloomFilterPath;
+	}
+
+	public double getBloomFilterFpp() {
+		return bloomFilterFpp;
+	}
+
+	public void setBloomFilterFpp(double bloomFilterFpp) {
+		this.bloomFilterFpp = bloomFilterFpp;
+	}
+
 	public void setSummaryFile(String summaryFile) {
 		this.summaryFile = summaryFile;
 	}
@@ -457,6 +780,80 @@ public class ZipNumIndex implements CDXInputSource {
 		return summary;
 	}
 
+	/**
+	 * @return the in-memory summary, or null if not enabled
+	 */
+	public ResidentSummaryIndex getResidentIndex()
+	{
+		return residentIndex;
+	}
+
+	public boolean isResidentSummary() {
+		return residentSummary;
+	}
+
+	/**
+	 * If set, the summary file is loaded into memory on init() and all
+	 * summary lookups are done against the in-memory copy
+	 */
+	public void setResidentSummary(boolean residentSummary) {
+		this.residentSummary = residentSummary;
+	}
+
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * Number of block loads to issue ahead of the block being read,
+	 * 0 (default) to load blocks one at a time
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		this.prefetchDepth = prefetchDepth;
+	}
+
+	public int getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	public int getPrefetchQueueSize() {
+		return prefetchQueueSize;
+	}
+
+	public void setPrefetchQueueSize(int prefetchQueueSize) {
+		this.prefetchQueueSize = prefetchQueueSize;
+	}
+
+	public ExecutorService getPrefetchExecutor() {
+		return prefetchExecutor;
+	}
+
+	/**
+	 * Use an existing executor for prefetching, eg. to share between indexes
+	 */
+	public void setPrefetchExecutor(ExecutorService prefetchExecutor) {
+		if (ownPrefetchExecutor && (this.prefetchExecutor != null)) {
+			this.prefetchExecutor.shutdownNow();
+		}
+		this.prefetchExecutor = prefetchExecutor;
+		this.ownPrefetchExecutor = false;
+	}
+
+	public ZipNumBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * Cache decompressed blocks in the given cache, null to disable
+	 */
+	public void setBlockCache(ZipNumBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
 	}
@@ -469,7 +866,15 @@ public class ZipNumIndex implements CDXInputSource {
         this.binsearchBlockSize = binsearchBlockSize;
     }
 
-    public int getReadaheadSize() {
+    public int getMidpointCacheSize() {
+		return midpointCacheSize;
+	}
+
+	public void setMidpointCacheSize(int midpointCacheSize) {
+		this.midpointCacheSize = midpointCacheSize;
+	}
+
+	public int getReadaheadSize() {
 		return readaheadSize;
 	}
 
@@ -511,6 +916,47 @@ public class ZipNumIndex implements CDXInputSource {
 		return gzFile;
 	}
 	
+	/**
+	 * Load the decompressed block(s), from the block cache if enabled
+	 */
+	SeekableLineReader loadBlock(final String partId, final long startOffset, final int totalLength) {
+		ZipNumBlockCache cache = blockCache;
+		
+		if (cache == null) {
+			return doBlockLoad(partId, startOffset, totalLength);
+		}
+		
+		String indexId = (summaryFile != null ? summaryFile : pathRoot) + "#" + summaryGeneration;
+		ZipNumBlockCache.BlockKey key = new ZipNumBlockCache.BlockKey(indexId, partId, startOffset, totalLength);
+		
+		try {
+			return cache.getBlock(key, new Callable<SeekableLineReader>() {
+				@Override
+				public SeekableLineReader call() {
+					return doBlockLoad(partId, startOffset, totalLength);
+				}
+			});
+		} catch (IOException io) {
+			String msg = io.toString() + " -- " + key;
+			
+			if (isRequired()) {
+				throw new RuntimeIOException(msg);
+			}
+			
+			LOGGER.warning(msg);
+			return null;
+		}
+	}
+	
+	/**
+	 * Iterator over the cdx lines of loaded block(s), which are empty if
+	 * the reader is null
+	 */
+	protected CloseableIterator<String> getBlockLineIterator(SeekableLineReader reader)
+	{
+		return new SeekableLineReaderIterator(reader, isRequired());
+	}
+	
 	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength) {
 		String path = getReaderPath(partId);
 		return blockLoader.attemptLoadBlock(path, startOffset, totalLength, true, this.isRequired());
@@ -38,7 +38,7 @@ public class ZipNumWriter extends GZIPMemberWriterCommittedOutputStream {
 		finishCurrent();
 	}
 
-	private void finishCurrent() throws IOException {
+	protected void finishCurrent() throws IOException {
 		if(count == 0) {
 			return;
 		}
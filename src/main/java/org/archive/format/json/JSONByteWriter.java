@@ -0,0 +1,252 @@
+package org.archive.format.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Serializes a JSONObject tree, such as a MetaData, straight to UTF-8 bytes
+ * in a buffer reused from one object to the next.
+ *
+ * The bytes are those JSONObject.write() would send through a UTF-8
+ * Writer, but no String is made for the object or its values, and no
+ * Writer or encoder sits between; the length is known without copying the
+ * bytes out. Strings are escaped as JSONObject.quote() escapes them.
+ *
+ * Not thread safe.
+ */
+public class JSONByteWriter {
+	private static final byte[] NULL = {'n','u','l','l'};
+	private static final byte[] HEX = {'0','1','2','3','4','5','6','7','8','9',
+		'a','b','c','d','e','f'};
+
+	private byte[] buffer;
+	private int count = 0;
+
+	public JSONByteWriter() {
+		this(8192);
+	}
+
+	public JSONByteWriter(int initialSize) {
+		buffer = new byte[initialSize];
+	}
+
+	/**
+	 * Empty the buffer, keeping its space.
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	/**
+	 * Serialize json after what the buffer holds.
+	 */
+	public JSONByteWriter write(JSONObject json) {
+		writeObject(json);
+		return this;
+	}
+
+	/**
+	 * @return the buffer, which holds {@link #size()} bytes; only valid
+	 * until the next write or reset
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buffer, 0, count);
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, count);
+	}
+
+	private void writeObject(JSONObject json) {
+		append('{');
+		boolean first = true;
+		for(String key : json.keySet()) {
+			if(!first) {
+				append(',');
+			}
+			first = false;
+			writeString(key);
+			append(':');
+			writeValue(json.opt(key));
+		}
+		append('}');
+	}
+
+	private void writeArray(JSONArray array) {
+		append('[');
+		int length = array.length();
+		for(int i = 0; i < length; i++) {
+			if(i > 0) {
+				append(',');
+			}
+			writeValue(array.opt(i));
+		}
+		append(']');
+	}
+
+	private void writeValue(Object value) {
+		if(value instanceof String) {
+			writeString((String) value);
+		} else if(value instanceof JSONObject) {
+			writeObject((JSONObject) value);
+		} else if(value instanceof JSONArray) {
+			writeArray((JSONArray) value);
+		} else if(value == null || JSONObject.NULL.equals(value)) {
+			ensureCapacity(4);
+			System.arraycopy(NULL, 0, buffer, count, 4);
+			count += 4;
+		} else if(value instanceof Boolean) {
+			writeASCII(value.toString());
+		} else {
+			// numbers and the rarer kinds, as JSONObject has them
+			writeChars(JSONObject.valueToString(value));
+		}
+	}
+
+	private void writeASCII(String s) {
+		int length = s.length();
+		ensureCapacity(length);
+		for(int i = 0; i < length; i++) {
+			buffer[count++] = (byte) s.charAt(i);
+		}
+	}
+
+	/**
+	 * Write s quoted and escaped
+	 */
+	private void writeString(String s) {
+		if(s == null || s.isEmpty()) {
+			append('"');
+			append('"');
+			return;
+		}
+		append('"');
+		int length = s.length();
+		char c = 0;
+		for(int i = 0; i < length; i++) {
+			char b = c;
+			c = s.charAt(i);
+			switch(c) {
+			case '\\':
+			case '"':
+				append('\\');
+				append(c);
+				break;
+			case '/':
+				if(b == '<') {
+					append('\\');
+				}
+				append(c);
+				break;
+			case '\b':
+				append('\\');
+				append('b');
+				break;
+			case '\t':
+				append('\\');
+				append('t');
+				break;
+			case '\n':
+				append('\\');
+				append('n');
+				break;
+			case '\f':
+				append('\\');
+				append('f');
+				break;
+			case '\r':
+				append('\\');
+				append('r');
+				break;
+			default:
+				if(c < ' ' || (c >= 0x80 && c < 0xa0)
+						|| (c >= 0x2000 && c < 0x2100)) {
+					ensureCapacity(6);
+					buffer[count++] = '\\';
+					buffer[count++] = 'u';
+					buffer[count++] = HEX[(c >> 12) & 0xf];
+					buffer[count++] = HEX[(c >> 8) & 0xf];
+					buffer[count++] = HEX[(c >> 4) & 0xf];
+					buffer[count++] = HEX[c & 0xf];
+				} else if(c < 0x80) {
+					append(c);
+				} else {
+					i = writeUTF8(s, i, length);
+				}
+			}
+		}
+		append('"');
+	}
+
+	/**
+	 * Write s without escaping
+	 */
+	private void writeChars(String s) {
+		int length = s.length();
+		for(int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if(c < 0x80) {
+				append(c);
+			} else {
+				i = writeUTF8(s, i, length);
+			}
+		}
+	}
+
+	/**
+	 * Encode the non-ASCII char at i, and the low surrogate after it if it
+	 * is a high one. Unpaired surrogates become '?', as a UTF-8 Writer
+	 * would have them.
+	 * @return index of the last char used
+	 */
+	private int writeUTF8(String s, int i, int length) {
+		char c = s.charAt(i);
+		ensureCapacity(4);
+		if(c < 0x800) {
+			buffer[count++] = (byte) (0xc0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		} else if(Character.isSurrogate(c)) {
+			if(Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer[count++] = (byte) (0xf0 | (cp >> 18));
+				buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buffer[count++] = (byte) (0x80 | (cp & 0x3f));
+			} else {
+				buffer[count++] = '?';
+			}
+		} else {
+			buffer[count++] = (byte) (0xe0 | (c >> 12));
+			buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		}
+		return i;
+	}
+
+	private void append(char c) {
+		if(count == buffer.length) {
+			ensureCapacity(1);
+		}
+		buffer[count++] = (byte) c;
+	}
+
+	private void ensureCapacity(int more) {
+		if(count + more > buffer.length) {
+			buffer = Arrays.copyOf(buffer,
+					Math.max(count + more, 2 * buffer.length));
+		}
+	}
+}
@@ -0,0 +1,424 @@
+package org.archive.format.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.archive.resource.CompactMetaData;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A set of path specs compiled for evaluation against many JSON objects,
+ * giving the rows {@link JSONView#apply(JSONObject)} gives.
+ *
+ * Each spec is split, and its alternatives ("a.b|a.c") separated, once.
+ * The leading object steps of all specs form a tree, so a prefix shared by
+ * several specs, such as "Envelope.Payload-Metadata", is looked up once per
+ * object, and only if some spec needs it. Steps after the first "@" array
+ * step are walked per array element as {@link SimpleJSONPathSpec} walks them.
+ *
+ * The cross product of the columns' matches is not built: {@link Rows}
+ * steps through it one row at a time, into a reused array.
+ *
+ * Evaluates against a JSONObject or a {@link CompactMetaData}, giving the
+ * same rows except that object values are written in the CompactMetaData's
+ * key order. Against a CompactMetaData, each step first tries the index its
+ * key was found at in the last object, as {@link
+ * org.archive.resource.MetaDataPath} does.
+ *
+ * An instance reuses its buffers from one evaluation to the next, so it
+ * must not be used by several threads at once.
+ */
+public class JSONPathPlan {
+	private static final Logger LOG =
+		Logger.getLogger(JSONPathPlan.class.getName());
+
+	private static final int OBJECT = 0;
+	private static final int ABSENT = 1;
+	private static final int NOT_OBJECT = 2;
+
+	private final Node root = new Node(null, null);
+	private final Column[] columns;
+	private final Rows rows;
+	private int generation = 0;
+
+	public JSONPathPlan(String... pathSpecs) {
+		columns = new Column[pathSpecs.length];
+		for(int i = 0; i < pathSpecs.length; i++) {
+			String[] alternatives = pathSpecs[i].split("\\|");
+			Alternative[] compiled = new Alternative[alternatives.length];
+			for(int j = 0; j < alternatives.length; j++) {
+				compiled[j] = new Alternative(alternatives[j]);
+			}
+			columns[i] = new Column(compiled, pathSpecs[i].contains("|"));
+		}
+		rows = new Rows();
+	}
+
+	/**
+	 * Evaluate the specs against json.
+	 * @return the rows, which are valid until the next evaluation
+	 */
+	public Rows evaluate(JSONObject json) {
+		return evaluateObject(json);
+	}
+
+	/**
+	 * Evaluate the specs against md.
+	 * @return the rows, which are valid until the next evaluation
+	 */
+	public Rows evaluate(CompactMetaData md) {
+		return evaluateObject(md);
+	}
+
+	private Rows evaluateObject(Object o) {
+		generation++;
+		root.set(o, o == null ? NOT_OBJECT : OBJECT);
+		for(Column column : columns) {
+			column.evaluate();
+		}
+		rows.start();
+		return rows;
+	}
+
+	/**
+	 * A step through an object field, shared by the specs starting with
+	 * the path to it.
+	 */
+	private class Node {
+		private final Node parent;
+		private final String name;
+		private final Map<String,Node> children = new LinkedHashMap<String,Node>();
+		private int nodeGeneration = -1;
+		/** a JSONObject or CompactMetaData, if state is OBJECT */
+		private Object value;
+		private int state;
+		private int hint;
+
+		Node(Node parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		Node child(String name) {
+			Node child = children.get(name);
+			if(child == null) {
+				child = new Node(this, name);
+				children.put(name, child);
+			}
+			return child;
+		}
+
+		void set(Object value, int state) {
+			this.value = value;
+			this.state = state;
+			nodeGeneration = generation;
+		}
+
+		/**
+		 * Look the field up, once per evaluation
+		 */
+		int resolve() {
+			if(nodeGeneration == generation) {
+				return state;
+			}
+			int parentState = parent.resolve();
+			if(parentState != OBJECT) {
+				set(null, parentState);
+			} else if(parent.value instanceof CompactMetaData) {
+				CompactMetaData md = (CompactMetaData) parent.value;
+				int i = md.indexOf(name, hint);
+				if(i < 0) {
+					set(null, ABSENT);
+				} else {
+					hint = i;
+					CompactMetaData child = md.getChild(i);
+					set(child, child == null ? NOT_OBJECT : OBJECT);
+				}
+			} else {
+				Object o = ((JSONObject) parent.value).opt(name);
+				if(o == null) {
+					set(null, ABSENT);
+				} else if(o instanceof JSONObject) {
+					set((JSONObject) o, OBJECT);
+				} else {
+					set(null, NOT_OBJECT);
+				}
+			}
+			return state;
+		}
+	}
+
+	/**
+	 * One spec of the alternatives of a column, a SimpleJSONPathSpec whose
+	 * leading object steps are a Node.
+	 */
+	private class Alternative {
+		private final String[] names;
+		private final boolean[] arrays;
+		/** index of the first step below node */
+		private final int start;
+		private final Node node;
+		/** fields of a final "{a,b}" step, or null */
+		private final String[] fields;
+		private final List<String> emptyResult;
+		/** where each step's name, and each field, was last found */
+		private final int[] hints;
+		private final int[] fieldHints;
+
+		Alternative(String pathSpec) {
+			String[] parts = pathSpec.split("\\.");
+			int last = parts.length - 1;
+			names = new String[parts.length];
+			arrays = new boolean[parts.length];
+			for(int i = 0; i < parts.length; i++) {
+				arrays[i] = i < last && parts[i].startsWith("@");
+				names[i] = arrays[i] ? parts[i].substring(1) : parts[i];
+			}
+			Node n = root;
+			int i = 0;
+			while(i < last && !arrays[i]) {
+				n = n.child(names[i++]);
+			}
+			node = n;
+			start = i;
+			if(parts[last].startsWith("{") && parts[last].endsWith("}")) {
+				fields = parts[last].substring(1, parts[last].length() - 1).split(",");
+			} else {
+				fields = null;
+			}
+			String[] empty = new String[fields == null ? 1 : fields.length];
+			Arrays.fill(empty, JSONPathSpec.EMPTY);
+			emptyResult = Collections.unmodifiableList(Arrays.asList(empty));
+			hints = new int[names.length];
+			fieldHints = new int[empty.length];
+		}
+
+		void extract(List<List<String>> matches) {
+			int state = node.resolve();
+			if(state == ABSENT) {
+				matches.add(emptyResult);
+			} else if(state == OBJECT) {
+				try {
+					if(node.value instanceof CompactMetaData) {
+						extractRecursive((CompactMetaData) node.value, start, matches);
+					} else {
+						extractRecursive((JSONObject) node.value, start, matches);
+					}
+				} catch (JSONException e) {
+					LOG.warning(e.getMessage());
+				}
+			}
+		}
+
+		private void extractRecursive(JSONObject json, int idx,
+				List<List<String>> matches) throws JSONException {
+			if(json == null) {
+				return;
+			}
+			String name = names[idx];
+			if(idx == names.length - 1) {
+				matches.add(applyMatch(json, name));
+			} else if(arrays[idx]) {
+				if(json.has(name)) {
+					JSONArray a = json.getJSONArray(name);
+					for(int i = 0; i < a.length(); i++) {
+						extractRecursive(a.getJSONObject(i), idx + 1, matches);
+					}
+				} else {
+					matches.add(emptyResult);
+				}
+			} else if(json.has(name)) {
+				extractRecursive(json.getJSONObject(name), idx + 1, matches);
+			} else {
+				matches.add(emptyResult);
+			}
+		}
+
+		private List<String> applyMatch(JSONObject json, String name) {
+			if(fields != null) {
+				String[] match = new String[fields.length];
+				for(int i = 0; i < fields.length; i++) {
+					Object o = json.opt(fields[i]);
+					match[i] = (o == null) ? JSONPathSpec.EMPTY : o.toString();
+				}
+				return Arrays.asList(match);
+			}
+			Object o = json.opt(name);
+			return (o == null) ? emptyResult : Collections.singletonList(o.toString());
+		}
+
+		private void extractRecursive(CompactMetaData md, int idx,
+				List<List<String>> matches) throws JSONException {
+			String name = names[idx];
+			int i = md.indexOf(name, hints[idx]);
+			if(i >= 0) {
+				hints[idx] = i;
+			}
+			if(idx == names.length - 1) {
+				matches.add(applyMatch(md, i));
+			} else if(i < 0) {
+				matches.add(emptyResult);
+			} else if(arrays[idx]) {
+				List<Object> list = md.getList(i);
+				if(list == null) {
+					throw new JSONException("[" + name + "] is not an array.");
+				}
+				for(int j = 0; j < list.size(); j++) {
+					Object o = list.get(j);
+					if(!(o instanceof CompactMetaData)) {
+						throw new JSONException("[" + name + "][" + j
+								+ "] is not an object.");
+					}
+					extractRecursive((CompactMetaData) o, idx + 1, matches);
+				}
+			} else {
+				CompactMetaData child = md.getChild(i);
+				if(child == null) {
+					throw new JSONException("[" + name + "] is not an object.");
+				}
+				extractRecursive(child, idx + 1, matches);
+			}
+		}
+
+		private List<String> applyMatch(CompactMetaData md, int i) {
+			if(fields != null) {
+				String[] match = new String[fields.length];
+				for(int f = 0; f < fields.length; f++) {
+					int j = md.indexOf(fields[f], fieldHints[f]);
+					if(j < 0) {
+						match[f] = JSONPathSpec.EMPTY;
+					} else {
+						fieldHints[f] = j;
+						match[f] = md.getString(j);
+					}
+				}
+				return Arrays.asList(match);
+			}
+			return (i < 0) ? emptyResult : Collections.singletonList(md.getString(i));
+		}
+	}
+
+	/**
+	 * The matches of one spec, or with alternatives, of the first of them
+	 * with a single non-empty value, as CompoundORJSONPathSpec has it.
+	 */
+	private class Column {
+		private final Alternative[] alternatives;
+		private final boolean compound;
+		private final ArrayList<List<String>> matches = new ArrayList<List<String>>();
+
+		Column(Alternative[] alternatives, boolean compound) {
+			this.alternatives = alternatives;
+			this.compound = compound;
+		}
+
+		void evaluate() {
+			matches.clear();
+			if(!compound) {
+				alternatives[0].extract(matches);
+				return;
+			}
+			for(Alternative alternative : alternatives) {
+				alternative.extract(matches);
+				if(matches.size() == 1 && matches.get(0).size() == 1
+						&& matches.get(0).get(0).length() > 0) {
+					return;
+				}
+				matches.clear();
+			}
+		}
+	}
+
+	/**
+	 * The cross product of the columns' matches, a row at a time, the last
+	 * column varying fastest.
+	 */
+	public class Rows {
+		private final int[] positions = new int[columns.length];
+		/** index in row of each column's first value */
+		private final int[] offsets = new int[columns.length + 1];
+		private String[] row = new String[columns.length];
+		private boolean started;
+		private boolean done;
+
+		void start() {
+			started = false;
+			done = false;
+			for(Column column : columns) {
+				if(column.matches.isEmpty()) {
+					done = true;
+				}
+			}
+		}
+
+		/**
+		 * Move to the next row.
+		 * @return false if there are no more
+		 */
+		public boolean next() {
+			if(done) {
+				return false;
+			}
+			int changed;
+			if(!started) {
+				started = true;
+				Arrays.fill(positions, 0);
+				changed = 0;
+			} else {
+				changed = columns.length - 1;
+				while(changed >= 0) {
+					if(++positions[changed] < columns[changed].matches.size()) {
+						break;
+					}
+					positions[changed--] = 0;
+				}
+				if(changed < 0) {
+					done = true;
+					return false;
+				}
+			}
+			for(int c = changed; c < columns.length; c++) {
+				List<String> match = columns[c].matches.get(positions[c]);
+				int offset = offsets[c];
+				if(row.length < offset + match.size()) {
+					row = Arrays.copyOf(row, 2 * (offset + match.size()));
+				}
+				for(int i = 0; i < match.size(); i++) {
+					row[offset + i] = match.get(i);
+				}
+				offsets[c + 1] = offset + match.size();
+			}
+			return true;
+		}
+
+		/**
+		 * @return the current row's values, in the first {@link #size()}
+		 * elements of an array reused for every row
+		 */
+		public String[] getRow() {
+			return row;
+		}
+
+		public int size() {
+			return offsets[columns.length];
+		}
+
+		public String get(int i) {
+			return row[i];
+		}
+
+		/**
+		 * @return a copy of the current row
+		 */
+		public List<String> toList() {
+			return new ArrayList<String>(Arrays.asList(row).subList(0, size()));
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang.StringUtils;
+import org.archive.resource.CompactMetaData;
 import org.json.JSONObject;
 
 /**
@@ -15,6 +16,16 @@ import org.json.JSONObject;
  * An instance is constructed with an array of field specifiers, each of which
  * declares the source path to one column of output.
  * 
+ * An instance may be shared between threads: each thread evaluates with a
+ * {@link JSONPathPlan} of its own. The {@link JSONPathPlan.Rows} returned
+ * by {@link #evaluate(JSONObject)} are overwritten by the same thread's
+ * next call, so copy any row kept beyond it; {@link #apply(JSONObject)}
+ * returns copies.
+ * 
+ * Each method also takes a {@link CompactMetaData}, such as
+ * {@link CompactMetaData#parse(String)} makes from JSON text without building
+ * a JSONObject.
+ * 
  * @author brad
  *
  */
@@ -22,32 +33,49 @@ public class JSONView {
 	private static final Logger LOG =
 		Logger.getLogger(JSONView.class.getName());
 	
-	ArrayList<JSONPathSpec> pathSpecs;
-	CrossProductOfLists<String> crosser;
+	/** plans reuse their buffers, so one per thread */
+	private final ThreadLocal<JSONPathPlan> plans;
 
-	public JSONView(String... pathSpecs) {
-		this.pathSpecs = new ArrayList<JSONPathSpec>(pathSpecs.length);
+	public JSONView(final String... pathSpecs) {
 		if(LOG.isLoggable(Level.INFO)) {
 			LOG.info(String.format("Creating JSONView with(%s)",
 					StringUtils.join(pathSpecs,",")));
 		}
-		for(String pathSpec : pathSpecs) {
-			this.pathSpecs.add(JSONPathSpecFactory.get(pathSpec));
-		}
-		crosser = new CrossProductOfLists<String>();
+		plans = new ThreadLocal<JSONPathPlan>() {
+			@Override
+			protected JSONPathPlan initialValue() {
+				return new JSONPathPlan(pathSpecs);
+			}
+		};
 	}
+
 	public List<List<String>> apply(JSONObject json) {
-		ArrayList<List<List<String>>> results =
-			new ArrayList<List<List<String>>>(pathSpecs.size());
-		
-		for(JSONPathSpec pathSpec : pathSpecs) {
-			List<List<String>> result = pathSpec.extract(json);
-			if(result == null) {
-//				ArrayList<String> tmp = new ArrayList<String>();
-				result = new ArrayList<List<String>>();
-			}
-			results.add(result);
+		return toLists(plans.get().evaluate(json));
+	}
+
+	public List<List<String>> apply(CompactMetaData md) {
+		return toLists(plans.get().evaluate(md));
+	}
+
+	private static List<List<String>> toLists(JSONPathPlan.Rows rows) {
+		ArrayList<List<String>> results = new ArrayList<List<String>>();
+		while(rows.next()) {
+			results.add(rows.toList());
 		}
-		return crosser.crossProduct(results);
+		return results;
+	}
+
+	/**
+	 * Like {@link #apply(JSONObject)}, but a row at a time, without
+	 * building the lists.
+	 * @return the rows, which are valid until this thread's next
+	 * evaluation
+	 */
+	public JSONPathPlan.Rows evaluate(JSONObject json) {
+		return plans.get().evaluate(json);
+	}
+
+	public JSONPathPlan.Rows evaluate(CompactMetaData md) {
+		return plans.get().evaluate(md);
 	}
 }
@@ -171,6 +171,8 @@ public interface WARCConstants extends ArchiveFileConstants {
     public static final String HEADER_KEY_ETAG = "WARC-Etag";
     public static final String HEADER_KEY_LAST_MODIFIED = "WARC-Last-Modified";
     public static final String HEADER_KEY_REFERS_TO = "WARC-Refers-To";
+    public static final String HEADER_KEY_IDENTIFIED_PAYLOAD_TYPE =
+        "WARC-Identified-Payload-Type";
     
     /**
      * These fields help a consumer of the warc to locate the warc record that
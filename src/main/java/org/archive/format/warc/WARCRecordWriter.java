@@ -30,14 +30,19 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants
                             HttpHeaders headers, 
                             byte[] contents) throws IOException
   {
-    if ( contents == null ) 
-      {
-        headers.add(CONTENT_LENGTH, "0");
-      }
-    else
-      {
-        headers.add(CONTENT_LENGTH,String.valueOf(contents.length));
-      }
+    writeRecord(out, headers, contents,
+                contents == null ? 0 : contents.length);
+  }
+
+  /**
+   * Write the record with the first length bytes of contents as its block.
+   */
+  private void writeRecord( OutputStream out, 
+                            HttpHeaders headers, 
+                            byte[] contents,
+                            int length) throws IOException
+  {
+    headers.add(CONTENT_LENGTH,String.valueOf(length));
     
     out.write(WARC_ID.getBytes(DEFAULT_ENCODING));
     out.write(CR);
@@ -49,7 +54,7 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants
   
     if ( contents != null ) 
       {
-        out.write( contents );
+        out.write( contents, 0, length );
       }
 
     // Emit the 2 trailing CRLF sequences.
@@ -85,6 +90,21 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants
                                        String targetURI,
                                        Date originalDate,
                                        String origRecordId ) throws IOException
+  {
+    writeJSONMetadataRecord(out, contents, contents.length, targetURI,
+                            originalDate, origRecordId);
+  }
+
+  /**
+   * Write a metadata record whose block is the first length bytes of
+   * contents, so a caller may pass a buffer it reuses.
+   */
+  public void writeJSONMetadataRecord( OutputStream out,
+                                       byte[] contents,
+                                       int length,
+                                       String targetURI,
+                                       Date originalDate,
+                                       String origRecordId ) throws IOException
   {
     HttpHeaders headers = new HttpHeaders();
     headers.add(HEADER_KEY_TYPE, WARCRecordType.metadata.name());
@@ -97,7 +117,7 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants
     headers.add(HEADER_KEY_REFERS_TO, origRecordId);
     
     headers.add(CONTENT_TYPE,"application/json");
-    writeRecord(out, headers, contents);
+    writeRecord(out, headers, contents, length);
   }
 
   private String makeRecordId() 
@@ -2,7 +2,6 @@ package org.archive.hadoop;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -10,9 +9,11 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.archive.format.json.JSONPathPlan;
 import org.archive.format.json.JSONView;
+import org.archive.resource.CompactMetaData;
+import org.archive.resource.CompactMetaDataParser;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 public class ArchiveJSONViewLoader extends ArchiveMetadataLoader {
 	private final static Logger LOG = 
@@ -21,13 +22,16 @@ public class ArchiveJSONViewLoader extends ArchiveMetadataLoader {
 	protected TupleFactory mCacheTupleFactory = TupleFactory.getInstance();
 	private ArrayList<Object> mCacheProtoTuple = null;
 	private JSONView view;
+	/** parses each record's JSON without building a JSONObject */
+	private final CompactMetaDataParser parser = new CompactMetaDataParser();
 //	private static final List<String> EMPTY;
 //	static {
 //		EMPTY = new ArrayList<String>();
 //		EMPTY.add("");
 //	}
 //	ArrayList<String> fields;
-	ArrayList<Tuple> cached;
+	/** rows of the last record not yet returned, or null */
+	JSONPathPlan.Rows cached;
 
 	public ArchiveJSONViewLoader(String... fieldArgs) {
 		super();
@@ -58,8 +62,12 @@ public class ArchiveJSONViewLoader extends ArchiveMetadataLoader {
 			}
 		}
 		if(cached != null) {
-			Tuple n = cached.remove(0);
-			if(cached.size() == 0) {
+			for(int i = 0; i < cached.size(); i++) {
+				mCacheProtoTuple.add(cached.get(i));
+			}
+			Tuple n = mCacheTupleFactory.newTuple(mCacheProtoTuple);
+			mCacheProtoTuple.clear();
+			if(!cached.next()) {
 				cached = null;
 			}
 			return n;
@@ -68,26 +76,22 @@ public class ArchiveJSONViewLoader extends ArchiveMetadataLoader {
 		return null;
 	}
 
-	private ArrayList<Tuple> applyView(Tuple inner) {
+	/**
+	 * @return the record's rows, at the first, or null if it has none
+	 */
+	private JSONPathPlan.Rows applyView(Tuple inner) {
 		// [0] is the JSON. Remaining elements are Strings describing paths
 		// into the JSON to "flatten" into a single tuple:
 		if(inner == null || inner.size() == 0) {
 			return null;
 		}
 		try {
-			JSONObject json = new JSONObject(inner.get(2).toString());
-			List<List<String>> matches = view.apply(json);
-			if(matches.size() == 0) {
+			CompactMetaData md = parser.parse(inner.get(2).toString());
+			JSONPathPlan.Rows rows = view.evaluate(md);
+			if(!rows.next()) {
 				return null;
 			}
-			ArrayList<Tuple> results = new ArrayList<Tuple>();
-			for(List<String> t : matches) {
-				mCacheProtoTuple.addAll(t);
-				Tuple tup = mCacheTupleFactory.newTuple(mCacheProtoTuple);
-				mCacheProtoTuple.clear();
-				results.add(tup);
-			}
-			return results;
+			return rows;
 		} catch (JSONException e) {
 			LOG.warning("Failed to parse JSON:"+e.getMessage());
 		} catch (ExecException e) {
@@ -7,9 +7,10 @@ import java.util.logging.Logger;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
-import org.archive.format.json.JSONUtils;
+import org.archive.resource.CompactMetaData;
+import org.archive.resource.CompactMetaDataParser;
+import org.archive.resource.MetaDataPath;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 public class JSONViewEvalFunc extends EvalFunc<Tuple> {
 	private static final Logger LOG =
@@ -17,6 +18,9 @@ public class JSONViewEvalFunc extends EvalFunc<Tuple> {
 
 	protected TupleFactory mTupleFactory = TupleFactory.getInstance();
 	private ArrayList<Object> mProtoTuple = null;
+	/** paths compiled for the last call, usually the same every call */
+	private ArrayList<MetaDataPath> paths = new ArrayList<MetaDataPath>();
+	private final CompactMetaDataParser parser = new CompactMetaDataParser();
 
 	public JSONViewEvalFunc() {
 		mProtoTuple = new ArrayList<Object>();
@@ -30,10 +34,9 @@ public class JSONViewEvalFunc extends EvalFunc<Tuple> {
 			return null;
 		}
 		try {
-			JSONObject json = new JSONObject(tup.get(0).toString());
+			CompactMetaData md = parser.parse(tup.get(0).toString());
 			for(int i = 1; i < tup.size(); i++) {
-				String path = tup.get(i).toString();
-				String result = JSONUtils.extractSingle(json, path);
+				String result = getPath(i - 1, tup.get(i).toString()).extractSingle(md);
 				mProtoTuple.add(result);
 			}
 		} catch (JSONException e) {
@@ -44,4 +47,13 @@ public class JSONViewEvalFunc extends EvalFunc<Tuple> {
 		mProtoTuple.clear();
 		return t;
 	}
+
+	private MetaDataPath getPath(int i, String path) {
+		if(i == paths.size()) {
+			paths.add(MetaDataPath.compile(path));
+		} else if(!paths.get(i).getPath().equals(path)) {
+			paths.set(i, MetaDataPath.compile(path));
+		}
+		return paths.get(i);
+	}
 }
@@ -114,6 +114,22 @@ public class ArchiveReaderFactory implements ArchiveFileConstants {
     	return ArchiveReaderFactory.factory.getArchiveReader(f, offset);
 	}
     
+    /**
+     * @param f An Archive file to read.
+     * @param index Offset index of <code>f</code>, eg. from
+     * {@link RecordOffsetIndex#load(File)}.
+     * @param ordinal Record number in <code>f</code>, from 0.
+     * @return An ArchiveReader set to start reading at the record, whose
+     * {@link ArchiveReader#get()} returns it.
+     * @throws IOException 
+     */
+    public static ArchiveReader get(final File f,
+    	final RecordOffsetIndex index, final int ordinal)
+    throws IOException {
+    	return ArchiveReaderFactory.factory.getArchiveReader(f,
+    		index.getOffset(ordinal));
+    }
+    
     protected ArchiveReader getArchiveReader(final File f,
     	final long offset)
     throws IOException {
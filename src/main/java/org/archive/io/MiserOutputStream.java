@@ -67,6 +67,22 @@ public class MiserOutputStream extends FilterOutputStream {
       count++;
     }
 
+    /**
+     * Flush the wrapped stream even if flushes are not passed, so bytes
+     * can be written around this stream, then counted with
+     * {@link #addCount(long)}.
+     */
+    public void forceFlush() throws IOException {
+        super.flush();
+    }
+
+    /**
+     * Count bytes written to the underlying file directly.
+     */
+    public void addCount(long bytes) {
+        count += bytes;
+    }
+
     @Override
     public void close() throws IOException {
         passFlushes = true; 
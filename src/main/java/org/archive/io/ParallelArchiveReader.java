@@ -0,0 +1,153 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.gzip.ParallelMemberReader;
+import org.archive.format.gzip.ParallelMemberReader.MemberConsumer;
+import org.archive.format.gzip.ParallelMemberReader.MemberProcessor;
+import org.archive.io.arc.ARCRecord;
+import org.archive.io.warc.WARCHeaderParser;
+import org.archive.io.warc.WARCReaderFactory;
+import org.archive.io.warc.WARCRecord;
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads the records of a compressed ARC or WARC file with a
+ * {@link ParallelMemberReader}, inflating each record and parsing its
+ * headers on a pool thread.
+ *
+ * <p>Unlike an {@link ArchiveReader}, each record's content is held in
+ * memory until the record is consumed, so records can be read in any order
+ * and on any thread. The reader's maxPending bounds how many are held.
+ */
+public class ParallelArchiveReader implements MemberProcessor<ArchiveRecord> {
+    private final ParallelMemberReader<ArchiveRecord> reader;
+    private final boolean warc;
+    /** Header parsers of the pool's threads */
+    private final ThreadLocal<WARCHeaderParser> headerParsers =
+        ThreadLocal.withInitial(new Supplier<WARCHeaderParser>() {
+            public WARCHeaderParser get() {
+                return new WARCHeaderParser();
+            }
+        });
+    private boolean digest = true;
+    private boolean strict = false;
+    private boolean parseHttpHeaders = true;
+
+    public ParallelArchiveReader(File file) {
+        this(file, ForkJoinPool.commonPool());
+    }
+
+    public ParallelArchiveReader(File file, ForkJoinPool pool) {
+        this.reader = new ParallelMemberReader<ArchiveRecord>(file, this, pool);
+        this.warc = WARCReaderFactory.isWARCSuffix(file.getName());
+    }
+
+    /**
+     * @return the reader, to configure before reading
+     */
+    public ParallelMemberReader<ArchiveRecord> getReader() {
+        return reader;
+    }
+
+    public ArchiveRecord process(GZIPSeriesMember member) throws IOException {
+        String identifier = member.getRecordFileContext();
+        long offset = member.getRecordStartOffset();
+        ByteArrayInputStream in =
+            new ByteArrayInputStream(ByteStreams.toByteArray(member));
+        if (warc) {
+            return new WARCRecord(in, identifier, offset, digest, strict,
+                headerParsers.get());
+        }
+        return new ARCRecord(in, identifier, offset, digest, strict,
+            parseHttpHeaders, true, null);
+    }
+
+    /**
+     * @return the records in file order. A record which fails to parse ends
+     * the iteration with a RuntimeIOException.
+     */
+    public CloseableIterator<ArchiveRecord> iterator() throws IOException {
+        final ParallelMemberReader<ArchiveRecord>.Members members =
+            reader.open();
+        return new AbstractPeekableIterator<ArchiveRecord>() {
+            @Override
+            public ArchiveRecord getNextInner() {
+                try {
+                    return members.next();
+                } catch (IOException e) {
+                    throw new RuntimeIOException(e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                members.close();
+            }
+        };
+    }
+
+    /**
+     * Read all the records, passing them to consumer concurrently, in no
+     * particular order
+     */
+    public void scan(MemberConsumer<ArchiveRecord> consumer)
+    throws IOException {
+        reader.scan(consumer);
+    }
+
+    public boolean isDigest() {
+        return digest;
+    }
+
+    public void setDigest(boolean digest) {
+        this.digest = digest;
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * @param strict parse record headers strictly. Gzip errors are governed
+     * by the reader's strict setting.
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    public boolean isParseHttpHeaders() {
+        return parseHttpHeaders;
+    }
+
+    public void setParseHttpHeaders(boolean parseHttpHeaders) {
+        this.parseHttpHeaders = parseHttpHeaders;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+import org.archive.io.warc.WARCConstants;
+import org.archive.io.warc.WARCReader;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Sidecar index of the records of an ARC or WARC file: for each record, in
+ * file order, its offset and length in the file (the gzip member, if
+ * compressed), and 64 bit hashes of its WARC-Record-ID and of its URL.
+ *
+ * <p>Written next to the archive as <code>&lt;archive&gt;.offsets</code>,
+ * by {@link WriterPoolMember}s with writeOffsetIndex set, or afterwards with
+ * {@link #build(File)} or the main method. Readers positioned at a record
+ * from the index are returned by
+ * {@link ArchiveReaderFactory#get(File, RecordOffsetIndex, int)}.
+ *
+ * <p>The file is big-endian: magic, version, record count, then offset,
+ * length, record id hash and url hash longs for each record. Records
+ * without a record id (all ARC records) or url have a hash of 0.
+ */
+public class RecordOffsetIndex {
+    private static final Logger logger =
+        Logger.getLogger(RecordOffsetIndex.class.getName());
+
+    public static final String SIDECAR_SUFFIX = ".offsets";
+
+    public static final int MAGIC = 0x524f4958; // "ROIX"
+    public static final int VERSION = 1;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    protected long[] offsets;
+    protected long[] lengths;
+    protected long[] recordIdHashes;
+    protected long[] urlHashes;
+    protected int size = 0;
+
+    // (hash, ordinal) pairs sorted by hash, built on first lookup
+    private long[] recordIdLookup = null;
+    private long[] urlLookup = null;
+
+    public RecordOffsetIndex() {
+        this(64);
+    }
+
+    public RecordOffsetIndex(int capacity) {
+        capacity = Math.max(capacity, 1);
+        offsets = new long[capacity];
+        lengths = new long[capacity];
+        recordIdHashes = new long[capacity];
+        urlHashes = new long[capacity];
+    }
+
+    /**
+     * @return the sidecar index file for archive
+     */
+    public static File getSidecarFile(File archive) {
+        return new File(archive.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * @param recordId a WARC-Record-ID, with or without the angle brackets
+     * @return hash of the record id, 0 if null
+     */
+    public static long hashRecordId(String recordId) {
+        if (recordId == null || recordId.isEmpty()) {
+            return 0;
+        }
+        if (recordId.startsWith("<") && recordId.endsWith(">")) {
+            recordId = recordId.substring(1, recordId.length() - 1);
+        }
+        return hash(recordId);
+    }
+
+    /**
+     * @return hash of the url, 0 if null
+     */
+    public static long hashUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return 0;
+        }
+        return hash(url);
+    }
+
+    private static long hash(String s) {
+        long h = HASH.hashString(s, Charsets.UTF_8).asLong();
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * Add the next record in the file
+     */
+    public synchronized void add(long offset, long length, String recordId,
+            String url) {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            recordIdHashes = Arrays.copyOf(recordIdHashes, capacity);
+            urlHashes = Arrays.copyOf(urlHashes, capacity);
+        }
+        offsets[size] = offset;
+        lengths[size] = length;
+        recordIdHashes[size] = hashRecordId(recordId);
+        urlHashes[size] = hashUrl(url);
+        size++;
+        recordIdLookup = null;
+        urlLookup = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getOffset(int ordinal) {
+        checkOrdinal(ordinal);
+        return offsets[ordinal];
+    }
+
+    public long getLength(int ordinal) {
+        checkOrdinal(ordinal);
+        return lengths[ordinal];
+    }
+
+    protected void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Record " + ordinal +
+                " of " + size);
+        }
+    }
+
+    /**
+     * @return ordinals of the records with this WARC-Record-ID hash, in
+     * file order. Normally one, but callers should check the record header.
+     */
+    public synchronized int[] findRecordId(String recordId) {
+        if (recordIdLookup == null) {
+            recordIdLookup = buildLookup(recordIdHashes);
+        }
+        return find(recordIdLookup, hashRecordId(recordId));
+    }
+
+    /**
+     * @return ordinals of the records with this url hash, in file order
+     */
+    public synchronized int[] findUrl(String url) {
+        if (urlLookup == null) {
+            urlLookup = buildLookup(urlHashes);
+        }
+        return find(urlLookup, hashUrl(url));
+    }
+
+    private long[] buildLookup(long[] hashes) {
+        Long[] ordinals = new Long[size];
+        for (int i = 0; i < size; i++) {
+            ordinals[i] = (long) i;
+        }
+        final long[] h = hashes;
+        Arrays.sort(ordinals, new Comparator<Long>() {
+            public int compare(Long a, Long b) {
+                int cmp = Long.compare(h[a.intValue()], h[b.intValue()]);
+                return (cmp != 0) ? cmp : Long.compare(a, b);
+            }
+        });
+        long[] lookup = new long[size * 2];
+        for (int i = 0; i < size; i++) {
+            int ordinal = ordinals[i].intValue();
+            lookup[i * 2] = h[ordinal];
+            lookup[i * 2 + 1] = ordinal;
+        }
+        return lookup;
+    }
+
+    private int[] find(long[] lookup, long hash) {
+        if (hash == 0) {
+            return new int[0];
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lookup[mid * 2] < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < size && lookup[end * 2] == hash) {
+            end++;
+        }
+        int[] result = new int[end - low];
+        for (int i = low; i < end; i++) {
+            result[i - low] = (int) lookup[i * 2 + 1];
+        }
+        return result;
+    }
+
+    /**
+     * Write the index to file, by way of a temporary file
+     */
+    public synchronized void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(offsets[i]);
+                out.writeLong(lengths[i]);
+                out.writeLong(recordIdHashes[i]);
+                out.writeLong(urlHashes[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            logger.warning("Failed delete of " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed rename of " + tmp);
+        }
+    }
+
+    public static RecordOffsetIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a record offset index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version +
+                    " of " + file);
+            }
+            int size = in.readInt();
+            RecordOffsetIndex index = new RecordOffsetIndex(size);
+            for (int i = 0; i < size; i++) {
+                index.offsets[i] = in.readLong();
+                index.lengths[i] = in.readLong();
+                index.recordIdHashes[i] = in.readLong();
+                index.urlHashes[i] = in.readLong();
+            }
+            index.size = size;
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the sidecar index of archive
+     * @throws java.io.FileNotFoundException if there is none
+     */
+    public static RecordOffsetIndex load(File archive) throws IOException {
+        return read(getSidecarFile(archive));
+    }
+
+    /**
+     * Build the index of archive by reading all its records
+     */
+    public static RecordOffsetIndex build(File archive) throws IOException {
+        RecordOffsetIndex index = new RecordOffsetIndex();
+        ArchiveReader reader = ArchiveReaderFactory.get(archive);
+        try {
+            reader.setDigest(false);
+            boolean warc = (reader instanceof WARCReader);
+            long prevOffset = -1;
+            String prevRecordId = null;
+            String prevUrl = null;
+            for (ArchiveRecord record : reader) {
+                ArchiveRecordHeader header = record.getHeader();
+                long offset = header.getOffset();
+                if (prevOffset >= 0) {
+                    index.add(prevOffset, offset - prevOffset, prevRecordId,
+                        prevUrl);
+                }
+                prevOffset = offset;
+                prevRecordId = warc ? (String) header.getHeaderValue(
+                    WARCConstants.HEADER_KEY_ID) : null;
+                prevUrl = header.getUrl();
+            }
+            if (prevOffset >= 0) {
+                index.add(prevOffset, archive.length() - prevOffset,
+                    prevRecordId, prevUrl);
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    /**
+     * Write the sidecar index of each archive given
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RecordOffsetIndex ARCHIVE...");
+            System.err.println("Writes ARCHIVE" + SIDECAR_SUFFIX +
+                " for each ARC or WARC file.");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            File archive = new File(arg);
+            RecordOffsetIndex index = build(archive);
+            index.write(getSidecarFile(archive));
+            System.out.println(arg + ": " + index.size() + " records");
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -80,6 +81,15 @@ public abstract class WriterPool {
     /** round-robin queue of available writers */ 
     protected BlockingQueue<WriterPoolMember> availableWriters;
 
+    /** whether new writers write a {@link RecordOffsetIndex} for each file */
+    protected boolean writeOffsetIndex = false;
+
+    /** whether new writers write gzip member lengths in SL records */
+    protected boolean writeMemberLengths = false;
+
+    /** if set, new writers deflate large records in parallel on it */
+    protected ExecutorService deflateExecutor = null;
+
     /** system time when writer was last wanted (because one was not ready in time) */     
     protected long lastWriterNeededTime;
     /** system time when writer was last 'rolled over' (imminent creation of new file) */ 
@@ -148,11 +158,52 @@ public abstract class WriterPool {
         if(currentActive < maxActive) {
             currentActive++;
             lastWriterRolloverTime = now; 
-            return makeWriter(); 
+            WriterPoolMember writer = makeWriter();
+            writer.setWriteOffsetIndex(writeOffsetIndex);
+            writer.setWriteMemberLengths(writeMemberLengths);
+            writer.setDeflateExecutor(deflateExecutor);
+            return writer;
         }
         return null; 
     }
 
+    public boolean getWriteOffsetIndex() {
+        return writeOffsetIndex;
+    }
+
+    /**
+     * @param writeOffsetIndex if true, writers created from now on write a
+     * {@link RecordOffsetIndex} sidecar for each file
+     */
+    public void setWriteOffsetIndex(boolean writeOffsetIndex) {
+        this.writeOffsetIndex = writeOffsetIndex;
+    }
+
+    public boolean getWriteMemberLengths() {
+        return writeMemberLengths;
+    }
+
+    /**
+     * @param writeMemberLengths if true, compressing writers created from
+     * now on record each member's compressed length in its gzip header
+     */
+    public void setWriteMemberLengths(boolean writeMemberLengths) {
+        this.writeMemberLengths = writeMemberLengths;
+    }
+
+    public ExecutorService getDeflateExecutor() {
+        return deflateExecutor;
+    }
+
+    /**
+     * @param deflateExecutor if set, compressing writers created from now
+     * on deflate records larger than a chunk in parallel on it. It is
+     * shared by all the writers, and left running on close.
+     */
+    public void setDeflateExecutor(ExecutorService deflateExecutor) {
+        this.deflateExecutor = deflateExecutor;
+    }
+
     /**
      * @return new WriterPoolMember of appropriate type
      */
@@ -20,21 +20,39 @@
 package org.archive.io;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.archive.format.gzip.GZIPConstants;
+import org.archive.format.gzip.GZIPFooter;
+import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.gzip.GZIPHeader;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.zip.ParallelGZIPOutputStream;
 import org.archive.util.FileUtils;
 import org.archive.util.PropertyUtils;
 
@@ -80,6 +98,8 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
     protected OutputStream out = null;
     /** Counting stream for metering */
     protected MiserOutputStream countOut = null; 
+    /** Channel of the file, for copying content to it directly */
+    protected FileChannel fileChannel = null;
     
     protected WriterPoolSettings settings; 
     private final String extension;
@@ -115,6 +135,63 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
      */
     protected final byte [] scratchbuffer = new byte[4 * 1024];
  
+    /**
+     * Whether to write a {@link RecordOffsetIndex} next to each file.
+     */
+    protected boolean writeOffsetIndex = false;
+
+    /**
+     * Records of the current file, if writeOffsetIndex.
+     */
+    protected RecordOffsetIndex offsetIndex = null;
+
+    /**
+     * Set when a record of the current file failed part way, so the
+     * ordinals of offsetIndex no longer match the file.
+     */
+    protected boolean offsetIndexInvalid = false;
+
+    /**
+     * Whether compressed records carry their compressed length in an SL
+     * gzip FEXTRA record, so readers can skip them without inflating.
+     */
+    protected boolean writeMemberLengths = false;
+
+    /**
+     * (offset, length) of members of the current file whose SL record is
+     * filled in on close.
+     */
+    protected List<long[]> pendingMemberLengths = new ArrayList<long[]>();
+
+    /**
+     * If set, compressed records larger than a chunk are deflated in
+     * parallel on it.
+     */
+    protected ExecutorService deflateExecutor = null;
+
+    /**
+     * Content types whose content is already compressed, so not deflated
+     * again with adaptive compression. Types are also matched by the
+     * part before the '/' (video, audio).
+     */
+    protected static final Set<String> PRECOMPRESSED_MIMETYPES =
+        new HashSet<String>(Arrays.asList(
+            "image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp",
+            "image/avif", "image/heic", "video", "audio",
+            "application/zip", "application/gzip", "application/x-gzip",
+            "application/x-bzip2", "application/x-xz", "application/zstd",
+            "application/x-7z-compressed", "application/x-rar-compressed",
+            "application/vnd.rar", "font/woff", "font/woff2"));
+
+    /** Content types under audio/ that are not compressed */
+    protected static final Set<String> UNCOMPRESSED_AUDIO_MIMETYPES =
+        new HashSet<String>(Arrays.asList(
+            "audio/wav", "audio/x-wav", "audio/wave", "audio/aiff",
+            "audio/x-aiff", "audio/midi"));
+
+    /** Start of the member being written by a ParallelGZIPOutputStream */
+    protected long memberStart = 0;
+ 
     
     /**
      * Constructor.
@@ -201,6 +278,7 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
         FileOutputStream fos = new FileOutputStream(this.f);
         this.countOut = new MiserOutputStream(new BufferedOutputStream(fos),settings.getFrequentFlushes());
         this.out = this.countOut; 
+        this.fileChannel = fos.getChannel();
         logger.fine("Opened " + this.f.getAbsolutePath());
         return this.f.getName();
     }
@@ -318,18 +396,71 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
      * @exception IOException
      */
     protected void preWriteRecordTasks()
+    throws IOException {
+        preWriteRecordTasks(null);
+    }
+
+    /**
+     * Pre-write tasks for a record whose content is of the given type.
+     * @param mimetype content type of the record, or null if unknown
+     * @exception IOException
+     */
+    protected void preWriteRecordTasks(String mimetype)
     throws IOException {
         if (this.out == null) {
             createFile();
         }
-        if (settings.getCompress()) {
+        int level = getCompressionLevel(mimetype);
+        int strategy = settings.getCompressionStrategy();
+        if (settings.getCompress() && deflateExecutor != null
+                && (!writeMemberLengths || this.f != null)) {
+            memberStart = getPosition();
+            this.out = new ParallelGZIPOutputStream(this.out, deflateExecutor,
+                ParallelGZIPOutputStream.DEFAULT_CHUNK_SIZE, level, strategy,
+                2 * Runtime.getRuntime().availableProcessors(),
+                writeMemberLengths ? MEMBER_LENGTH_HEADER
+                    : ParallelGZIPOutputStream.GZIP_HEADER);
+        } else if (settings.getCompress() && writeMemberLengths) {
+            this.out = new MemberLengthStream(this.out, level, strategy);
+        } else if (settings.getCompress()) {
             // Wrap stream in GZIP Writer.
             // The below construction immediately writes the GZIP 'default'
             // header out on the underlying stream.
-            this.out = new CompressedStream(this.out);
+            this.out = new CompressedStream(this.out, level, strategy);
         }
     }
 
+    /**
+     * @return deflate level for a record of the given content type:
+     * stored blocks for already-compressed types, with adaptive
+     * compression, otherwise the settings' level
+     */
+    protected int getCompressionLevel(String mimetype) {
+        if (settings.getAdaptiveCompression() && isPrecompressed(mimetype)) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return settings.getCompressionLevel();
+    }
+
+    /**
+     * @return whether content of the given type is already compressed
+     */
+    public static boolean isPrecompressed(String mimetype) {
+        if (mimetype == null) {
+            return false;
+        }
+        int end = mimetype.indexOf(';');
+        String type = (end < 0 ? mimetype : mimetype.substring(0, end))
+            .trim().toLowerCase();
+        if (PRECOMPRESSED_MIMETYPES.contains(type)) {
+            return true;
+        }
+        int slash = type.indexOf('/');
+        return slash > 0
+            && PRECOMPRESSED_MIMETYPES.contains(type.substring(0, slash))
+            && !UNCOMPRESSED_AUDIO_MIMETYPES.contains(type);
+    }
+
     /**
      * Post file write tasks.
      * If compressed, finishes up compression and flushes stream so any
@@ -339,7 +470,22 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
      */
     protected void postWriteRecordTasks()
     throws IOException {
-        if (settings.getCompress()) {
+        if (this.out instanceof ParallelGZIPOutputStream) {
+            ParallelGZIPOutputStream o = (ParallelGZIPOutputStream)this.out;
+            o.finish();
+            o.flush();
+            this.out = o.getWrappedStream();
+            if (writeMemberLengths) {
+                pendingMemberLengths.add(
+                    new long[] {memberStart, getPosition() - memberStart});
+            }
+        } else if (this.out instanceof MemberLengthStream) {
+            MemberLengthStream o = (MemberLengthStream)this.out;
+            o.finish();
+            o.flush();
+            o.end();
+            this.out = o.getWrappedStream();
+        } else if (settings.getCompress()) {
             CompressedStream o = (CompressedStream)this.out;
             o.finish();
             o.flush();
@@ -412,12 +558,152 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
         return tot;
     }
 
+    /**
+     * Copy bytes from the provided channel to the target file/stream being
+     * written. When writing a file uncompressed, the bytes are transferred
+     * to it by the channels, without passing through the JVM heap; a
+     * FileChannel is read from its current position, which is advanced.
+     *
+     * @return number of bytes written
+     * @param src
+     *            channel to copy bytes from
+     * @param recordLength
+     *            expected number of bytes to copy
+     * @param enforceLength
+     *            whether to throw an exception if too few bytes are
+     *            available from channel
+     * @throws IOException
+     */
+    protected long copyFrom(final ReadableByteChannel src,
+            final long recordLength, boolean enforceLength)
+    throws IOException {
+        long tot = 0;
+        if (this.fileChannel != null && this.out == this.countOut) {
+            this.countOut.forceFlush();
+            long position = this.fileChannel.position();
+            while (tot < recordLength) {
+                long n;
+                if (src instanceof FileChannel) {
+                    FileChannel fc = (FileChannel) src;
+                    n = fc.transferTo(fc.position(), recordLength - tot,
+                        this.fileChannel);
+                    fc.position(fc.position() + n);
+                } else {
+                    n = this.fileChannel.transferFrom(src, position + tot,
+                        recordLength - tot);
+                }
+                if (n <= 0) {
+                    break;
+                }
+                tot += n;
+            }
+            this.fileChannel.position(position + tot);
+            this.countOut.addCount(tot);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(scratchbuffer);
+            while (tot < recordLength) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(),
+                    recordLength - tot));
+                int read = src.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                write(scratchbuffer, 0, read);
+                tot += read;
+            }
+        }
+        if (enforceLength && tot != recordLength) {
+            throw new IOException("Read " + tot + " but expected "
+                    + recordLength);
+        }
+        return tot;
+    }
+
+    public boolean getWriteOffsetIndex() {
+        return writeOffsetIndex;
+    }
+
+    /**
+     * @param writeOffsetIndex if true, write a {@link RecordOffsetIndex}
+     * sidecar for each file on close
+     */
+    public void setWriteOffsetIndex(boolean writeOffsetIndex) {
+        this.writeOffsetIndex = writeOffsetIndex;
+    }
+
+    public ExecutorService getDeflateExecutor() {
+        return deflateExecutor;
+    }
+
+    /**
+     * @param deflateExecutor if set, and compressing, deflate records in
+     * chunks in parallel on it, into one gzip member each
+     */
+    public void setDeflateExecutor(ExecutorService deflateExecutor) {
+        this.deflateExecutor = deflateExecutor;
+    }
+
+    public boolean getWriteMemberLengths() {
+        return writeMemberLengths;
+    }
+
+    /**
+     * @param writeMemberLengths if true, and compressing, write each record's
+     * compressed length in an SL record of its gzip header
+     */
+    public void setWriteMemberLengths(boolean writeMemberLengths) {
+        this.writeMemberLengths = writeMemberLengths;
+    }
+
+    /**
+     * Note a record written to the current file, for its offset index.
+     * 
+     * @param offset position of the record in the file
+     * @param length bytes written for the record, compressed if compressing
+     * @param recordId WARC-Record-ID, or null
+     * @param url record url, or null
+     */
+    protected void noteRecordWritten(long offset, long length,
+            String recordId, String url) {
+        if (!writeOffsetIndex || offsetIndexInvalid) {
+            return;
+        }
+        if (offsetIndex == null) {
+            offsetIndex = new RecordOffsetIndex();
+        }
+        offsetIndex.add(offset, length, recordId, url);
+    }
+
+    /**
+     * Note a record which failed part way, leaving some of it in the
+     * file. No offset index is written for the current file.
+     * 
+     * @param offset position of the record in the file
+     */
+    protected void noteRecordFailed(long offset) {
+        if (!writeOffsetIndex || offsetIndexInvalid) {
+            return;
+        }
+        logger.warning("Record at " + offset + " of " + this.f +
+                " failed, not writing its offset index");
+        offsetIndexInvalid = true;
+        offsetIndex = null;
+    }
+
     public void close() throws IOException {
         if (this.out == null) {
             return;
         }
         this.out.close();
         this.out = null;
+        this.fileChannel = null;
+        if (!pendingMemberLengths.isEmpty()) {
+            writePendingMemberLengths();
+        }
+        RecordOffsetIndex index = this.offsetIndex;
+        this.offsetIndex = null;
+        this.offsetIndexInvalid = false;
         if (this.f != null && this.f.exists()) {
             String path = this.f.getAbsolutePath();
             if (path.endsWith(OCCUPIED_SUFFIX)) {
@@ -434,6 +720,10 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
             
             logger.fine("Closed " + this.f.getAbsolutePath() +
                     ", size " + this.f.length());
+
+            if (index != null) {
+                index.write(RecordOffsetIndex.getSidecarFile(this.f));
+            }
         }
     }
     
@@ -441,6 +731,49 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
     	return this.out;
     }
 
+    /**
+     * Fill in the SL records of the closed file's members, whose headers
+     * were written with a length of 0.
+     */
+    protected void writePendingMemberLengths() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(this.f, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer value = ByteBuffer.allocate(
+                GZIPConstants.SL_RECORD_VALUE_LENGTH);
+            value.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            for (long[] member : pendingMemberLengths) {
+                value.clear();
+                value.putLong(member[1]);
+                value.flip();
+                long position = member[0] + MEMBER_LENGTH_HEADER.length
+                    - GZIPConstants.SL_RECORD_VALUE_LENGTH;
+                while (value.hasRemaining()) {
+                    position += channel.write(value, position);
+                }
+            }
+        } finally {
+            pendingMemberLengths.clear();
+            raf.close();
+        }
+    }
+
+    /**
+     * Gzip header with an SL record holding a member length of 0
+     */
+    private static final byte[] MEMBER_LENGTH_HEADER;
+    static {
+        try {
+            GZIPHeader header = new GZIPHeader();
+            header.setMemberLength(0);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            header.writeBytes(bytes);
+            MEMBER_LENGTH_HEADER = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * An override so we get access to underlying output stream.
      * and offer an end() that does not accompany closing underlying
@@ -448,9 +781,12 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
      * @author stack
      */
     private class CompressedStream extends GZIPOutputStream {
-        public CompressedStream(OutputStream out)
+        public CompressedStream(OutputStream out, int level, int strategy)
         throws IOException {
             super(out);
+            // nothing is deflated yet, so these apply to all the data
+            def.setLevel(level);
+            def.setStrategy(strategy);
         }
         
         /**
@@ -470,4 +806,74 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
             def.end();
         }
     }
+
+    /**
+     * Writes a gzip member whose header has an SL record holding the
+     * member's compressed length. When writing a file the length is filled
+     * in on close; otherwise the member is held in memory until it is done.
+     */
+    private class MemberLengthStream extends DeflaterOutputStream {
+        private final OutputStream target;
+        private final ByteArrayOutputStream buffer;
+        private final long start;
+        private final CRC32 crc = new CRC32();
+
+        public MemberLengthStream(OutputStream target, int level,
+                int strategy) throws IOException {
+            this(target, (f == null) ? new ByteArrayOutputStream() : null,
+                level, strategy);
+        }
+
+        private MemberLengthStream(OutputStream target,
+                ByteArrayOutputStream buffer, int level, int strategy)
+        throws IOException {
+            super((buffer == null) ? target : buffer,
+                new Deflater(level, true), 512);
+            def.setStrategy(strategy);
+            this.target = target;
+            this.buffer = buffer;
+            this.start = getPosition();
+            if (buffer == null) {
+                target.write(MEMBER_LENGTH_HEADER);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (def.finished()) {
+                return;
+            }
+            super.finish();
+            new GZIPFooter(crc.getValue(), def.getBytesRead()).writeBytes(out);
+            if (buffer == null) {
+                pendingMemberLengths.add(
+                    new long[] {start, getPosition() - start});
+                return;
+            }
+            GZIPHeader header = new GZIPHeader();
+            try {
+                header.setMemberLength(MEMBER_LENGTH_HEADER.length
+                    + buffer.size());
+            } catch (GZIPFormatException e) {
+                throw new IOException(e);
+            }
+            header.writeBytes(target);
+            buffer.writeTo(target);
+            buffer.reset();
+        }
+
+        OutputStream getWrappedStream() {
+            return this.target;
+        }
+
+        public void end() {
+            def.end();
+        }
+    }
 }
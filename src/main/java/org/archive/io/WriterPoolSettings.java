@@ -20,6 +20,7 @@ package org.archive.io;
 
 import java.io.File;
 import java.util.List;
+import java.util.zip.Deflater;
 
 /**
  * Settings object for a {@link WriterPool}.
@@ -36,4 +37,29 @@ public interface WriterPoolSettings {
     public List<String> getMetadata();
     public boolean getFrequentFlushes();
     public int getWriteBufferSize();
+
+    /**
+     * @return deflate level of compressed records, from
+     * {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public default int getCompressionLevel() {
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * @return deflate strategy of compressed records, such as
+     * {@link Deflater#FILTERED}
+     */
+    public default int getCompressionStrategy() {
+        return Deflater.DEFAULT_STRATEGY;
+    }
+
+    /**
+     * @return whether records of already-compressed content types, such as
+     * images, video and archives, are written in stored deflate blocks
+     * rather than deflated again
+     */
+    public default boolean getAdaptiveCompression() {
+        return false;
+    }
 }
\ No newline at end of file
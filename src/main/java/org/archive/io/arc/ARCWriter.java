@@ -157,7 +157,15 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
     
     private void writeFirstRecord(final String ts)
     throws IOException {
-        write(generateARCFileMetaData(ts));
+        long startPosition = getPosition();
+        try {
+            write(generateARCFileMetaData(ts));
+        } catch (IOException e) {
+            noteRecordFailed(startPosition);
+            throw e;
+        }
+        noteRecordWritten(startPosition, getPosition() - startPosition,
+                null, ARC_MAGIC_NUMBER + getBaseFilename());
     }
         
 	/**
@@ -375,7 +383,13 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
     public void write(String uri, String contentType, String hostIP,
             long fetchBeginTimeStamp, long recordLength, InputStream in,
             boolean enforceLength) throws IOException {
-        preWriteRecordTasks();
+        if (getOutputStream() == null) {
+            // Opening the file writes the filedesc record
+            createFile();
+        }
+        long startPosition = getPosition();
+        boolean complete = false;
+        preWriteRecordTasks(contentType);
         try {
             write(getMetaLine(uri, contentType, hostIP, fetchBeginTimeStamp,
                     recordLength).getBytes(UTF8));
@@ -395,9 +409,15 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
                 }
             }
             write(LINE_SEPARATOR);
+            complete = true;
         } finally {
             postWriteRecordTasks();
+            if (!complete) {
+                noteRecordFailed(startPosition);
+            }
         }
+        noteRecordWritten(startPosition, getPosition() - startPosition,
+                null, uri);
     }
     
     /**
@@ -20,6 +20,7 @@ package org.archive.io.arc;
 
 import java.io.File;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.archive.io.WriterPoolSettings;
 
@@ -32,6 +33,9 @@ public class WriterPoolSettingsData implements WriterPoolSettings {
     protected List<String> metadata;
     protected boolean frequentFlushes = true;
     protected int writeBufferSize = 16*1024;
+    protected int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    protected int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    protected boolean adaptiveCompression = false;
     
     public WriterPoolSettingsData(String prefix, String template,
             long maxFileSizeBytes, boolean compress, List<File> outputDirs,
@@ -77,4 +81,25 @@ public class WriterPoolSettingsData implements WriterPoolSettings {
     public int getWriteBufferSize() {
         return writeBufferSize;
     }
+    @Override
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+    @Override
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+    public void setCompressionStrategy(int compressionStrategy) {
+        this.compressionStrategy = compressionStrategy;
+    }
+    @Override
+    public boolean getAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,520 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.io.ArchiveFileConstants;
+
+/**
+ * Writes WARC records to a series of files without making the submitting
+ * threads wait on compression or disk I/O.
+ *
+ * <p>Submitted records are encoded, and compressed if the settings say so,
+ * by a pool of compressor threads, each with its own in-memory WARCWriter.
+ * A single sequencer thread appends the encoded records to the current file
+ * in submission order, rolling over files as a WARCWriter would, and
+ * flushes once for all the records ready to be appended (a group commit).
+ * The future returned for each submission completes when its records are
+ * written, with their filename and offset filled in.
+ *
+ * <p>Records' content streams are read on a compressor thread, so they must
+ * stay readable until their future completes. The number of submissions
+ * not yet written is bounded by maxPending; submitting beyond it blocks.
+ *
+ * <p>A submission is encoded in memory only if its records' content
+ * lengths add up to at most maxEncodedBytes, so encoded submissions hold
+ * at most about maxPending * maxEncodedBytes of memory. Larger submissions
+ * are written by the sequencer straight to the file, in their turn, and
+ * hold up the submissions after them while they are written.
+ */
+public class AsyncWARCWriter implements ArchiveFileConstants {
+    private static final Logger logger =
+        Logger.getLogger(AsyncWARCWriter.class.getName());
+
+    public static final int DEFAULT_MAX_PENDING = 64;
+    public static final long DEFAULT_MAX_ENCODED_BYTES = 4 * 1024 * 1024;
+
+    /** Marks the end of submissions for the sequencer */
+    private static final Group END = new Group(new WARCRecordInfo[0]);
+    static {
+        END.encoded = CompletableFuture.completedFuture(null);
+    }
+
+    /** Encoding of a group written straight to the file */
+    private static final Encoded DIRECT = new Encoded();
+
+    private final AtomicInteger serialNo;
+    private final WARCWriterPoolSettings settings;
+    private final WARCWriter writer;
+    private final ExecutorService compressors;
+    private final ThreadLocal<Encoder> encoders;
+    private final Semaphore pending;
+    private final LinkedBlockingQueue<Group> sequence =
+        new LinkedBlockingQueue<Group>();
+    protected final Thread sequencer;
+    private volatile boolean closed = false;
+    private long maxEncodedBytes = DEFAULT_MAX_ENCODED_BYTES;
+    private boolean writeOffsetIndex = false;
+    private boolean writeMemberLengths = false;
+
+    public AsyncWARCWriter(final WARCWriterPoolSettings settings,
+            int compressorThreads) {
+        this(new AtomicInteger(), settings, compressorThreads,
+            DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param serialNo used to generate unique filename sequences
+     * @param compressorThreads number of threads encoding records
+     * @param maxPending most submissions not yet written
+     */
+    public AsyncWARCWriter(final AtomicInteger serialNo,
+            final WARCWriterPoolSettings settings, int compressorThreads,
+            int maxPending) {
+        this.serialNo = serialNo;
+        this.settings = settings;
+        this.writer = new WARCWriter(serialNo, settings);
+        this.pending = new Semaphore(maxPending);
+        this.compressors = Executors.newFixedThreadPool(compressorThreads,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AsyncWARCWriter-compressor-"
+                        + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        this.encoders = ThreadLocal.withInitial(new Supplier<Encoder>() {
+            public Encoder get() {
+                return new Encoder();
+            }
+        });
+        this.sequencer = new Thread(new Runnable() {
+            public void run() {
+                sequence();
+            }
+        }, "AsyncWARCWriter-sequencer");
+        this.sequencer.setDaemon(true);
+        this.sequencer.start();
+    }
+
+    /**
+     * Submit records to be written together, in order, to the same file.
+     * Blocks while maxPending submissions are not yet written.
+     * @return future completing with the records once written, or with the
+     * IOException that kept them from being written
+     */
+    public CompletableFuture<List<WARCRecordInfo>> submit(
+            final WARCRecordInfo... records) throws IOException {
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        final Group group = new Group(records);
+        synchronized (sequence) {
+            if (closed) {
+                pending.release();
+                throw new IOException("Writer is closed");
+            }
+            if (contentLength(records) > maxEncodedBytes) {
+                group.encoded = CompletableFuture.completedFuture(DIRECT);
+            } else {
+                group.encoded = CompletableFuture.supplyAsync(new Supplier<Encoded>() {
+                    public Encoded get() {
+                        try {
+                            return encoders.get().encode(group.records);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                }, compressors);
+            }
+            sequence.add(group);
+        }
+        return group.written;
+    }
+
+    protected static long contentLength(WARCRecordInfo[] records) {
+        long length = 0;
+        for (WARCRecordInfo record : records) {
+            length += Math.max(0, record.getContentLength());
+        }
+        return length;
+    }
+
+    /**
+     * Write the submitted records and close the current file
+     */
+    public void close() throws IOException {
+        synchronized (sequence) {
+            if (!closed) {
+                closed = true;
+                sequence.add(END);
+            }
+        }
+        try {
+            sequencer.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            compressors.shutdown();
+        }
+        writer.close();
+    }
+
+    /**
+     * Append groups in submission order, taking every group already
+     * encoded before committing them all with one flush.
+     */
+    protected void sequence() {
+        List<Group> uncommitted = new ArrayList<Group>();
+        // taken from the sequence but not yet appended
+        Group taken = null;
+        try {
+            while (true) {
+                Group group = taken = sequence.take();
+                while (group != END) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    append(group, uncommitted);
+                    taken = null;
+                    group = sequence.peek();
+                    if (group == null || !group.encoded.isDone()) {
+                        break;
+                    }
+                    taken = sequence.poll();
+                }
+                commit(uncommitted);
+                if (group == END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warning("Sequencer interrupted");
+            commit(uncommitted);
+            IOException cause = new InterruptedIOException("Sequencer interrupted");
+            if (taken != null) {
+                fail(taken, cause);
+            }
+            abandon(cause);
+        } catch (Throwable t) {
+            logger.log(Level.SEVERE, "Sequencer failed", t);
+            IOException cause = new IOException(t);
+            if (taken != null) {
+                fail(taken, cause);
+            }
+            for (Group written : uncommitted) {
+                fail(written, cause);
+            }
+            uncommitted.clear();
+            abandon(cause);
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    /**
+     * Fail the groups not yet taken by the sequencer, when it stops before
+     * the end, and refuse further submissions
+     */
+    protected void abandon(IOException cause) {
+        List<Group> left = new ArrayList<Group>();
+        synchronized (sequence) {
+            closed = true;
+            sequence.drainTo(left);
+        }
+        for (Group group : left) {
+            if (group != END) {
+                fail(group, cause);
+            }
+        }
+    }
+
+    protected void append(Group group, List<Group> uncommitted) {
+        Encoded encoded;
+        try {
+            encoded = group.encoded.join();
+        } catch (CompletionException e) {
+            fail(group, e.getCause());
+            return;
+        }
+        if (encoded == DIRECT) {
+            appendDirect(group, uncommitted);
+            return;
+        }
+        try {
+            writer.checkSize();
+            for (int i = 0; i < group.records.length; i++) {
+                if (encoded.lengths[i] == 0) {
+                    // not written: bad header
+                    continue;
+                }
+                writer.writeEncodedRecord(group.records[i], encoded.bytes,
+                    encoded.offsets[i], encoded.lengths[i],
+                    encoded.contentBytes[i], encoded.totalBytes[i]);
+            }
+            writer.resetTmpRecordLog();
+            uncommitted.add(group);
+        } catch (IOException e) {
+            giveUpFile(group, uncommitted, e);
+        } catch (RuntimeException e) {
+            giveUpFile(group, uncommitted, asIOException(e));
+        }
+    }
+
+    /**
+     * Write a group too large to encode in memory straight to the file
+     */
+    protected void appendDirect(Group group, List<Group> uncommitted) {
+        try {
+            writer.checkSize();
+            for (WARCRecordInfo record : group.records) {
+                writer.writeRecord(record);
+            }
+            writer.resetTmpRecordLog();
+            uncommitted.add(group);
+        } catch (IOException e) {
+            giveUpFile(group, uncommitted, e);
+        } catch (RuntimeException e) {
+            giveUpFile(group, uncommitted, asIOException(e));
+        }
+    }
+
+    /**
+     * An unchecked exception from the writer as an IOException. An
+     * interrupt the writer reported this way, as
+     * {@link org.archive.util.InterruptibleCharSequence} does, is kept for
+     * the sequencer to see.
+     */
+    protected static IOException asIOException(RuntimeException e) {
+        if (e.getCause() instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iioe = new InterruptedIOException();
+            iioe.initCause(e);
+            return iioe;
+        }
+        return new IOException(e);
+    }
+
+    /**
+     * The file is given up, with the groups already in it
+     */
+    protected void giveUpFile(Group group, List<Group> uncommitted,
+            IOException e) {
+        fail(group, e);
+        for (Group written : uncommitted) {
+            fail(written, e);
+        }
+        uncommitted.clear();
+        invalidateFile();
+    }
+
+    protected void commit(List<Group> uncommitted) {
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        IOException failure = null;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            failure = e;
+            invalidateFile();
+        }
+        for (Group group : uncommitted) {
+            if (failure == null) {
+                group.written.complete(Arrays.asList(group.records));
+                pending.release();
+            } else {
+                fail(group, failure);
+            }
+        }
+        uncommitted.clear();
+    }
+
+    protected void fail(Group group, Throwable cause) {
+        logger.log(Level.WARNING, "Failed writing records", cause);
+        // a group the sequencer failed in is already done
+        if (group.written.completeExceptionally(cause)) {
+            pending.release();
+        }
+    }
+
+    /**
+     * Close the current file after an error, renaming it with an
+     * '.invalid' suffix, as {@link org.archive.io.WriterPool} does
+     */
+    protected void invalidateFile() {
+        File file = writer.getFile();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Problem closing " + file, e);
+        }
+        file = writer.getFile();
+        if (file != null && file.exists()) {
+            file.renameTo(new File(file.getAbsoluteFile() + INVALID_SUFFIX));
+        }
+    }
+
+    public AtomicInteger getSerialNo() {
+        return serialNo;
+    }
+
+    public WARCWriterPoolSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return number of submissions not yet written
+     */
+    public int getNumPending() {
+        return sequence.size();
+    }
+
+    public long getMaxEncodedBytes() {
+        return maxEncodedBytes;
+    }
+
+    /**
+     * @param maxEncodedBytes largest total content length of a submission
+     * encoded in memory; larger ones are written on the sequencer thread
+     */
+    public void setMaxEncodedBytes(long maxEncodedBytes) {
+        this.maxEncodedBytes = maxEncodedBytes;
+    }
+
+    public boolean getWriteOffsetIndex() {
+        return writeOffsetIndex;
+    }
+
+    /**
+     * @param writeOffsetIndex write an offset index sidecar for each file.
+     * Set before the first submit.
+     */
+    public void setWriteOffsetIndex(boolean writeOffsetIndex) {
+        this.writeOffsetIndex = writeOffsetIndex;
+        writer.setWriteOffsetIndex(writeOffsetIndex);
+    }
+
+    public boolean getWriteMemberLengths() {
+        return writeMemberLengths;
+    }
+
+    /**
+     * @param writeMemberLengths if compressing, record each member's length
+     * in its gzip header. Set before the first submit.
+     */
+    public void setWriteMemberLengths(boolean writeMemberLengths) {
+        this.writeMemberLengths = writeMemberLengths;
+    }
+
+    /**
+     * Records submitted together, and their encoding
+     */
+    protected static class Group {
+        final WARCRecordInfo[] records;
+        CompletableFuture<Encoded> encoded;
+        final CompletableFuture<List<WARCRecordInfo>> written =
+            new CompletableFuture<List<WARCRecordInfo>>();
+
+        Group(WARCRecordInfo[] records) {
+            this.records = records;
+        }
+    }
+
+    /**
+     * Bytes of a group's records as they go in the file
+     */
+    protected static class Encoded {
+        byte[] bytes;
+        int[] offsets;
+        int[] lengths;
+        long[] contentBytes;
+        long[] totalBytes;
+    }
+
+    /**
+     * A compressor thread's WARCWriter, writing to memory
+     */
+    protected class Encoder {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private WARCWriter memWriter;
+
+        Encoder() {
+            try {
+                memWriter = new WARCWriter(serialNo, buffer, null, settings);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            memWriter.setWriteMemberLengths(writeMemberLengths);
+        }
+
+        Encoded encode(WARCRecordInfo[] records) throws IOException {
+            Encoded encoded = new Encoded();
+            encoded.offsets = new int[records.length];
+            encoded.lengths = new int[records.length];
+            encoded.contentBytes = new long[records.length];
+            encoded.totalBytes = new long[records.length];
+            buffer.reset();
+            try {
+                for (int i = 0; i < records.length; i++) {
+                    long content = WARCWriter.getStat(memWriter.getTmpStats(),
+                        WARCWriter.TOTALS, WARCWriter.CONTENT_BYTES);
+                    long total = WARCWriter.getStat(memWriter.getTmpStats(),
+                        WARCWriter.TOTALS, WARCWriter.TOTAL_BYTES);
+                    encoded.offsets[i] = buffer.size();
+                    memWriter.writeRecord(records[i]);
+                    encoded.lengths[i] = buffer.size() - encoded.offsets[i];
+                    encoded.contentBytes[i] = WARCWriter.getStat(
+                        memWriter.getTmpStats(), WARCWriter.TOTALS,
+                        WARCWriter.CONTENT_BYTES) - content;
+                    encoded.totalBytes[i] = WARCWriter.getStat(
+                        memWriter.getTmpStats(), WARCWriter.TOTALS,
+                        WARCWriter.TOTAL_BYTES) - total;
+                }
+                encoded.bytes = buffer.toByteArray();
+            } finally {
+                memWriter.resetTmpRecordLog();
+            }
+            return encoded;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io.warc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Parses a WARC record's Header Line and Named Fields at the byte level,
+ * into a buffer reused from record to record.
+ *
+ * <p>Fields are kept as offsets into the buffer and decoded only when asked
+ * for, so a caller wanting a few fields of each record, as CDX generation
+ * does, does not pay for decoding all of them. Names are matched against
+ * the raw bytes, and numeric fields such as Content-Length are read without
+ * decoding. Parsing is as lax as {@link org.archive.util.LaxHttpParser}'s:
+ * lines may end in LF alone, folded lines are joined with a space, and a
+ * line without a colon becomes a field named
+ * {@link #BAD_HEADER_LINE_NAME}.
+ *
+ * <p>Parsing again overwrites the fields; {@link #copy()} keeps them.
+ * Reads the stream a byte at a time, never past the blank line ending the
+ * fields, so give it a buffered stream.
+ */
+public class WARCHeaderParser implements WARCConstants {
+    /** Name given to lines with no colon */
+    public static final String BAD_HEADER_LINE_NAME =
+        "HttpClient-Bad-Header-Line-Failed-Parse";
+
+    /** Default most bytes of Header Line and Named Fields */
+    public static final int DEFAULT_MAX_HEADER_LENGTH = 1024 * 1024;
+
+    private static final Charset CHARSET =
+        Charset.forName(WARC_HEADER_ENCODING);
+    private static final byte[] BAD_HEADER_LINE_NAME_BYTES =
+        BAD_HEADER_LINE_NAME.getBytes(CHARSET);
+
+    private final int maxHeaderLength;
+    /** Header Line then field names and values, without line ends */
+    private byte[] buffer;
+    /** Length of the Header Line in the buffer */
+    private int versionLength = 0;
+    /** Name start, name end, value start, value end of each field */
+    private int[] bounds;
+    private int count = 0;
+    /** Bytes read by the last parse */
+    private int headerLength = 0;
+
+    public WARCHeaderParser() {
+        this(DEFAULT_MAX_HEADER_LENGTH);
+    }
+
+    /**
+     * @param maxHeaderLength most bytes a record's Header Line and Named
+     * Fields may take; parsing fails beyond it
+     */
+    public WARCHeaderParser(int maxHeaderLength) {
+        this(maxHeaderLength, new byte[1024], new int[4 * 16]);
+    }
+
+    protected WARCHeaderParser(int maxHeaderLength, byte[] buffer,
+            int[] bounds) {
+        this.maxHeaderLength = maxHeaderLength;
+        this.buffer = buffer;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Read a Header Line and Named Fields, through the blank line ending
+     * them.
+     * @param in stream at the start of a record
+     * @throws IOException if the stream ends first, the Header Line is not
+     * a WARC one or the fields are longer than the most allowed
+     */
+    public void parse(InputStream in) throws IOException {
+        count = 0;
+        headerLength = 0;
+        versionLength = readLine(in, 0);
+        if (versionLength <= 0) {
+            throw new IOException("Failed to read WARC_MAGIC");
+        }
+        if (!startsWith(0, versionLength, WARC_MAGIC)) {
+            throw new IOException("Failed to find WARC MAGIC: "
+                + decode(0, versionLength));
+        }
+        int pos = versionLength;
+        while (true) {
+            int end = readLine(in, pos);
+            if (end < 0 || isBlank(pos, end)) {
+                break;
+            }
+            if (buffer[pos] == ' ' || buffer[pos] == '\t') {
+                if (count == 0) {
+                    // nothing to fold into
+                    continue;
+                }
+                // folded line: append to the last value
+                int start = trimStart(pos, end);
+                end = trimEnd(start, end);
+                int valueEnd = bounds[4 * count - 1];
+                buffer[valueEnd++] = ' ';
+                System.arraycopy(buffer, start, buffer, valueEnd, end - start);
+                bounds[4 * count - 1] = valueEnd + end - start;
+                pos = valueEnd + end - start;
+                continue;
+            }
+            if (4 * count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+            }
+            int field = 4 * count++;
+            int colon = indexOf(pos, end, (byte) ':');
+            if (colon < 0) {
+                // keep the line as the value of a pseudo-field
+                int length = BAD_HEADER_LINE_NAME_BYTES.length;
+                ensureCapacity(end + length);
+                System.arraycopy(buffer, pos, buffer, pos + length, end - pos);
+                System.arraycopy(BAD_HEADER_LINE_NAME_BYTES, 0, buffer, pos,
+                    length);
+                bounds[field] = pos;
+                bounds[field + 1] = pos + length;
+                bounds[field + 2] = pos + length;
+                bounds[field + 3] = end + length;
+                pos = end + length;
+                continue;
+            }
+            bounds[field] = trimStart(pos, colon);
+            bounds[field + 1] = trimEnd(bounds[field], colon);
+            bounds[field + 2] = trimStart(colon + 1, end);
+            bounds[field + 3] = trimEnd(bounds[field + 2], end);
+            pos = end;
+        }
+    }
+
+    /**
+     * Read bytes through the next LF into the buffer at pos.
+     * @return end of the line in the buffer, less its CRLF or LF, or -1 if
+     * the stream was at its end
+     */
+    protected int readLine(InputStream in, int pos) throws IOException {
+        int start = pos;
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (++headerLength > maxHeaderLength) {
+                throw new IOException("WARC header longer than "
+                    + maxHeaderLength);
+            }
+            if (c == '\n') {
+                return (pos > start && buffer[pos - 1] == '\r') ? pos - 1 : pos;
+            }
+            ensureCapacity(pos + 1);
+            buffer[pos++] = (byte) c;
+        }
+        return (pos == start) ? -1 : pos;
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+                Math.max(capacity, 2 * buffer.length));
+        }
+    }
+
+    /**
+     * @return bytes read by the last parse, the offset of the record's
+     * content block from its start
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * @return the Header Line, such as "WARC/1.0"
+     */
+    public String getVersion() {
+        return decode(0, versionLength);
+    }
+
+    /**
+     * @return number of fields
+     */
+    public int size() {
+        return count;
+    }
+
+    public String getName(int i) {
+        return decode(bounds[4 * i], bounds[4 * i + 1]);
+    }
+
+    public String getValue(int i) {
+        return decode(bounds[4 * i + 2], bounds[4 * i + 3]);
+    }
+
+    /**
+     * @param name field name, matched exactly
+     * @return index of the last field of the name, or -1 if none
+     */
+    public int indexOf(String name) {
+        for (int i = count - 1; i >= 0; i--) {
+            int start = bounds[4 * i];
+            int end = bounds[4 * i + 1];
+            if (end - start == name.length() && startsWith(start, end, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return value of the last field of the name, or null if none
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+        return (i < 0) ? null : getValue(i);
+    }
+
+    /**
+     * Read a numeric field without decoding it.
+     * @return value of the last field of the name, or defaultValue if none
+     * @throws NumberFormatException if the value is not a number
+     */
+    public long getLong(String name, long defaultValue) {
+        int i = indexOf(name);
+        if (i < 0) {
+            return defaultValue;
+        }
+        int start = bounds[4 * i + 2];
+        int end = bounds[4 * i + 3];
+        if (start == end || end - start > 18) {
+            return Long.parseLong(getValue(i));
+        }
+        long value = 0;
+        for (int j = start; j < end; j++) {
+            int digit = buffer[j] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(getValue(i));
+            }
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return the fields, in a buffer of their own that later parses
+     * don't touch
+     */
+    public WARCHeaderParser copy() {
+        int length = (count == 0) ? versionLength : bounds[4 * count - 1];
+        WARCHeaderParser copy = new WARCHeaderParser(maxHeaderLength,
+            Arrays.copyOf(buffer, length), Arrays.copyOf(bounds, 4 * count));
+        copy.versionLength = versionLength;
+        copy.count = count;
+        copy.headerLength = headerLength;
+        return copy;
+    }
+
+    protected String decode(int start, int end) {
+        return new String(buffer, start, end - start, CHARSET);
+    }
+
+    /**
+     * @return whether the bytes start with the chars, which are ASCII
+     */
+    protected boolean startsWith(int start, int end, String s) {
+        if (end - start < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buffer[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int indexOf(int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean isBlank(int start, int end) {
+        return trimStart(start, end) == end;
+    }
+
+    protected int trimStart(int start, int end) {
+        while (start < end && isWhitespace(buffer[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    protected int trimEnd(int start, int end) {
+        while (end > start && isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    /** as {@link String#trim()} has it */
+    protected static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getVersion());
+        for (int i = 0; i < count; i++) {
+            sb.append("\r\n").append(getName(i)).append(": ")
+                .append(getValue(i));
+        }
+        return sb.toString();
+    }
+}
@@ -42,6 +42,9 @@ import org.archive.io.ArchiveRecord;
  * @version $Date: 2006-11-27 18:03:03 -0800 (Mon, 27 Nov 2006) $ $Version$
  */
 public class WARCReader extends ArchiveReader implements WARCConstants {
+    /** Parses each record's Header Line and Named Fields */
+    protected WARCHeaderParser headerParser = new WARCHeaderParser();
+
     protected WARCReader() {
         super();
     }
@@ -92,7 +95,17 @@ public class WARCReader extends ArchiveReader implements WARCConstants {
     protected WARCRecord createArchiveRecord(InputStream is, long offset)
     throws IOException {
         return (WARCRecord)currentRecord(new WARCRecord(is,
-        	getReaderIdentifier(), offset, isDigest(), isStrict()));
+        	getReaderIdentifier(), offset, isDigest(), isStrict(),
+        	headerParser));
+    }
+
+    /**
+     * @return The record last read by {@link #get()} or the iterator, or
+     * null if none.
+     */
+    @Override
+    public WARCRecord getCurrentRecord() {
+        return (WARCRecord)super.getCurrentRecord();
     }
     
 	@Override
@@ -30,6 +30,7 @@ import java.util.Iterator;
 import org.archive.io.ArchiveReader;
 import org.archive.io.ArchiveReaderFactory;
 import org.archive.io.ArchiveRecord;
+import org.archive.io.RecordOffsetIndex;
 import org.archive.io.warc.WARCConstants;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.FileUtils;
@@ -78,6 +79,54 @@ implements WARCConstants {
     		getArchiveReader(f, offset);
     }
     
+    /**
+     * @param f A WARC file to read.
+     * @param index Offset index of <code>f</code>.
+     * @param ordinal Record number in <code>f</code>, from 0.
+     * @return A WARCReader set to start reading at the record.
+     * @throws IOException 
+     */
+    public static WARCReader get(final File f, final RecordOffsetIndex index,
+    		final int ordinal)
+    throws IOException {
+    	return get(f, index.getOffset(ordinal));
+    }
+    
+    /**
+     * Read the record with the given WARC-Record-ID, seeking straight to it
+     * using the offset index of the file.
+     * @param f A WARC file to read.
+     * @param index Offset index of <code>f</code>.
+     * @param recordId WARC-Record-ID, with or without angle brackets.
+     * @return A WARCReader whose {@link WARCReader#getCurrentRecord()} is
+     * the record, its header already read, or null if there is no such
+     * record.
+     * @throws IOException 
+     */
+    public static WARCReader getByRecordId(final File f,
+    		final RecordOffsetIndex index, final String recordId)
+    throws IOException {
+    	long hash = RecordOffsetIndex.hashRecordId(recordId);
+    	for (int ordinal : index.findRecordId(recordId)) {
+    		// Check the header in case of a hash collision
+    		WARCReader reader = get(f, index, ordinal);
+    		boolean match = false;
+    		try {
+    			ArchiveRecord record = reader.get();
+    			match = RecordOffsetIndex.hashRecordId((String)
+    				record.getHeader().getHeaderValue(HEADER_KEY_ID)) == hash;
+    		} finally {
+    			if (!match) {
+    				reader.close();
+    			}
+    		}
+    		if (match) {
+    			return reader;
+    		}
+    	}
+    	return null;
+    }
+    
     protected ArchiveReader getArchiveReader(final File f, final long offset)
     throws IOException {
 		boolean compressed = testCompressedWARCFile(f);
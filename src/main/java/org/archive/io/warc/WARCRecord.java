@@ -19,8 +19,6 @@
 
 package org.archive.io.warc;
 
-import it.unimi.dsi.fastutil.io.RepositionableStream;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
@@ -29,11 +27,8 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpParser;
 import org.archive.io.ArchiveRecord;
 import org.archive.io.ArchiveRecordHeader;
-import org.archive.util.LaxHttpParser;
 
 
 /**
@@ -43,6 +38,9 @@ import org.archive.util.LaxHttpParser;
  */
 public class WARCRecord extends ArchiveRecord implements WARCConstants {
     private Pattern WHITESPACE = Pattern.compile("\\s");
+
+    /** Parser reused across the records of a reader, or null */
+    private WARCHeaderParser headerParser = null;
     
     /**
      * Constructor.
@@ -89,6 +87,22 @@ public class WARCRecord extends ArchiveRecord implements WARCConstants {
         super(in, null, 0, digest, strict);
         setHeader(parseHeaders(in, identifier, offset, strict));
     }
+
+    /**
+     * Constructor.
+     *
+     * @param headerParser Parser to read the Header Line and Named Fields
+     * with, reused from record to record by the hosting Reader.
+     * @see #WARCRecord(InputStream, String, long, boolean, boolean)
+     */
+    public WARCRecord(final InputStream in, final String identifier,
+        final long offset, boolean digest, boolean strict,
+        final WARCHeaderParser headerParser)
+    throws IOException {
+        super(in, null, 0, digest, strict);
+        this.headerParser = headerParser;
+        setHeader(parseHeaders(in, identifier, offset, strict));
+    }
     
     /**
      * Parse WARC Header Line and Named Fields.
@@ -102,123 +116,143 @@ public class WARCRecord extends ArchiveRecord implements WARCConstants {
     protected ArchiveRecordHeader parseHeaders(final InputStream in,
         final String identifier, final long offset, final boolean strict)
     throws IOException {
-    	final Map<String, Object> m = new HashMap<String, Object>();
-    	m.put(ABSOLUTE_OFFSET_KEY, new Long(offset));
-    	m.put(READER_IDENTIFIER_FIELD_KEY, identifier);
-        
-        long startPosition = -1;
-        if (in instanceof RepositionableStream) {
-            startPosition = ((RepositionableStream)in).position();
-        }
-        String firstLine =
-            new String(LaxHttpParser.readLine(in, WARC_HEADER_ENCODING));
-        if (firstLine == null || firstLine.length() <=0) {
-            throw new IOException("Failed to read WARC_MAGIC");
-        }
-        if (!firstLine.startsWith(WARC_MAGIC)) {
-            throw new IOException("Failed to find WARC MAGIC: " + firstLine);
-        }
+        WARCHeaderParser parser = (this.headerParser != null)?
+            this.headerParser: new WARCHeaderParser();
         // Here we start reading off the inputstream but we're reading the
         // stream direct rather than going via WARCRecord#read.  The latter will
         // keep count of bytes read, digest and fail properly if EOR too soon...
         // We don't want digesting while reading Headers.
-        // 
-        Header [] h = LaxHttpParser.parseHeaders(in, WARC_HEADER_ENCODING);
-        for (int i = 0; i < h.length; i++) {
-            m.put(h[i].getName(), h[i].getValue());
+        parser.parse(in);
+        final int contentOffset = parser.getHeaderLength();
+        incrementPosition(contentOffset);
+        return new WARCRecordHeader(parser.copy(), identifier, offset);
+    }
+
+    /**
+     * Header of a WARC record, decoding Named Fields only as they are
+     * asked for. Asking for the map of all fields decodes them all, and
+     * from then on the map is the header.
+     */
+    protected static class WARCRecordHeader implements ArchiveRecordHeader {
+        private final WARCHeaderParser fields;
+        private final String identifier;
+        private final long offset;
+        private Map<String, Object> headers = null;
+
+        public WARCRecordHeader(WARCHeaderParser fields, String identifier,
+                long offset) {
+            this.fields = fields;
+            this.identifier = identifier;
+            this.offset = offset;
         }
-        int headerLength = -1;
-        if (in instanceof RepositionableStream) {
-            headerLength =
-                (int)(((RepositionableStream)in).position() - startPosition);
+
+        /**
+         * @return the parsed Named Fields
+         */
+        public WARCHeaderParser getFields() {
+            return this.fields;
         }
-        final int contentOffset = headerLength;
-        incrementPosition(contentOffset);
-   
-    	return new ArchiveRecordHeader() {
-    		private Map<String, Object> headers = m;
-            private int contentBegin = contentOffset;
-
-			public String getDate() {
-				return (String)this.headers.get(HEADER_KEY_DATE);
-			}
-
-			public String getDigest() {
-                return null;
-                // TODO: perhaps return block-digest? 
-                // superclass def implies this is calculated ("only after
-                // read in totality"), not pulled from header, so
-                // below prior implementation was misleading
-//              return (String)this.headers.get(HEADER_KEY_CHECKSUM);
-			}
-
-			public String getReaderIdentifier() {
-				return (String)this.headers.get(READER_IDENTIFIER_FIELD_KEY);
-			}
-
-			public Set<String> getHeaderFieldKeys() {
-				return this.headers.keySet();
-			}
-
-			public Map<String,Object> getHeaderFields() {
-				return this.headers;
-			}
-
-			public Object getHeaderValue(String key) {
-				return this.headers.get(key);
-			}
-
-			// Returns just the Content-Length of the warc record
-			public long getContentLength() {
-				Object o = this.headers.get(CONTENT_LENGTH);
-				if (o == null) {
-					return -1;
-				}
-				long contentLength = (o instanceof Long)?
-                    ((Long)o).longValue(): Long.parseLong((String)o);
-                return contentLength;
-			}
-			
-			// Returns the full record length
-			public long getLength()
-			{
-				return getContentLength() + contentOffset;
-			}
-
-			public String getMimetype() {
-				return (String)this.headers.get(CONTENT_TYPE);
-			}
-
-			public long getOffset() {
-				Object o = this.headers.get(ABSOLUTE_OFFSET_KEY);
-				if (o == null) {
-					return -1;
-				}
-				return (o instanceof Long)?
-                    ((Long)o).longValue(): Long.parseLong((String)o);
-			}
-
-			public String getRecordIdentifier() {
-				return (String)this.headers.get(RECORD_IDENTIFIER_FIELD_KEY);
-			}
-
-			public String getUrl() {
-				return (String)this.headers.get(HEADER_KEY_URI);
-			}
-
-			public String getVersion() {
-				return (String)this.headers.get(VERSION_FIELD_KEY);
-			}
-            
-            public int getContentBegin() {
-                return this.contentBegin;
+
+        public String getDate() {
+            return (String)getHeaderValue(HEADER_KEY_DATE);
+        }
+
+        public String getDigest() {
+            return null;
+            // TODO: perhaps return block-digest? 
+            // superclass def implies this is calculated ("only after
+            // read in totality"), not pulled from header, so
+            // below prior implementation was misleading
+//          return (String)this.headers.get(HEADER_KEY_CHECKSUM);
+        }
+
+        public String getReaderIdentifier() {
+            return (String)getHeaderValue(READER_IDENTIFIER_FIELD_KEY);
+        }
+
+        public Set<String> getHeaderFieldKeys() {
+            return getHeaderFields().keySet();
+        }
+
+        public synchronized Map<String,Object> getHeaderFields() {
+            if (this.headers == null) {
+                Map<String, Object> m = new HashMap<String, Object>();
+                m.put(ABSOLUTE_OFFSET_KEY, Long.valueOf(this.offset));
+                m.put(READER_IDENTIFIER_FIELD_KEY, this.identifier);
+                for (int i = 0; i < this.fields.size(); i++) {
+                    m.put(this.fields.getName(i), this.fields.getValue(i));
+                }
+                this.headers = m;
+            }
+            return this.headers;
+        }
+
+        public synchronized Object getHeaderValue(String key) {
+            if (this.headers != null) {
+                return this.headers.get(key);
+            }
+            if (ABSOLUTE_OFFSET_KEY.equals(key)) {
+                return Long.valueOf(this.offset);
+            }
+            if (READER_IDENTIFIER_FIELD_KEY.equals(key)) {
+                return this.identifier;
             }
-            
-            @Override
-            public String toString() {
-                return this.headers.toString();
+            return this.fields.get(key);
+        }
+
+        // Returns just the Content-Length of the warc record
+        public synchronized long getContentLength() {
+            if (this.headers == null) {
+                return this.fields.getLong(CONTENT_LENGTH, -1);
+            }
+            Object o = this.headers.get(CONTENT_LENGTH);
+            if (o == null) {
+                return -1;
+            }
+            long contentLength = (o instanceof Long)?
+                ((Long)o).longValue(): Long.parseLong((String)o);
+            return contentLength;
+        }
+
+        // Returns the full record length
+        public long getLength()
+        {
+            return getContentLength() + getContentBegin();
+        }
+
+        public String getMimetype() {
+            return (String)getHeaderValue(CONTENT_TYPE);
+        }
+
+        public long getOffset() {
+            Object o = getHeaderValue(ABSOLUTE_OFFSET_KEY);
+            if (o == null) {
+                return -1;
             }
-    	};
+            return (o instanceof Long)?
+                ((Long)o).longValue(): Long.parseLong((String)o);
+        }
+
+        public String getRecordIdentifier() {
+            return (String)getHeaderValue(RECORD_IDENTIFIER_FIELD_KEY);
+        }
+
+        public String getUrl() {
+            return (String)getHeaderValue(HEADER_KEY_URI);
+        }
+
+        public String getVersion() {
+            return (String)getHeaderValue(VERSION_FIELD_KEY);
+        }
+
+        public int getContentBegin() {
+            return this.fields.getHeaderLength();
+        }
+
+        @Override
+        public String toString() {
+            return getHeaderFields().toString();
+        }
     }
     
     @Override
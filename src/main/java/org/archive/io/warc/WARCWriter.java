@@ -23,8 +23,17 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -89,6 +98,13 @@ implements WARCConstants {
     
     /** Temporarily accumulates info on written warc records for use externally. */
     private LinkedList<WARCRecordInfo> tmpRecordLog = new LinkedList<WARCRecordInfo>();
+
+    /** Reused to encode each record's header and separator */
+    private ByteBuffer headerBuffer = ByteBuffer.allocate(2048);
+    private final CharsetEncoder headerEncoder =
+        Charset.forName(WARC_HEADER_ENCODING).newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
     
     /**
      * Constructor.
@@ -175,8 +191,23 @@ implements WARCConstants {
     throws IllegalArgumentException {
     	final StringBuilder sb =
     		new StringBuilder(2048/*A SWAG: TODO: Do analysis.*/);
+        try {
+            appendRecordHeader(metaRecord, sb);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+        }
+    	return sb.toString();
+    }
+
+    /**
+     * Append the record header, without the header/body separator.
+     */
+    protected void appendRecordHeader(WARCRecordInfo metaRecord,
+            Appendable sb)
+    throws IllegalArgumentException, IOException {
     	sb.append(WARC_ID).append(CRLF);
-        sb.append(HEADER_KEY_TYPE).append(COLON_SPACE).append(metaRecord.getType()).
+        sb.append(HEADER_KEY_TYPE).append(COLON_SPACE).append(metaRecord.getType().toString()).
             append(CRLF);
         // Do not write a subject-uri if not one present.
         if (!StringUtils.isEmpty(metaRecord.getUrl())) {
@@ -187,7 +218,7 @@ implements WARCConstants {
             append(metaRecord.getCreate14DigitDate()).append(CRLF);
         if (metaRecord.getExtraHeaders() != null) {
             for (final Iterator<Element> i = metaRecord.getExtraHeaders().iterator(); i.hasNext();) {
-                sb.append(i.next()).append(CRLF);
+                sb.append(i.next().toString()).append(CRLF);
             }
         }
 
@@ -199,11 +230,92 @@ implements WARCConstants {
         }
         sb.append(CONTENT_LENGTH).append(COLON_SPACE).
             append(Long.toString(metaRecord.getContentLength())).append(CRLF);
-    	
-    	return sb.toString();
     }
 
+    /**
+     * Write the record header, followed by the header/body separator,
+     * straight into the reused header buffer, growing it as needed.
+     * @return the header buffer, ready to read
+     */
+    protected ByteBuffer encodeRecordHeader(WARCRecordInfo metaRecord)
+    throws IllegalArgumentException {
+        while (true) {
+            headerBuffer.clear();
+            try {
+                appendRecordHeader(metaRecord, headerOut);
+                headerBuffer.put(CRLF_BYTES);
+                headerBuffer.flip();
+                return headerBuffer;
+            } catch (BufferOverflowException e) {
+                headerBuffer = ByteBuffer.allocate(headerBuffer.capacity() * 2);
+            } catch (IOException e) {
+                // headerOut doesn't throw
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Appends to the header buffer, putting ASCII chars as they are and
+     * encoding the rest of a value holding any other, throwing
+     * BufferOverflowException when it is full.
+     */
+    private final Appendable headerOut = new Appendable() {
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = csq.charAt(i);
+                if (c >= 0x80) {
+                    encode(CharBuffer.wrap(csq, i, end));
+                    break;
+                }
+                headerBuffer.put((byte) c);
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (c >= 0x80) {
+                encode(CharBuffer.wrap(new char[] {c}));
+            } else {
+                headerBuffer.put((byte) c);
+            }
+            return this;
+        }
+
+        private void encode(CharBuffer chars) {
+            headerEncoder.reset();
+            CoderResult result = headerEncoder.encode(chars, headerBuffer, true);
+            if (!result.isOverflow()) {
+                result = headerEncoder.flush(headerBuffer);
+            }
+            if (result.isOverflow()) {
+                throw new BufferOverflowException();
+            }
+        }
+    };
+
     public void writeRecord(WARCRecordInfo recordInfo)
+    throws IOException {
+        writeRecord(recordInfo, null);
+    }
+
+    /**
+     * Write a record whose content is read from a channel, such as a
+     * FileChannel onto a recorder's backing file, rather than from the
+     * recordInfo's content stream. When writing uncompressed, the content
+     * is transferred straight to the WARC file.
+     * @param content channel holding recordInfo's content length of bytes,
+     * or null to use the content stream
+     */
+    public void writeRecord(WARCRecordInfo recordInfo,
+            ReadableByteChannel content)
     throws IOException {
 
         if (recordInfo.getContentLength() == 0 &&
@@ -212,9 +324,9 @@ implements WARCConstants {
             "of content-length zero and base headers only.");
         }
 
-        String header;
+        ByteBuffer header;
         try {
-            header = createRecordHeader(recordInfo);
+            header = encodeRecordHeader(recordInfo);
 
         } catch (IllegalArgumentException e) {
             logger.log(Level.SEVERE,"could not write record type: " + recordInfo.getType() 
@@ -226,20 +338,31 @@ implements WARCConstants {
         long totalBytes = 0;
         long startPosition;
 
+        if (getOutputStream() == null) {
+            // Opening the file writes the warcinfo record, so open it first
+            // to get the start of this record
+            createFile();
+            // the warcinfo record's header took over the header buffer
+            header = encodeRecordHeader(recordInfo);
+        }
         startPosition = getPosition();
+        boolean complete = false;
         try {
-            preWriteRecordTasks();
+            // the payload type only matters to adaptive compression
+            preWriteRecordTasks(settings.getCompress()
+                    && settings.getAdaptiveCompression()
+                    ? getPayloadMimetype(recordInfo) : null);
 
-            // TODO: Revisit encoding of header.
-            byte[] bytes = header.getBytes(WARC_HEADER_ENCODING);
-            write(bytes);
-            totalBytes += bytes.length;
+            // Write out the header and the header/body separator.
+            write(header.array(), header.arrayOffset(), header.limit());
+            totalBytes += header.limit();
 
-            // Write out the header/body separator.
-            write(CRLF_BYTES);
-            totalBytes += CRLF_BYTES.length;
-
-            if (recordInfo.getContentStream() != null && recordInfo.getContentLength() > 0) {
+            if (content != null && recordInfo.getContentLength() > 0) {
+                contentBytes += copyFrom(content,
+                        recordInfo.getContentLength(),
+                        recordInfo.getEnforceLength());
+                totalBytes += contentBytes;
+            } else if (recordInfo.getContentStream() != null && recordInfo.getContentLength() > 0) {
                 contentBytes += copyFrom(recordInfo.getContentStream(),
                         recordInfo.getContentLength(),
                         recordInfo.getEnforceLength());
@@ -254,13 +377,58 @@ implements WARCConstants {
             recordInfo.setWARCFilename(getFilenameWithoutOccupiedSuffix());
             recordInfo.setWARCFileOffset(startPosition);
             tmpRecordLog.add(recordInfo);
+            complete = true;
         } finally {
             postWriteRecordTasks();
             tally(recordInfo.getType(), contentBytes, totalBytes, getPosition() - startPosition);
+            if (!complete) {
+                noteRecordFailed(startPosition);
+            }
         }
+        noteRecordWritten(startPosition, getPosition() - startPosition,
+                recordInfo.getRecordId() == null ? null : recordInfo.getRecordId().toString(),
+                recordInfo.getUrl());
+    }
+
+    /**
+     * Append a record encoded by another WARCWriter with the same settings,
+     * such as one writing to memory on another thread, filling in the
+     * record's filename and offset.
+     * @param contentBytes content bytes of the record, for stats
+     * @param totalBytes uncompressed bytes of the record, for stats
+     */
+    public void writeEncodedRecord(WARCRecordInfo recordInfo, byte[] encoded,
+            int offset, int length, long contentBytes, long totalBytes)
+    throws IOException {
+        if (getOutputStream() == null) {
+            createFile();
+        }
+        long startPosition = getPosition();
+        try {
+            write(encoded, offset, length);
+        } catch (IOException e) {
+            noteRecordFailed(startPosition);
+            throw e;
+        }
+        recordInfo.setWARCFilename(getFilenameWithoutOccupiedSuffix());
+        recordInfo.setWARCFileOffset(startPosition);
+        tmpRecordLog.add(recordInfo);
+        tally(recordInfo.getType(), contentBytes, totalBytes, length);
+        noteRecordWritten(startPosition, length,
+                recordInfo.getRecordId() == null ? null : recordInfo.getRecordId().toString(),
+                recordInfo.getUrl());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        super.flush();
     }
 
     public String getFilenameWithoutOccupiedSuffix() {
+        if (getFile() == null) {
+            // writing a stream
+            return null;
+        }
         String name = getFile().getName();
         if (name.endsWith(ArchiveFileConstants.OCCUPIED_SUFFIX)) {
             name = name.substring(0, name.length() - ArchiveFileConstants.OCCUPIED_SUFFIX.length());
@@ -320,6 +488,92 @@ implements WARCConstants {
         }
     }
 
+    /** most of an HTTP response's head looked at for its Content-Type */
+    protected static final int HTTP_HEAD_PEEK = 8192;
+
+    /** Reused to peek at HTTP heads, allocated on first use */
+    private byte[] httpHeadPeek;
+
+    /**
+     * @return type of the record's payload: its identified payload type
+     * header if it has one, otherwise, for an HTTP response, the response's
+     * Content-Type, otherwise the record's content type. The response's
+     * Content-Type is only found if the content stream supports mark and
+     * the header is in the first {@link #HTTP_HEAD_PEEK} bytes.
+     */
+    protected String getPayloadMimetype(WARCRecordInfo recordInfo)
+    throws IOException {
+        if (recordInfo.getExtraHeaders() != null) {
+            String type = recordInfo.getExtraHeaders()
+                .getValue(HEADER_KEY_IDENTIFIED_PAYLOAD_TYPE);
+            if (type != null) {
+                return type;
+            }
+        }
+        String mimetype = recordInfo.getMimetype();
+        if (mimetype != null
+                && mimetype.toLowerCase().startsWith("application/http")) {
+            if (httpHeadPeek == null) {
+                httpHeadPeek = new byte[HTTP_HEAD_PEEK];
+            }
+            String type = peekHttpContentType(recordInfo.getContentStream(),
+                httpHeadPeek);
+            if (type != null) {
+                return type;
+            }
+        }
+        return mimetype;
+    }
+
+    /**
+     * @param head buffer the start of in is read into
+     * @return the Content-Type header of the HTTP message at the start of
+     * in, or null if not found; in is reset to where it was
+     */
+    protected static String peekHttpContentType(InputStream in, byte[] head)
+    throws IOException {
+        if (in == null || !in.markSupported()) {
+            return null;
+        }
+        int length = 0;
+        in.mark(head.length);
+        try {
+            int n;
+            while (length < head.length
+                    && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.reset();
+        }
+        // skip the status line
+        int start = nextLine(head, 0, length);
+        while (start < length) {
+            int end = nextLine(head, start, length);
+            String line = new String(head, start, end - start,
+                "ISO-8859-1").trim();
+            if (line.isEmpty()) {
+                break;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim()
+                    .equalsIgnoreCase(CONTENT_TYPE)) {
+                return line.substring(colon + 1).trim();
+            }
+            start = end;
+        }
+        return null;
+    }
+
+    private static int nextLine(byte[] b, int start, int length) {
+        for (int i = start; i < length; i++) {
+            if (b[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
     protected URI generateRecordId(final Map<String, String> qualifiers)
     throws IOException {
         return ((WARCWriterPoolSettings)settings).getRecordIDGenerator().getQualifiedRecordID(qualifiers);
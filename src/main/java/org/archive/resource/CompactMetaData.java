@@ -0,0 +1,558 @@
+package org.archive.resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A compact alternative to {@link MetaData}, for the same nested,
+ * multi-valued structure.
+ *
+ * Fields are held in parallel arrays, in the order added: keys, a type per
+ * field, a long per field for numbers and booleans, and an Object per field
+ * for strings, children and lists. No map, entry or boxed number is made
+ * for a field unless its key is repeated, when its values are kept in a
+ * list as MetaData keeps them in a JSONArray. Lookups scan the keys, which
+ * for the few fields of a WARC, HTTP or HTML level is cheaper than hashing,
+ * and {@link MetaDataPath} resolves whole paths without splitting strings.
+ *
+ * Parses from JSON text with {@link CompactMetaDataParser}, without making
+ * a JSONObject, and serializes to JSON with {@link #write(Appendable)}.
+ * Converts to and from MetaData for code which wants a JSONObject.
+ */
+public class CompactMetaData {
+	public static final byte TYPE_STRING = 0;
+	public static final byte TYPE_LONG = 1;
+	public static final byte TYPE_DOUBLE = 2;
+	public static final byte TYPE_BOOLEAN = 3;
+	public static final byte TYPE_CHILD = 4;
+	public static final byte TYPE_LIST = 5;
+	/** JSON null, as JSONObject.NULL */
+	public static final byte TYPE_NULL = 6;
+	/** any other Number, such as the BigDecimal JSON text's decimals parse to */
+	public static final byte TYPE_NUMBER = 7;
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private CompactMetaData topMetaData;
+	private String[] keys = new String[INITIAL_CAPACITY];
+	private byte[] types = new byte[INITIAL_CAPACITY];
+	/** longs, doubles as raw bits, booleans as 0 or 1 */
+	private long[] primitives = new long[INITIAL_CAPACITY];
+	/** Strings, children, Lists and other Numbers */
+	private Object[] objects = new Object[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public CompactMetaData() {
+		topMetaData = this;
+	}
+
+	public CompactMetaData(CompactMetaData parentMetaData, String name) {
+		if(parentMetaData == null) {
+			topMetaData = this;
+		} else {
+			topMetaData = parentMetaData.topMetaData;
+			parentMetaData.putChild(name, this);
+		}
+	}
+
+	/**
+	 * Parse JSON text.
+	 * @throws JSONException if it is not a JSON object
+	 */
+	public static CompactMetaData parse(String json) throws JSONException {
+		return new CompactMetaDataParser().parse(json);
+	}
+
+	public CompactMetaData getTopMetaData() {
+		return topMetaData;
+	}
+
+	public CompactMetaData createChild(String name) {
+		return new CompactMetaData(this, name);
+	}
+
+	/**
+	 * @return a child with the same top, not yet added anywhere
+	 */
+	CompactMetaData newElement() {
+		CompactMetaData n = new CompactMetaData();
+		n.topMetaData = topMetaData;
+		return n;
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	public String getKey(int i) {
+		return keys[i];
+	}
+
+	public byte getType(int i) {
+		return types[i];
+	}
+
+	/**
+	 * @return index of the key, or -1 if absent
+	 */
+	public int indexOf(String key) {
+		for(int i = 0; i < size; i++) {
+			if(keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Look a key up, trying first where it was last found, which for
+	 * records of the same shape is usually right.
+	 * @param hint index the key was last found at
+	 * @return index of the key, or -1 if absent
+	 */
+	public int indexOf(String key, int hint) {
+		if(hint < size && keys[hint].equals(key)) {
+			return hint;
+		}
+		return indexOf(key);
+	}
+
+	public boolean has(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	public CompactMetaData putString(String key, String value) {
+		return add(key, TYPE_STRING, 0, value);
+	}
+
+	public CompactMetaData putLong(String key, long value) {
+		return add(key, TYPE_LONG, value, null);
+	}
+
+	public CompactMetaData putDouble(String key, double value) {
+		return add(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+	}
+
+	public CompactMetaData putBoolean(String key, boolean value) {
+		return add(key, TYPE_BOOLEAN, value ? 1 : 0, null);
+	}
+
+	public CompactMetaData putNull(String key) {
+		return add(key, TYPE_NULL, 0, JSONObject.NULL);
+	}
+
+	/**
+	 * Add a number, kept as a long or double if it is one
+	 */
+	public CompactMetaData putNumber(String key, Number value) {
+		if(value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte) {
+			return putLong(key, value.longValue());
+		} else if(value instanceof Double || value instanceof Float) {
+			return putDouble(key, value.doubleValue());
+		}
+		return add(key, TYPE_NUMBER, 0, value);
+	}
+
+	/**
+	 * Set the child under key, replacing any value it had.
+	 */
+	public CompactMetaData putChild(String key, CompactMetaData child) {
+		int i = indexOf(key);
+		if(i < 0) {
+			i = grow(key);
+		}
+		set(i, TYPE_CHILD, 0, child);
+		return this;
+	}
+
+	/**
+	 * Add a child to the list under key, which is a list even if it holds
+	 * the one child.
+	 */
+	public CompactMetaData appendChild(String key, CompactMetaData child) {
+		list(key).add(child);
+		return this;
+	}
+
+	/**
+	 * Append a child holding the name, value pairs to the list under key.
+	 */
+	public void appendObj(String key, String... a) {
+		if((a.length & 1) == 1) {
+			throw new IllegalArgumentException();
+		}
+		CompactMetaData n = newElement();
+		for(int i = 0; i < a.length; i += 2) {
+			n.putString(a[i], a[i+1]);
+		}
+		appendChild(key, n);
+	}
+
+	/**
+	 * @return the value of key, boxed, null if absent, or a List of values
+	 * if it has several
+	 */
+	public Object get(String key) {
+		int i = indexOf(key);
+		return (i < 0) ? null : getValue(i);
+	}
+
+	public Object getValue(int i) {
+		switch(types[i]) {
+		case TYPE_LONG:
+			return primitives[i];
+		case TYPE_DOUBLE:
+			return Double.longBitsToDouble(primitives[i]);
+		case TYPE_BOOLEAN:
+			return primitives[i] != 0;
+		default:
+			return objects[i];
+		}
+	}
+
+	/**
+	 * @return the value of key as a string, as JSONObject.get(key).toString()
+	 * would have it, or null if absent
+	 */
+	public String getString(String key) {
+		int i = indexOf(key);
+		return (i < 0) ? null : getString(i);
+	}
+
+	public String getString(int i) {
+		switch(types[i]) {
+		case TYPE_STRING:
+			return (String) objects[i];
+		case TYPE_LONG:
+			return Long.toString(primitives[i]);
+		case TYPE_DOUBLE:
+			return Double.toString(Double.longBitsToDouble(primitives[i]));
+		case TYPE_BOOLEAN:
+			return primitives[i] != 0 ? "true" : "false";
+		case TYPE_NULL:
+		case TYPE_NUMBER:
+			return objects[i].toString();
+		default:
+			return toJSON(i);
+		}
+	}
+
+	/**
+	 * @return the number under key, parsing a string, or defaultValue if
+	 * absent or not a number
+	 */
+	public long getLong(String key, long defaultValue) {
+		int i = indexOf(key);
+		return (i < 0) ? defaultValue : getLong(i, defaultValue);
+	}
+
+	public long getLong(int i, long defaultValue) {
+		switch(types[i]) {
+		case TYPE_LONG:
+			return primitives[i];
+		case TYPE_DOUBLE:
+			return (long) Double.longBitsToDouble(primitives[i]);
+		case TYPE_NUMBER:
+			return ((Number) objects[i]).longValue();
+		case TYPE_STRING:
+			try {
+				return Long.parseLong((String) objects[i]);
+			} catch(NumberFormatException e) {
+				return defaultValue;
+			}
+		default:
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the child under key, or null if absent or not a child
+	 */
+	public CompactMetaData getChild(String key) {
+		int i = indexOf(key);
+		return (i < 0) ? null : getChild(i);
+	}
+
+	public CompactMetaData getChild(int i) {
+		return types[i] == TYPE_CHILD ? (CompactMetaData) objects[i] : null;
+	}
+
+	/**
+	 * @return the values under key, or null if absent or single-valued
+	 */
+	public List<Object> getList(String key) {
+		int i = indexOf(key);
+		return (i < 0) ? null : getList(i);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object> getList(int i) {
+		return types[i] == TYPE_LIST ? (List<Object>) objects[i] : null;
+	}
+
+	/**
+	 * Add a value, keeping any the key had in a list.
+	 */
+	private CompactMetaData add(String key, byte type, long primitive,
+			Object object) {
+		int i = indexOf(key);
+		if(i < 0) {
+			set(grow(key), type, primitive, object);
+			return this;
+		}
+		List<Object> list = list(i);
+		switch(type) {
+		case TYPE_LONG:
+			list.add(primitive);
+			break;
+		case TYPE_DOUBLE:
+			list.add(Double.longBitsToDouble(primitive));
+			break;
+		case TYPE_BOOLEAN:
+			list.add(primitive != 0);
+			break;
+		default:
+			list.add(object);
+		}
+		return this;
+	}
+
+	/**
+	 * Add a key which must not be present, for a parser, which sets its
+	 * value.
+	 * @return index of the key
+	 * @throws JSONException if the key is present, as JSONObject has it
+	 */
+	int addUnique(String key) throws JSONException {
+		if(indexOf(key) >= 0) {
+			throw new JSONException("Duplicate key \"" + key + "\"");
+		}
+		return grow(key);
+	}
+
+	void set(int i, byte type, long primitive, Object object) {
+		types[i] = type;
+		primitives[i] = primitive;
+		objects[i] = object;
+	}
+
+	private List<Object> list(String key) {
+		int i = indexOf(key);
+		if(i < 0) {
+			i = grow(key);
+			set(i, TYPE_LIST, 0, new ArrayList<Object>(2));
+		}
+		return list(i);
+	}
+
+	/**
+	 * Make the value at i a list, if it is not one, holding what it held.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Object> list(int i) {
+		if(types[i] == TYPE_LIST) {
+			return (List<Object>) objects[i];
+		}
+		List<Object> list = new ArrayList<Object>(2);
+		list.add(getValue(i));
+		set(i, TYPE_LIST, 0, list);
+		return list;
+	}
+
+	private int grow(String key) {
+		if(size == keys.length) {
+			int capacity = 2 * size;
+			keys = Arrays.copyOf(keys, capacity);
+			types = Arrays.copyOf(types, capacity);
+			primitives = Arrays.copyOf(primitives, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+		}
+		keys[size] = key;
+		return size++;
+	}
+
+	/**
+	 * Write as a JSON object, fields in the order added.
+	 */
+	public void write(Appendable out) throws IOException {
+		out.append('{');
+		for(int i = 0; i < size; i++) {
+			if(i > 0) {
+				out.append(',');
+			}
+			out.append(JSONObject.quote(keys[i])).append(':');
+			writeValue(out, i);
+		}
+		out.append('}');
+	}
+
+	private void writeValue(Appendable out, int i) throws IOException {
+		switch(types[i]) {
+		case TYPE_STRING:
+			out.append(JSONObject.quote((String) objects[i]));
+			break;
+		case TYPE_LONG:
+		case TYPE_BOOLEAN:
+			out.append(getString(i));
+			break;
+		case TYPE_CHILD:
+			((CompactMetaData) objects[i]).write(out);
+			break;
+		case TYPE_LIST:
+			writeList(out, (List<?>) objects[i]);
+			break;
+		default:
+			out.append(JSONObject.valueToString(getValue(i)));
+		}
+	}
+
+	private static void writeList(Appendable out, List<?> list)
+			throws IOException {
+		out.append('[');
+		Iterator<?> it = list.iterator();
+		while(it.hasNext()) {
+			Object o = it.next();
+			if(o instanceof CompactMetaData) {
+				((CompactMetaData) o).write(out);
+			} else if(o instanceof List) {
+				writeList(out, (List<?>) o);
+			} else {
+				out.append(JSONObject.valueToString(o));
+			}
+			if(it.hasNext()) {
+				out.append(',');
+			}
+		}
+		out.append(']');
+	}
+
+	private String toJSON(int i) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeValue(sb, i);
+		} catch(IOException e) {
+			// StringBuilder does not throw
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			write(sb);
+		} catch(IOException e) {
+			// StringBuilder does not throw
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a MetaData tree holding the same values, for code written
+	 * against JSONObject
+	 */
+	public MetaData toMetaData() {
+		return toMetaData(new MetaData());
+	}
+
+	private MetaData toMetaData(MetaData md) {
+		for(int i = 0; i < size; i++) {
+			switch(types[i]) {
+			case TYPE_CHILD:
+				((CompactMetaData) objects[i]).toMetaData(md.createChild(keys[i]));
+				break;
+			case TYPE_LIST:
+				md.put(keys[i], toJSONArray((List<?>) objects[i], md));
+				break;
+			default:
+				md.accumulate(keys[i], getValue(i));
+			}
+		}
+		return md;
+	}
+
+	private static JSONArray toJSONArray(List<?> list, MetaData md) {
+		JSONArray array = new JSONArray();
+		for(Object o : list) {
+			if(o instanceof CompactMetaData) {
+				MetaData element = new MetaData();
+				element.setTopMetaData(md.getTopMetaData());
+				array.put(((CompactMetaData) o).toMetaData(element));
+			} else if(o instanceof List) {
+				array.put(toJSONArray((List<?>) o, md));
+			} else {
+				array.put(o);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * @return a CompactMetaData holding the values of json, arrays becoming
+	 * lists
+	 */
+	public static CompactMetaData fromJSON(JSONObject json) {
+		CompactMetaData md = new CompactMetaData();
+		fromJSON(json, md);
+		return md;
+	}
+
+	private static void fromJSON(JSONObject json, CompactMetaData md) {
+		for(String key : json.keySet()) {
+			Object o = json.opt(key);
+			if(o instanceof JSONArray) {
+				int i = md.grow(key);
+				md.set(i, TYPE_LIST, 0, fromJSONArray((JSONArray) o, md));
+			} else if(o instanceof JSONObject) {
+				fromJSON((JSONObject) o, md.createChild(key));
+			} else if(o instanceof Boolean) {
+				md.putBoolean(key, (Boolean) o);
+			} else if(o instanceof Number) {
+				md.putNumber(key, (Number) o);
+			} else if(o == null || o == JSONObject.NULL) {
+				md.putNull(key);
+			} else {
+				md.putString(key, o.toString());
+			}
+		}
+	}
+
+	private static List<Object> fromJSONArray(JSONArray array,
+			CompactMetaData parent) {
+		List<Object> list = new ArrayList<Object>(array.length());
+		for(int i = 0; i < array.length(); i++) {
+			list.add(fromJSONValue(array.opt(i), parent));
+		}
+		return list;
+	}
+
+	private static Object fromJSONValue(Object o, CompactMetaData parent) {
+		if(o instanceof JSONObject) {
+			CompactMetaData child = parent.newElement();
+			fromJSON((JSONObject) o, child);
+			return child;
+		} else if(o instanceof JSONArray) {
+			return fromJSONArray((JSONArray) o, parent);
+		} else if(o instanceof Integer || o instanceof Short
+				|| o instanceof Byte) {
+			return ((Number) o).longValue();
+		} else if(o instanceof Float) {
+			return ((Number) o).doubleValue();
+		} else if(o instanceof Number || o instanceof Boolean
+				|| o == JSONObject.NULL) {
+			return o;
+		}
+		return o == null ? JSONObject.NULL : o.toString();
+	}
+}
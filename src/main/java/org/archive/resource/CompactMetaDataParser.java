@@ -0,0 +1,382 @@
+package org.archive.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Parses JSON text, such as a WAT record's metadata, straight into a
+ * {@link CompactMetaData}, with no JSONObject, HashMap or boxed number for
+ * its fields.
+ *
+ * Keys are taken from a cache of those seen before, so the keys repeated
+ * from record to record are the same String objects and are not made
+ * again. Integers which fit a long go in the long slots; other numbers are
+ * kept as JSONObject parses them, so they print the same. Unlike
+ * JSONObject, the text must be strict JSON.
+ *
+ * Reuses its key cache, so an instance must not be used by several threads
+ * at once.
+ */
+public class CompactMetaDataParser {
+	private static final int KEY_CACHE_SIZE = 1024;
+	/** most digits of an integer parsed as a long without overflow checks */
+	private static final int MAX_LONG_DIGITS = 18;
+
+	private final String[] keys = new String[KEY_CACHE_SIZE];
+	private String s;
+	private int pos;
+	private int length;
+
+	/**
+	 * @throws JSONException if json is not a JSON object
+	 */
+	public CompactMetaData parse(String json) throws JSONException {
+		s = json;
+		pos = 0;
+		length = json.length();
+		try {
+			CompactMetaData md = new CompactMetaData();
+			skipSpace();
+			expect('{');
+			parseObject(md);
+			skipSpace();
+			if(pos < length) {
+				throw error("Text after the end of the object");
+			}
+			return md;
+		} finally {
+			s = null;
+		}
+	}
+
+	/**
+	 * Parse the fields of an object, after its '{'
+	 */
+	private void parseObject(CompactMetaData md) throws JSONException {
+		skipSpace();
+		if(peek() == '}') {
+			pos++;
+			return;
+		}
+		while(true) {
+			skipSpace();
+			expect('"');
+			int i = md.addUnique(parseKey());
+			skipSpace();
+			expect(':');
+			skipSpace();
+			parseField(md, i);
+			skipSpace();
+			char c = next();
+			if(c == '}') {
+				return;
+			} else if(c != ',') {
+				throw error("Expected ',' or '}'");
+			}
+		}
+	}
+
+	private void parseField(CompactMetaData md, int i) throws JSONException {
+		char c = peek();
+		if(c == '{') {
+			pos++;
+			CompactMetaData child = md.newElement();
+			parseObject(child);
+			md.set(i, CompactMetaData.TYPE_CHILD, 0, child);
+		} else if(c == '[') {
+			pos++;
+			md.set(i, CompactMetaData.TYPE_LIST, 0, parseArray(md));
+		} else if(c == '"') {
+			pos++;
+			md.set(i, CompactMetaData.TYPE_STRING, 0, parseString());
+		} else if(match("true")) {
+			md.set(i, CompactMetaData.TYPE_BOOLEAN, 1, null);
+		} else if(match("false")) {
+			md.set(i, CompactMetaData.TYPE_BOOLEAN, 0, null);
+		} else if(match("null")) {
+			md.set(i, CompactMetaData.TYPE_NULL, 0, JSONObject.NULL);
+		} else {
+			int start = pos;
+			if(parseLong()) {
+				md.set(i, CompactMetaData.TYPE_LONG, value, null);
+			} else {
+				Number n = parseNumber(start);
+				if(n instanceof Integer || n instanceof Long) {
+					md.set(i, CompactMetaData.TYPE_LONG, n.longValue(), null);
+				} else {
+					md.set(i, CompactMetaData.TYPE_NUMBER, 0, n);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parse the elements of an array, after its '['
+	 */
+	private List<Object> parseArray(CompactMetaData parent)
+			throws JSONException {
+		List<Object> list = new ArrayList<Object>();
+		skipSpace();
+		if(peek() == ']') {
+			pos++;
+			return list;
+		}
+		while(true) {
+			skipSpace();
+			list.add(parseElement(parent));
+			skipSpace();
+			char c = next();
+			if(c == ']') {
+				return list;
+			} else if(c != ',') {
+				throw error("Expected ',' or ']'");
+			}
+		}
+	}
+
+	private Object parseElement(CompactMetaData parent) throws JSONException {
+		char c = peek();
+		if(c == '{') {
+			pos++;
+			CompactMetaData child = parent.newElement();
+			parseObject(child);
+			return child;
+		} else if(c == '[') {
+			pos++;
+			return parseArray(parent);
+		} else if(c == '"') {
+			pos++;
+			return parseString();
+		} else if(match("true")) {
+			return Boolean.TRUE;
+		} else if(match("false")) {
+			return Boolean.FALSE;
+		} else if(match("null")) {
+			return JSONObject.NULL;
+		}
+		int start = pos;
+		if(parseLong()) {
+			return value;
+		}
+		Number n = parseNumber(start);
+		return (n instanceof Integer) ? Long.valueOf(n.longValue()) : n;
+	}
+
+	/** the long parseLong() found */
+	private long value;
+
+	/**
+	 * Parse an integer of at most MAX_LONG_DIGITS digits, with no leading
+	 * zero, into value.
+	 * @return false, leaving pos, if the number is not one
+	 */
+	private boolean parseLong() {
+		int i = pos;
+		boolean negative = i < length && s.charAt(i) == '-';
+		if(negative) {
+			i++;
+		}
+		int digits = i;
+		long v = 0;
+		while(i < length) {
+			char c = s.charAt(i);
+			if(c < '0' || c > '9') {
+				break;
+			}
+			v = 10 * v + (c - '0');
+			i++;
+		}
+		int n = i - digits;
+		if(n == 0 || n > MAX_LONG_DIGITS
+				|| (s.charAt(digits) == '0' && (n > 1 || negative))) {
+			return false;
+		}
+		if(i < length) {
+			char c = s.charAt(i);
+			if(c == '.' || c == 'e' || c == 'E') {
+				return false;
+			}
+		}
+		value = negative ? -v : v;
+		pos = i;
+		return true;
+	}
+
+	/**
+	 * Parse any other number as JSONObject does
+	 */
+	private Number parseNumber(int start) throws JSONException {
+		int i = start;
+		while(i < length && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) {
+			i++;
+		}
+		if(i == start) {
+			throw error("Expected a value");
+		}
+		Object o = JSONObject.stringToValue(s.substring(start, i));
+		if(!(o instanceof Number)) {
+			throw error("Bad number");
+		}
+		pos = i;
+		return (Number) o;
+	}
+
+	/**
+	 * Parse a key, after its '"', from the cache if it has no escapes
+	 */
+	private String parseKey() throws JSONException {
+		int start = pos;
+		int hash = 0;
+		int i = start;
+		while(i < length) {
+			char c = s.charAt(i);
+			if(c == '"') {
+				break;
+			} else if(c == '\\') {
+				return parseString();
+			}
+			hash = 31 * hash + c;
+			i++;
+		}
+		if(i == length) {
+			throw error("Unterminated string");
+		}
+		pos = i + 1;
+		int len = i - start;
+		int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+		String key = keys[slot];
+		if(key == null || key.length() != len
+				|| !s.regionMatches(start, key, 0, len)) {
+			key = s.substring(start, i);
+			keys[slot] = key;
+		}
+		return key;
+	}
+
+	/**
+	 * Parse a string, after its '"'
+	 */
+	private String parseString() throws JSONException {
+		int start = pos;
+		int i = s.indexOf('"', start);
+		int escape = s.indexOf('\\', start);
+		if(i < 0) {
+			throw error("Unterminated string");
+		}
+		if(escape < 0 || escape > i) {
+			checkChars(start, i);
+			pos = i + 1;
+			return s.substring(start, i);
+		}
+		StringBuilder sb = new StringBuilder(i - start + 16);
+		i = start;
+		while(true) {
+			if(i >= length) {
+				throw error("Unterminated string");
+			}
+			char c = s.charAt(i++);
+			if(c == '"') {
+				pos = i;
+				return sb.toString();
+			} else if(c == '\\') {
+				if(i >= length) {
+					throw error("Unterminated string");
+				}
+				c = s.charAt(i++);
+				switch(c) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 'u':
+					if(i + 4 > length) {
+						throw error("Bad escape");
+					}
+					try {
+						sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+					} catch(NumberFormatException e) {
+						throw error("Bad escape");
+					}
+					i += 4;
+					break;
+				case '"':
+				case '\'':
+				case '\\':
+				case '/':
+					sb.append(c);
+					break;
+				default:
+					throw error("Bad escape");
+				}
+			} else if(c == 0 || c == '\n' || c == '\r') {
+				throw error("Unterminated string");
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Refuse the chars JSONObject refuses in strings
+	 */
+	private void checkChars(int start, int end) throws JSONException {
+		for(int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if(c == 0 || c == '\n' || c == '\r') {
+				throw error("Unterminated string");
+			}
+		}
+	}
+
+	private boolean match(String literal) {
+		if(s.startsWith(literal, pos)) {
+			pos += literal.length();
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpace() {
+		while(pos < length && s.charAt(pos) <= ' ') {
+			pos++;
+		}
+	}
+
+	private char peek() throws JSONException {
+		if(pos >= length) {
+			throw error("Unexpected end");
+		}
+		return s.charAt(pos);
+	}
+
+	private char next() throws JSONException {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char c) throws JSONException {
+		if(next() != c) {
+			pos--;
+			throw error("Expected '" + c + "'");
+		}
+	}
+
+	private JSONException error(String message) {
+		return new JSONException(message + " at " + pos);
+	}
+}
@@ -0,0 +1,142 @@
+package org.archive.resource;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A dotted path into nested metadata, such as
+ * "Envelope.WARC-Header-Metadata.WARC-Type", split once when compiled
+ * rather than on every lookup as {@link org.archive.format.json.JSONUtils}
+ * does.
+ *
+ * Against a {@link CompactMetaData}, each step first tries the index its key
+ * was found at last time, which for records of the same shape is usually
+ * right, so a lookup seldom scans. The remembered indexes are only hints,
+ * checked before use, so a path may be shared between threads.
+ *
+ * Also resolves against JSONObject trees, returning what the JSONUtils
+ * method of the same name would.
+ */
+public class MetaDataPath {
+	private final String path;
+	private final String[] parts;
+	private final int[] hints;
+
+	private MetaDataPath(String path) {
+		this.path = path;
+		parts = path.split("\\.");
+		hints = new int[parts.length];
+	}
+
+	public static MetaDataPath compile(String path) {
+		return new MetaDataPath(path);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the object holding the last key, or null if absent
+	 */
+	private CompactMetaData parent(CompactMetaData md) {
+		for(int i = 0; i < parts.length - 1 && md != null; i++) {
+			int idx = md.indexOf(parts[i], hints[i]);
+			if(idx < 0) {
+				return null;
+			}
+			hints[i] = idx;
+			md = md.getChild(idx);
+		}
+		return md;
+	}
+
+	/**
+	 * @return index of the last key in parent, or -1 if absent
+	 */
+	private int last(CompactMetaData parent) {
+		int last = parts.length - 1;
+		int idx = parent.indexOf(parts[last], hints[last]);
+		if(idx >= 0) {
+			hints[last] = idx;
+		}
+		return idx;
+	}
+
+	/**
+	 * @return the value at the path as a string, or null if absent
+	 */
+	public String extractSingle(CompactMetaData md) {
+		md = parent(md);
+		if(md == null) {
+			return null;
+		}
+		int idx = last(md);
+		return (idx < 0) ? null : md.getString(idx);
+	}
+
+	/**
+	 * @return the number at the path, or defaultValue if absent or not a
+	 * number
+	 */
+	public long extractLong(CompactMetaData md, long defaultValue) {
+		md = parent(md);
+		if(md == null) {
+			return defaultValue;
+		}
+		int idx = last(md);
+		return (idx < 0) ? defaultValue : md.getLong(idx, defaultValue);
+	}
+
+	/**
+	 * @return the child at the path, or null if absent or not a child
+	 */
+	public CompactMetaData extractObject(CompactMetaData md) {
+		md = parent(md);
+		if(md == null) {
+			return null;
+		}
+		int idx = last(md);
+		return (idx < 0) ? null : md.getChild(idx);
+	}
+
+	private JSONObject parent(JSONObject json) {
+		for(int i = 0; i < parts.length - 1 && json != null; i++) {
+			json = json.optJSONObject(parts[i]);
+		}
+		return json;
+	}
+
+	/**
+	 * @return the value at the path as a string, or null if absent
+	 */
+	public String extractSingle(JSONObject json) {
+		json = parent(json);
+		if(json == null) {
+			return null;
+		}
+		Object o = json.opt(parts[parts.length - 1]);
+		return (o == null) ? null : o.toString();
+	}
+
+	/**
+	 * @return the object at the path, or null if absent or not an object
+	 */
+	public JSONObject extractObject(JSONObject json) {
+		json = parent(json);
+		return (json == null) ? null : json.optJSONObject(parts[parts.length - 1]);
+	}
+
+	/**
+	 * @return the array at the path, or null if absent or not an array
+	 */
+	public JSONArray extractArray(JSONObject json) {
+		json = parent(json);
+		return (json == null) ? null : json.optJSONArray(parts[parts.length - 1]);
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
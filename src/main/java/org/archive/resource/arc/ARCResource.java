@@ -28,6 +28,7 @@ implements ResourceConstants, ARCConstants, EOFObserver {
 	CountingInputStream countingIS;
 	InputStream raw;
 	DigestInputStream digIS;
+	private EOFNotifyingInputStream eofStream;
 	MetaData envelope;
 	ARCMetaData arcMetaData;
 	
@@ -66,7 +67,10 @@ implements ResourceConstants, ARCConstants, EOFObserver {
 
 	@Override
 	public InputStream getInputStream() {
-		return new EOFNotifyingInputStream(digIS, this);
+		if(eofStream == null) {
+			eofStream = new EOFNotifyingInputStream(digIS, this);
+		}
+		return eofStream;
 	}
 
 	@Override
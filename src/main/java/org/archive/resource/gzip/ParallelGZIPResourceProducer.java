@@ -0,0 +1,116 @@
+package org.archive.resource.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.gzip.ParallelMemberReader;
+import org.archive.format.gzip.ParallelMemberReader.MemberConsumer;
+import org.archive.format.gzip.ParallelMemberReader.MemberProcessor;
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceContainer;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.util.StreamCopy;
+
+/**
+ * Produces the Resources of a gzip member file, parsing the members
+ * concurrently with a {@link ParallelMemberReader}.
+ *
+ * Each member is turned into a GZIPResource, transformed by a factory if
+ * there is one, and read to the end on a pool thread, so the Resources
+ * returned have all their MetaData and an InputStream at EOF. Factories
+ * keep parse state, so each thread gets its own from the Supplier.
+ */
+public class ParallelGZIPResourceProducer
+	implements ResourceContainer, ResourceProducer, MemberProcessor<Resource> {
+
+	private ParallelMemberReader<Resource> reader;
+	private ThreadLocal<ResourceFactory> factories = null;
+	private ParallelMemberReader<Resource>.Members members = null;
+
+	/**
+	 * @param factories supplies a ResourceFactory for each thread, or null to
+	 * return the GZIPResources
+	 */
+	public ParallelGZIPResourceProducer(File file,
+			Supplier<? extends ResourceFactory> factories) {
+		this(file,factories,ForkJoinPool.commonPool());
+	}
+	public ParallelGZIPResourceProducer(File file,
+			Supplier<? extends ResourceFactory> factories, ForkJoinPool pool) {
+		if(factories != null) {
+			this.factories = ThreadLocal.withInitial(factories);
+		}
+		reader = new ParallelMemberReader<Resource>(file, this, pool);
+	}
+
+	/**
+	 * @return the reader, to configure before the first getNext()
+	 */
+	public ParallelMemberReader<Resource> getReader() {
+		return reader;
+	}
+
+	public Resource process(GZIPSeriesMember member) throws IOException {
+		Resource resource = new GZIPResource(new MetaData(), this, member);
+		if(factories != null) {
+			try {
+				resource = factories.get().getResource(resource.getInputStream(),
+						resource.getMetaData(), this);
+			} catch (ResourceParseException e) {
+				throw new IOException(e);
+			}
+			if(resource == null) {
+				return null;
+			}
+		}
+		StreamCopy.readToEOF(resource.getInputStream());
+		return resource;
+	}
+
+	public Resource getNext() throws ResourceParseException, IOException {
+		if(members == null) {
+			members = reader.open();
+		}
+		try {
+			return members.next();
+		} catch(IOException e) {
+			if(e.getCause() instanceof ResourceParseException) {
+				throw (ResourceParseException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Parse all the Resources, passing them to consumer concurrently, in no
+	 * particular order
+	 */
+	public void scan(MemberConsumer<Resource> consumer) throws IOException {
+		reader.scan(consumer);
+	}
+
+	public void close() throws IOException {
+		if(members != null) {
+			members.close();
+		}
+	}
+
+	public String getContext() {
+		long offset = (members == null) ? 0 : members.getCurrentOffset();
+		return String.format("Context(%s)(%d)", getName(), offset);
+	}
+
+	public String getName() {
+		return reader.getFile().getName();
+	}
+
+	public boolean isCompressed() {
+		return true;
+	}
+}
@@ -0,0 +1,335 @@
+package org.archive.resource.html;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceContainer;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.util.StreamCopy;
+import org.json.JSONObject;
+
+/**
+ * Extracts only the META tags of an HTML document's head, for outputs such
+ * as CDX which want no more than meta robots and refresh instructions.
+ *
+ * Where {@link HTMLResourceFactory} lexes the whole document, this scans
+ * the raw bytes up to the first of "&lt;/head", "&lt;body" or a byte cap,
+ * skipping comments, scripts and styles, and records META tags with the
+ * same attributes {@link ExtractingParseObserver} does. No links, title or
+ * other tags are recorded. The rest of the document is read unparsed, so
+ * digests computed at its end are still made.
+ *
+ * Reuses a buffer, so an instance must not be used by several threads at
+ * once.
+ */
+public class HTMLHeadResourceFactory implements ResourceFactory {
+	private static final Logger LOG =
+		Logger.getLogger(HTMLHeadResourceFactory.class.getName());
+
+	public static final int DEFAULT_MAX_SCAN_BYTES = 64 * 1024;
+
+	protected static final int READ_SIZE = 8192;
+	protected static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	/** META attributes recorded, as ExtractingParseObserver records them */
+	private static final String[] META_ATTRIBUTES =
+		{"name","rel","content","http-equiv","property"};
+
+	private int maxScanBytes;
+	private byte[] buffer = new byte[READ_SIZE];
+
+	public HTMLHeadResourceFactory() {
+		this(DEFAULT_MAX_SCAN_BYTES);
+	}
+
+	/**
+	 * @param maxScanBytes most bytes of each document scanned for its head
+	 */
+	public HTMLHeadResourceFactory(int maxScanBytes) {
+		this.maxScanBytes = maxScanBytes;
+	}
+
+	public int getMaxScanBytes() {
+		return maxScanBytes;
+	}
+
+	public void setMaxScanBytes(int maxScanBytes) {
+		this.maxScanBytes = maxScanBytes;
+	}
+
+	public Resource getResource(InputStream is, MetaData parentMetaData,
+			ResourceContainer container) throws ResourceParseException, IOException {
+		HTMLMetaData hmd = new HTMLMetaData(parentMetaData);
+		int length = readHead(is);
+		scanHead(buffer, length, getCharset(hmd), hmd);
+		StreamCopy.readToEOF(is);
+		return new HTMLResource(hmd,container);
+	}
+
+	/**
+	 * Read into the buffer until the end of the head is seen, outside
+	 * comments, scripts and styles, the cap is reached or the stream ends.
+	 * @return bytes read
+	 */
+	protected int readHead(InputStream is) throws IOException {
+		int length = 0;
+		// where the search for the end of the head resumes
+		int resume = 0;
+		while(length < maxScanBytes) {
+			int amt = Math.min(READ_SIZE, maxScanBytes - length);
+			if(buffer.length < length + amt) {
+				buffer = Arrays.copyOf(buffer,
+						Math.min(maxScanBytes, Math.max(length + amt, 2 * buffer.length)));
+			}
+			int read = is.read(buffer, length, amt);
+			if(read < 0) {
+				break;
+			}
+			length += read;
+			int end = findHeadEnd(buffer, resume, length);
+			if(end >= 0) {
+				break;
+			}
+			resume = -end - 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Find "&lt;/head" or "&lt;body" in b from i, outside comments, scripts
+	 * and styles.
+	 * @return position of the tag, or if not found, -1 - the position to
+	 * resume from once there is more of b
+	 */
+	protected static int findHeadEnd(byte[] b, int i, int length) {
+		while(i < length) {
+			if(b[i] != '<') {
+				i++;
+				continue;
+			}
+			if(length - i < 8) {
+				// a tag name may be cut off
+				return -1 - i;
+			}
+			int next = skipRawText(b, i, length);
+			if(next < 0) {
+				return -1 - i;
+			} else if(next > i) {
+				i = next;
+			} else if(isTag(b, i, length, "</head") || isTag(b, i, length, "<body")) {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return -1 - i;
+	}
+
+	/**
+	 * @return position after the comment, script or style starting at i,
+	 * i if none does, or -1 if it does not end before length
+	 */
+	private static int skipRawText(byte[] b, int i, int length) {
+		if(startsWith(b, i, length, "<!--")) {
+			int end = indexOf(b, i + 4, length, "-->");
+			return end < 0 ? -1 : end + 3;
+		} else if(isTag(b, i, length, "<script")) {
+			int end = indexOf(b, i, length, "</script");
+			return end < 0 ? -1 : end + 1;
+		} else if(isTag(b, i, length, "<style")) {
+			int end = indexOf(b, i, length, "</style");
+			return end < 0 ? -1 : end + 1;
+		}
+		return i;
+	}
+
+	/**
+	 * @return charset of the HTTP Content-Type header, or UTF-8
+	 */
+	protected Charset getCharset(HTMLMetaData hmd) {
+		JSONObject headers = HTMLResourceFactory.HTTP_HEADERS.extractObject(
+				hmd.getTopMetaData());
+		String[] keys = (headers == null) ? null : JSONObject.getNames(headers);
+		if(keys == null) {
+			return DEFAULT_CHARSET;
+		}
+		for(String key : keys) {
+			if(!key.equalsIgnoreCase("Content-Type")) {
+				continue;
+			}
+			String type = headers.optString(key).toLowerCase(Locale.ROOT);
+			int idx = type.indexOf("charset=");
+			if(idx < 0) {
+				break;
+			}
+			String name = type.substring(idx + 8).replaceAll("^[\"'\\s]+", "")
+				.replaceAll("[\"';,\\s].*$", "");
+			try {
+				if(Charset.isSupported(name)) {
+					return Charset.forName(name);
+				}
+			} catch(IllegalArgumentException e) {
+				LOG.fine("Bad charset: " + name);
+			}
+			break;
+		}
+		return DEFAULT_CHARSET;
+	}
+
+	/**
+	 * Record the META tags before the end of the head in b.
+	 */
+	public static void scanHead(byte[] b, int length, Charset charset,
+			HTMLMetaData hmd) {
+		int i = 0;
+		while(i < length) {
+			if(b[i] != '<') {
+				i++;
+				continue;
+			}
+			int next = skipRawText(b, i, length);
+			if(next < 0) {
+				return;
+			} else if(next > i) {
+				i = next;
+			} else if(isTag(b, i, length, "</head") || isTag(b, i, length, "<body")) {
+				return;
+			} else if(isTag(b, i, length, "<meta")) {
+				i = scanMeta(b, i + 5, length, charset, hmd);
+				if(i < 0) {
+					return;
+				}
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Record a META tag's attributes.
+	 * @return position after the tag, or -1 if it is cut off
+	 */
+	protected static int scanMeta(byte[] b, int i, int length, Charset charset,
+			HTMLMetaData hmd) {
+		String[] values = new String[META_ATTRIBUTES.length];
+		while(true) {
+			while(i < length && (isSpace(b[i]) || b[i] == '/')) {
+				i++;
+			}
+			if(i >= length) {
+				return -1;
+			}
+			if(b[i] == '>') {
+				i++;
+				break;
+			}
+			int nameStart = i;
+			while(i < length && !isSpace(b[i]) && b[i] != '=' && b[i] != '>') {
+				i++;
+			}
+			int nameEnd = i;
+			while(i < length && isSpace(b[i])) {
+				i++;
+			}
+			if(i >= length || b[i] != '=') {
+				// no value
+				continue;
+			}
+			i++;
+			while(i < length && isSpace(b[i])) {
+				i++;
+			}
+			if(i >= length) {
+				return -1;
+			}
+			int valueStart;
+			int valueEnd;
+			if(b[i] == '"' || b[i] == '\'') {
+				byte quote = b[i];
+				valueStart = ++i;
+				while(i < length && b[i] != quote) {
+					i++;
+				}
+				if(i >= length) {
+					return -1;
+				}
+				valueEnd = i++;
+			} else {
+				valueStart = i;
+				while(i < length && !isSpace(b[i]) && b[i] != '>') {
+					i++;
+				}
+				valueEnd = i;
+			}
+			for(int a = 0; a < META_ATTRIBUTES.length; a++) {
+				if(values[a] == null
+						&& nameEnd - nameStart == META_ATTRIBUTES[a].length()
+						&& startsWith(b, nameStart, nameEnd, META_ATTRIBUTES[a])) {
+					values[a] = new String(b, valueStart, valueEnd - valueStart, charset);
+				}
+			}
+		}
+		ArrayList<String> l = new ArrayList<String>();
+		for(int a = 0; a < META_ATTRIBUTES.length; a++) {
+			if(values[a] != null) {
+				l.add(META_ATTRIBUTES[a]);
+				l.add(values[a]);
+			}
+		}
+		if(l.size() > 0) {
+			hmd.addMeta(l);
+		}
+		return i;
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+
+	/**
+	 * @return whether b has the tag name at i, followed by the end of the
+	 * name
+	 */
+	private static boolean isTag(byte[] b, int i, int length, String tag) {
+		int end = i + tag.length();
+		return end < length && startsWith(b, i, length, tag)
+			&& (isSpace(b[end]) || b[end] == '>' || b[end] == '/');
+	}
+
+	/**
+	 * @param lower lower case ASCII
+	 * @return whether b has lower at i, ignoring ASCII case
+	 */
+	private static boolean startsWith(byte[] b, int i, int length, String lower) {
+		if(length - i < lower.length()) {
+			return false;
+		}
+		for(int j = 0; j < lower.length(); j++) {
+			int c = b[i + j];
+			if(c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			if(c != lower.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] b, int from, int length, String lower) {
+		for(int i = from; i <= length - lower.length(); i++) {
+			if(startsWith(b, i, length, lower)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
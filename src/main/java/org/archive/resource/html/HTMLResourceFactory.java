@@ -8,12 +8,12 @@ import java.io.UnsupportedEncodingException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.archive.format.http.HttpHeaders;
-import org.archive.format.json.JSONUtils;
 import org.archive.format.text.charset.CharsetDetector;
 import org.archive.format.text.charset.StandardCharsetDetector;
 import org.archive.format.text.html.CDATALexer;
 import org.archive.format.text.html.LexParser;
 import org.archive.resource.MetaData;
+import org.archive.resource.MetaDataPath;
 import org.archive.resource.Resource;
 import org.archive.resource.ResourceContainer;
 import org.archive.resource.ResourceFactory;
@@ -29,6 +29,7 @@ public class HTMLResourceFactory implements ResourceFactory {
 
 	protected static final int CHARSET_GUESS_CHUNK_SIZE = 8192;
 	protected static final String HTTP_HEADER_PATH = "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers";
+	protected static final MetaDataPath HTTP_HEADERS = MetaDataPath.compile(HTTP_HEADER_PATH);
 
 	protected CharsetDetector charSetDetector = new StandardCharsetDetector();
 
@@ -48,7 +49,7 @@ public class HTMLResourceFactory implements ResourceFactory {
 		int chunkSize = is.read(chunk, 0, CHARSET_GUESS_CHUNK_SIZE);
 		is.reset();
 		if (chunkSize > 0) {
-			JSONObject headers = JSONUtils.extractObject(hmd.getTopMetaData(), HTTP_HEADER_PATH);
+			JSONObject headers = HTTP_HEADERS.extractObject(hmd.getTopMetaData());
 			HttpHeaders httpHeaders = new HttpHeaders();
 			if (headers.has("Content-Type")) {
 				try {
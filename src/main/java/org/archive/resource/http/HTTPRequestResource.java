@@ -24,6 +24,7 @@ public class HTTPRequestResource extends AbstractResource implements ResourceCon
 	private HttpRequest request;
 
 	DigestInputStream digIS;
+	private EOFNotifyingInputStream eofStream;
 	
 	public HTTPRequestResource(MetaData metaData, 
 			ResourceContainer container, HttpRequest request) {
@@ -69,7 +70,10 @@ public class HTTPRequestResource extends AbstractResource implements ResourceCon
 	}
 
 	public InputStream getInputStream() {
-		return new EOFNotifyingInputStream(digIS, this);
+		if(eofStream == null) {
+			eofStream = new EOFNotifyingInputStream(digIS, this);
+		}
+		return eofStream;
 	}
 
 	public void notifyEOF() throws IOException {
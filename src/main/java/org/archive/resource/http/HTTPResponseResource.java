@@ -33,6 +33,7 @@ implements ResourceConstants, EOFObserver {
 	CountingInputStream countingIS;
 	private HttpResponse response;
 	DigestInputStream digIS;
+	private EOFNotifyingInputStream eofStream;
 	
 	public HTTPResponseResource(MetaData metaData, 
 			ResourceContainer container, HttpResponse response) {
@@ -83,7 +84,10 @@ implements ResourceConstants, EOFObserver {
 	}
 
 	public InputStream getInputStream() {
-		return new EOFNotifyingInputStream(digIS, this);
+		if(eofStream == null) {
+			eofStream = new EOFNotifyingInputStream(digIS, this);
+		}
+		return eofStream;
 	}
 
 	public void notifyEOF() throws IOException {
@@ -26,6 +26,7 @@ public class WARCResource extends AbstractResource implements EOFObserver, Resou
 	CountingInputStream countingIS;
 	private HttpResponse response;
 	private DigestInputStream digIS;
+	private EOFNotifyingInputStream eofStream;
 	private MetaData envelope;
 
 	public WARCResource(MetaData metaData, ResourceContainer container,
@@ -65,7 +66,10 @@ public class WARCResource extends AbstractResource implements EOFObserver, Resou
 
 	@Override
 	public InputStream getInputStream() {
-		return new EOFNotifyingInputStream(digIS, this);
+		if(eofStream == null) {
+			eofStream = new EOFNotifyingInputStream(digIS, this);
+		}
+		return eofStream;
 	}
 
 	@Override
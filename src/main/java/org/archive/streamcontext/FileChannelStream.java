@@ -0,0 +1,48 @@
+package org.archive.streamcontext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stream reading a FileChannel with positional reads, so many of them can
+ * share one channel across threads. Closing the Stream leaves the channel
+ * open.
+ */
+public class FileChannelStream extends AbstractBufferingStream {
+
+	private FileChannel channel = null;
+	private long position = 0L;
+
+	public FileChannelStream(FileChannel channel, long offset) {
+		this(channel,offset,DEFAULT_READ_SIZE);
+	}
+	public FileChannelStream(FileChannel channel, long offset, int readSize) {
+		super(offset,readSize);
+		this.channel = channel;
+		this.position = offset;
+	}
+
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public void doClose() throws IOException {
+		channel = null;
+	}
+
+	@Override
+	public int doRead(byte[] b, int off, int len) throws IOException {
+		int amt = channel.read(ByteBuffer.wrap(b, off, len), position);
+		if(amt > 0) {
+			position += amt;
+		}
+		return amt;
+	}
+
+	@Override
+	public void doSeek(long offset) throws IOException {
+		position = offset;
+	}
+}
@@ -113,6 +113,22 @@ public class ANVLRecord extends LinkedList<Element> implements UTF8Bytes {
         return m;
     }
     
+    /**
+     * @param label Label to look for.
+     * @return Value of the first element with the given label, or null if
+     * there is none or it has no value. Unlike {@link #asMap()}, no map is
+     * built.
+     */
+    public String getValue(final String label) {
+        for (final Iterator<Element> i = iterator(); i.hasNext();) {
+            Element e = i.next();
+            if (e.getLabel().toString().equals(label)) {
+                return e.isValue()? e.getValue().toString(): null;
+            }
+        }
+        return null;
+    }
+
     @Override
     public ANVLRecord clone() {
         return (ANVLRecord) super.clone();
@@ -24,6 +24,16 @@ public abstract class AbstractSeekableLineReader implements SeekableLineReader {
 	protected BufferedReader br;
 	protected InputStream is;
 	
+	protected CloseListener closeListener;
+	
+	/**
+	 * Notified once when the reader is closed, eg. to return a pool slot
+	 */
+	public interface CloseListener
+	{
+		public void readerClosed(SeekableLineReader reader);
+	}
+	
 	class SLRClosingInputStream extends FilterInputStream
 	{
 		protected SLRClosingInputStream(InputStream in) {
@@ -114,18 +124,30 @@ public abstract class AbstractSeekableLineReader implements SeekableLineReader {
 			return;
 		}
 		
-		doClose();
-		
-		if (br != null) {
-			br.close();
+		try {
+			doClose();
+			
+			if (br != null) {
+				br.close();
+			} else if (is != null) {
+				is.close();
+			}
+		} finally {
 			br = null;
-		} else if (is != null) {
-			is.close();
+			is = null;
+			closed = true;
+			
+			// notify even if closing failed, so a pool does not lose the slot
+			if (closeListener != null) {
+				closeListener.readerClosed(this);
+				closeListener = null;
+			}
 		}
-		
-		br = null;
-		is = null;
-		closed = true;
+	}
+	
+	public void setCloseListener(CloseListener closeListener)
+	{
+		this.closeListener = closeListener;
 	}
 	
 	public boolean isClosed()
@@ -0,0 +1,124 @@
+package org.archive.util.binsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache of binary search midpoints for a
+ * {@link SortedTextFile}. Maps a block index to the first full line found
+ * at that block, so the top levels of the bisection, which are the same for
+ * every search, only need to be read once per file.
+ *
+ * The cache is tied to a block size and a file size: if either changes,
+ * all entries are dropped.
+ */
+public class MidpointCache {
+
+	public final static int DEFAULT_MAX_ENTRIES = 4096;
+
+	protected final LRUMap map;
+
+	protected int blockSize = -1;
+	protected long fileSize = -1;
+
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+
+	class LRUMap extends LinkedHashMap<Long, String> {
+		private static final long serialVersionUID = 1L;
+		private int max;
+
+		LRUMap(int max) {
+			super(16, 0.75f, true);
+			this.max = max;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+			return (size() > max);
+		}
+	}
+
+	public MidpointCache()
+	{
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public MidpointCache(int maxEntries)
+	{
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be > 0");
+		}
+
+		this.map = new LRUMap(maxEntries);
+	}
+
+	/**
+	 * Ensure that the cached entries were computed for the given block and
+	 * file size, clearing the cache otherwise.
+	 */
+	public synchronized void validate(int blockSize, long fileSize)
+	{
+		if ((this.blockSize != blockSize) || (this.fileSize != fileSize)) {
+			map.clear();
+			this.blockSize = blockSize;
+			this.fileSize = fileSize;
+		}
+	}
+
+	/**
+	 * @return the first full line at block {@code blockIndex}, or null if not cached
+	 */
+	public String get(long blockIndex)
+	{
+		String line;
+
+		synchronized (this) {
+			line = map.get(blockIndex);
+		}
+
+		if (line != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+
+		return line;
+	}
+
+	public synchronized void put(long blockIndex, String line)
+	{
+		if (line != null) {
+			map.put(blockIndex, line);
+		}
+	}
+
+	public synchronized void invalidate()
+	{
+		map.clear();
+		blockSize = -1;
+		fileSize = -1;
+	}
+
+	public synchronized int size()
+	{
+		return map.size();
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public void resetStats()
+	{
+		hits.set(0);
+		misses.set(0);
+	}
+}
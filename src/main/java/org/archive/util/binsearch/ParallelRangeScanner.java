@@ -0,0 +1,293 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Scans the splits of a key range concurrently on a fork-join pool.
+ *
+ * The splits are contiguous, in order, and each is read by its own
+ * iterator, eg. byte ranges of a {@link SortedTextFile} or groups of
+ * blocks of a ZipNumIndex.
+ *
+ * Lines may either be passed to a thread-safe consumer as they are read,
+ * or returned in order through an iterator, with each split buffering up
+ * to bufferLines ahead of the consumer.
+ */
+public class ParallelRangeScanner {
+
+	public final static int DEFAULT_BUFFER_LINES = 1024;
+
+	protected final ForkJoinPool pool;
+	protected int bufferLines = DEFAULT_BUFFER_LINES;
+
+	/**
+	 * The splits of a range
+	 */
+	public interface SplitSource
+	{
+		public int getNumSplits();
+
+		/**
+		 * @return iterator over the lines of the split, called once per split
+		 */
+		public CloseableIterator<String> openSplit(int split) throws IOException;
+	}
+
+	/**
+	 * Receives the lines of each split, called concurrently for different splits
+	 */
+	public interface LineConsumer
+	{
+		public void accept(int split, String line) throws IOException;
+	}
+
+	public ParallelRangeScanner()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelRangeScanner(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Read all splits concurrently, passing each line to the consumer.
+	 * Returns when all splits are done.
+	 *
+	 * @throws IOException the first error reading a split or from the consumer
+	 */
+	public void scan(final SplitSource splits, final LineConsumer consumer) throws IOException
+	{
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+		for (int i = 0; i < splits.getNumSplits(); i++) {
+			final int split = i;
+
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					try {
+						CloseableIterator<String> iter = splits.openSplit(split);
+
+						try {
+							while (iter.hasNext()) {
+								consumer.accept(split, iter.next());
+							}
+						} finally {
+							iter.close();
+						}
+					} catch (IOException io) {
+						throw new RuntimeIOException(io);
+					}
+				}
+			});
+		}
+
+		RuntimeException error = null;
+
+		for (ForkJoinTask<?> task : tasks) {
+			pool.execute(task);
+		}
+
+		for (ForkJoinTask<?> task : tasks) {
+			try {
+				task.join();
+			} catch (RuntimeException re) {
+				if (error == null) {
+					error = re;
+				}
+			}
+		}
+
+		if (error != null) {
+			if ((error instanceof RuntimeIOException) && (error.getCause() instanceof IOException)) {
+				throw (IOException)error.getCause();
+			}
+			throw error;
+		}
+	}
+
+	/**
+	 * Read all splits concurrently, and return their lines in split order.
+	 * Closing the iterator stops any splits still being read.
+	 */
+	public CloseableIterator<String> scanOrdered(SplitSource splits)
+	{
+		OrderedIterator iter = new OrderedIterator(splits);
+		iter.start();
+		return iter;
+	}
+
+	// Marks the end of a split in its queue
+	private final static Object END = new Object();
+
+	protected static class SplitError
+	{
+		final IOException error;
+
+		SplitError(IOException error)
+		{
+			this.error = error;
+		}
+	}
+
+	// Blocks in a way that lets the pool compensate with another thread
+	protected static class QueuePut implements ForkJoinPool.ManagedBlocker
+	{
+		final BlockingQueue<Object> queue;
+		final Object item;
+		boolean done = false;
+
+		QueuePut(BlockingQueue<Object> queue, Object item)
+		{
+			this.queue = queue;
+			this.item = item;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (!done) {
+				queue.put(item);
+				done = true;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			if (!done) {
+				done = queue.offer(item);
+			}
+			return done;
+		}
+	}
+
+	protected class OrderedIterator extends AbstractPeekableIterator<String> implements CloseableIterator<String>
+	{
+		final SplitSource splits;
+		final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+		volatile boolean closed = false;
+		int currSplit = 0;
+
+		OrderedIterator(SplitSource splits)
+		{
+			this.splits = splits;
+		}
+
+		void start()
+		{
+			for (int i = 0; i < splits.getNumSplits(); i++) {
+				queues.add(new ArrayBlockingQueue<Object>(bufferLines));
+			}
+
+			for (int i = 0; i < queues.size(); i++) {
+				final int split = i;
+				final BlockingQueue<Object> queue = queues.get(i);
+
+				pool.execute(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						fill(split, queue);
+					}
+				});
+			}
+		}
+
+		void fill(int split, BlockingQueue<Object> queue)
+		{
+			Object last = END;
+
+			try {
+				CloseableIterator<String> iter = splits.openSplit(split);
+
+				try {
+					while (!closed && iter.hasNext()) {
+						put(queue, iter.next());
+					}
+				} finally {
+					iter.close();
+				}
+			} catch (IOException io) {
+				last = new SplitError(io);
+			} catch (RuntimeException re) {
+				last = new SplitError(new IOException(re));
+			}
+
+			if (!closed) {
+				put(queue, last);
+			}
+		}
+
+		void put(BlockingQueue<Object> queue, Object item)
+		{
+			try {
+				ForkJoinPool.managedBlock(new QueuePut(queue, item));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = true;
+			}
+		}
+
+		@Override
+		public String getNextInner() {
+			while (!closed && (currSplit < queues.size())) {
+				Object item;
+
+				try {
+					item = queues.get(currSplit).take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeIOException(e);
+				}
+
+				if (item == END) {
+					currSplit++;
+				} else if (item instanceof SplitError) {
+					throw new RuntimeIOException(((SplitError)item).error);
+				} else {
+					return (String)item;
+				}
+			}
+
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+
+			// Unblock any splits waiting to add a line
+			for (BlockingQueue<Object> queue : queues) {
+				queue.clear();
+			}
+		}
+	}
+
+	public int getBufferLines() {
+		return bufferLines;
+	}
+
+	public void setBufferLines(int bufferLines) {
+		this.bufferLines = bufferLines;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+}
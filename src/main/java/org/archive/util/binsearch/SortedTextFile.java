@@ -1,12 +1,19 @@
 package org.archive.util.binsearch;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.util.GeneralURIStreamFactory;
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.BoundedStringIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.StartBoundedStringIterator;
 
 public class SortedTextFile {
 	
@@ -44,6 +51,9 @@ public class SortedTextFile {
 	protected SeekableLineReaderFactory factory;
 	protected int binsearchBlockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
 	
+	// Shared by all readers from the factory, null if disabled
+	protected MidpointCache midpointCache;
+	
 	public SortedTextFile(SeekableLineReaderFactory factory) {
 		setFactory(factory);
 	}
@@ -70,6 +80,10 @@ public class SortedTextFile {
 	
 	public void reloadFactory()
 	{
+		if (midpointCache != null) {
+			midpointCache.invalidate();
+		}
+		
 		try {
 	        this.factory.reload();
         } catch (IOException e) {
@@ -85,6 +99,23 @@ public class SortedTextFile {
         this.binsearchBlockSize = binsearchBlockSize;
     }
 
+	/**
+	 * Enable caching of binary search midpoints, shared by all readers
+	 * created by the factory. 
+	 * @param maxEntries max number of cached midpoints, 0 to disable
+	 */
+	public void setMidpointCacheSize(int maxEntries) {
+		if (maxEntries > 0) {
+			this.midpointCache = new MidpointCache(maxEntries);
+		} else {
+			this.midpointCache = null;
+		}
+	}
+
+	public MidpointCache getMidpointCache() {
+		return midpointCache;
+	}
+
     public CloseableIterator<String> getRecordIteratorLT(final String prefix) 
 	throws IOException {
 		return getRecordIterator(prefix, true);
@@ -131,13 +162,29 @@ public class SortedTextFile {
 		long mid;
 		String line;
 		
-		// TODO: implement a cache of midpoints - will make a HUGE difference
-		//       on both HTTP and HDFS
+		// Cached lines are full lines, so skip the cache for wrapped readers
+		// that may transform the line (eg. FieldExtractingSLR)
+		MidpointCache cache = midpointCache;
+		
+		if ((cache != null) && !(slr instanceof WrappedSeekableLineReader)) {
+			cache.validate(blockSize, fileSize);
+		} else {
+			cache = null;
+		}
+		
 	    while (max - min > 1) {
 	    	mid = min + (long)((max - min) / 2);
-	    	slr.seek(mid * blockSize);
-	    	if(mid > 0) slr.skipLine(); // probably a partial line
-	    	line = slr.readLine();
+	    	line = (cache != null) ? cache.get(mid) : null;
+	    	
+	    	if (line == null) {
+	    		slr.seek(mid * blockSize);
+	    		if(mid > 0) slr.skipLine(); // probably a partial line
+	    		line = slr.readLine();
+	    		
+	    		if (cache != null) {
+	    			cache.put(mid, line);
+	    		}
+	    	}
 	    	
 	    	if (comparator.compare(key, line) > 0) {
 
@@ -196,6 +243,181 @@ public class SortedTextFile {
 		return new StepSeekingIterator(slr, offsets[0], offsets[1], numSplits);
 	}
 	
+	/**
+	 * Split the lines in [start, end) into numSplits byte ranges of about
+	 * the same size, to be scanned concurrently by a {@link ParallelRangeScanner}.
+	 * Each line belongs to the range its first byte is in.
+	 */
+	public ParallelRangeScanner.SplitSource getRangeSplits(String start, String end, int numSplits) throws IOException
+	{
+		SeekableLineReader slr = factory.get();
+		long startOffset = 0;
+		long endOffset = 0;
+		
+		// The binary search offsets are block aligned, so may be before
+		// the first matching line. The splits are bounded by start key,
+		// and the last split continues up to the end key.
+		try {
+			if ((start != null) && !start.isEmpty()) {
+				startOffset = binaryFindOffset(slr, start, defaultComparator);
+			}
+			
+			if ((end != null) && !end.isEmpty()) {
+				endOffset = binaryFindOffset(slr, end, defaultComparator);
+			} else {
+				endOffset = slr.getSize();
+			}
+		} finally {
+			slr.close();
+		}
+		
+		endOffset = Math.max(startOffset, endOffset);
+		
+		// no smaller than a search block
+		numSplits = (int)Math.min(numSplits, ((endOffset - startOffset) / binsearchBlockSize) + 1);
+		
+		return new LineRangeSplits(start, end, startOffset, endOffset, numSplits);
+	}
+	
+	class LineRangeSplits implements ParallelRangeScanner.SplitSource
+	{
+		final String start;
+		final String end;
+		final long[] bounds;
+		
+		LineRangeSplits(String start, String end, long startOffset, long endOffset, int numSplits)
+		{
+			this.start = start;
+			this.end = end;
+			
+			numSplits = Math.max(1, numSplits);
+			bounds = new long[numSplits + 1];
+			
+			for (int i = 0; i <= numSplits; i++) {
+				bounds[i] = startOffset + (((endOffset - startOffset) * i) / numSplits);
+			}
+		}
+
+		@Override
+		public int getNumSplits() {
+			return bounds.length - 1;
+		}
+
+		@Override
+		public CloseableIterator<String> openSplit(int split) throws IOException {
+			boolean last = (split == (bounds.length - 2));
+			long startOffset = bounds[split];
+			long endOffset = bounds[split + 1];
+			
+			// the last split continues to the end key
+			if (last && (end != null) && !end.isEmpty()) {
+				endOffset = Long.MAX_VALUE;
+			}
+			
+			SeekableLineReader slr = factory.get();
+			CloseableIterator<String> iter;
+			
+			try {
+				if (startOffset > 0) {
+					// the line which includes the byte before the split
+					// belongs to the previous split
+					slr.seek(startOffset - 1);
+					OffsetBoundedIterator offsetIter = new OffsetBoundedIterator(slr, startOffset - 1, endOffset);
+					offsetIter.readLineBytes();
+					iter = offsetIter;
+				} else {
+					slr.seek(startOffset);
+					iter = new OffsetBoundedIterator(slr, startOffset, endOffset);
+				}
+			} catch (IOException io) {
+				slr.close();
+				throw io;
+			}
+			
+			if ((start != null) && !start.isEmpty()) {
+				iter = new StartBoundedStringIterator(iter, start);
+			}
+			
+			if (last && (end != null) && !end.isEmpty()) {
+				iter = new BoundedStringIterator(iter, end);
+			}
+			
+			return iter;
+		}
+	}
+	
+	// Lines of slr which start before endOffset, read as bytes to keep
+	// the offset exact
+	static class OffsetBoundedIterator extends AbstractPeekableIterator<String>
+	{
+		final SeekableLineReader slr;
+		final InputStream is;
+		long offset;
+		final long endOffset;
+		byte[] buffer = new byte[256];
+		
+		OffsetBoundedIterator(SeekableLineReader slr, long offset, long endOffset)
+		{
+			this.slr = slr;
+			this.is = new BufferedInputStream(slr.getInputStream(), 64 * 1024);
+			this.offset = offset;
+			this.endOffset = endOffset;
+		}
+		
+		/**
+		 * Read the next line into buffer, without the line end
+		 * @return the line length, or -1 at end of input
+		 */
+		int readLineBytes() throws IOException
+		{
+			int len = 0;
+			int b;
+			
+			while ((b = is.read()) != -1) {
+				offset++;
+				
+				if (b == '\n') {
+					break;
+				}
+				
+				if (len == buffer.length) {
+					buffer = Arrays.copyOf(buffer, len * 2);
+				}
+				
+				buffer[len++] = (byte)b;
+			}
+			
+			if ((b == -1) && (len == 0)) {
+				return -1;
+			}
+			
+			if ((len > 0) && (buffer[len - 1] == '\r')) {
+				len--;
+			}
+			
+			return len;
+		}
+		
+		@Override
+		public String getNextInner() {
+			if (offset >= endOffset) {
+				return null;
+			}
+			
+			try {
+				int len = readLineBytes();
+				return (len < 0) ? null : new String(buffer, 0, len, AbstractSeekableLineReader.UTF8);
+			} catch (IOException io) {
+				throw new RuntimeIOException(io);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			slr.close();
+		}
+	}
+	
 	public String[] getRange(String start, String end) throws IOException
 	{
 		SeekableLineReader slr = null;
@@ -370,7 +592,7 @@ public class SortedTextFile {
 	    String prev = null;
 	    while(true) {
 	    	if (line != null) {
-	    		offset += line.getBytes().length + 1;
+	    		offset += line.getBytes(AbstractSeekableLineReader.UTF8).length + 1;
 	    	}
 	    	line = slr.readLine();
 	    	if(line == null) break;
@@ -379,7 +601,7 @@ public class SortedTextFile {
 	    }
 	    
 	    if (lessThan && prev != null) {
-	    	offset -= prev.getBytes().length + 1;
+	    	offset -= prev.getBytes(AbstractSeekableLineReader.UTF8).length + 1;
 	    }
 	    
 	    return offset;
@@ -8,6 +8,7 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.URL;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -143,7 +144,9 @@ public class ApacheHttp43SLR extends HTTPSeekableLineReader {
 			
 			activeConn.receiveResponseEntity(response);
 			
-			return response.getEntity().getContent();
+			// closing the entity stream would read the rest of the response,
+			// the connection is closed by doClose() instead
+			return CloseShieldInputStream.wrap(response.getEntity().getContent());
 			
 		} catch (HttpException e) {
 			doClose();
@@ -172,7 +175,7 @@ public class ApacheHttp43SLR extends HTTPSeekableLineReader {
 		br = null;
 		
 		try {
-			doSeekLoad(offset, maxLength);
+			is = doSeekLoad(offset, maxLength);
 		
 			if (bufferFully && (maxLength > 0)) {
 				byte[] buffer = EntityUtils.toByteArray(response.getEntity());
@@ -0,0 +1,79 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+
+/**
+ * Reader for {@link CoalescingHTTPSLRFactory}. Bounded reads are served from
+ * a (possibly shared) merged range request, other reads go directly to a
+ * reader from the wrapped factory.
+ */
+public class CoalescingHTTPSLR extends HTTPSeekableLineReader {
+
+	protected final CoalescingHTTPSLRFactory factory;
+	protected final String url;
+
+	protected HTTPSeekableLineReader innerReader = null;
+
+	public CoalescingHTTPSLR(CoalescingHTTPSLRFactory factory, String url)
+	{
+		this.factory = factory;
+		this.url = url;
+	}
+
+	@Override
+	public String getUrl() {
+		return url;
+	}
+
+	@Override
+	public long getSize() throws IOException {
+		if (innerReader != null) {
+			return innerReader.getSize();
+		}
+		return 0;
+	}
+
+	@Override
+	public String getHeaderValue(String headerName) {
+		if (innerReader != null) {
+			return innerReader.getHeaderValue(headerName);
+		}
+		return null;
+	}
+
+	@Override
+	protected InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+		closeInner();
+
+		if (maxLength > 0) {
+			byte[] data = factory.readRange(url, cookie, noKeepAlive, offset, maxLength);
+			connectedUrl = url;
+			return new ByteArrayInputStream(data);
+		}
+
+		innerReader = factory.getInner().get(url);
+		innerReader.setCookie(cookie);
+		innerReader.setNoKeepAlive(noKeepAlive);
+		innerReader.seekWithMaxRead(offset, false, maxLength);
+		connectedUrl = innerReader.getConnectedUrl();
+		return innerReader.getInputStream();
+	}
+
+	protected void closeInner() throws IOException
+	{
+		if (innerReader != null) {
+			HTTPSeekableLineReader reader = innerReader;
+			innerReader = null;
+			reader.close();
+		}
+	}
+
+	@Override
+	protected void doClose() throws IOException {
+		closeInner();
+	}
+}
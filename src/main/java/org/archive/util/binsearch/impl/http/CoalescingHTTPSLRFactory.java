@@ -0,0 +1,336 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * HTTPSeekableLineReaderFactory that merges bounded range reads from
+ * concurrent threads into fewer HTTP requests.
+ *
+ * A bounded read (maxLength > 0) for a url opens a batch which stays open
+ * for windowMS. Reads for the same url and cookie whose ranges overlap, or
+ * are within maxGap bytes of the batch, join it. When the window closes, a
+ * single range request covering the whole batch is issued through the
+ * wrapped factory, and each reader gets its own slice of the response.
+ *
+ * Unbounded reads, eg. for binary search, are passed through unchanged.
+ *
+ * The wrapped factory provides the connection handling, so should be
+ * a pooling one, eg. APACHE_31 or URLCONN.
+ */
+public class CoalescingHTTPSLRFactory extends HTTPSeekableLineReaderFactory {
+
+	private final static Logger LOGGER = Logger.getLogger(CoalescingHTTPSLRFactory.class.getName());
+
+	public final static int DEFAULT_WINDOW_MS = 2;
+	public final static int DEFAULT_MAX_GAP = 16 * 1024;
+	public final static int DEFAULT_MAX_MERGED_LENGTH = 4 * 1024 * 1024;
+
+	protected final HTTPSeekableLineReaderFactory inner;
+
+	protected int windowMS = DEFAULT_WINDOW_MS;
+	protected int maxGap = DEFAULT_MAX_GAP;
+	protected int maxMergedLength = DEFAULT_MAX_MERGED_LENGTH;
+
+	// Batches still accepting reads, by url
+	protected final Map<String, List<RangeBatch>> openBatches = new HashMap<String, List<RangeBatch>>();
+
+	protected final AtomicLong numReads = new AtomicLong();
+	protected final AtomicLong numRequests = new AtomicLong();
+
+	/**
+	 * A single merged range request shared by one or more readers
+	 */
+	class RangeBatch
+	{
+		final String url;
+		final String cookie;
+		final boolean noKeepAlive;
+		long start;
+		long end;
+		boolean dispatched = false;
+
+		final CountDownLatch done = new CountDownLatch(1);
+		byte[] data;
+		IOException error;
+
+		RangeBatch(String url, String cookie, boolean noKeepAlive, long start, long end)
+		{
+			this.url = url;
+			this.cookie = cookie;
+			this.noKeepAlive = noKeepAlive;
+			this.start = start;
+			this.end = end;
+		}
+
+		boolean canJoin(String cookie, long offset, long rangeEnd)
+		{
+			if (dispatched) {
+				return false;
+			}
+
+			if ((this.cookie == null) ? (cookie != null) : !this.cookie.equals(cookie)) {
+				return false;
+			}
+
+			if ((offset > end + maxGap) || (rangeEnd + maxGap < start)) {
+				return false;
+			}
+
+			return (Math.max(end, rangeEnd) - Math.min(start, offset)) <= maxMergedLength;
+		}
+
+		void fetch()
+		{
+			HTTPSeekableLineReader reader = null;
+			numRequests.incrementAndGet();
+
+			try {
+				reader = inner.get(url);
+				reader.setCookie(cookie);
+				reader.setNoKeepAlive(noKeepAlive);
+
+				int length = (int)(end - start);
+				reader.seekWithMaxRead(start, false, length);
+
+				byte[] buffer = new byte[length];
+				InputStream is = reader.getInputStream();
+				ByteStreams.readFully(is, buffer);
+				data = buffer;
+
+			} catch (IOException io) {
+				error = io;
+			} catch (RuntimeException re) {
+				error = new IOException(re);
+			} finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						LOGGER.warning(e.toString());
+					}
+				}
+				done.countDown();
+			}
+		}
+	}
+
+	public CoalescingHTTPSLRFactory(HTTPSeekableLineReaderFactory inner)
+	{
+		this.inner = inner;
+	}
+
+	/**
+	 * Read [offset, offset + length) from the url, possibly as part of a
+	 * larger request shared with other threads
+	 * @return the bytes read
+	 */
+	public byte[] readRange(String url, String cookie, boolean noKeepAlive, long offset, int length) throws IOException
+	{
+		numReads.incrementAndGet();
+
+		long rangeEnd = offset + length;
+		RangeBatch batch = null;
+		boolean leader = false;
+
+		synchronized (openBatches) {
+			List<RangeBatch> batches = openBatches.get(url);
+
+			if (batches == null) {
+				batches = new ArrayList<RangeBatch>(2);
+				openBatches.put(url, batches);
+			}
+
+			for (RangeBatch open : batches) {
+				if (open.canJoin(cookie, offset, rangeEnd)) {
+					batch = open;
+					batch.start = Math.min(batch.start, offset);
+					batch.end = Math.max(batch.end, rangeEnd);
+					break;
+				}
+			}
+
+			if (batch == null) {
+				batch = new RangeBatch(url, cookie, noKeepAlive, offset, rangeEnd);
+				batches.add(batch);
+				leader = true;
+			}
+		}
+
+		if (leader) {
+			if (windowMS > 0) {
+				try {
+					Thread.sleep(windowMS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			synchronized (openBatches) {
+				batch.dispatched = true;
+				List<RangeBatch> batches = openBatches.get(url);
+				batches.remove(batch);
+
+				if (batches.isEmpty()) {
+					openBatches.remove(url);
+				}
+			}
+
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Range request " + batch.start + "-" + batch.end + " " + url);
+			}
+
+			batch.fetch();
+		} else {
+			try {
+				batch.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+
+		if (batch.error != null) {
+			throw batch.error;
+		}
+
+		byte[] slice = new byte[length];
+		System.arraycopy(batch.data, (int)(offset - batch.start), slice, 0, length);
+		return slice;
+	}
+
+	@Override
+	public HTTPSeekableLineReader get(String url) throws IOException {
+		return new CoalescingHTTPSLR(this, url);
+	}
+
+	public HTTPSeekableLineReaderFactory getInner() {
+		return inner;
+	}
+
+	/**
+	 * @return number of bounded reads requested
+	 */
+	public long getNumReads() {
+		return numReads.get();
+	}
+
+	/**
+	 * @return number of http requests issued for the bounded reads
+	 */
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	public int getWindowMS() {
+		return windowMS;
+	}
+
+	public void setWindowMS(int windowMS) {
+		this.windowMS = windowMS;
+	}
+
+	public int getMaxGap() {
+		return maxGap;
+	}
+
+	public void setMaxGap(int maxGap) {
+		this.maxGap = maxGap;
+	}
+
+	public int getMaxMergedLength() {
+		return maxMergedLength;
+	}
+
+	public void setMaxMergedLength(int maxMergedLength) {
+		this.maxMergedLength = maxMergedLength;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inner.close();
+	}
+
+	@Override
+	public void setProxyHostPort(String hostPort) {
+		inner.setProxyHostPort(hostPort);
+	}
+
+	@Override
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		inner.setMaxTotalConnections(maxTotalConnections);
+	}
+
+	@Override
+	public int getMaxTotalConnections() {
+		return inner.getMaxTotalConnections();
+	}
+
+	@Override
+	public void setMaxHostConnections(int maxHostConnections) {
+		inner.setMaxHostConnections(maxHostConnections);
+	}
+
+	@Override
+	public int getMaxHostConnections() {
+		return inner.getMaxHostConnections();
+	}
+
+	@Override
+	public int getConnectionTimeoutMS() {
+		return inner.getConnectionTimeoutMS();
+	}
+
+	@Override
+	public void setConnectionTimeoutMS(int connectionTimeoutMS) {
+		inner.setConnectionTimeoutMS(connectionTimeoutMS);
+	}
+
+	@Override
+	public int getSocketTimeoutMS() {
+		return inner.getSocketTimeoutMS();
+	}
+
+	@Override
+	public void setSocketTimeoutMS(int socketTimeoutMS) {
+		inner.setSocketTimeoutMS(socketTimeoutMS);
+	}
+
+	@Override
+	public void setStaleChecking(boolean enabled) {
+		inner.setStaleChecking(enabled);
+	}
+
+	@Override
+	public boolean isStaleChecking() {
+		return inner.isStaleChecking();
+	}
+
+	@Override
+	public long getModTime() {
+		return inner.getModTime();
+	}
+
+	@Override
+	public void reload() {
+		inner.reload();
+	}
+
+	@Override
+	public void setNumRetries(int numRetries) {
+		inner.setNumRetries(numRetries);
+	}
+}
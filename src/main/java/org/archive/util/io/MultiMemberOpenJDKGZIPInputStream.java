@@ -56,7 +56,7 @@ public class MultiMemberOpenJDKGZIPInputStream  extends OpenJDK7GZIPInputStream
             // If the stream is then not empty, use it to construct
             // a new instance of this class and delegate this and any
             // future calls to it...
-            int n = inf.getRemaining() - 8;
+            int n = infBackend.getRemaining() - 8;
             if (n > 0)
             {
                 // More than 8 bytes remaining in deflater
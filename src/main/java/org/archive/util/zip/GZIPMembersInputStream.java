@@ -27,6 +27,8 @@ import java.util.NoSuchElementException;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
 
+import org.archive.format.gzip.InflaterBackend;
+
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingInputStream;
 
@@ -115,12 +117,12 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     
     @Override
     protected boolean readTrailer() throws IOException {
-        int c = inf.getRemaining();
+        int c = infBackend.getRemaining();
         currentMemberEnd = ((CountingInputStream)in).getCount()-(c-8); 
 //        return super.readTrailer();
 // REIMPLEMENTED TO FIX MISUSE OF available()
         InputStream in = this.in;
-        int n = inf.getRemaining();
+        int n = infBackend.getRemaining();
         if (n > 0) {
             in = new SequenceInputStream(
                         new ByteArrayInputStream(buf, len - n, n), in);
@@ -128,7 +130,7 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
         // Uses left-to-right evaluation order
         if ((readUInt(in) != crc.getValue()) ||
             // rfc1952; ISIZE is the input size modulo 2^32
-            (readUInt(in) != (inf.getBytesWritten() & 0xffffffffL)))
+            (readUInt(in) != (infBackend.getBytesWritten() & 0xffffffffL)))
             throw new ZipException("Corrupt GZIP trailer");
 
         // always try concatenated case; EOF or other IOException
@@ -139,9 +141,9 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
         } catch (IOException ze) {
             return true;  // ignore any malformed, do nothing
         }
-        inf.reset();
+        infBackend.reset();
         if (n > m)
-            inf.setInput(buf, len - n + m, n - m);
+            infBackend.setInput(buf, len - n + m, n - m);
         return false;
     }
 
@@ -182,7 +184,7 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     
     protected void startNewMember() throws IOException {
         new GzipHeader(in); // consume header
-        inf.reset(); 
+        infBackend.reset(); 
         crc.reset(); 
         eos = false;
     }
@@ -260,12 +262,21 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     /**
      * Helpful for testing/debugging
      * 
-     * @return Inflater
+     * @return Inflater, or null if another InflaterBackend is in use
+     * @deprecated use {@link #getInflaterBackend()}
      */
+    @Deprecated
     public Inflater getInflater() {
         return inf;
     }
 
+    /**
+     * @return the InflaterBackend decompressing the members
+     */
+    public InflaterBackend getInflaterBackend() {
+        return infBackend;
+    }
+
     /**
      * Get an Iterator-ish interface to each member in turn. Has the effect of
      * putting stream in EOF-each-member mode; thereafter reading should occur
@@ -297,7 +308,7 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
         public boolean hasNext() {
             // because readTrailer also reads into next header 
             // resetting inflater when there's more content, this works
-            return !inf.finished();
+            return !infBackend.finished();
         }
     
         @Override
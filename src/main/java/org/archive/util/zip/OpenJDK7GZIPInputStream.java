@@ -34,9 +34,10 @@ import java.io.IOException;
 import java.io.EOFException;
 import java.util.zip.CRC32;               // IA ADDED IMPORT
 import java.util.zip.CheckedInputStream;  // IA ADDED IMPORT
-import java.util.zip.Inflater;            // IA ADDED IMPORT
 import java.util.zip.ZipException;        // IA ADDED IMPORT
 
+import org.archive.format.gzip.InflaterBackends; // IA ADDED IMPORT
+
 /**
  * This class implements a stream filter for reading compressed data in
  * the GZIP file format.
@@ -79,7 +80,7 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
      * @exception IllegalArgumentException if size is &lt;= 0
      */
     public OpenJDK7GZIPInputStream(InputStream in, int size) throws IOException {
-        super(in, new Inflater(true), size);
+        super(in, InflaterBackends.create(true), size); // IA CHANGED INFLATER
         usesDefaultInflater = true;
         readHeader(in);
     }
@@ -215,7 +216,7 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
      */
     protected boolean readTrailer() throws IOException { // IA CHANGE VISIBILITY FOR OVERRIDING
         InputStream in = this.in;
-        int n = inf.getRemaining();
+        int n = infBackend.getRemaining();
         if (n > 0) {
             in = new SequenceInputStream(
                         new ByteArrayInputStream(buf, len - n, n), in);
@@ -223,7 +224,7 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
         // Uses left-to-right evaluation order
         if ((readUInt(in) != crc.getValue()) ||
             // rfc1952; ISIZE is the input size modulo 2^32
-            (readUInt(in) != (inf.getBytesWritten() & 0xffffffffL)))
+            (readUInt(in) != (infBackend.getBytesWritten() & 0xffffffffL)))
             throw new ZipException("Corrupt GZIP trailer");
 
         // If there are more bytes available in "in" or
@@ -237,9 +238,9 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
             } catch (IOException ze) {
                 return true;  // ignore any malformed, do nothing
             }
-            inf.reset();
+            infBackend.reset();
             if (n > m)
-                inf.setInput(buf, len - n + m, n - m);
+                infBackend.setInput(buf, len - n + m, n - m);
             return false;
         }
         return true;
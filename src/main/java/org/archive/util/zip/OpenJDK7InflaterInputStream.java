@@ -34,6 +34,10 @@ import java.util.zip.DataFormatException; // IA ADDED IMPORT
 import java.util.zip.Inflater;            // IA ADDED IMPORT
 import java.util.zip.ZipException;        // IA ADDED IMPORT
 
+import org.archive.format.gzip.InflaterBackend;     // IA ADDED IMPORT
+import org.archive.format.gzip.InflaterBackends;    // IA ADDED IMPORT
+import org.archive.format.gzip.JDKInflaterBackend;  // IA ADDED IMPORT
+
 /**
  * This class implements a stream filter for uncompressing data in the
  * "deflate" compression format. It is also used as the basis for other
@@ -45,10 +49,16 @@ import java.util.zip.ZipException;        // IA ADDED IMPORT
 public
 class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLASS
     /**
-     * Decompressor for this stream.
+     * Decompressor for this stream, if it is a JDK Inflater, null when
+     * another InflaterBackend is used.
      */
     protected Inflater inf;
 
+    /**
+     * Decompressor for this stream.
+     */
+    protected InflaterBackend infBackend; // IA ADDED FIELD
+
     /**
      * Input buffer for decompression.
      */
@@ -82,13 +92,26 @@ class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLAS
      * @exception IllegalArgumentException if size is &lt;= 0
      */
     public OpenJDK7InflaterInputStream(InputStream in, Inflater inf, int size) {
+        this(in, inf == null ? null : new JDKInflaterBackend(inf), size);
+    }
+
+    /**
+     * Creates a new input stream with the specified decompressor and
+     * buffer size.
+     * @param in the input stream
+     * @param inf the decompressor ("inflater")
+     * @param size the input buffer size
+     * @exception IllegalArgumentException if size is &lt;= 0
+     */
+    public OpenJDK7InflaterInputStream(InputStream in, InflaterBackend inf, int size) { // IA ADDED CONSTRUCTOR
         super(in);
         if (in == null || inf == null) {
             throw new NullPointerException();
         } else if (size <= 0) {
             throw new IllegalArgumentException("buffer size <= 0");
         }
-        this.inf = inf;
+        this.infBackend = inf;
+        this.inf = (inf instanceof JDKInflaterBackend) ? ((JDKInflaterBackend)inf).getInflater() : null;
         buf = new byte[size];
     }
 
@@ -109,7 +132,7 @@ class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLAS
      * @param in the input stream
      */
     public OpenJDK7InflaterInputStream(InputStream in) {
-        this(in, new Inflater());
+        this(in, InflaterBackends.create(false), 512); // IA CHANGED INFLATER
         usesDefaultInflater = true;
     }
 
@@ -153,12 +176,12 @@ class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLAS
         }
         try {
             int n;
-            while ((n = inf.inflate(b, off, len)) == 0) {
-                if (inf.finished() || inf.needsDictionary()) {
+            while ((n = infBackend.inflate(b, off, len)) == 0) {
+                if (infBackend.finished() || infBackend.needsDictionary()) {
                     reachEOF = true;
                     return -1;
                 }
-                if (inf.needsInput()) {
+                if (infBackend.needsInput()) {
                     fill();
                 }
             }
@@ -227,7 +250,7 @@ class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLAS
     public void close() throws IOException {
         if (!closed) {
             if (usesDefaultInflater)
-                inf.end();
+                infBackend.end();
             in.close();
             closed = true;
         }
@@ -243,7 +266,7 @@ class OpenJDK7InflaterInputStream extends FilterInputStream { // IA RENAMED CLAS
         if (len == -1) {
             throw new EOFException("Unexpected end of ZLIB input stream");
         }
-        inf.setInput(buf, 0, len);
+        infBackend.setInput(buf, 0, len);
     }
 
     /**
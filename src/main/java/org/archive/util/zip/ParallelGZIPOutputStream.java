@@ -0,0 +1,290 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.archive.format.gzip.GZIPFooter;
+
+/**
+ * Writes a single gzip member, deflating its data in chunks in parallel,
+ * as pigz does.
+ *
+ * <p>Each chunk is deflated independently on the executor, primed with the
+ * last 32K of the chunk before as a dictionary, and ends with a sync flush
+ * to a byte boundary, so the chunks concatenate into one deflate stream
+ * that any inflater reads. Compression is within a few percent of a serial
+ * deflate at the same level.
+ *
+ * <p>Data that fits in one chunk is deflated on the calling thread, so
+ * small members cost about what they would with a GZIPOutputStream.
+ *
+ * <p>The stream keeps a Deflater for each chunk deflating at once, reused
+ * from chunk to chunk, and ends them when finished.
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+    /** deflate window, the most of the previous chunk a chunk refers to */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** default gzip header: no flags, no mtime, unknown OS */
+    public static final byte[] GZIP_HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int level;
+    private final int strategy;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<byte[]>> inFlight =
+        new ArrayDeque<Future<byte[]>>();
+    /** Deflaters not deflating a chunk; guarded by itself */
+    private final ArrayDeque<Deflater> deflaters = new ArrayDeque<Deflater>();
+    private boolean deflatersEnded = false;
+    private final CRC32 crc = new CRC32();
+    private long bytesRead = 0;
+    private byte[] chunk;
+    private int chunkLength = 0;
+    private byte[] dictionary = null;
+    private boolean finished = false;
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor)
+    throws IOException {
+        this(out, executor, DEFAULT_CHUNK_SIZE, Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_STRATEGY, 4, GZIP_HEADER);
+    }
+
+    /**
+     * @param maxInFlight most chunks deflating at once; writes block beyond
+     * it, bounding memory use
+     * @param header gzip header to write first
+     */
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor,
+            int chunkSize, int level, int strategy, int maxInFlight,
+            byte[] header)
+    throws IOException {
+        super(out);
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.level = level;
+        this.strategy = strategy;
+        this.maxInFlight = maxInFlight;
+        this.chunk = new byte[chunkSize];
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of stream");
+        }
+        crc.update(b, off, len);
+        bytesRead += len;
+        while (len > 0) {
+            if (chunkLength == chunkSize) {
+                // only now is it known not to be the last chunk
+                submitChunk();
+            }
+            int amt = Math.min(len, chunkSize - chunkLength);
+            System.arraycopy(b, off, chunk, chunkLength, amt);
+            chunkLength += amt;
+            off += amt;
+            len -= amt;
+        }
+    }
+
+    /**
+     * Deflate the last chunk, write all the deflated data and the gzip
+     * footer. Does not close the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (inFlight.isEmpty()) {
+                out.write(deflate(chunk, chunkLength, dictionary, true));
+            } else {
+                submit(true);
+                while (!inFlight.isEmpty()) {
+                    writeNext();
+                }
+            }
+        } finally {
+            chunk = null;
+            dictionary = null;
+            endDeflaters();
+        }
+        new GZIPFooter(crc.getValue(), bytesRead).writeBytes(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            endDeflaters();
+            out.close();
+        }
+    }
+
+    public OutputStream getWrappedStream() {
+        return out;
+    }
+
+    /**
+     * @return uncompressed bytes written
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    protected void submitChunk() throws IOException {
+        submit(false);
+        byte[] previous = chunk;
+        dictionary = new byte[DICTIONARY_SIZE];
+        System.arraycopy(previous, chunkSize - DICTIONARY_SIZE, dictionary, 0,
+            DICTIONARY_SIZE);
+        chunk = new byte[chunkSize];
+        chunkLength = 0;
+        while (inFlight.size() >= maxInFlight
+                || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+            writeNext();
+        }
+    }
+
+    protected void submit(final boolean last) {
+        final byte[] input = chunk;
+        final int length = chunkLength;
+        final byte[] dict = dictionary;
+        inFlight.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return deflate(input, length, dict, last);
+            }
+        }));
+    }
+
+    protected void writeNext() throws IOException {
+        try {
+            out.write(inFlight.remove().get());
+        } catch (InterruptedException e) {
+            cancel();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            cancel();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    protected void cancel() {
+        for (Future<byte[]> future : inFlight) {
+            future.cancel(false);
+        }
+        inFlight.clear();
+    }
+
+    protected Deflater borrowDeflater() {
+        synchronized (deflaters) {
+            Deflater deflater = deflaters.poll();
+            return deflater != null ? deflater
+                : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    }
+
+    protected void returnDeflater(Deflater deflater) {
+        synchronized (deflaters) {
+            if (deflatersEnded) {
+                // a cancelled chunk finishing late
+                deflater.end();
+            } else {
+                deflater.reset();
+                deflaters.add(deflater);
+            }
+        }
+    }
+
+    /**
+     * End the idle Deflaters, and any returned later
+     */
+    protected void endDeflaters() {
+        synchronized (deflaters) {
+            deflatersEnded = true;
+            for (Deflater deflater : deflaters) {
+                deflater.end();
+            }
+            deflaters.clear();
+        }
+    }
+
+    /**
+     * Deflate a chunk to raw deflate data, ending on a byte boundary with a
+     * sync flush, or with the final block if last
+     */
+    protected byte[] deflate(byte[] input, int length, byte[] dictionary,
+            boolean last) {
+        Deflater deflater = borrowDeflater();
+        try {
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream deflated =
+                new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length,
+                        Deflater.SYNC_FLUSH);
+                    deflated.write(buffer, 0, n);
+                } while (n == buffer.length || !deflater.needsInput());
+            }
+            return deflated.toByteArray();
+        } finally {
+            returnDeflater(deflater);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.archive.extract;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.resource.Resource;
+
+import junit.framework.TestCase;
+
+public class ParallelResourceExtractorTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+	dir = File.createTempFile("ParallelResourceExtractorTest", "");
+	dir.delete();
+	dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	FileUtils.deleteDirectory(dir);
+    }
+
+    protected String cdx(String path) throws Exception {
+	StringWriter sw = new StringWriter();
+	RealCDXExtractorOutput out = new RealCDXExtractorOutput(new PrintWriter(sw));
+	ExtractingResourceProducer producer = new ExtractingResourceProducer(
+		ProducerUtils.getProducer(path), new CDXResourceFactoryMapper());
+	Resource r;
+	while ((r = producer.getNext()) != null) {
+	    out.output(r);
+	}
+	producer.close();
+	return sw.toString();
+    }
+
+    public void testExtract() throws Exception {
+	File src = new File(getClass().getResource(
+		"/org/archive/format/gzip/IAH-urls-wget.warc.gz").getPath());
+	File a = new File(dir, "a.warc.gz");
+	File b = new File(dir, "b.warc.gz");
+	FileUtils.copyFile(src, a);
+	FileUtils.copyFile(src, b);
+	// not gzipped, so parsed on the file's own thread
+	File c = new File(dir, "c.warc");
+	FileInputStream in = new FileInputStream(
+		new File(getClass().getResource(
+			"/org/archive/resource/html/link-extraction-test.warc").getPath()));
+	FileUtils.copyInputStreamToFile(in, c);
+	in.close();
+
+	File outDir = new File(dir, "out");
+	outDir.mkdirs();
+	ParallelResourceExtractor extractor = new ParallelResourceExtractor(2,
+		new Supplier<ResourceFactoryMapper>() {
+		    public ResourceFactoryMapper get() {
+			return new CDXResourceFactoryMapper();
+		    }
+		},
+		new ParallelResourceExtractor.ExtractorOutputFactory() {
+		    public ExtractorOutput getOutput(OutputStream os, File outputFile) {
+			return new RealCDXExtractorOutput(new PrintWriter(os));
+		    }
+		});
+	extractor.setMaxPending(4);
+	// the missing file fails without stopping the others
+	assertEquals(1, extractor.extract(Arrays.asList(a.getPath(),
+		b.getPath(), c.getPath(), new File(dir, "missing.warc").getPath()),
+		outDir, ".cdx"));
+
+	for (File f : new File[] {a, b, c}) {
+	    File out = new File(outDir,
+		    ParallelResourceExtractor.getOutputName(f.getPath(), ".cdx"));
+	    String expected = cdx(f.getPath());
+	    assertTrue(expected.length() > 0);
+	    assertEquals(expected, FileUtils.readFileToString(out, "UTF-8"));
+	}
+	assertEquals("a.warc.cdx",
+		ParallelResourceExtractor.getOutputName(a.getPath(), ".cdx"));
+    }
+}
@@ -1,11 +1,15 @@
 package org.archive.extract;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
 
+import org.archive.resource.Resource;
+
 import junit.framework.TestCase;
 
 
@@ -25,4 +29,26 @@ public class RealCDXExtractorOutputTest extends TestCase {
 	String resolved = RealCDXExtractorOutput.resolve(spec, spec);
 	assertTrue(spec.equals(resolved));
     }
+
+    protected String cdx(String path, ResourceFactoryMapper mapper) throws Exception {
+	StringWriter sw = new StringWriter();
+	RealCDXExtractorOutput out = new RealCDXExtractorOutput(new PrintWriter(sw));
+	ExtractingResourceProducer producer = new ExtractingResourceProducer(
+		ProducerUtils.getProducer(path), mapper);
+	Resource r;
+	while ((r = producer.getNext()) != null) {
+	    out.output(r);
+	}
+	producer.close();
+	return sw.toString();
+    }
+
+    public void testHeadOnlyMapper() throws Exception {
+	String path = getClass().getResource(
+		"/org/archive/resource/html/link-extraction-test.warc").getPath();
+	String full = cdx(path, new ExtractingResourceFactoryMapper());
+	// the meta refresh is found either way
+	assertTrue(full.contains("http://www.example.com/redirected.html"));
+	assertEquals(full, cdx(path, new CDXResourceFactoryMapper()));
+    }
 }
@@ -0,0 +1,48 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.archive.io.ArchiveReader;
+import org.archive.io.ArchiveRecord;
+import org.archive.io.warc.WARCReaderFactory;
+import org.archive.resource.Resource;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class WATExtractorOutputTest extends TestCase {
+
+	public void testOutput() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WATExtractorOutput out = new WATExtractorOutput(bytes, "test.warc.wat.gz");
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz"),
+				new ExtractingResourceFactoryMapper());
+		Resource r;
+		int records = 0;
+		while ((r = producer.getNext()) != null) {
+			out.output(r);
+			records++;
+		}
+		producer.close();
+		assertTrue(records > 1);
+
+		ArchiveReader reader = WARCReaderFactory.get("test.warc.wat.gz",
+				new ByteArrayInputStream(bytes.toByteArray()), true);
+		int metadata = 0;
+		for (ArchiveRecord record : reader) {
+			if (!"metadata".equals(record.getHeader().getHeaderValue("WARC-Type"))) {
+				continue;
+			}
+			assertEquals("application/json", record.getHeader().getMimetype());
+			// headers are read; the rest is the JSON
+			JSONObject json = new JSONObject(IOUtils.toString(record, "UTF-8"));
+			assertNotNull(json.getJSONObject("Envelope").getString("Format"));
+			metadata++;
+		}
+		reader.close();
+		assertEquals(records, metadata);
+	}
+}
@@ -0,0 +1,88 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class CDXBloomFilterTest extends TestCase {
+
+	static String createCDX(String host, int numUrls) throws IOException {
+		File file = File.createTempFile("test-bloom", ".cdx");
+		file.deleteOnExit();
+		new File(file.getPath() + CDXBloomFilter.DEFAULT_SUFFIX).deleteOnExit();
+
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		out.print(" CDX N b a m s k r M S V g\n");
+		for (int i = 0; i < numUrls; i++) {
+			for (int j = 0; j < 3; j++) {
+				out.print(String.format("%s)/page%03d 2010010100000%d http://example.com/ text/html 200 ABC - - 100 0 a.warc.gz\n", host, i, j));
+			}
+		}
+		out.close();
+		return file.getAbsolutePath();
+	}
+
+	static int count(CloseableIterator<String> iter) throws IOException {
+		int count = 0;
+		while (iter.hasNext()) {
+			iter.next();
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	public void testMightMatch() {
+		CDXBloomFilter bloom = CDXBloomFilter.create(100, 0.001);
+		bloom.addUrlKey("com,example)/page");
+
+		assertTrue(bloom.mightMatch("com,example)/page", "com,example)/page", true));
+		assertFalse(bloom.mightMatch("com,example)/other", "com,example)/other", true));
+		assertFalse(bloom.mightMatch("com,example)/pag", "com,example)/pag", true));
+		assertTrue(bloom.mightMatch("com,example)/pa", "com,example)/pa", false));
+		assertFalse(bloom.mightMatch("org,example)/", "org,example)/", false));
+		assertFalse(bloom.mightMatch("org,example)/a", "org,example)/a", "org,example)/b"));
+
+		// Can't check without the host
+		assertTrue(bloom.mightMatch("org,", "org,", false));
+		assertTrue(bloom.mightMatch("org,example)/a", "org,example)/a", ""));
+	}
+
+	public void testMultiSourceSkip() throws IOException {
+		List<String> uris = new ArrayList<String>();
+		for (int i = 0; i < 5; i++) {
+			uris.add(createCDX("com,host" + i, 20));
+		}
+
+		MultiCDXInputSource multi = new MultiCDXInputSource();
+		multi.setCdxUris(uris);
+		multi.setBloomFilters(true);
+
+		for (CDXInputSource source : multi.getCdx()) {
+			assertNotNull(((CDXFile)source).getBloomFilter());
+		}
+
+		ZipNumParams params = new ZipNumParams();
+		String key = "com,host3)/page007";
+		assertEquals(3, count(multi.getCDXIterator(key, key, true, params)));
+		assertEquals(5, multi.getNumQueried());
+		assertTrue(multi.getNumSkipped() >= 4);
+
+		key = "com,host2)/";
+		assertEquals(60, count(multi.getCDXIterator(key, key, false, params)));
+		assertEquals(0, count(multi.getCDXIterator("com,host9)/", "com,host9)/", false, params)));
+
+		// Reloaded from the saved filter
+		CDXFile cdx = new CDXFile(uris.get(0));
+		assertTrue(new File(uris.get(0) + CDXBloomFilter.DEFAULT_SUFFIX).isFile());
+		cdx.initBloomFilter();
+		assertTrue(cdx.getBloomFilter().mightContainPrefix("com,host0)/page019 "));
+	}
+}
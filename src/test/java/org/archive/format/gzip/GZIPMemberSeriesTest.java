@@ -81,7 +81,42 @@ public class GZIPMemberSeriesTest extends TestCase {
 		assertNull(s.getNextMember());
 	}
 
-	
+	public void testSharedInflater() throws IndexOutOfBoundsException, IOException {
+
+		InputStream is = getClass().getResourceAsStream("abcd.gz");
+		byte abcd[] = ByteStreams.toByteArray(is);
+		byte many[] = new byte[0];
+		for(int i = 0; i < 100; i++) {
+			many = ByteOp.append(many, abcd);
+		}
+		Stream stream = new SimpleStream(new ByteArrayInputStream(many));
+		GZIPMemberSeries s = new GZIPMemberSeries(stream, "unk", 0);
+		GZIPSeriesMember first = s.getNextMember();
+		TestUtils.assertStreamEquals(first,"abcd".getBytes(IAUtils.UTF8));
+		long firstLength = first.getCompressedBytesRead();
+		GZIPSeriesMember m;
+		int count = 1;
+		while((m = s.getNextMember()) != null) {
+			if(count % 2 == 0) {
+				TestUtils.assertStreamEquals(m,"abcd".getBytes(IAUtils.UTF8));
+				assertEquals(4, m.getFooter().getLength());
+			}
+			count++;
+		}
+		assertEquals(100, count);
+		assertEquals(100, s.getNumMembers());
+		assertEquals(1, s.getNumInflatersCreated());
+		assertEquals(1, s.getNumBuffersAllocated());
+		assertEquals(400, s.getInflatedBytes());
+
+		// Counts are kept once the next member reuses the inflater
+		assertEquals(abcd.length, firstLength);
+		assertEquals(firstLength, first.getCompressedBytesRead());
+		assertEquals(4, first.getUncompressedBytesRead());
+		s.close();
+	}
+
+
 	public void testSingleCRCStrict() throws IndexOutOfBoundsException, FileNotFoundException, IOException {
 
 		InputStream is = getClass().getResourceAsStream("abcd.gz");
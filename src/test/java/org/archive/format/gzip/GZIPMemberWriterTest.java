@@ -1,12 +1,19 @@
 package org.archive.format.gzip;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
 
+import org.archive.streamcontext.ByteArrayWrappedStream;
 import org.archive.util.IAUtils;
 
+import com.google.common.io.ByteStreams;
+
 import junit.framework.TestCase;
 
 public class GZIPMemberWriterTest extends TestCase {
@@ -18,4 +25,95 @@ public class GZIPMemberWriterTest extends TestCase {
 		gzw.write(new ByteArrayInputStream("Here is record 2".getBytes(IAUtils.UTF8)));
 	}
 
+	public void testWriteLengthRecord() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPMemberWriter gzw = new GZIPMemberWriter(out);
+		gzw.setWriteLengthRecord(true);
+		gzw.maxBuffer = 1000;
+		byte small[] = "Here is record 1".getBytes(IAUtils.UTF8);
+		byte large[] = new byte[50000];
+		new Random(1).nextBytes(large);
+		gzw.write(new ByteArrayInputStream(small));
+		long smallLength = gzw.getBytesWritten();
+		gzw.write(new ByteArrayInputStream(large));
+		gzw.write(new ByteArrayInputStream(small));
+
+		GZIPMemberSeries s = new GZIPMemberSeries(
+				new ByteArrayWrappedStream(out.toByteArray()), "unk", 0, true);
+		s.setTrustMemberLengths(true);
+		GZIPSeriesMember m = s.getNextMember();
+		assertEquals(smallLength, m.getHeader().getMemberLength());
+		assertTrue(ByteStreams.toByteArray(m).length == small.length);
+		m = s.getNextMember();
+		// too big for the buffer
+		assertEquals(-1, m.getHeader().getMemberLength());
+		assertTrue(Arrays.equals(large, ByteStreams.toByteArray(m)));
+		m = s.getNextMember();
+		assertEquals(smallLength, m.getHeader().getMemberLength());
+		m.skipMember();
+		assertNull(s.getNextMember());
+		assertEquals(1, s.getNumMembersSkipped());
+	}
+
+	public void testUntrustedMemberLength() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPMemberWriter gzw = new GZIPMemberWriter(out);
+		gzw.setWriteLengthRecord(true);
+		byte small[] = "Here is record 1".getBytes(IAUtils.UTF8);
+		for(int i = 0; i < 3; i++) {
+			gzw.write(new ByteArrayInputStream(small));
+		}
+		byte data[] = out.toByteArray();
+		// the low byte of the first member's SL value, now pointing inside
+		// the second member
+		data[16]++;
+
+		GZIPMemberSeries s = new GZIPMemberSeries(
+				new ByteArrayWrappedStream(data), "unk", 0, true);
+		assertFalse(s.isTrustMemberLengths());
+		s.setTrustMemberLengths(true);
+		GZIPSeriesMember m = s.getNextMember();
+		m.skipMember();
+		// inflated past instead
+		m = s.getNextMember();
+		assertTrue(Arrays.equals(small, ByteStreams.toByteArray(m)));
+		m = s.getNextMember();
+		// ending the stream
+		m.skipMember();
+		assertNull(s.getNextMember());
+		assertEquals(1, s.getNumMembersSkipped());
+
+		// not skipped unless trusted
+		s = new GZIPMemberSeries(new ByteArrayWrappedStream(out.toByteArray()),
+				"unk", 0, true);
+		while((m = s.getNextMember()) != null) {
+			m.skipMember();
+		}
+		assertEquals(0, s.getNumMembersSkipped());
+	}
+
+	public void testOpenMember() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPMemberWriter gzw = new GZIPMemberWriter(out);
+		byte large[] = new byte[50000];
+		new Random(1).nextBytes(large);
+		for(boolean lengthRecord : new boolean[] {false, true}) {
+			out.reset();
+			gzw.setWriteLengthRecord(lengthRecord);
+			OutputStream member = gzw.openMember();
+			member.write(large, 0, 100);
+			member.write(large, 100, large.length - 100);
+			member.close();
+			gzw.write(new ByteArrayInputStream("Here is record 2".getBytes(IAUtils.UTF8)));
+
+			GZIPMemberSeries s = new GZIPMemberSeries(
+					new ByteArrayWrappedStream(out.toByteArray()), "unk", 0, true);
+			GZIPSeriesMember m = s.getNextMember();
+			assertTrue(Arrays.equals(large, ByteStreams.toByteArray(m)));
+			m = s.getNextMember();
+			assertEquals("Here is record 2",
+					new String(ByteStreams.toByteArray(m), IAUtils.UTF8));
+			assertNull(s.getNextMember());
+		}
+	}
 }
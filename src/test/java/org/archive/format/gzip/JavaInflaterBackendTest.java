@@ -0,0 +1,192 @@
+package org.archive.format.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.streamcontext.SimpleStream;
+import org.archive.util.IAUtils;
+import org.archive.util.zip.GZIPMembersInputStream;
+
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+public class JavaInflaterBackendTest extends TestCase {
+
+	static byte[] textData(Random random, int size) {
+		String[] words = {"<html>", "<head>", "WARC-Type: response\r\n",
+				"Content-Length: ", "http://example.com/", "the", "archive",
+				"</a>", "\r\n", "<div class=\"item\">", " "};
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < size) {
+			sb.append(words[random.nextInt(words.length)]);
+			if(random.nextInt(10) == 0) {
+				sb.append(random.nextLong());
+			}
+		}
+		return sb.substring(0, size).getBytes(IAUtils.UTF8);
+	}
+
+	static byte[] deflate(byte[] data, int level, int strategy) {
+		Deflater deflater = new Deflater(level, true);
+		deflater.setStrategy(strategy);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		while(!deflater.finished()) {
+			int n = deflater.deflate(buf);
+			out.write(buf, 0, n);
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(data);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Inflate compressed, fed inChunk bytes at a time followed by trailer,
+	 * reading at most outChunk bytes at a time
+	 */
+	static byte[] inflate(InflaterBackend inflater, byte[] compressed,
+			byte[] trailer, int inChunk, int outChunk) throws DataFormatException {
+		byte[] input = Arrays.copyOf(compressed, compressed.length + trailer.length);
+		System.arraycopy(trailer, 0, input, compressed.length, trailer.length);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[outChunk];
+		int inPos = 0;
+		while(!inflater.finished()) {
+			if(inflater.needsInput()) {
+				assertTrue("input exhausted", inPos < input.length);
+				int n = Math.min(inChunk, input.length - inPos);
+				inflater.setInput(input, inPos, n);
+				inPos += n;
+			}
+			int n = inflater.inflate(buf, 0, buf.length);
+			out.write(buf, 0, n);
+		}
+		assertEquals(input.length - inPos + inflater.getRemaining(), trailer.length);
+		assertEquals(compressed.length, inflater.getBytesRead());
+		assertEquals(out.size(), inflater.getBytesWritten());
+		return out.toByteArray();
+	}
+
+	public void testMatchesJDK() throws DataFormatException {
+		Random random = new Random(12345);
+		byte[] noise = new byte[100000];
+		random.nextBytes(noise);
+		byte[] repeated = new byte[300000];
+		Arrays.fill(repeated, (byte) 'a');
+
+		byte[][] inputs = {new byte[0], "a".getBytes(IAUtils.UTF8),
+				textData(random, 1000), textData(random, 500000), noise, repeated};
+		int[][] settings = {
+				{Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY},
+				{Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY},
+				{Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY},
+				{Deflater.BEST_COMPRESSION, Deflater.FILTERED},
+				{Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY}};
+		int[][] chunks = {{1, 1}, {7, 13}, {512, 8192}, {1 << 20, 1 << 20}};
+		byte[] trailer = {1, 2, 3, 4, 5, 6, 7, 8};
+
+		InflaterBackend java = JavaInflaterBackend.FACTORY.create(true);
+		InflaterBackend jdk = JDKInflaterBackend.FACTORY.create(true);
+		for(byte[] input : inputs) {
+			for(int[] setting : settings) {
+				byte[] compressed = deflate(input, setting[0], setting[1]);
+				for(int[] chunk : chunks) {
+					if(chunk[1] == 1 && input.length > 10000) {
+						continue;
+					}
+					java.reset();
+					jdk.reset();
+					assertTrue(Arrays.equals(input,
+							inflate(java, compressed, trailer, chunk[0], chunk[1])));
+					assertTrue(Arrays.equals(input,
+							inflate(jdk, compressed, trailer, chunk[0], chunk[1])));
+				}
+			}
+		}
+		java.end();
+		jdk.end();
+	}
+
+	public void testCorrupt() {
+		byte[] compressed = deflate(textData(new Random(1), 10000),
+				Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+		// BTYPE 3 is reserved
+		compressed[0] |= 6;
+		InflaterBackend inflater = new JavaInflaterBackend();
+		inflater.setInput(compressed, 0, compressed.length);
+		try {
+			inflater.inflate(new byte[100], 0, 100);
+			fail("Expected DataFormatException");
+		} catch(DataFormatException e) {
+
+		}
+		try {
+			inflater.inflate(new byte[100], 0, 100);
+			fail("Expected repeated DataFormatException");
+		} catch(DataFormatException e) {
+
+		}
+	}
+
+	public void testMemberSeries() throws IOException {
+		Random random = new Random(6789);
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		byte[][] records = new byte[50][];
+		for(int i = 0; i < records.length; i++) {
+			records[i] = textData(random, random.nextInt(40000));
+			all.write(gzip(records[i]));
+		}
+
+		GZIPMemberSeries series = new GZIPMemberSeries(
+				new SimpleStream(new ByteArrayInputStream(all.toByteArray())), "unk", 0);
+		series.setInflaterFactory(JavaInflaterBackend.FACTORY);
+		for(int i = 0; i < records.length; i++) {
+			GZIPSeriesMember member = series.getNextMember();
+			assertNotNull(member);
+			assertTrue(Arrays.equals(records[i], ByteStreams.toByteArray(member)));
+			assertTrue(member.gotEOR());
+		}
+		assertNull(series.getNextMember());
+		assertEquals(1, series.getNumInflatersCreated());
+		series.close();
+
+		InflaterBackends.setDefaultFactory(JavaInflaterBackend.FACTORY);
+		try {
+			GZIPMembersInputStream in = new GZIPMembersInputStream(
+					new ByteArrayInputStream(all.toByteArray()));
+			assertTrue(in.getInflaterBackend() instanceof JavaInflaterBackend);
+			assertNull(in.getInflater());
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			for(byte[] record : records) {
+				expected.write(record);
+			}
+			assertTrue(Arrays.equals(expected.toByteArray(), ByteStreams.toByteArray(in)));
+			in.close();
+		} finally {
+			InflaterBackends.setDefaultFactory(null);
+		}
+
+		GZIPMembersInputStream in = new GZIPMembersInputStream(
+				new ByteArrayInputStream(all.toByteArray()));
+		assertNotNull(in.getInflater());
+		assertSame(in.getInflater(),
+				((JDKInflaterBackend) in.getInflaterBackend()).getInflater());
+		in.close();
+	}
+}
@@ -0,0 +1,231 @@
+package org.archive.format.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.archive.format.gzip.ParallelMemberReader.MemberConsumer;
+import org.archive.format.gzip.ParallelMemberReader.MemberProcessor;
+import org.archive.io.ArchiveRecord;
+import org.archive.io.ParallelArchiveReader;
+import org.archive.io.warc.WARCConstants;
+import org.archive.util.IAUtils;
+import org.archive.util.iterator.CloseableIterator;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+public class ParallelMemberReaderTest extends TestCase implements GZIPConstants {
+
+	static final MemberProcessor<String> TO_STRING = new MemberProcessor<String>() {
+		public String process(GZIPSeriesMember member) throws IOException {
+			return new String(ByteStreams.toByteArray(member), IAUtils.UTF8);
+		}
+	};
+
+	File tmp;
+	ForkJoinPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		tmp = File.createTempFile("parallel-member", ".gz");
+		pool = new ForkJoinPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+		tmp.delete();
+	}
+
+	/**
+	 * @return a gzip member of data, with an SL record holding its length
+	 * if withLength
+	 */
+	static byte[] member(byte[] data, int level, boolean withLength)
+	throws IOException {
+		byte[] deflated = JavaInflaterBackendTest.deflate(data, level,
+				Deflater.DEFAULT_STRATEGY);
+		GZIPHeader header = new GZIPHeader();
+		if(withLength) {
+			header.addRecord(SL_RECORD, 0);
+			header.replaceRecord(SL_RECORD, new GZIPFExtraRecord(SL_RECORD,
+					header.getLength() + deflated.length + GZIP_FOOTER_BYTES).getValue());
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		header.writeBytes(out);
+		out.write(deflated);
+		new GZIPFooter(crc.getValue(), data.length).writeBytes(out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write a file of members, returning their contents. Every 7th member is
+	 * a stored gzip file, so has a false member start inside it.
+	 */
+	List<String> writeMembers(int count, boolean withLength, List<Long> offsets)
+	throws IOException {
+		Random random = new Random(count);
+		List<String> records = new ArrayList<String>();
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		for(int i = 0; i < count; i++) {
+			byte[] data;
+			int level = Deflater.DEFAULT_COMPRESSION;
+			if(i % 7 == 3) {
+				data = JavaInflaterBackendTest.gzip(
+						JavaInflaterBackendTest.textData(random, 3000));
+				level = Deflater.NO_COMPRESSION;
+			} else {
+				data = JavaInflaterBackendTest.textData(random, random.nextInt(20000));
+			}
+			records.add(new String(data, IAUtils.UTF8));
+			offsets.add((long) all.size());
+			all.write(member(data, level, withLength));
+		}
+		Files.write(all.toByteArray(), tmp);
+		return records;
+	}
+
+	List<String> readOrdered(ParallelMemberReader<String> reader) throws IOException {
+		List<String> values = new ArrayList<String>();
+		ParallelMemberReader<String>.Members members = reader.open();
+		try {
+			String value;
+			while((value = members.next()) != null) {
+				values.add(value);
+			}
+		} finally {
+			members.close();
+		}
+		return values;
+	}
+
+	public void testOrdered() throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		List<String> records = writeMembers(60, false, offsets);
+
+		ParallelMemberReader<String> reader =
+			new ParallelMemberReader<String>(tmp, TO_STRING, pool);
+		assertEquals(records, readOrdered(reader));
+
+		// small buffers, and few members in flight
+		reader.setScanBufferSize(64);
+		reader.setReadSize(100);
+		reader.setMaxPending(2);
+		assertEquals(records, readOrdered(reader));
+
+		reader.setStartOffset(offsets.get(10));
+		assertEquals(records.subList(10, records.size()), readOrdered(reader));
+	}
+
+	public void testLengthRecords() throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		List<String> records = writeMembers(30, true, offsets);
+
+		ParallelMemberReader<String> reader =
+			new ParallelMemberReader<String>(tmp, TO_STRING, pool);
+		assertEquals(records, readOrdered(reader));
+		reader.setScanBufferSize(64);
+		assertEquals(records, readOrdered(reader));
+	}
+
+	public void testUnordered() throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		List<String> records = writeMembers(40, false, offsets);
+
+		final ConcurrentHashMap<Long, String> seen = new ConcurrentHashMap<Long, String>();
+		ParallelMemberReader<String> reader =
+			new ParallelMemberReader<String>(tmp, TO_STRING, pool);
+		reader.scan(new MemberConsumer<String>() {
+			public void accept(long offset, String value) {
+				assertNull(seen.put(offset, value));
+			}
+		});
+		assertEquals(records.size(), seen.size());
+		for(int i = 0; i < records.size(); i++) {
+			assertEquals(records.get(i), seen.get(offsets.get(i)));
+		}
+
+		try {
+			reader.scan(new MemberConsumer<String>() {
+				public void accept(long offset, String value) throws IOException {
+					throw new IOException("consumer");
+				}
+			});
+			fail("Expected consumer IOException");
+		} catch(IOException e) {
+			assertEquals("consumer", e.getMessage());
+		}
+	}
+
+	public void testTrailingBytes() throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		List<String> records = writeMembers(10, false, offsets);
+		byte[] bytes = Files.toByteArray(tmp);
+		byte[] junk = new byte[100];
+		new Random(1).nextBytes(junk);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(bytes, 0, (int) (long) offsets.get(5));
+		out.write(junk);
+		out.write(bytes, (int) (long) offsets.get(5), bytes.length - (int) (long) offsets.get(5));
+		out.write(junk);
+		Files.write(out.toByteArray(), tmp);
+
+		ParallelMemberReader<String> reader =
+			new ParallelMemberReader<String>(tmp, TO_STRING, pool);
+		try {
+			readOrdered(reader);
+			fail("Expected GZIPFormatException");
+		} catch(GZIPFormatException e) {
+
+		}
+		reader.setStrict(false);
+		assertEquals(records, readOrdered(reader));
+	}
+
+	public void testParallelArchiveReader() throws IOException {
+		File warc = new File(tmp.getPath() + ".warc.gz");
+		try {
+			Files.write(ByteStreams.toByteArray(
+					getClass().getResourceAsStream("IAH-urls-wget.warc.gz")), warc);
+			ParallelArchiveReader reader = new ParallelArchiveReader(warc, pool);
+			CloseableIterator<ArchiveRecord> records = reader.iterator();
+			List<String> types = new ArrayList<String>();
+			long lastOffset = -1;
+			while(records.hasNext()) {
+				ArchiveRecord record = records.next();
+				assertTrue(record.getHeader().getOffset() > lastOffset);
+				lastOffset = record.getHeader().getOffset();
+				types.add((String) record.getHeader().getHeaderValue(
+						WARCConstants.HEADER_KEY_TYPE));
+				ByteStreams.exhaust(record);
+			}
+			records.close();
+			assertFalse(types.isEmpty());
+			assertEquals("warcinfo", types.get(0));
+
+			final List<Long> offsets = Collections.synchronizedList(new ArrayList<Long>());
+			reader.scan(new MemberConsumer<ArchiveRecord>() {
+				public void accept(long offset, ArchiveRecord record) {
+					assertEquals(offset, record.getHeader().getOffset());
+					offsets.add(offset);
+				}
+			});
+			assertEquals(types.size(), offsets.size());
+		} finally {
+			warc.delete();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+
+import junit.framework.TestCase;
+
+public class BlockReaderPoolTest extends TestCase {
+
+	BlockReaderPool.FactoryCreator factoryCreator = new BlockReaderPool.FactoryCreator() {
+		@Override
+		public SeekableLineReaderFactory create(String location) throws IOException {
+			return new RandomAccessFileSeekableLineReaderFactory(new File(location));
+		}
+	};
+
+	BlockReaderPool.ReaderCreator readerCreator = new BlockReaderPool.ReaderCreator() {
+		@Override
+		public SeekableLineReader create(String location, SeekableLineReaderFactory factory) throws IOException {
+			return factory.get();
+		}
+	};
+
+	static String createFile(String content) throws IOException {
+		File file = File.createTempFile("test-pool", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+		return file.getAbsolutePath();
+	}
+
+	public void testLimits() throws IOException {
+		String a = createFile("a\n");
+		String b = createFile("b\n");
+
+		BlockReaderPool pool = new BlockReaderPool();
+		pool.setMaxTotalPerKey(1);
+		pool.setMaxWaitMS(10);
+
+		SeekableLineReader reader = pool.borrow(a, factoryCreator, readerCreator);
+		assertEquals("a", reader.readLine());
+		assertEquals(1, pool.getNumOpen(a));
+
+		try {
+			pool.borrow(a, factoryCreator, readerCreator);
+			fail("Expected timeout");
+		} catch (IOException e) {
+			assertEquals(1, pool.getNumTimeouts());
+		}
+
+		SeekableLineReader other = pool.borrow(b, factoryCreator, readerCreator);
+		assertEquals(2, pool.getNumOpen());
+
+		reader.close();
+		other.close();
+		assertEquals(0, pool.getNumOpen());
+		assertEquals(2, pool.getNumIdle());
+
+		reader = pool.borrow(a, factoryCreator, readerCreator);
+		assertEquals("a", reader.readLine());
+		reader.close();
+
+		assertEquals(3, pool.getNumBorrowed());
+		assertEquals(2, pool.getNumFactoriesCreated());
+	}
+
+	public void testIdleEviction() throws IOException {
+		BlockReaderPool pool = new BlockReaderPool();
+		pool.setMaxIdle(2);
+
+		for (int i = 0; i < 5; i++) {
+			pool.borrow(createFile(i + "\n"), factoryCreator, readerCreator).close();
+		}
+
+		assertEquals(2, pool.getNumIdle());
+		assertEquals(3, pool.getNumFactoriesEvicted());
+	}
+
+	public void testCloseThreadReaders() throws Exception {
+		final String a = createFile("a\n");
+		final BlockReaderPool pool = new BlockReaderPool();
+
+		Thread other = new Thread() {
+			public void run() {
+				try {
+					pool.borrow(a, factoryCreator, readerCreator);
+				} catch (IOException e) {
+					fail(e.toString());
+				}
+			}
+		};
+		other.start();
+		other.join();
+
+		SeekableLineReader reader = pool.borrow(a, factoryCreator, readerCreator);
+		assertEquals(2, pool.getNumOpen());
+
+		ZipNumBlockLoader.closeAllReaders();
+		assertTrue(reader.isClosed());
+		assertEquals(1, pool.getNumOpen());
+	}
+
+	public void testFailedCloseReleases() throws IOException {
+		BlockReaderPool pool = new BlockReaderPool();
+		BlockReaderPool other = new BlockReaderPool();
+
+		SeekableLineReader reader = pool.borrow("a", null, new BlockReaderPool.ReaderCreator() {
+			@Override
+			public SeekableLineReader create(String location, SeekableLineReaderFactory factory) throws IOException {
+				return new ZipNumBlockCacheTest.StringSLR("a\n") {
+					@Override
+					protected void doClose() throws IOException {
+						throw new IOException("close failed");
+					}
+				};
+			}
+		});
+		other.borrow(createFile("b\n"), factoryCreator, readerCreator);
+
+		assertEquals(1, pool.openReaders.size());
+		assertEquals(1, other.openReaders.size());
+
+		try {
+			reader.close();
+			fail("Expected close failure");
+		} catch (IOException e) {
+			assertEquals("close failed", e.getMessage());
+		}
+
+		assertTrue(reader.isClosed());
+		assertEquals(0, pool.getNumOpen());
+		assertEquals(0, pool.openReaders.size());
+		assertEquals(1, other.getNumOpen());
+	}
+}
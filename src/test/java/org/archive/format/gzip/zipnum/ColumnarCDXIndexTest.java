@@ -0,0 +1,160 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.archive.format.cdx.ColumnarCDXBlock;
+import org.archive.format.cdx.ColumnarCDXQuery;
+import org.archive.format.cdx.StandardCDXLineFactory;
+
+import junit.framework.TestCase;
+
+public class ColumnarCDXIndexTest extends TestCase {
+
+	static File createColumnarZipNum(List<String> lines, int linesPerBlock) throws IOException {
+		File dir = File.createTempFile("test-columnar", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+
+		File part = new File(dir, "part-00000.gz");
+		File manifest = new File(dir, "part-00000.manifest");
+		File summary = new File(dir, "ALL.summary");
+		part.deleteOnExit();
+		manifest.deleteOnExit();
+		summary.deleteOnExit();
+
+		ColumnarCDXWriter writer = new ColumnarCDXWriter(new FileOutputStream(part),
+				new FileOutputStream(manifest), linesPerBlock, StandardCDXLineFactory.cdx11);
+		for (String line : lines) {
+			writer.addLine(line);
+		}
+		writer.close();
+
+		// offset, length, first line -> urlkey timestamp, part, offset, length
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+		PrintWriter summaryOut = new PrintWriter(summary, "UTF-8");
+		String line;
+		while ((line = br.readLine()) != null) {
+			String[] parts = line.split("\t");
+			String[] fields = parts[2].split(" ");
+			summaryOut.print(fields[0] + " " + fields[1] + "\tpart-00000\t" + parts[0] + "\t" + parts[1] + "\n");
+		}
+		br.close();
+		summaryOut.close();
+		return summary;
+	}
+
+	public void testBlockRoundTrip() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			lines.add(ZipNumTestUtil.cdx11Line(i));
+		}
+		lines.add("com,z)/ 20100101000000 http://z.com/ text/html 200 X - - 10 0 name with spaces.warc.gz");
+
+		byte[] bytes = ColumnarCDXBlock.encode(lines, StandardCDXLineFactory.cdx11);
+		ColumnarCDXBlock block = ColumnarCDXBlock.read(new ByteArrayInputStream(bytes));
+
+		assertEquals(lines.size(), block.getNumRows());
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals(lines.get(i), block.getLine(i));
+			assertEquals(0, block.compareLine(i, lines.get(i)));
+		}
+
+		assertTrue(block.compareLine(1, ZipNumTestUtil.cdx11Line(0)) > 0);
+		assertTrue(block.compareLine(0, ZipNumTestUtil.cdx11Line(1)) < 0);
+		assertTrue(block.compareLine(0, "com,example000)/page0 ") > 0);
+		assertTrue(block.lineStartsWith(0, "com,example000)/page0 2010"));
+		assertFalse(block.lineStartsWith(0, "com,example000)/page1"));
+
+		// Columns decoded on demand
+		ColumnarCDXBlock other = ColumnarCDXBlock.read(new ByteArrayInputStream(bytes));
+		assertEquals("404", other.getColumn("statuscode")[0]);
+		assertNull(other.getColumn("nosuchfield"));
+
+		// Smaller than the text
+		int textLength = 0;
+		for (String line : lines) {
+			textLength += line.length() + 1;
+		}
+		assertTrue(bytes.length < textLength / 2);
+
+		try {
+			ColumnarCDXBlock.encode(Arrays.asList("too few fields"), StandardCDXLineFactory.cdx11);
+			fail("Expected IOException");
+		} catch (IOException e) {
+
+		}
+	}
+
+	public void testIndexQueries() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 3000; i++) {
+			lines.add(ZipNumTestUtil.cdx11Line(i));
+		}
+
+		File summary = createColumnarZipNum(lines, 100);
+		ColumnarCDXIndex index = ColumnarCDXIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+		ZipNumParams params = new ZipNumParams();
+
+		// Full lines, as for a text index
+		assertEquals(lines, ZipNumTestUtil.drain(index.getCDXIterator("", "", "", params)));
+
+		String prefix = "com,example010)/";
+		List<String> expected = new ArrayList<String>();
+		for (String line : lines) {
+			if (line.startsWith(prefix)) {
+				expected.add(line);
+			}
+		}
+		// as for a text index, the rest of the last block may follow
+		assertEquals(expected, ZipNumTestUtil.drain(index.getCDXIterator(prefix, prefix, false, params)).subList(0, expected.size()));
+		assertEquals(expected, ZipNumTestUtil.drain(index.getCDXIterator(prefix, prefix, false, params, new ColumnarCDXQuery())));
+
+		String exact = "com,example010)/page3";
+		assertEquals(lines.get(73), ZipNumTestUtil.drain(index.getCDXIterator(exact, exact, true, params)).get(0));
+		assertEquals(Arrays.asList(lines.get(73)), ZipNumTestUtil.drain(index.getCDXIterator(exact, exact, true, params, new ColumnarCDXQuery())));
+
+		String start = lines.get(150);
+		String end = lines.get(2345);
+		assertEquals(lines.subList(150, 2345), ZipNumTestUtil.drain(index.getCDXIterator(start, start, end, params)));
+		assertEquals(lines.subList(150, 2345), ZipNumTestUtil.drain(index.getCDXIterator(start, start, end, params, new ColumnarCDXQuery())));
+
+		// Filtered and projected
+		ColumnarCDXQuery query = new ColumnarCDXQuery("urlkey,timestamp,length");
+		query.addFilter("statuscode", "200");
+		query.addFilter("mimetype", "text/html");
+
+		expected.clear();
+		for (int i = 150; i < 2345; i++) {
+			String[] fields = lines.get(i).split(" ");
+			if (fields[4].equals("200") && fields[3].equals("text/html")) {
+				expected.add(fields[0] + " " + fields[1] + " " + fields[8]);
+			}
+		}
+		assertEquals(expected, ZipNumTestUtil.drain(index.getCDXIterator(start, start, end, params, query)));
+
+		query = new ColumnarCDXQuery().addFilter("statuscode", "302");
+		assertEquals(0, ZipNumTestUtil.drain(index.getCDXIterator("", "", "", params, query)).size());
+
+		params.setMaxBlocks(2);
+		assertEquals(200, ZipNumTestUtil.drain(index.getCDXIterator("", "", "", params, new ColumnarCDXQuery())).size());
+
+		params.setReverse(true);
+		try {
+			index.getCDXIterator("", "", "", params, new ColumnarCDXQuery());
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class PrefetchingBlockIteratorTest extends TestCase {
+
+	public void testSameOrderAsSerial() throws IOException {
+		File summary = ZipNumTestUtil.createZipNum(3000, 10);
+
+		ZipNumIndex serial = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+
+		ZipNumIndex prefetch = new ZipNumIndex();
+		prefetch.setSummaryFile(summary.getAbsolutePath());
+		prefetch.setPrefetchDepth(4);
+		prefetch.setPrefetchThreads(3);
+		prefetch.init();
+
+		try {
+			String[] keys = {"", "com,example010)/", "com,example200)/ 20100101001405", "zzz"};
+
+			for (String key : keys) {
+				ZipNumParams params = new ZipNumParams();
+				List<String> expected = ZipNumTestUtil.drain(serial.getCDXIterator(key, "", false, params));
+				assertEquals(key, expected, ZipNumTestUtil.drain(prefetch.getCDXIterator(key, "", false, params)));
+
+				params = new ZipNumParams(2, 7, 0, false);
+				expected = ZipNumTestUtil.drain(serial.getCDXIterator(key, key, "", params));
+				assertEquals(key, expected, ZipNumTestUtil.drain(prefetch.getCDXIterator(key, key, "", params)));
+
+				params = new ZipNumParams(1, 5, 0, true);
+				expected = ZipNumTestUtil.drain(serial.getCDXIterator(key, key, "com,example300)/", params));
+				assertEquals(key, expected, ZipNumTestUtil.drain(prefetch.getCDXIterator(key, key, "com,example300)/", params)));
+			}
+
+			// close before all blocks are read
+			ZipNumParams params = new ZipNumParams();
+			CloseableIterator<String> iter = prefetch.getCDXIterator("", "", false, params);
+			assertTrue(iter.hasNext());
+			assertEquals(ZipNumTestUtil.cdxLine(0), iter.next());
+			iter.close();
+		} finally {
+			prefetch.shutdownPrefetch();
+		}
+	}
+
+	public void testSharedExecutorLeftRunning() throws IOException {
+		File summary = ZipNumTestUtil.createZipNum(300, 10);
+		ExecutorService shared = ZipNumIndex.createPrefetchExecutor(2, 16);
+		try {
+			ZipNumIndex prefetch = new ZipNumIndex();
+			prefetch.setSummaryFile(summary.getAbsolutePath());
+			prefetch.setPrefetchDepth(2);
+			prefetch.setPrefetchExecutor(shared);
+			prefetch.init();
+			assertSame(shared, prefetch.getPrefetchExecutor());
+			assertEquals(300, ZipNumTestUtil.drain(
+					prefetch.getCDXIterator("", "", false, new ZipNumParams())).size());
+			prefetch.shutdownPrefetch();
+			assertFalse(shared.isShutdown());
+		} finally {
+			shared.shutdownNow();
+		}
+
+		ZipNumIndex own = new ZipNumIndex();
+		own.setSummaryFile(summary.getAbsolutePath());
+		own.setPrefetchDepth(2);
+		own.init();
+		ExecutorService created = own.getPrefetchExecutor();
+		own.shutdownPrefetch();
+		assertTrue(created.isShutdown());
+	}
+}
@@ -0,0 +1,92 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.util.iterator.CloseableIteratorWrapper;
+
+import junit.framework.TestCase;
+
+public class ResidentSummaryIndexTest extends TestCase {
+
+	public void testMatchesFileSummary() throws IOException {
+		File summary = ZipNumTestUtil.createZipNum(5000, 20);
+
+		ZipNumIndex fileIndex = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+
+		ZipNumIndex residentIndex = new ZipNumIndex();
+		residentIndex.setSummaryFile(summary.getAbsolutePath());
+		residentIndex.setResidentSummary(true);
+		residentIndex.init();
+
+		ResidentSummaryIndex resident = residentIndex.getResidentIndex();
+		assertEquals(250, resident.size());
+		assertEquals("part-00000", resident.getPartId(10));
+		assertEquals(10, resident.getLineCount(10));
+		assertEquals(ZipNumTestUtil.cdxLine(200), resident.getKey(10));
+
+		List<String> summaryLines = ZipNumTestUtil.drain(fileIndex.getSummary().getRecordIterator(0L));
+		assertEquals(summaryLines, ZipNumTestUtil.drain(resident.cursor(0, resident.size(), false)));
+
+		String[] keys = {"", "a", "com,example000)/", "com,example010)/", "com,example100)/ 20100101000700",
+				"com,example100)/ 20100101000701", "com,example714)/", "com,example999)/", "zzz"};
+
+		for (String key : keys) {
+			ZipNumParams params = new ZipNumParams();
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getCDXIterator(key, key, false, params)),
+					ZipNumTestUtil.drain(residentIndex.getCDXIterator(key, key, false, params)));
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getCDXIterator(key, key, true, params)),
+					ZipNumTestUtil.drain(residentIndex.getCDXIterator(key, key, true, params)));
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getCDXIterator(key, key, "com,example300)/", params)),
+					ZipNumTestUtil.drain(residentIndex.getCDXIterator(key, key, "com,example300)/", params)));
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getLastBlockCDXLineIterator(key)),
+					ZipNumTestUtil.drain(residentIndex.getLastBlockCDXLineIterator(key)));
+
+			params = new ZipNumParams(1, 3, 0, false);
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getCDXIterator(key, key, false, params)),
+					ZipNumTestUtil.drain(residentIndex.getCDXIterator(key, key, false, params)));
+
+			params = new ZipNumParams(1, 3, 0, true);
+			assertEquals(key, ZipNumTestUtil.drain(fileIndex.getCDXIterator(key, key, "com,example500)/", params)),
+					ZipNumTestUtil.drain(residentIndex.getCDXIterator(key, key, "com,example500)/", params)));
+
+			assertEquals(key, fileIndex.getNumLines(key, "com,example600)/"),
+					residentIndex.getNumLines(key, "com,example600)/"));
+			assertEquals(key, fileIndex.getNumLines("", key), residentIndex.getNumLines("", key));
+		}
+
+		assertEquals(fileIndex.getNthLine("17", 4), residentIndex.getNthLine("17", 4));
+		assertEquals(fileIndex.getNthLine("1000", 4), residentIndex.getNthLine("1000", 4));
+	}
+
+	public void testIrregularLines() {
+		List<String> lines = new ArrayList<String>();
+		lines.add("a\tpart-0\t0\t100");
+		lines.add("b\tpart-0\t0100\t100\t1");
+		lines.add("c\tpart-1\t0\t50\t2\textra");
+		lines.add("bad line");
+		lines.add("dé\tpart-1\t50\t50\t3");
+
+		ResidentSummaryIndex index = ResidentSummaryIndex.load(new CloseableIteratorWrapper<String>(lines.iterator()));
+
+		assertEquals(4, index.size());
+		assertEquals("a\tpart-0\t0\t100", index.getLine(0));
+		assertEquals(-1, index.getLineCount(0));
+		assertEquals("b\tpart-0\t0100\t100\t1", index.getLine(1));
+		assertEquals(100, index.getOffset(1));
+		assertEquals("c\tpart-1\t0\t50\t2\textra", index.getLine(2));
+		assertEquals("dé\tpart-1\t50\t50\t3", index.getLine(3));
+		assertEquals(1, index.getPartOrdinal(3));
+
+		assertEquals(0, index.lowerBound("a"));
+		assertEquals(0, index.lowerBound("a\u0001"));
+		assertEquals(1, index.lowerBound("a\u007f"));
+		assertEquals(0, index.lowerBound("a\t"));
+		assertEquals(3, index.lowerBound("d"));
+		assertEquals(4, index.lowerBound("e"));
+		assertEquals(3, index.prefixEnd("c"));
+		assertEquals(3, index.prefixEnd("c\tpart-1"));
+	}
+}
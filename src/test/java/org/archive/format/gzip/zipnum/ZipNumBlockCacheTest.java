@@ -0,0 +1,130 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.util.binsearch.AbstractSeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReader;
+
+import junit.framework.TestCase;
+
+public class ZipNumBlockCacheTest extends TestCase {
+
+	public void testCachedLookups() throws IOException {
+		File summary = ZipNumTestUtil.createZipNum(2000, 10);
+
+		ZipNumIndex uncached = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+
+		for (boolean offHeap : new boolean[]{false, true}) {
+			ZipNumBlockCache cache = new ZipNumBlockCache(1024 * 1024, offHeap);
+			ZipNumIndex cached = new ZipNumIndex();
+			cached.setSummaryFile(summary.getAbsolutePath());
+			cached.setBlockCache(cache);
+			cached.init();
+
+			String key = "com,example100)/";
+			ZipNumParams params = new ZipNumParams();
+			List<String> expected = ZipNumTestUtil.drain(uncached.getCDXIterator(key, key, true, params));
+			assertFalse(expected.isEmpty());
+
+			assertEquals(expected, ZipNumTestUtil.drain(cached.getCDXIterator(key, key, true, params)));
+			long misses = cache.getMissCount();
+			assertTrue(misses > 0);
+			assertEquals(0, cache.getHitCount());
+
+			assertEquals(expected, ZipNumTestUtil.drain(cached.getCDXIterator(key, key, true, params)));
+			assertEquals(misses, cache.getMissCount());
+			assertEquals(misses, cache.getHitCount());
+
+			params = new ZipNumParams(1, 5, 0, true);
+			assertEquals(ZipNumTestUtil.drain(uncached.getCDXIterator(key, key, "com,example200)/", params)),
+					ZipNumTestUtil.drain(cached.getCDXIterator(key, key, "com,example200)/", params)));
+		}
+	}
+
+	static class StringSLR extends AbstractSeekableLineReader {
+		String content;
+
+		StringSLR(String content) {
+			this.content = content;
+		}
+
+		@Override
+		protected InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+			return new ByteArrayInputStream(content.getBytes(UTF8));
+		}
+
+		@Override
+		protected void doClose() throws IOException {
+		}
+	}
+
+	public void testCoalescedLoads() throws Exception {
+		final ZipNumBlockCache cache = new ZipNumBlockCache();
+		final ZipNumBlockCache.BlockKey key = new ZipNumBlockCache.BlockKey("idx", "part-00000", 0, 100);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final Callable<SeekableLineReader> loader = new Callable<SeekableLineReader>() {
+			@Override
+			public SeekableLineReader call() throws Exception {
+				loads.incrementAndGet();
+				started.countDown();
+				release.await();
+				SeekableLineReader slr = new StringSLR("a\nb\n");
+				slr.seek(0);
+				return slr;
+			}
+		};
+
+		final String[] results = new String[4];
+		Thread[] threads = new Thread[results.length];
+
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						SeekableLineReader slr = cache.getBlock(key, loader);
+						results[index] = slr.readLine() + slr.readLine();
+						slr.close();
+					} catch (IOException e) {
+						results[index] = e.toString();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		started.await();
+		Thread.sleep(50);
+		release.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(1, loads.get());
+
+		for (String result : results) {
+			assertEquals("ab", result);
+		}
+
+		// failed loads are not cached
+		ZipNumBlockCache.BlockKey missing = new ZipNumBlockCache.BlockKey("idx", "part-00001", 0, 100);
+		assertNull(cache.getBlock(missing, new Callable<SeekableLineReader>() {
+			@Override
+			public SeekableLineReader call() {
+				return null;
+			}
+		}));
+		assertEquals(1, cache.size());
+	}
+}
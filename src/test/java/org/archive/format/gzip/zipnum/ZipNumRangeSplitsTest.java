@@ -0,0 +1,31 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.util.binsearch.ParallelRangeScanner;
+
+import junit.framework.TestCase;
+
+public class ZipNumRangeSplitsTest extends TestCase {
+
+	public void testZipNumSplits() throws IOException {
+		File summary = ZipNumTestUtil.createZipNum(3000, 20);
+		ZipNumIndex index = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+		ParallelRangeScanner scanner = new ParallelRangeScanner();
+
+		String start = ZipNumTestUtil.cdxLine(35);
+		String end = ZipNumTestUtil.cdxLine(2501);
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 35; i < 2501; i++) {
+			expected.add(ZipNumTestUtil.cdxLine(i));
+		}
+
+		for (int n : new int[]{1, 3, 16, 1000}) {
+			assertEquals(expected, ZipNumTestUtil.drain(scanner.scanOrdered(index.getRangeSplits(start, end, n, new ZipNumParams()))));
+		}
+	}
+}
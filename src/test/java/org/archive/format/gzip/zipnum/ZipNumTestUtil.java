@@ -0,0 +1,89 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * ZipNum fixtures shared by the tests of this package
+ */
+class ZipNumTestUtil {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * @return the i'th line of a sorted index of urlkey and timestamp,
+	 * seven captures per url
+	 */
+	static String cdxLine(int i) {
+		return String.format("com,example%03d)/ %014d", i / 7, 20100101000000L + i);
+	}
+
+	/**
+	 * @return the i'th line of a sorted 11 field CDX, with the fields varied
+	 */
+	static String cdx11Line(int i) {
+		String mime = (i % 3 == 0 ? "image/jpeg" : "text/html");
+		String status = (i % 5 == 0 ? "404" : "200");
+		String length = (i % 11 == 0 ? "-" : String.valueOf(1000 + i % 97));
+		return String.format("com,example%03d)/page%d %014d http://example%03d.com/page%d %s %s SHA1%06d - - %s %d file-%d.warc.gz",
+				i / 7, i % 7, 20100101000000L + i * 37, i / 7, i % 7, mime, status, i, length, i * 1000L, i / 500);
+	}
+
+	/**
+	 * Write a single part ZipNum index of cdxLine(0 .. numLines - 1) with
+	 * the given number of lines per block, return the summary file
+	 */
+	static File createZipNum(int numLines, int linesPerBlock) throws IOException {
+		File dir = File.createTempFile("test-zipnum", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+
+		File part = new File(dir, "part-00000.gz");
+		File summary = new File(dir, "ALL.summary");
+		part.deleteOnExit();
+		summary.deleteOnExit();
+
+		FileOutputStream partOut = new FileOutputStream(part);
+		PrintWriter summaryOut = new PrintWriter(summary, "UTF-8");
+		long offset = 0;
+
+		for (int i = 0; i < numLines; i += linesPerBlock) {
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			GZIPOutputStream gz = new GZIPOutputStream(block);
+			for (int j = i; j < Math.min(i + linesPerBlock, numLines); j++) {
+				gz.write((cdxLine(j) + "\n").getBytes(UTF8));
+			}
+			gz.close();
+
+			summaryOut.print(cdxLine(i) + "\tpart-00000\t" + offset + "\t" + block.size() + "\t" + (i / linesPerBlock) + "\n");
+			block.writeTo(partOut);
+			offset += block.size();
+		}
+
+		partOut.close();
+		summaryOut.close();
+		return summary;
+	}
+
+	/**
+	 * Read the rest of iter and close it
+	 */
+	static List<String> drain(CloseableIterator<String> iter) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (iter.hasNext()) {
+			lines.add(iter.next());
+		}
+		iter.close();
+		return lines;
+	}
+}
@@ -2,6 +2,7 @@ package org.archive.format.gzip.zipnum;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -11,7 +12,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.format.gzip.GZIPSeriesMember;
 import org.archive.streamcontext.SimpleStream;
@@ -63,5 +66,28 @@ public class ZipNumWriterTest extends TestCase {
 		br.close();
 		
 	}
-	
+
+	public void testCommittedMembersAreSeparate() throws IOException {
+		Charset UTF8 = Charset.forName("UTF-8");
+		ByteArrayOutputStream main = new ByteArrayOutputStream();
+		ByteArrayOutputStream summ = new ByteArrayOutputStream();
+		ZipNumWriter znw = new ZipNumWriter(main, summ, 2);
+		for(int i = 0; i < 4; i++) {
+			znw.addRecord(String.format("%06d\n",i).getBytes(UTF8));
+		}
+		znw.close();
+
+		String[] lines = new String(summ.toByteArray(), UTF8).split("\n");
+		assertEquals(2, lines.length);
+		String[] expected = {"000000\n000001\n", "000002\n000003\n"};
+		for(int i = 0; i < lines.length; i++) {
+			String parts[] = lines[i].split("\t");
+			int offset = Integer.parseInt(parts[0]);
+			int len = Integer.parseInt(parts[1]);
+			GZIPInputStream gzis = new GZIPInputStream(
+					new ByteArrayInputStream(main.toByteArray(), offset, len));
+			assertEquals(expected[i],
+					new String(IOUtils.toByteArray(gzis), UTF8));
+		}
+	}
 }
@@ -0,0 +1,74 @@
+package org.archive.format.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.archive.extract.ExtractingResourceFactoryMapper;
+import org.archive.extract.ExtractingResourceProducer;
+import org.archive.extract.ProducerUtils;
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class JSONByteWriterTest extends TestCase {
+
+	private byte[] expected(JSONObject json) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Writer w = new OutputStreamWriter(bos, "UTF-8");
+		json.write(w);
+		w.flush();
+		return bos.toByteArray();
+	}
+
+	private void assertSameBytes(JSONObject json, JSONByteWriter writer)
+			throws IOException {
+		writer.reset();
+		writer.write(json);
+		byte[] expected = expected(json);
+		assertEquals(expected.length, writer.size());
+		assertTrue(new String(writer.toByteArray(), "UTF-8"),
+				Arrays.equals(expected, writer.toByteArray()));
+	}
+
+	public void testEscaping() throws IOException {
+		JSONObject o = new JSONObject();
+		o.put("quotes", "a \"b\" \\c");
+		o.put("slashes", "</script> a/b");
+		o.put("controls", "\b\t\n\f\r\u0001\u001f");
+		o.put("latin", "caf\u00e9 \u0085 \u00a0");
+		o.put("punctuation", "\u2028\u2029\u20ac");
+		o.put("astral", "\ud83d\ude00 lone \ud83d and \ude00");
+		o.put("", "");
+		o.put("numbers", new JSONArray("[1,-2,3.5,12345678901,1e-7]"));
+		o.put("long", 0xffffffffL + 1L);
+		o.put("double", 0.1d);
+		o.put("booleans", new JSONArray("[true,false,null]"));
+		o.put("nested", new JSONObject("{\"a\":{\"b\":[{\"c\":\"d\"}]}}"));
+		JSONByteWriter writer = new JSONByteWriter(4);
+		assertSameBytes(o, writer);
+		// again, into the grown buffer
+		assertSameBytes(o, writer);
+	}
+
+	public void testMetaData() throws Exception {
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz"),
+				new ExtractingResourceFactoryMapper());
+		JSONByteWriter writer = new JSONByteWriter();
+		Resource r;
+		int records = 0;
+		while ((r = producer.getNext()) != null) {
+			MetaData top = r.getMetaData().getTopMetaData();
+			assertSameBytes(top, writer);
+			records++;
+		}
+		producer.close();
+		assertTrue(records > 0);
+	}
+}
@@ -0,0 +1,129 @@
+package org.archive.format.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.extract.ExtractingResourceFactoryMapper;
+import org.archive.extract.ExtractingResourceProducer;
+import org.archive.extract.ProducerUtils;
+import org.archive.resource.CompactMetaData;
+import org.archive.resource.Resource;
+import org.archive.util.TestUtils;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class JSONPathPlanTest extends TestCase {
+
+	/**
+	 * What JSONView gave before it was compiled
+	 */
+	private List<List<String>> uncompiled(JSONObject json, String... specs) {
+		ArrayList<List<List<String>>> results = new ArrayList<List<List<String>>>();
+		for(String spec : specs) {
+			List<List<String>> result = JSONPathSpecFactory.get(spec).extract(json);
+			results.add(result == null ? new ArrayList<List<String>>() : result);
+		}
+		return new CrossProductOfLists<String>().crossProduct(results);
+	}
+
+	private void assertSameRows(JSONObject json, String... specs) {
+		List<List<String>> expected = uncompiled(json, specs);
+		JSONView view = new JSONView(specs);
+		assertEquals(expected, view.apply(json));
+		// again, reusing the plan's buffers
+		assertEquals(expected, view.apply(json));
+		if(json != null) {
+			CompactMetaData md = CompactMetaData.parse(json.toString());
+			assertSameCells(expected, view.apply(md));
+			assertSameCells(expected, view.apply(md));
+		}
+	}
+
+	/**
+	 * Equal, but for the key order of object values
+	 */
+	private void assertSameCells(List<List<String>> expected, List<List<String>> got) {
+		assertEquals(expected.size(), got.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).size(), got.get(i).size());
+			for(int j = 0; j < expected.get(i).size(); j++) {
+				String e = expected.get(i).get(j);
+				String g = got.get(i).get(j);
+				if(e.startsWith("{")) {
+					assertTrue(g, new JSONObject(e).similar(new JSONObject(g)));
+				} else {
+					assertEquals(e, g);
+				}
+			}
+		}
+	}
+
+	public void testMatchesUncompiled() {
+		JSONObject json = new JSONObject("{\"url\":\"a\",\"n\":null,\"num\":5,"
+				+ "\"o\":{\"p\":{\"q\":\"Q\",\"r\":\"R\"},\"s\":\"S\",\"arr\":[1,2]},"
+				+ "\"link\":[{\"zz\":\"1\",\"qq\":\"qa\"},{\"zz2\":\"2\",\"qq\":\"qb\"},"
+				+ "{\"zz\":\"3\",\"qq\":\"qc\",\"sub\":[{\"x\":\"x1\"},{\"x\":\"x2\"}]}]}");
+		String[] specs = {
+				"url", "missing", "num", "n", "n.x",
+				"o.p.q", "o.p.r", "o.p.{q,r,t}", "o.s", "o.s.t", "o.missing.t",
+				"o.missing.{a,b}", "o.arr", "o.@arr.x",
+				"@link.zz", "@link.{zz,qq}", "@link.@sub.x", "@missing.zz",
+				"missing|o.s", "o.p|url", "o.p.{q,r}|o.s", "missing|other",
+				"@link.zz|url"
+		};
+		for(String spec : specs) {
+			assertSameRows(json, spec);
+		}
+		assertSameRows(json, specs);
+		assertSameRows(json, "url", "@link.zz", "@link.{zz,qq}", "o.p.q");
+		assertSameRows(json);
+		assertSameRows(null, "url", "o.p.q");
+	}
+
+	public void testRows() {
+		JSONObject json = new JSONObject("{\"url\":\"a\",\"link\":[{\"zz\":\"1\",\"qq\":\"qa\"},{\"zz\":\"2\"}]}");
+		JSONPathPlan plan = new JSONPathPlan("url", "@link.{zz,qq}", "@link.zz");
+		JSONPathPlan.Rows rows = plan.evaluate(json);
+		List<List<String>> got = new ArrayList<List<String>>();
+		while(rows.next()) {
+			assertEquals(4, rows.size());
+			got.add(rows.toList());
+		}
+		assertFalse(rows.next());
+		TestUtils.assertLoLMatches(new String[][]{
+				{"a","1","qa","1"},{"a","1","qa","2"},
+				{"a","2","","1"},{"a","2","","2"}}, got);
+
+		// a column without matches leaves no rows
+		rows = plan.evaluate(new JSONObject("{\"url\":\"a\",\"link\":[]}"));
+		assertFalse(rows.next());
+	}
+
+	public void testMetaData() throws Exception {
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz"),
+				new ExtractingResourceFactoryMapper());
+		String[] specs = {
+				"Envelope.WARC-Header-Metadata.WARC-Target-URI|Envelope.ARC-Header-Metadata.Target-URI",
+				"Envelope.WARC-Header-Metadata.WARC-Date",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.Response-Message.Status",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers.Content-Type",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.@Links.{path,url}",
+				"Container.Filename",
+				"Container.Offset"
+		};
+		JSONView view = new JSONView(specs);
+		Resource r;
+		int rows = 0;
+		while((r = producer.getNext()) != null) {
+			JSONObject top = r.getMetaData().getTopMetaData();
+			List<List<String>> got = view.apply(top);
+			assertEquals(uncompiled(top, specs), got);
+			assertEquals(got, view.apply(CompactMetaData.parse(top.toString())));
+			rows += got.size();
+		}
+		producer.close();
+		assertTrue(rows > 0);
+	}
+}
@@ -1,5 +1,7 @@
 package org.archive.format.json;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.archive.util.TestUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -41,4 +43,38 @@ public class JSONViewTest extends TestCase {
 				view.apply(json1));
 	}
 
+	public void testSharedBetweenThreads() throws Exception {
+		final JSONView view = new JSONView("url","@link.zz");
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			final String url = "u" + t;
+			final JSONObject json = new JSONObject(
+					"{\"url\":\"" + url + "\",\"link\":[{\"zz\":\"1\"},{\"zz\":\"2\"}]}");
+			threads[t] = new Thread() {
+				public void run() {
+					for(int i = 0; i < 2000; i++) {
+						JSONPathPlan.Rows rows = view.evaluate(json);
+						int n = 0;
+						while(rows.next()) {
+							n++;
+							if(!url.equals(rows.get(0))
+									|| !String.valueOf(n).equals(rows.get(1))) {
+								mismatches.incrementAndGet();
+							}
+						}
+						if(n != 2) {
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, mismatches.get());
+	}
+
 }
@@ -36,8 +36,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
 import org.apache.commons.io.output.NullOutputStream;
+import org.archive.io.ArchiveReader;
+import org.archive.io.ArchiveReaderFactory;
 import org.archive.io.ArchiveRecord;
 import org.archive.io.ArchiveRecordHeader;
+import org.archive.io.RecordOffsetIndex;
 import org.archive.io.ReplayInputStream;
 import org.archive.io.WriterPoolMember;
 import org.archive.io.WriterPoolSettings;
@@ -139,6 +142,12 @@ extends TmpDirTestCase implements ARCConstants {
 
     private File writeRecords(String baseName, boolean compress,
         long maxSize, int recordCount)
+    throws IOException {
+        return writeRecords(baseName, compress, maxSize, recordCount, false);
+    }
+
+    private File writeRecords(String baseName, boolean compress,
+        long maxSize, int recordCount, boolean writeOffsetIndex)
     throws IOException {
         cleanUpOldFiles(baseName);
         File [] files = {getTmpDir()};
@@ -153,6 +162,7 @@ extends TmpDirTestCase implements ARCConstants {
                         Arrays.asList(files), 
                         null));
         assertNotNull(arcWriter);
+        arcWriter.setWriteOffsetIndex(writeOffsetIndex);
         for (int i = 0; i < recordCount; i++) {
             writeRandomHTTPRecord(arcWriter, i);
         }
@@ -252,6 +262,51 @@ extends TmpDirTestCase implements ARCConstants {
         assertEquals(totalRecords - 1, count);
     }
 
+    public void testOffsetIndex() throws IOException {
+        for (boolean compress : new boolean[] {true, false}) {
+            final int recordCount = 10;
+            File arcFile = writeRecords("offsetIndex" + compress, compress,
+                DEFAULT_MAX_ARC_FILE_SIZE, recordCount, true);
+            RecordOffsetIndex index = RecordOffsetIndex.load(arcFile);
+            RecordOffsetIndex built = RecordOffsetIndex.build(arcFile);
+            assertEquals(recordCount + 1, index.size());
+            assertEquals(built.size(), index.size());
+            for (int i = 0; i < index.size(); i++) {
+                assertEquals(built.getOffset(i), index.getOffset(i));
+                assertEquals(built.getLength(i), index.getLength(i));
+            }
+
+            ArchiveReader reader = ArchiveReaderFactory.get(arcFile, index, 5);
+            String url = reader.get().getHeader().getUrl();
+            reader.close();
+            assertTrue(Arrays.equals(new int[] {5}, index.findUrl(url)));
+            assertTrue(Arrays.equals(new int[] {5}, built.findUrl(url)));
+        }
+    }
+
+    public void testOffsetIndexAfterFailedRecord() throws IOException {
+        String baseName = "offsetIndexFailed";
+        cleanUpOldFiles(baseName);
+        File [] files = {getTmpDir()};
+        ARCWriter arcWriter = new ARCWriter(SERIAL_NO,
+            new WriterPoolSettingsData(baseName, "${prefix}-"+SUFFIX,
+                DEFAULT_MAX_ARC_FILE_SIZE, false, Arrays.asList(files), null));
+        arcWriter.setWriteOffsetIndex(true);
+        writeRandomHTTPRecord(arcWriter, 0);
+        try {
+            // the stream ends before the declared length
+            arcWriter.write("http://www.one.net/short", "text/html",
+                "0.1.2.3", Long.parseLong(ArchiveUtils.get14DigitDate()), 100,
+                new ByteArrayInputStream(new byte[10]));
+            fail("Expected short record to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        writeRandomHTTPRecord(arcWriter, 2);
+        arcWriter.close();
+        assertFalse(RecordOffsetIndex.getSidecarFile(arcWriter.getFile()).exists());
+    }
+
     public void testWriteRecordCompressed() throws IOException {
         final int recordCount = 2;
         File arcFile = writeRecords("writeRecordCompressed", true,
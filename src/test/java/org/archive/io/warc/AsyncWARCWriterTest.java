@@ -0,0 +1,295 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.io.ArchiveRecord;
+import org.archive.uid.RecordIDGenerator;
+import org.archive.uid.UUIDGenerator;
+import org.archive.util.ArchiveUtils;
+import org.archive.util.TmpDirTestCase;
+
+public class AsyncWARCWriterTest extends TmpDirTestCase
+implements WARCConstants {
+    private static final String PREFIX = "AsyncWARCWriterTest";
+    RecordIDGenerator generator = new UUIDGenerator();
+
+    protected WARCRecordInfo record(String url, WARCRecordType type,
+            String content, long contentLength) {
+        WARCRecordInfo recordInfo = new WARCRecordInfo();
+        recordInfo.setType(type);
+        recordInfo.setUrl(url);
+        recordInfo.setCreate14DigitDate(ArchiveUtils.get14DigitDate());
+        recordInfo.setMimetype("text/plain");
+        recordInfo.setRecordId(generator.getRecordID());
+        recordInfo.setEnforceLength(true);
+        byte[] bytes = content.getBytes();
+        recordInfo.setContentStream(new ByteArrayInputStream(bytes));
+        recordInfo.setContentLength(contentLength);
+        return recordInfo;
+    }
+
+    protected AsyncWARCWriter writer(String name, long maxSize,
+            boolean compress) throws IOException {
+        cleanUpOldFiles(PREFIX + name);
+        return new AsyncWARCWriter(new AtomicInteger(),
+            new WARCWriterPoolSettingsData(PREFIX + name, "${prefix}-${serialno}",
+                maxSize, compress, Arrays.asList(getTmpDir()), null,
+                generator), 3, 8);
+    }
+
+    public void testSubmit() throws Exception {
+        for (final boolean compress : new boolean[] {true, false}) {
+            final AsyncWARCWriter writer = writer("submit" + compress, 20000,
+                compress);
+            final List<CompletableFuture<List<WARCRecordInfo>>> futures =
+                Collections.synchronizedList(
+                    new ArrayList<CompletableFuture<List<WARCRecordInfo>>>());
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                threads.add(new Thread() {
+                    public void run() {
+                        for (int i = 0; i < 25; i++) {
+                            String url = "http://example.com/" + thread + "/" + i;
+                            String content = "content of " + url;
+                            try {
+                                futures.add(writer.submit(
+                                    record(url, WARCRecordType.resource, content,
+                                        content.length()),
+                                    record(url, WARCRecordType.metadata,
+                                        "about " + content,
+                                        content.length() + 6)));
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
+                });
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            writer.close();
+            assertEquals(100, futures.size());
+
+            int files = 0;
+            for (CompletableFuture<List<WARCRecordInfo>> future : futures) {
+                assertTrue(future.isDone());
+                List<WARCRecordInfo> records = future.get();
+                WARCRecordInfo resource = records.get(0);
+                WARCRecordInfo metadata = records.get(1);
+                // written together
+                assertEquals(resource.getWARCFilename(), metadata.getWARCFilename());
+                assertTrue(metadata.getWARCFileOffset() > resource.getWARCFileOffset());
+
+                File file = new File(getTmpDir(), resource.getWARCFilename());
+                WARCReader reader = WARCReaderFactory.get(file,
+                    resource.getWARCFileOffset());
+                ArchiveRecord record = reader.get();
+                assertEquals(resource.getUrl(), record.getHeader().getUrl());
+                assertEquals(resource.getRecordId().toString(),
+                    record.getHeader().getHeaderValue(HEADER_KEY_ID).toString()
+                        .replaceAll("[<>]", ""));
+                reader.close();
+            }
+            for (File file : getTmpDir().listFiles()) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX + "submit" + compress + "-")
+                        && name.endsWith(compress ? ".warc.gz" : ".warc")) {
+                    WARCReader reader = WARCReaderFactory.get(file);
+                    // warcinfo then whole groups
+                    assertEquals(1, reader.validate().size() % 2);
+                    reader.close();
+                    files++;
+                }
+            }
+            assertTrue("Expected rollover, got " + files, files > 1);
+        }
+    }
+
+    public void testBadRecord() throws Exception {
+        AsyncWARCWriter writer = writer("bad", -1, true);
+        CompletableFuture<List<WARCRecordInfo>> good1 = writer.submit(
+            record("http://example.com/1", WARCRecordType.resource, "one", 3));
+        // shorter than its declared length
+        CompletableFuture<List<WARCRecordInfo>> bad = writer.submit(
+            record("http://example.com/2", WARCRecordType.resource, "two", 30));
+        CompletableFuture<List<WARCRecordInfo>> good2 = writer.submit(
+            record("http://example.com/3", WARCRecordType.resource, "three", 5));
+        writer.close();
+
+        try {
+            bad.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        WARCRecordInfo one = good1.get().get(0);
+        WARCRecordInfo three = good2.get().get(0);
+        assertEquals(one.getWARCFilename(), three.getWARCFilename());
+        WARCReader reader = WARCReaderFactory.get(
+            new File(getTmpDir(), one.getWARCFilename()));
+        assertEquals(3, reader.validate().size());
+        reader.close();
+
+        try {
+            writer.submit(record("http://example.com/4",
+                WARCRecordType.resource, "four", 4));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+    }
+
+    public void testLargeSubmissionWrittenDirect() throws Exception {
+        AsyncWARCWriter writer = writer("direct", -1, true);
+        writer.setMaxEncodedBytes(10);
+        List<CompletableFuture<List<WARCRecordInfo>>> futures =
+            new ArrayList<CompletableFuture<List<WARCRecordInfo>>>();
+        futures.add(writer.submit(
+            record("http://example.com/1", WARCRecordType.resource, "one", 3)));
+        // over maxEncodedBytes
+        futures.add(writer.submit(
+            record("http://example.com/2", WARCRecordType.resource,
+                "two two two", 11),
+            record("http://example.com/2", WARCRecordType.metadata,
+                "about two", 9)));
+        futures.add(writer.submit(
+            record("http://example.com/3", WARCRecordType.resource, "three", 5)));
+        writer.close();
+
+        long offset = -1;
+        String filename = null;
+        for (CompletableFuture<List<WARCRecordInfo>> future : futures) {
+            for (WARCRecordInfo record : future.get()) {
+                assertTrue(record.getWARCFileOffset() > offset);
+                offset = record.getWARCFileOffset();
+                filename = record.getWARCFilename();
+            }
+        }
+        WARCReader reader = WARCReaderFactory.get(new File(getTmpDir(),
+            filename));
+        List<String> urls = new ArrayList<String>();
+        for (ArchiveRecord record : reader) {
+            urls.add(record.getHeader().getUrl());
+        }
+        reader.close();
+        assertEquals(Arrays.asList(null, "http://example.com/1",
+            "http://example.com/2", "http://example.com/2",
+            "http://example.com/3"), urls);
+    }
+
+    public void testSequencerInterrupted() throws Exception {
+        final AsyncWARCWriter writer = writer("interrupted", -1, false);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<List<WARCRecordInfo>>> futures =
+            new ArrayList<CompletableFuture<List<WARCRecordInfo>>>();
+        for (int i = 0; i < 4; i++) {
+            WARCRecordInfo record = record("http://example.com/" + i,
+                WARCRecordType.resource, "held", 4);
+            final InputStream content = record.getContentStream();
+            // keeps the sequencer waiting on the first group
+            record.setContentStream(new FilterInputStream(content) {
+                public int read(byte[] b, int off, int len) throws IOException {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    return super.read(b, off, len);
+                }
+            });
+            futures.add(writer.submit(record));
+        }
+        writer.sequencer.interrupt();
+        release.countDown();
+        writer.sequencer.join(10000);
+        assertFalse(writer.sequencer.isAlive());
+
+        for (CompletableFuture<List<WARCRecordInfo>> future : futures) {
+            assertTrue(future.isDone());
+        }
+        try {
+            writer.submit(record("http://example.com/5",
+                WARCRecordType.resource, "five", 4));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+        writer.close();
+    }
+
+    public void testSequencerError() throws Exception {
+        AsyncWARCWriter writer = writer("error", -1, false);
+        // written on the sequencer, where the Error is thrown
+        writer.setMaxEncodedBytes(1);
+        List<CompletableFuture<List<WARCRecordInfo>>> futures =
+            new ArrayList<CompletableFuture<List<WARCRecordInfo>>>();
+        futures.add(writer.submit(
+            record("http://example.com/1", WARCRecordType.resource, "one", 3)));
+        WARCRecordInfo broken = record("http://example.com/2",
+            WARCRecordType.resource, "two", 3);
+        broken.setContentStream(new InputStream() {
+            public int read() {
+                throw new OutOfMemoryError("test");
+            }
+        });
+        CompletableFuture<List<WARCRecordInfo>> failed = writer.submit(broken);
+        futures.add(failed);
+        futures.add(writer.submit(
+            record("http://example.com/3", WARCRecordType.resource, "three", 5)));
+        writer.sequencer.join(10000);
+        assertFalse(writer.sequencer.isAlive());
+
+        for (CompletableFuture<List<WARCRecordInfo>> future : futures) {
+            assertTrue(future.isDone());
+        }
+        try {
+            failed.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getCause() instanceof OutOfMemoryError);
+        }
+        assertTrue(futures.get(2).isCompletedExceptionally());
+        try {
+            writer.submit(record("http://example.com/4",
+                WARCRecordType.resource, "four", 4));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+public class WARCHeaderParserTest extends TestCase {
+    protected static InputStream stream(String s) throws IOException {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    public void testParse() throws IOException {
+        String header = "WARC/1.0\r\n"
+            + "WARC-Type: response\r\n"
+            + "WARC-Target-URI: http://example.com/café\r\n"
+            + "Content-Length:   1234  \n"
+            + "X-Folded: one\r\n"
+            + "  two\r\n"
+            + "\tthree\r\n"
+            + "no colon here\r\n"
+            + "WARC-Type: resource\r\n"
+            + "\r\n";
+        InputStream in = stream(header + "content");
+        WARCHeaderParser parser = new WARCHeaderParser();
+        parser.parse(in);
+        assertEquals(header.getBytes("UTF-8").length, parser.getHeaderLength());
+        assertEquals('c', in.read());
+
+        assertEquals("WARC/1.0", parser.getVersion());
+        assertEquals(6, parser.size());
+        assertEquals("WARC-Type", parser.getName(0));
+        assertEquals("response", parser.getValue(0));
+        // last of repeated fields wins, as it did in a map
+        assertEquals("resource", parser.get("WARC-Type"));
+        assertEquals("http://example.com/café",
+            parser.get("WARC-Target-URI"));
+        assertEquals(1234, parser.getLong("Content-Length", -1));
+        assertEquals(-1, parser.getLong("WARC-Block-Digest", -1));
+        assertEquals("one two three", parser.get("X-Folded"));
+        assertEquals("no colon here",
+            parser.get(WARCHeaderParser.BAD_HEADER_LINE_NAME));
+        assertNull(parser.get("warc-type"));
+
+        WARCHeaderParser copy = parser.copy();
+        parser.parse(stream("WARC/0.18\nWARC-Type: request\n\n"));
+        assertEquals("request", parser.get("WARC-Type"));
+        assertEquals(1, parser.size());
+        assertEquals("resource", copy.get("WARC-Type"));
+        assertEquals("one two three", copy.get("X-Folded"));
+        assertEquals(header.getBytes("UTF-8").length, copy.getHeaderLength());
+    }
+
+    public void testGetLong() throws IOException {
+        WARCHeaderParser parser = new WARCHeaderParser();
+        parser.parse(stream("WARC/1.0\r\nA: 12345678901234567890\r\n"
+            + "B: 42x\r\nC:\r\n\r\n"));
+        try {
+            parser.getLong("A", -1);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+        }
+        try {
+            parser.getLong("B", -1);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+        }
+        try {
+            parser.getLong("C", -1);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    public void testBadHeaders() throws IOException {
+        WARCHeaderParser parser = new WARCHeaderParser(64);
+        try {
+            parser.parse(stream(""));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+        try {
+            parser.parse(stream("HTTP/1.1 200 OK\r\n\r\n"));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+        try {
+            StringBuilder sb = new StringBuilder("WARC/1.0\r\n");
+            for (int i = 0; i < 10; i++) {
+                sb.append("Field-" + i + ": value\r\n");
+            }
+            parser.parse(stream(sb.append("\r\n").toString()));
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+        // fields to the end of the stream
+        parser.parse(stream("WARC/1.0\r\nWARC-Type: metadata"));
+        assertEquals("metadata", parser.get("WARC-Type"));
+    }
+}
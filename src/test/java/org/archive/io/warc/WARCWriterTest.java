@@ -24,17 +24,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
 import org.archive.io.ArchiveRecord;
 import org.archive.io.ArchiveRecordHeader;
+import org.archive.io.RecordOffsetIndex;
 import org.archive.io.UTF8Bytes;
 import org.archive.io.WriterPoolMember;
+import org.archive.streamcontext.RandomAccessFileStream;
 import org.archive.uid.RecordIDGenerator;
 import org.archive.uid.UUIDGenerator;
 import org.archive.util.ArchiveUtils;
@@ -98,6 +109,37 @@ extends TmpDirTestCase implements WARCConstants {
             "multipart/mixed; boundary=\"simple boundary\"");
     }
     
+    @SuppressWarnings("unchecked")
+    public void testEncodeRecordHeader() throws IOException {
+        WARCWriter writer = new WARCWriter(SERIAL_NO,
+            new WARCWriterPoolSettingsData(
+                    "h","testH",1,false,Collections.EMPTY_LIST,Collections.EMPTY_LIST,generator));
+        WARCRecordInfo recordInfo = new WARCRecordInfo();
+        recordInfo.setType(WARCRecordType.metadata);
+        recordInfo.setUrl(SOME_URL);
+        recordInfo.setCreate14DigitDate(ArchiveUtils.get14DigitDate());
+        recordInfo.setMimetype(ANVLRecord.MIMETYPE);
+        recordInfo.setRecordId(writer.generateRecordId(null));
+        recordInfo.setContentLength(10L);
+        ANVLRecord headers = new ANVLRecord();
+        headers.addLabelValue("X-Name", "caf\u00e9 \u65e5\u672c");
+        recordInfo.setExtraHeaders(headers);
+        for (int length : new int[] {0, 3000}) {
+            if (length > 0) {
+                // more than the buffer starts with
+                char[] value = new char[length];
+                Arrays.fill(value, 'x');
+                headers.addLabelValue("X-Long", new String(value) + "\u00e9");
+            }
+            ByteBuffer bytes = writer.encodeRecordHeader(recordInfo);
+            byte[] expected = (writer.createRecordHeader(recordInfo) + CRLF)
+                .getBytes(WARC_HEADER_ENCODING);
+            assertTrue(Arrays.equals(expected, Arrays.copyOfRange(
+                bytes.array(), bytes.arrayOffset(), bytes.limit())));
+        }
+        writer.close();
+    }
+
     public void testWriteRecord() throws IOException {
     	File [] files = {getTmpDir()};
 
@@ -244,11 +286,18 @@ extends TmpDirTestCase implements WARCConstants {
      */
     private File writeRecords(String baseName, boolean compress,
         int maxSize, int recordCount)
+    throws IOException {
+        return writeRecords(baseName, compress, maxSize, recordCount, false);
+    }
+
+    private File writeRecords(String baseName, boolean compress,
+        int maxSize, int recordCount, boolean writeOffsetIndex)
     throws IOException {
         cleanUpOldFiles(baseName);
         File [] files = {getTmpDir()};
         WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
                 baseName + '-' + SUFFIX, "${prefix}", maxSize, compress, Arrays.asList(files), null, generator));
+        w.setWriteOffsetIndex(writeOffsetIndex);
             
         assertNotNull(w);
         for (int i = 0; i < recordCount; i++) {
@@ -349,6 +398,283 @@ extends TmpDirTestCase implements WARCConstants {
         assertEquals(totalRecords - 1, count);
     }
     
+    public void testOffsetIndex() throws IOException {
+        for (boolean compress : new boolean[] {true, false}) {
+            final int recordCount = 20;
+            File f = writeRecords("offsetIndex" + compress, compress,
+                DEFAULT_MAX_WARC_FILE_SIZE, recordCount, true);
+            File sidecar = RecordOffsetIndex.getSidecarFile(f);
+            assertTrue("Doesn't exist: " + sidecar, sidecar.exists());
+            
+            RecordOffsetIndex index = RecordOffsetIndex.load(f);
+            RecordOffsetIndex built = RecordOffsetIndex.build(f);
+            assertEquals(recordCount + 1, index.size());
+            assertEquals(built.size(), index.size());
+            long end = 0;
+            for (int i = 0; i < index.size(); i++) {
+                assertEquals(end, index.getOffset(i));
+                assertEquals(built.getOffset(i), index.getOffset(i));
+                assertEquals(built.getLength(i), index.getLength(i));
+                end += index.getLength(i);
+            }
+            assertEquals(f.length(), end);
+            
+            // Straight to record 17, then by its record id and url
+            WARCReader reader = WARCReaderFactory.get(f, index, 17);
+            ArchiveRecord record = reader.get();
+            String url = record.getHeader().getUrl();
+            String recordId = (String)record.getHeader().getHeaderValue(HEADER_KEY_ID);
+            assertEquals("http://www.one.net/id=16", url);
+            reader.close();
+            
+            assertTrue(Arrays.equals(new int[] {17}, index.findUrl(url)));
+            assertTrue(Arrays.equals(new int[] {17}, built.findRecordId(recordId)));
+            reader = WARCReaderFactory.getByRecordId(f, index, recordId);
+            assertEquals(url, reader.getCurrentRecord().getHeader().getUrl());
+            reader.close();
+            assertNull(WARCReaderFactory.getByRecordId(f, index, "<urn:uuid:none>"));
+        }
+    }
+    
+    public void testWriteRecordChannel() throws IOException {
+        for (boolean compress : new boolean[] {false, true}) {
+            String baseName = "writeRecordChannel" + compress;
+            cleanUpOldFiles(baseName);
+            File [] files = {getTmpDir()};
+            WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                    baseName + '-' + SUFFIX, "${prefix}", DEFAULT_MAX_WARC_FILE_SIZE,
+                    compress, Arrays.asList(files), null, generator));
+
+            // contents follow a prefix in a backing file
+            File backing = new File(getTmpDir(), baseName + ".recorder");
+            RandomAccessFile raf = new RandomAccessFile(backing, "rw");
+            raf.setLength(0);
+            raf.write("prefix".getBytes());
+            final int recordCount = 6;
+            String[] contents = new String[recordCount];
+            for (int i = 0; i < recordCount; i++) {
+                contents[i] = getContent(Integer.toString(i));
+                raf.write(contents[i].getBytes());
+            }
+            FileChannel channel = raf.getChannel();
+            channel.position("prefix".length());
+            for (int i = 0; i < recordCount; i++) {
+                WARCRecordInfo recordInfo = new WARCRecordInfo();
+                recordInfo.setType(WARCRecordType.resource);
+                recordInfo.setCreate14DigitDate(ArchiveUtils.get14DigitDate());
+                recordInfo.setMimetype("text/html; charset=UTF-8");
+                recordInfo.setRecordId(w.generateRecordId(null));
+                recordInfo.setEnforceLength(true);
+                recordInfo.setUrl("http://www.one.net/id=" + i);
+                byte[] content = contents[i].getBytes();
+                recordInfo.setContentLength((long) content.length);
+                if (i % 2 == 0) {
+                    w.writeRecord(recordInfo, channel);
+                } else {
+                    // keep the backing file in step
+                    channel.position(channel.position() + content.length);
+                    w.writeRecord(recordInfo, Channels.newChannel(
+                        new ByteArrayInputStream(content)));
+                }
+            }
+            raf.close();
+            backing.delete();
+            w.close();
+            File f = w.getFile();
+            validate(f, recordCount + 1);
+
+            WARCReader reader = WARCReaderFactory.get(f);
+            Iterator<ArchiveRecord> records = reader.iterator();
+            records.next();
+            for (int i = 0; i < recordCount; i++) {
+                assertTrue(records.hasNext());
+                ArchiveRecord record = records.next();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                record.dump(baos);
+                assertEquals(contents[i], baos.toString());
+            }
+            assertFalse(records.hasNext());
+            reader.close();
+        }
+    }
+
+    public void testParallelDeflate() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (boolean memberLengths : new boolean[] {false, true}) {
+                String baseName = "parallelDeflate" + memberLengths;
+                cleanUpOldFiles(baseName);
+                File [] files = {getTmpDir()};
+                WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                        baseName + '-' + SUFFIX, "${prefix}", DEFAULT_MAX_WARC_FILE_SIZE,
+                        true, Arrays.asList(files), null, generator));
+                w.setDeflateExecutor(executor);
+                w.setWriteMemberLengths(memberLengths);
+                // small records, deflated inline, around a large one
+                writeRandomHTTPRecord(w, 0);
+                WARCRecordInfo recordInfo = new WARCRecordInfo();
+                recordInfo.setType(WARCRecordType.resource);
+                recordInfo.setCreate14DigitDate(ArchiveUtils.get14DigitDate());
+                recordInfo.setMimetype("text/plain");
+                recordInfo.setRecordId(w.generateRecordId(null));
+                recordInfo.setUrl("http://www.one.net/large");
+                StringBuilder large = new StringBuilder();
+                for (int i = 0; large.length() < 1000000; i++) {
+                    large.append("line ").append(i).append('\n');
+                }
+                byte[] content = large.toString().getBytes();
+                recordInfo.setContentLength((long) content.length);
+                recordInfo.setContentStream(new ByteArrayInputStream(content));
+                w.writeRecord(recordInfo);
+                writeRandomHTTPRecord(w, 2);
+                w.close();
+                File f = w.getFile();
+                validate(f, 4);
+
+                WARCReader reader = WARCReaderFactory.get(f);
+                Iterator<ArchiveRecord> records = reader.iterator();
+                records.next();
+                assertTrue(records.hasNext());
+                records.next();
+                assertTrue(records.hasNext());
+                ArchiveRecord record = records.next();
+                assertEquals("http://www.one.net/large", record.getHeader().getUrl());
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                record.dump(baos);
+                assertTrue(Arrays.equals(content, baos.toByteArray()));
+                reader.close();
+
+                if (memberLengths) {
+                    RecordOffsetIndex built = RecordOffsetIndex.build(f);
+                    GZIPMemberSeries series = new GZIPMemberSeries(
+                        new RandomAccessFileStream(f), f.getName(), 0, true);
+                    for (int i = 0; i < 4; i++) {
+                        GZIPSeriesMember member = series.getNextMember();
+                        assertEquals(built.getLength(i),
+                            member.getHeader().getMemberLength());
+                        member.skipMember();
+                    }
+                    assertNull(series.getNextMember());
+                    series.close();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testMemberLengths() throws IOException {
+        final int recordCount = 12;
+        cleanUpOldFiles("memberLengths");
+        File [] files = {getTmpDir()};
+        WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                "memberLengths-" + SUFFIX, "${prefix}", DEFAULT_MAX_WARC_FILE_SIZE,
+                true, Arrays.asList(files), null, generator));
+        w.setWriteMemberLengths(true);
+        for (int i = 0; i < recordCount; i++) {
+            writeRandomHTTPRecord(w, i);
+        }
+        w.close();
+        File f = w.getFile();
+        validate(f, recordCount + 1);
+
+        RecordOffsetIndex built = RecordOffsetIndex.build(f);
+        GZIPMemberSeries series = new GZIPMemberSeries(
+            new RandomAccessFileStream(f), f.getName(), 0, true);
+        series.setTrustMemberLengths(true);
+        int i = 0;
+        GZIPSeriesMember member;
+        while ((member = series.getNextMember()) != null) {
+            assertEquals(built.getOffset(i), member.getRecordStartOffset());
+            assertEquals(built.getLength(i), member.getHeader().getMemberLength());
+            member.skipMember();
+            i++;
+        }
+        series.close();
+        assertEquals(recordCount + 1, i);
+        assertEquals(recordCount + 1, series.getNumMembersSkipped());
+    }
+
+    protected File writeCompressible(String baseName, int level,
+            boolean adaptive, String mimetype, byte[] content)
+    throws IOException {
+        cleanUpOldFiles(baseName);
+        File [] files = {getTmpDir()};
+        WARCWriterPoolSettingsData settings = new WARCWriterPoolSettingsData(
+                baseName + '-' + SUFFIX, "${prefix}", DEFAULT_MAX_WARC_FILE_SIZE,
+                true, Arrays.asList(files), null, generator);
+        settings.setCompressionLevel(level);
+        settings.setAdaptiveCompression(adaptive);
+        WARCWriter w = new WARCWriter(SERIAL_NO, settings);
+        WARCRecordInfo recordInfo = new WARCRecordInfo();
+        recordInfo.setType(WARCRecordType.resource);
+        recordInfo.setCreate14DigitDate(ArchiveUtils.get14DigitDate());
+        recordInfo.setMimetype(mimetype);
+        recordInfo.setRecordId(w.generateRecordId(null));
+        recordInfo.setUrl("http://www.one.net/compressible");
+        recordInfo.setContentLength((long) content.length);
+        recordInfo.setContentStream(new ByteArrayInputStream(content));
+        w.writeRecord(recordInfo);
+        w.close();
+        File f = w.getFile();
+        validate(f, 2);
+        return f;
+    }
+
+    public void testCompressionLevel() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 200000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] content = text.toString().getBytes();
+        long fastest = writeCompressible("level1", Deflater.BEST_SPEED, false,
+            "text/plain", content).length();
+        long best = writeCompressible("level9", Deflater.BEST_COMPRESSION,
+            false, "text/plain", content).length();
+        assertTrue(best < fastest);
+        assertTrue(fastest < content.length / 2);
+
+        // labelled as already compressed: stored, not deflated
+        long stored = writeCompressible("adaptive", Deflater.BEST_COMPRESSION,
+            true, "image/jpeg", content).length();
+        assertTrue(stored > content.length);
+        long deflated = writeCompressible("adaptiveText",
+            Deflater.BEST_COMPRESSION, true, "text/plain", content).length();
+        assertTrue(deflated < content.length / 2);
+
+        // an HTTP response: by the response's Content-Type
+        byte[] head = ("HTTP/1.1 200 OK\r\nServer: test\r\n"
+            + "content-type:  image/jpeg\r\n\r\n").getBytes();
+        byte[] response = new byte[head.length + content.length];
+        System.arraycopy(head, 0, response, 0, head.length);
+        System.arraycopy(content, 0, response, head.length, content.length);
+        stored = writeCompressible("adaptiveHttp", Deflater.BEST_COMPRESSION,
+            true, HTTP_RESPONSE_MIMETYPE, response).length();
+        assertTrue(stored > response.length);
+        head = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\n"
+            .getBytes();
+        byte[] peek = new byte[WARCWriter.HTTP_HEAD_PEEK];
+        assertEquals("text/plain", WARCWriter.peekHttpContentType(
+            new ByteArrayInputStream(head), peek));
+        assertNull(WARCWriter.peekHttpContentType(new ByteArrayInputStream(
+            "HTTP/1.1 200 OK\r\n\r\nContent-Type: text/plain\r\n".getBytes()),
+            peek));
+        // not looked for without adaptive compression
+        stored = writeCompressible("nonAdaptiveHttp", Deflater.BEST_COMPRESSION,
+            false, HTTP_RESPONSE_MIMETYPE, response).length();
+        assertTrue(stored < response.length / 2);
+    }
+
+    public void testIsPrecompressed() {
+        assertTrue(WriterPoolMember.isPrecompressed("image/jpeg"));
+        assertTrue(WriterPoolMember.isPrecompressed("Video/MP4; codecs=avc1"));
+        assertTrue(WriterPoolMember.isPrecompressed("application/zip"));
+        assertFalse(WriterPoolMember.isPrecompressed("audio/wav"));
+        assertFalse(WriterPoolMember.isPrecompressed("image/svg+xml"));
+        assertFalse(WriterPoolMember.isPrecompressed("text/html"));
+        assertFalse(WriterPoolMember.isPrecompressed(null));
+    }
+
     public void testWriteRecordCompressed() throws IOException {
         final int recordCount = 2;
         File arcFile = writeRecords("writeRecordCompressed", true,
@@ -0,0 +1,137 @@
+package org.archive.resource;
+
+import java.util.List;
+
+import org.archive.extract.ExtractingResourceFactoryMapper;
+import org.archive.extract.ExtractingResourceProducer;
+import org.archive.extract.ProducerUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class CompactMetaDataTest extends TestCase {
+
+	private CompactMetaData build() {
+		CompactMetaData m = new CompactMetaData();
+		CompactMetaData envelope = m.createChild("Envelope");
+		envelope.putString("Format", "WARC");
+		CompactMetaData headers = envelope.createChild("WARC-Header-Metadata");
+		headers.putString("WARC-Type", "response");
+		headers.putLong("Content-Length", 1234);
+		headers.putString("X-Repeated", "one");
+		headers.putString("X-Repeated", "two \"quoted\"");
+		envelope.putBoolean("Actual-Content-Length-Known", true);
+		envelope.putDouble("Ratio", 0.5);
+		envelope.appendObj("Links", "path", "A@/href", "url", "http://example.com/");
+		envelope.appendObj("Links", "path", "IMG@/src", "url", "a.png");
+		return m;
+	}
+
+	public void testPutAndGet() {
+		CompactMetaData m = build();
+		CompactMetaData envelope = m.getChild("Envelope");
+		assertSame(m, envelope.getTopMetaData());
+		CompactMetaData headers = envelope.getChild("WARC-Header-Metadata");
+		assertEquals("response", headers.getString("WARC-Type"));
+		assertEquals(1234, headers.getLong("Content-Length", -1));
+		assertEquals("1234", headers.getString("Content-Length"));
+		assertEquals(-1, headers.getLong("WARC-Type", -1));
+		assertNull(headers.getString("missing"));
+		assertNull(headers.getList("WARC-Type"));
+		List<Object> repeated = headers.getList("X-Repeated");
+		assertEquals(2, repeated.size());
+		assertEquals("two \"quoted\"", repeated.get(1));
+		assertEquals(Boolean.TRUE, envelope.get("Actual-Content-Length-Known"));
+		assertEquals(2, envelope.getList("Links").size());
+		assertNull(envelope.getChild("Format"));
+
+		// more fields than the initial capacity
+		for (int i = 0; i < 20; i++) {
+			headers.putLong("Field-" + i, i);
+		}
+		assertEquals(19, headers.getLong("Field-19", -1));
+		assertEquals("response", headers.getString("WARC-Type"));
+	}
+
+	public void testJSON() {
+		CompactMetaData m = build();
+		JSONObject json = new JSONObject(m.toString());
+		assertTrue(json.similar(m.toMetaData()));
+		assertEquals("two \"quoted\"", json.getJSONObject("Envelope")
+				.getJSONObject("WARC-Header-Metadata")
+				.getJSONArray("X-Repeated").getString(1));
+		assertEquals("a.png", json.getJSONObject("Envelope")
+				.getJSONArray("Links").getJSONObject(1).getString("url"));
+
+		CompactMetaData copy = CompactMetaData.fromJSON(json);
+		assertTrue(json.similar(new JSONObject(copy.toString())));
+		assertEquals(1234, MetaDataPath.compile(
+				"Envelope.WARC-Header-Metadata.Content-Length").extractLong(copy, -1));
+	}
+
+	public void testParse() {
+		String text = "{\"s\":\"a\\\"b\\u00e9\\n\",\"n\":-12,\"z\":0,"
+				+ "\"big\":12345678901234567890,\"d\":1.50,\"e\":-2e3,"
+				+ "\"t\":true,\"f\":false,\"x\":null,"
+				+ "\"o\":{\"p\":{},\"q\":[]},"
+				+ "\"a\":[1,\"two\",{\"k\":[null,[3.5]]},false] }";
+		CompactMetaData md = CompactMetaData.parse(text);
+		JSONObject json = new JSONObject(text);
+		assertTrue(json.similar(new JSONObject(md.toString())));
+		for (String key : JSONObject.getNames(json)) {
+			assertEquals(key, json.get(key).toString(), md.getString(key));
+		}
+		assertEquals(CompactMetaData.TYPE_LONG, md.getType(md.indexOf("n")));
+		assertEquals(-12, md.getLong("n", 0));
+		assertEquals(CompactMetaData.TYPE_NUMBER, md.getType(md.indexOf("big")));
+		assertEquals(CompactMetaData.TYPE_NULL, md.getType(md.indexOf("x")));
+		assertSame(md, md.getChild("o").getChild("p").getTopMetaData());
+		List<Object> a = md.getList("a");
+		assertEquals(4, a.size());
+		assertEquals("two", a.get(1));
+		assertEquals(md, ((CompactMetaData) a.get(2)).getTopMetaData());
+
+		// keys repeated between records are shared
+		CompactMetaDataParser parser = new CompactMetaDataParser();
+		CompactMetaData first = parser.parse("{\"Envelope\":{\"Format\":\"WARC\"}}");
+		CompactMetaData second = parser.parse("{\"Envelope\" : {\"Format\":\"ARC\"}}");
+		assertSame(first.getKey(0), second.getKey(0));
+		assertEquals("ARC", second.getChild("Envelope").getString("Format"));
+	}
+
+	public void testParseErrors() {
+		String[] bad = {
+				"", "[]", "{", "{\"a\"}", "{\"a\":}", "{\"a\":1,}", "{\"a\":1} x",
+				"{\"a\":\"b}", "{\"a\":01}", "{\"a\":tru}", "{\"a\":\"\\q\"}",
+				"{\"a\":1,\"a\":2}", "{\"a\":[1,]}", "{\"a\":\"b\nc\"}"
+		};
+		for (String text : bad) {
+			try {
+				CompactMetaData.parse(text);
+				fail(text);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testParseMatchesJSONObject() throws Exception {
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz"),
+				new ExtractingResourceFactoryMapper());
+		CompactMetaDataParser parser = new CompactMetaDataParser();
+		Resource r;
+		int records = 0;
+		while ((r = producer.getNext()) != null) {
+			MetaData top = r.getMetaData().getTopMetaData();
+			CompactMetaData compact = parser.parse(top.toString());
+			assertTrue(top.similar(new JSONObject(compact.toString())));
+			assertTrue(top.similar(compact.toMetaData()));
+			assertTrue(top.similar(new JSONObject(CompactMetaData.fromJSON(top).toString())));
+			records++;
+		}
+		producer.close();
+		assertTrue(records > 0);
+	}
+}
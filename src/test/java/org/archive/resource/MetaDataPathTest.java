@@ -0,0 +1,96 @@
+package org.archive.resource;
+
+import org.archive.extract.ExtractingResourceFactoryMapper;
+import org.archive.extract.ExtractingResourceProducer;
+import org.archive.extract.ProducerUtils;
+import org.archive.format.json.JSONUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class MetaDataPathTest extends TestCase {
+
+	public void testExtract() {
+		JSONObject json = new JSONObject("{\"Envelope\":{\"Format\":\"WARC\","
+				+ "\"WARC-Header-Metadata\":{\"WARC-Type\":\"response\","
+				+ "\"Content-Length\":1234},\"Links\":[{\"url\":\"a.png\"}]}}");
+		MetaDataPath type = MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Type");
+		assertEquals("Envelope.WARC-Header-Metadata.WARC-Type", type.getPath());
+		assertEquals("response", type.extractSingle(json));
+		assertEquals("1234", MetaDataPath.compile(
+				"Envelope.WARC-Header-Metadata.Content-Length").extractSingle(json));
+		// through a value that is not an object
+		assertNull(MetaDataPath.compile("Envelope.Format.WARC-Type").extractSingle(json));
+		assertNull(MetaDataPath.compile("Envelope.Missing").extractObject(json));
+		assertNull(MetaDataPath.compile("Envelope.Format").extractArray(json));
+		assertNotNull(MetaDataPath.compile("Envelope.WARC-Header-Metadata").extractObject(json));
+		assertEquals(1, MetaDataPath.compile("Envelope.Links").extractArray(json).length());
+		assertNull(type.extractSingle((JSONObject) null));
+	}
+
+	public void testExtractCompact() {
+		CompactMetaData m = new CompactMetaData();
+		CompactMetaData envelope = m.createChild("Envelope");
+		envelope.putString("Format", "WARC");
+		CompactMetaData headers = envelope.createChild("WARC-Header-Metadata");
+		headers.putString("WARC-Type", "response");
+		headers.putLong("Content-Length", 1234);
+		MetaDataPath type = MetaDataPath.compile("Envelope.WARC-Header-Metadata.WARC-Type");
+		assertEquals("response", type.extractSingle(m));
+		assertEquals(1234, MetaDataPath.compile(
+				"Envelope.WARC-Header-Metadata.Content-Length").extractLong(m, -1));
+		CompactMetaData other = new CompactMetaData();
+		envelope = other.createChild("Envelope");
+		envelope.putString("Extra", "first");
+		envelope.createChild("WARC-Header-Metadata").putString("WARC-Type", "request");
+		// a different shape than the hints were taken from
+		assertEquals("request", type.extractSingle(other));
+		assertEquals("response", type.extractSingle(m));
+		assertNull(MetaDataPath.compile("Envelope.Format.WARC-Type").extractSingle(m));
+		assertNull(MetaDataPath.compile("Envelope.Missing").extractObject(m));
+		assertSame(headers, MetaDataPath.compile("Envelope.WARC-Header-Metadata").extractObject(m));
+		assertEquals(-1, MetaDataPath.compile("Envelope.Format").extractLong(m, -1));
+	}
+
+	public void testPathMatchesJSONUtils() throws Exception {
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz"),
+				new ExtractingResourceFactoryMapper());
+		String[] paths = {
+				"Envelope.Format",
+				"Envelope.WARC-Header-Metadata.WARC-Type",
+				"Envelope.WARC-Header-Metadata.Content-Length",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.Response-Message.Status",
+				"Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas",
+				"Container.Filename",
+				"Container.Missing.Value"
+		};
+		Resource r;
+		int records = 0;
+		while ((r = producer.getNext()) != null) {
+			MetaData top = r.getMetaData().getTopMetaData();
+			CompactMetaData compact = CompactMetaData.parse(top.toString());
+			for (String p : paths) {
+				MetaDataPath path = MetaDataPath.compile(p);
+				String expected = JSONUtils.extractSingle(top, p);
+				assertEquals(expected, path.extractSingle(top));
+				String got = path.extractSingle(compact);
+				// objects in the compact tree keep their key order
+				if (expected != null && expected.startsWith("[")) {
+					assertTrue(new JSONArray(expected).similar(new JSONArray(got)));
+				} else if (expected != null && expected.startsWith("{")) {
+					assertTrue(new JSONObject(expected).similar(new JSONObject(got)));
+				} else {
+					assertEquals(expected, got);
+				}
+				assertEquals(JSONUtils.extractObject(top, p), path.extractObject(top));
+				assertEquals(JSONUtils.extractArray(top, p), path.extractArray(top));
+			}
+			records++;
+		}
+		producer.close();
+		assertTrue(records > 0);
+	}
+}
@@ -0,0 +1,81 @@
+package org.archive.resource.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class HTMLHeadResourceFactoryTest extends TestCase {
+
+	private JSONArray scan(String html) throws JSONException {
+		HTMLMetaData hmd = new HTMLMetaData(new MetaData());
+		byte[] b = html.getBytes(Charset.forName("UTF-8"));
+		HTMLHeadResourceFactory.scanHead(b, b.length, Charset.forName("UTF-8"), hmd);
+		JSONObject head = hmd.optJSONObject("Head");
+		return head == null ? null : head.optJSONArray("Metas");
+	}
+
+	public void testScanHead() throws JSONException {
+		JSONArray metas = scan("<html><HEAD>\n"
+				+ "<!-- <meta name=\"robots\" content=\"noindex\"> -->\n"
+				+ "<script>document.write('<meta name=\"x\" content=\"y\">');</script>\n"
+				+ "<META NAME=robots Content='noarchive, nofollow'/>\n"
+				+ "<meta http-equiv=\"Refresh\" content=\"0; url=/über\" lang=de>\n"
+				+ "<meta charset=utf-8>\n"
+				+ "<metadata name=\"no\" content=\"no\">\n"
+				+ "</head><body><meta name=\"body\" content=\"ignored\"></body></html>");
+		assertEquals(2, metas.length());
+		JSONObject robots = metas.getJSONObject(0);
+		assertEquals("robots", robots.getString("name"));
+		assertEquals("noarchive, nofollow", robots.getString("content"));
+		assertEquals(2, robots.length());
+		JSONObject refresh = metas.getJSONObject(1);
+		assertEquals("Refresh", refresh.getString("http-equiv"));
+		assertEquals("0; url=/über", refresh.getString("content"));
+	}
+
+	public void testCutOff() throws JSONException {
+		assertNull(scan("<head><meta name=\"robots\" content=\"noin"));
+		assertEquals(1, scan("<head><meta name=robots content=none>"
+				+ "<meta name=\"a\"").length());
+	}
+
+	public void testReadHead() throws Exception {
+		String html = "<html><head>\n"
+				+ "<!-- no <body> yet -->\n"
+				+ "<script>document.write('</head><body>');</script>\n"
+				+ "<style>/* <body> */</style>\n"
+				+ "<meta name=\"robots\" content=\"noindex\">\n"
+				+ "</head><body><p>text</p></body></html>";
+		final byte[] b = html.getBytes(Charset.forName("UTF-8"));
+		// a few bytes a read, so constructs straddle reads
+		InputStream is = new ByteArrayInputStream(b) {
+			@Override
+			public synchronized int read(byte[] buf, int off, int len) {
+				return super.read(buf, off, Math.min(len, 7));
+			}
+		};
+		HTMLHeadResourceFactory factory = new HTMLHeadResourceFactory();
+		int length = factory.readHead(is);
+		assertTrue(length > html.indexOf("</head><body>"));
+		assertTrue(length < b.length);
+
+		assertEquals(html.indexOf("</head><body><p>"),
+				HTMLHeadResourceFactory.findHeadEnd(b, 0, b.length));
+		assertEquals(-1 - html.indexOf("<script>"),
+				HTMLHeadResourceFactory.findHeadEnd(b, 0, html.indexOf("</script>")));
+
+		Resource r = new HTMLHeadResourceFactory().getResource(
+				new ByteArrayInputStream(b), new MetaData(), null);
+		JSONArray metas = r.getMetaData().getJSONObject("Head").getJSONArray("Metas");
+		assertEquals(1, metas.length());
+		assertEquals("noindex", metas.getJSONObject(0).getString("content"));
+	}
+}
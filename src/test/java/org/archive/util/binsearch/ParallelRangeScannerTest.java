@@ -0,0 +1,66 @@
+package org.archive.util.binsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class ParallelRangeScannerTest extends TestCase {
+
+	static List<String> drain(CloseableIterator<String> iter) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (iter.hasNext()) {
+			lines.add(iter.next());
+		}
+		iter.close();
+		return lines;
+	}
+
+	public void testSortedTextFileSplits() throws IOException {
+		File file = File.createTempFile("test-scan", ".txt");
+		file.deleteOnExit();
+
+		List<String> all = new ArrayList<String>();
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		for (int i = 0; i < 5000; i++) {
+			// vary the line lengths, with multi-byte chars
+			String line = String.format("%06d é中 %s", i, "x".substring(0, i % 2));
+			all.add(line);
+			out.print(line + "\n");
+		}
+		out.close();
+
+		SortedTextFile sorted = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(file));
+		ParallelRangeScanner scanner = new ParallelRangeScanner(new ForkJoinPool(4));
+		scanner.setBufferLines(16);
+
+		int[] numSplits = {1, 2, 7, 64, 1000000};
+
+		for (int n : numSplits) {
+			assertEquals(all, drain(scanner.scanOrdered(sorted.getRangeSplits("", "", n))));
+			assertEquals(all.subList(100, 4000), drain(scanner.scanOrdered(sorted.getRangeSplits("000100", "004000", n))));
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		scanner.scan(sorted.getRangeSplits("001000", "", 5), new ParallelRangeScanner.LineConsumer() {
+			@Override
+			public void accept(int split, String line) {
+				count.incrementAndGet();
+			}
+		});
+		assertEquals(4000, count.get());
+
+		// Close before the end
+		CloseableIterator<String> iter = scanner.scanOrdered(sorted.getRangeSplits("", "", 8));
+		assertEquals(all.get(0), iter.next());
+		iter.close();
+	}
+}
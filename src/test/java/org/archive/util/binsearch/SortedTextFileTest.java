@@ -55,6 +55,38 @@ public class SortedTextFileTest extends TestCase {
 //		test.delete();
 	}
 
+	public void testMidpointCache() throws IOException {
+		File test = File.createTempFile("test", null);
+		int max = 100000;
+		createFile(test,max);
+		RandomAccessFileSeekableLineReaderFactory factory = 
+			new RandomAccessFileSeekableLineReaderFactory(test);
+		SortedTextFile ff = new SortedTextFile(factory);
+		ff.setMidpointCacheSize(1000);
+		MidpointCache cache = ff.getMidpointCache();
+		
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		assertEquals(0, cache.getHitCount());
+		long misses = cache.getMissCount();
+		assertTrue(misses > 0);
+		
+		// same search again should only hit the cache
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		assertEquals(misses, cache.getHitCount());
+		assertEquals(misses, cache.getMissCount());
+		
+		checkFirst(ff,true,formatS(54321),formatS(54320));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		checkFirst(ff,false,formatS(max),null);
+		checkFirst(ff,true,formatS(0),formatS(0));
+		assertTrue(cache.getHitCount() > misses);
+		
+		ff.reloadFactory();
+		assertEquals(0, cache.size());
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		test.delete();
+	}
+
 	private void checkFirst(SortedTextFile stf, boolean lt, String key, String want) throws IOException {
 		CloseableIterator<String> itr = stf.getRecordIterator(key, lt);
 		if(want == null) {
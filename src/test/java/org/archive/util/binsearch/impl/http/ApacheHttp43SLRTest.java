@@ -0,0 +1,124 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+public class ApacheHttp43SLRTest extends TestCase {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	// large enough not to fit in the socket buffers
+	private static final long LARGE_SIZE = 64L * 1024 * 1024;
+
+	private HttpServer server;
+	private String base;
+	private byte[] content;
+	private final AtomicLong largeWritten = new AtomicLong();
+	private CountDownLatch largeDone;
+
+	@Override
+	protected void setUp() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(String.format("line%05d\n", i));
+		}
+		content = sb.toString().getBytes("UTF-8");
+		largeDone = new CountDownLatch(1);
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/test.cdx", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = 0, end = content.length - 1;
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				Matcher m = (range != null ? RANGE.matcher(range) : null);
+				if ((m != null) && m.matches()) {
+					start = Long.parseLong(m.group(1));
+					if (!m.group(2).isEmpty()) {
+						end = Math.min(end, Long.parseLong(m.group(2)));
+					}
+				}
+				int len = (int)(end - start + 1);
+				exchange.sendResponseHeaders(range != null ? 206 : 200, len);
+				OutputStream out = exchange.getResponseBody();
+				out.write(content, (int)start, len);
+				out.close();
+			}
+		});
+		server.createContext("/redirect.cdx", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Location", base + "/test.cdx");
+				exchange.sendResponseHeaders(302, -1);
+				exchange.close();
+			}
+		});
+		server.createContext("/large.cdx", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] chunk = new byte[64 * 1024];
+				for (int i = 0; i < chunk.length; i += 10) {
+					System.arraycopy("line00000\n".getBytes("UTF-8"), 0, chunk, i, Math.min(10, chunk.length - i));
+				}
+				try {
+					exchange.sendResponseHeaders(200, LARGE_SIZE);
+					OutputStream out = exchange.getResponseBody();
+					for (long written = 0; written < LARGE_SIZE; written += chunk.length) {
+						out.write(chunk);
+						largeWritten.addAndGet(chunk.length);
+					}
+					out.close();
+				} finally {
+					largeDone.countDown();
+				}
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	public void testSeekFollowsRedirect() throws IOException {
+		ApacheHttp43SLR slr = new ApacheHttp43SLR(base + "/redirect.cdx");
+		slr.seek(100);
+		assertEquals("line00010", slr.readLine());
+		assertEquals(base + "/test.cdx", slr.getConnectedUrl());
+		slr.close();
+
+		slr = new ApacheHttp43SLR(base + "/redirect.cdx");
+		slr.seekWithMaxRead(200, false, 20);
+		assertEquals("line00020", slr.readLine());
+		assertEquals("line00021", slr.readLine());
+		assertNull(slr.readLine());
+		slr.close();
+	}
+
+	public void testCloseDoesNotDrain() throws Exception {
+		ApacheHttp43SLR slr = new ApacheHttp43SLR(base + "/large.cdx");
+		try {
+			slr.seek(0);
+			assertEquals("line00000", slr.readLine());
+		} finally {
+			slr.close();
+		}
+
+		assertTrue(largeDone.await(30, TimeUnit.SECONDS));
+		assertTrue(largeWritten.get() < LARGE_SIZE);
+	}
+}
@@ -0,0 +1,123 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.archive.util.binsearch.SeekableLineReader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+public class CoalescingHTTPSLRFactoryTest extends TestCase {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private byte[] content;
+	private String url;
+
+	@Override
+	protected void setUp() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(String.format("line%05d\n", i));
+		}
+		content = sb.toString().getBytes("UTF-8");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/test.cdx", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				long start = 0, end = content.length - 1;
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				Matcher m = (range != null ? RANGE.matcher(range) : null);
+				if ((m != null) && m.matches()) {
+					start = Long.parseLong(m.group(1));
+					if (!m.group(2).isEmpty()) {
+						end = Math.min(end, Long.parseLong(m.group(2)));
+					}
+				}
+				int len = (int)(end - start + 1);
+				exchange.sendResponseHeaders(range != null ? 206 : 200, len);
+				OutputStream out = exchange.getResponseBody();
+				out.write(content, (int)start, len);
+				out.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/test.cdx";
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	public void testMergesConcurrentRanges() throws Exception {
+		final CoalescingHTTPSLRFactory factory = new CoalescingHTTPSLRFactory(new HTTPURLConnSLRFactory());
+		factory.setWindowMS(500);
+
+		final int numThreads = 4;
+		final String[] results = new String[numThreads];
+		Thread[] threads = new Thread[numThreads];
+
+		for (int i = 0; i < numThreads; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						SeekableLineReader slr = factory.get(url);
+						// adjacent 10 line blocks, the last one with a gap
+						long offset = (index * 100) + ((index == 3) ? 50 : 0);
+						slr.seekWithMaxRead(offset, false, 100);
+						results[index] = slr.readLine();
+						slr.close();
+					} catch (IOException e) {
+						results[index] = e.toString();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals("line00000", results[0]);
+		assertEquals("line00010", results[1]);
+		assertEquals("line00020", results[2]);
+		assertEquals("line00035", results[3]);
+		assertEquals(4, factory.getNumReads());
+		assertEquals(1, factory.getNumRequests());
+		assertEquals(1, requests.get());
+	}
+
+	public void testUnboundedPassthrough() throws Exception {
+		CoalescingHTTPSLRFactory factory = new CoalescingHTTPSLRFactory(new HTTPURLConnSLRFactory());
+		factory.setWindowMS(0);
+
+		SeekableLineReader slr = factory.get(url);
+		slr.seek(9990);
+		assertEquals("line00999", slr.readLine());
+		assertNull(slr.readLine());
+
+		slr.seekWithMaxRead(20, false, 20);
+		assertEquals("line00002", slr.readLine());
+		assertEquals("line00003", slr.readLine());
+		assertNull(slr.readLine());
+		slr.close();
+
+		assertEquals(1, factory.getNumReads());
+		assertEquals(2, requests.get());
+	}
+}
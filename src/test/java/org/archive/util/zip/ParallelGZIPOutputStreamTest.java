@@ -0,0 +1,136 @@
+package org.archive.util.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+public class ParallelGZIPOutputStreamTest extends TestCase {
+    ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    /**
+     * @return compressible text, with some random runs
+     */
+    static byte[] data(Random random, int length) {
+        byte[] data = new byte[length];
+        String[] words = {"archive ", "crawl ", "record ", "warc ", "<div> ", "\n"};
+        int i = 0;
+        while (i < length) {
+            if (random.nextInt(50) == 0) {
+                int n = Math.min(length - i, random.nextInt(2000));
+                byte[] noise = new byte[n];
+                random.nextBytes(noise);
+                System.arraycopy(noise, 0, data, i, n);
+                i += n;
+            } else {
+                byte[] word = words[random.nextInt(words.length)].getBytes();
+                int n = Math.min(length - i, word.length);
+                System.arraycopy(word, 0, data, i, n);
+                i += n;
+            }
+        }
+        return data;
+    }
+
+    byte[] compress(byte[] data, int chunkSize, int level, int writeSize)
+    throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(out,
+            executor, chunkSize, level, Deflater.DEFAULT_STRATEGY, 2,
+            ParallelGZIPOutputStream.GZIP_HEADER);
+        for (int i = 0; i < data.length; i += writeSize) {
+            gz.write(data, i, Math.min(writeSize, data.length - i));
+        }
+        gz.finish();
+        assertEquals(data.length, gz.getBytesRead());
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(1);
+        int chunkSize = 64 * 1024;
+        for (int length : new int[] {0, 1, 100, chunkSize - 1, chunkSize,
+                chunkSize + 1, 3 * chunkSize, 1000000}) {
+            byte[] data = data(random, length);
+            for (int level : new int[] {Deflater.DEFAULT_COMPRESSION, 1, 9}) {
+                byte[] gz = compress(data, chunkSize, level, 1000);
+                byte[] inflated = ByteStreams.toByteArray(
+                    new GZIPInputStream(new ByteArrayInputStream(gz)));
+                assertTrue("length " + length + " level " + level,
+                    Arrays.equals(data, inflated));
+
+                // still in the first member at the end
+                GZIPMembersInputStream members = new GZIPMembersInputStream(
+                    new ByteArrayInputStream(gz));
+                ByteStreams.exhaust(members);
+                assertEquals(0, members.getMemberNumber());
+            }
+        }
+    }
+
+    public void testRatio() throws IOException {
+        byte[] data = data(new Random(2), 2000000);
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream(serial);
+        gz.write(data);
+        gz.close();
+        byte[] parallel = compress(data,
+            ParallelGZIPOutputStream.DEFAULT_CHUNK_SIZE,
+            Deflater.DEFAULT_COMPRESSION, 8192);
+        assertTrue(parallel.length + " vs " + serial.size(),
+            parallel.length < serial.size() * 1.05);
+    }
+
+    public void testDeflatersEnded() throws IOException {
+        final List<Deflater> used =
+            Collections.synchronizedList(new ArrayList<Deflater>());
+        byte[] data = data(new Random(3), 1000000);
+        ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(
+                new ByteArrayOutputStream(), executor, 64 * 1024,
+                Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 2,
+                ParallelGZIPOutputStream.GZIP_HEADER) {
+            @Override
+            protected Deflater borrowDeflater() {
+                Deflater deflater = super.borrowDeflater();
+                used.add(deflater);
+                return deflater;
+            }
+        };
+        gz.write(data);
+        gz.finish();
+        assertTrue(used.size() > 1);
+        // at most one per chunk deflating at once
+        assertTrue(new HashSet<Deflater>(used).size() <= 4);
+        for (Deflater deflater : used) {
+            try {
+                deflater.getTotalIn();
+                fail("Expected ended Deflater");
+            } catch (NullPointerException e) {
+            }
+        }
+    }
+}